@@ -0,0 +1,8 @@
+<%@ page session="false" buffer="none" import="com.alkacon.opencms.v8.calendar.*, org.opencms.jsp.*" %><%
+
+// serves the occurrences of the calendar entries as iCalendar (format=ics) or JSON (format=json) feed
+CmsJspActionElement cms = new CmsJspActionElement(pageContext, request, response);
+CmsCalendarFeed feed = new CmsCalendarFeed(cms);
+feed.write(out);
+
+%>
\ No newline at end of file
@@ -41,10 +41,17 @@ import java.util.Map;
 /**
  * Implements the basic methods of serial date options needed for serial date changes and interruptions.<p>
  * 
+ * Also matches the serial entries against a calendar view. Instead of checking every day from the start of the series,
+ * the implementations jump directly to the occurences using {@link #moveToNextOccurence(Calendar, Calendar)}
+ * and count the occurences before the view with {@link #getOccurenceCount(Calendar, Calendar, int)}.<p>
+ * 
  * @author Andreas Zahner
  */
 public abstract class A_CmsCalendarSerialDateOptions implements I_CmsCalendarSerialDateOptions {
 
+    /** The maximum number of months or years to check when looking for the next occurence. */
+    protected static final int MAX_PERIODS = 100;
+
     /** The serial date changes. */
     private List m_serialDateChanges;
 
@@ -104,7 +111,71 @@ public abstract class A_CmsCalendarSerialDateOptions implements I_CmsCalendarSer
     /**
      * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
      */
-    public abstract List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount);
+    public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
+
+        List result = new ArrayList();
+        int matches = 0;
+
+        CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+        Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
+        entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
+        boolean countOccurences = entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_TIMES;
+
+        // loop the view date ranges
+        for (int i = 0; i < calendarView.getDates().size(); i++) {
+            // get the current view date object
+            CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
+            // get the start and end times of the view
+            long viewStart = viewDate.getStartDate().getTimeInMillis();
+            long viewEnd = viewDate.getEndDate().getTimeInMillis();
+
+            // set the date for the current run
+            Calendar runDate = (Calendar)entryStartDayDate.clone();
+            // occurences counter
+            int occurences = 0;
+            // an entry of the day before the view start may still reach into the view on a daylight saving time change
+            Calendar skipDate = (Calendar)entryStartDayDate.clone();
+            skipDate.setTimeInMillis(viewDate.getStartDay());
+            skipDate.add(Calendar.DAY_OF_YEAR, -1);
+            if (runDate.before(skipDate)) {
+                // skip to current view start date, counting the skipped occurences only if necessary
+                runDate = skipDate;
+                if (countOccurences) {
+                    occurences = getOccurenceCount(entryStartDayDate, runDate, entryDate.getOccurences());
+                }
+            }
+
+            while ((matches < maxCount)
+                && moveToNextOccurence(entryStartDayDate, runDate)
+                && runDate.before(viewDate.getEndDate())) {
+
+                // check conditions to leave date series loop
+                if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
+                    break;
+                }
+
+                // the current day contains a series entry
+                occurences++;
+                long entryStart = runDate.getTimeInMillis() + entryDate.getStartTime();
+                // check if current entry is in view range
+                if ((entryStart >= viewStart) && (entryStart <= viewEnd)) {
+                    // the entry is in the view time range, clone the entry 
+                    CmsCalendarEntry cloneEntry = (CmsCalendarEntry)entry.clone();
+                    cloneEntry.getEntryDate().setStartDay(runDate.getTimeInMillis());
+                    cloneEntry = checkChanges(cloneEntry);
+                    if (cloneEntry != null) {
+                        // add the cloned entry to the result list
+                        result.add(cloneEntry);
+                        matches += 1;
+                    }
+                }
+
+                // continue searching on the next day
+                runDate.add(Calendar.DAY_OF_YEAR, 1);
+            }
+        }
+        return result;
+    }
 
     /**
      * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#setSerialDateChanges(java.util.List)
@@ -212,4 +283,93 @@ public abstract class A_CmsCalendarSerialDateOptions implements I_CmsCalendarSer
         return false;
     }
 
+    /**
+     * Returns the number of days between the given days.<p>
+     * 
+     * Both dates have to be set to the start of a day.
+     * The difference of a daylight saving time change is ignored.<p>
+     * 
+     * @param startDay the first day
+     * @param endDay the second day
+     * @return the number of days between the given days, negative if the second day is before the first day
+     */
+    protected static int getDaysBetween(Calendar startDay, Calendar endDay) {
+
+        return (int)Math.round((double)(endDay.getTimeInMillis() - startDay.getTimeInMillis())
+            / CmsCalendarEntryDate.MILLIS_02_PER_DAY);
+    }
+
+    /**
+     * Returns the day of the month matching the given day of the month or week day.<p>
+     * 
+     * @param date a date in the month to check
+     * @param dayOfMonth the day of the month, or the number of the week day in the month if a week day is given
+     * @param weekDay the week day, or -1 if only the day of the month should be used
+     * @return the matching day of the month, or -1 if the month does not contain it
+     */
+    protected static int getMatchingDay(Calendar date, int dayOfMonth, int weekDay) {
+
+        int day = dayOfMonth;
+        if ((weekDay >= Calendar.SUNDAY) && (weekDay <= Calendar.SATURDAY)) {
+            // calculate the first matching week day from the week day of the first day of the month
+            int firstWeekDay = date.get(Calendar.DAY_OF_WEEK) - ((date.get(Calendar.DAY_OF_MONTH) - 1) % 7);
+            day = 1 + ((weekDay - firstWeekDay + 14) % 7) + ((dayOfMonth - 1) * 7);
+        }
+        if ((day < 1) || (day > date.getActualMaximum(Calendar.DAY_OF_MONTH))) {
+            return -1;
+        }
+        return day;
+    }
+
+    /**
+     * Returns the number of days contained in the given week days, starting with the given week day.<p>
+     * 
+     * @param weekDays the week days as Integer values
+     * @param firstWeekDay the week day of the first day
+     * @param days the number of days to check, at most 7
+     * @return the number of days contained in the given week days
+     */
+    protected static int getMatchingWeekDays(List weekDays, int firstWeekDay, int days) {
+
+        int result = 0;
+        for (int i = 0; i < days; i++) {
+            int weekDay = ((firstWeekDay - 1 + i) % 7) + 1;
+            if (weekDays.contains(new Integer(weekDay))) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of occurences of the series before the given day.<p>
+     * 
+     * This basic implementation jumps from occurence to occurence, 
+     * overwrite this to calculate the number directly.<p>
+     * 
+     * @param startDay the start day of the series
+     * @param day the day to count the occurences before
+     * @param maxCount the maximum number of occurences to count
+     * @return the number of occurences of the series before the given day, at most the given maximum
+     */
+    protected int getOccurenceCount(Calendar startDay, Calendar day, int maxCount) {
+
+        int result = 0;
+        Calendar runDate = (Calendar)startDay.clone();
+        while ((result < maxCount) && moveToNextOccurence(startDay, runDate) && runDate.before(day)) {
+            result++;
+            runDate.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return result;
+    }
+
+    /**
+     * Moves the given run date to the next occurence of the series, if the run date is no occurence itself.<p>
+     * 
+     * @param startDay the start day of the series
+     * @param runDate the day to start searching, not before the start day, is set to the found occurence
+     * @return <code>true</code> if an occurence was found, <code>false</code> if the series has no more occurences
+     */
+    protected abstract boolean moveToNextOccurence(Calendar startDay, Calendar runDate);
+
 }
@@ -32,8 +32,14 @@
 
 package com.alkacon.opencms.v8.calendar;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Creates a calendar data structure usable to display different calendar views on the frontend.<p>
@@ -41,6 +47,11 @@ import java.util.List;
  * A calendar contains a list of {@link com.alkacon.opencms.v8.calendar.CmsCalendarEntry} objects and a method to filter
  * entries using an initialized {@link com.alkacon.opencms.v8.calendar.I_CmsCalendarView} object.<p>
  * 
+ * For views using the {@link CmsCalendarViewSimple#COMPARE_VIEW_DATE} comparator, the entries are looked up in an 
+ * index of the entries sorted by their start dates, which is built once and reused until the entries are changed. 
+ * Entries appended afterwards, e.g. holidays, are checked separately. The index of cached entries is kept in the 
+ * {@link CmsCalendarEntryCache}, so that it is shared by all calendars showing these entries.<p>
+ * 
  * @author Andreas Zahner
  * 
  * @version $Revision: 1.1 $ 
@@ -49,15 +60,258 @@ import java.util.List;
  */
 public class CmsCalendar {
 
+    /**
+     * Index of the calendar entries, the common entries are sorted by their start dates, the serial entries are kept apart.<p>
+     * 
+     * The index is immutable, so it can be shared by all calendars starting with the indexed entries.<p>
+     */
+    static final class CmsEntryIndex {
+
+        /** The common entries, sorted by their start dates. */
+        private final CmsCalendarEntry[] m_entries;
+
+        /** The number of entries the index was built for. */
+        private final int m_indexedSize;
+
+        /** The positions of the common entries in the list of all entries. */
+        private final int[] m_positions;
+
+        /** The serial entries, in the order of the list of all entries. */
+        private final CmsCalendarEntry[] m_serialEntries;
+
+        /** The positions of the serial entries in the list of all entries. */
+        private final int[] m_serialPositions;
+
+        /** The start dates in milliseconds of the common entries, sorted ascending. */
+        private final long[] m_starts;
+
+        /**
+         * Builds the index for the given entries.<p>
+         * 
+         * @param entries the list of {@link CmsCalendarEntry} objects
+         */
+        CmsEntryIndex(List entries) {
+
+            m_indexedSize = entries.size();
+
+            final long[] starts = new long[m_indexedSize];
+            List common = new ArrayList(m_indexedSize);
+            List serial = new ArrayList();
+            for (int i = 0; i < m_indexedSize; i++) {
+                CmsCalendarEntry entry = (CmsCalendarEntry)entries.get(i);
+                if (entry.getEntryDate().isSerialDate()) {
+                    serial.add(new Integer(i));
+                } else {
+                    starts[i] = entry.getEntryDate().getStartDate().getTimeInMillis();
+                    common.add(new Integer(i));
+                }
+            }
+            // sorting is stable, so entries with equal start dates keep their order
+            Collections.sort(common, new Comparator() {
+
+                /**
+                 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+                 */
+                public int compare(Object arg0, Object arg1) {
+
+                    long start0 = starts[((Integer)arg0).intValue()];
+                    long start1 = starts[((Integer)arg1).intValue()];
+                    return (start0 < start1) ? -1 : ((start0 > start1) ? 1 : 0);
+                }
+            });
+
+            m_entries = new CmsCalendarEntry[common.size()];
+            m_positions = new int[common.size()];
+            m_starts = new long[common.size()];
+            for (int i = 0; i < m_entries.length; i++) {
+                int pos = ((Integer)common.get(i)).intValue();
+                m_entries[i] = (CmsCalendarEntry)entries.get(pos);
+                m_positions[i] = pos;
+                m_starts[i] = starts[pos];
+            }
+            m_serialEntries = new CmsCalendarEntry[serial.size()];
+            m_serialPositions = new int[serial.size()];
+            for (int i = 0; i < m_serialPositions.length; i++) {
+                m_serialPositions[i] = ((Integer)serial.get(i)).intValue();
+                m_serialEntries[i] = (CmsCalendarEntry)entries.get(m_serialPositions[i]);
+            }
+        }
+
+        /**
+         * Returns if this index can be used for the given entries, which have to start with the indexed entries.<p>
+         * 
+         * @param entries the current list of entries
+         * 
+         * @return <code>true</code> if this index can be used for the given entries
+         */
+        boolean isValid(List entries) {
+
+            return m_indexedSize <= entries.size();
+        }
+
+        /**
+         * Returns the entries matching the given view, in the order a full scan of all entries would return them.<p>
+         * 
+         * @param calendarView the calendar view using the {@link CmsCalendarViewSimple#COMPARE_VIEW_DATE} comparator
+         * @param entries the list of all entries, starting with the indexed entries
+         * 
+         * @return the matching entries
+         */
+        List match(I_CmsCalendarView calendarView, List entries) {
+
+            // the matches by position of the entry in the list of all entries
+            Map matches = new TreeMap();
+            List dates = calendarView.getDates();
+            for (int i = 0; i < dates.size(); i++) {
+                CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)dates.get(i);
+                long viewStart = viewDate.getStartDate().getTimeInMillis();
+                long viewEnd = viewDate.getEndDate().getTimeInMillis();
+                for (int j = firstStartingAt(viewStart); (j < m_starts.length) && (m_starts[j] <= viewEnd); j++) {
+                    addMatch(matches, m_positions[j], m_entries[j]);
+                }
+            }
+            for (int i = 0; i < m_serialPositions.length; i++) {
+                List matchedEntries = m_serialEntries[i].matchCalendarView(calendarView);
+                for (int j = 0; j < matchedEntries.size(); j++) {
+                    addMatch(matches, m_serialPositions[i], matchedEntries.get(j));
+                }
+            }
+            // the entries added after the index was built, e.g. holidays
+            for (int pos = m_indexedSize; pos < entries.size(); pos++) {
+                List matchedEntries = ((CmsCalendarEntry)entries.get(pos)).matchCalendarView(calendarView);
+                for (int j = 0; j < matchedEntries.size(); j++) {
+                    addMatch(matches, pos, matchedEntries.get(j));
+                }
+            }
+
+            List result = new ArrayList();
+            Iterator it = matches.values().iterator();
+            while (it.hasNext()) {
+                result.addAll((List)it.next());
+            }
+            return result;
+        }
+
+        /**
+         * Adds a matching entry.<p>
+         * 
+         * @param matches the matches by position
+         * @param pos the position of the entry in the list of all entries
+         * @param match the matching entry
+         */
+        private void addMatch(Map matches, int pos, Object match) {
+
+            Integer key = new Integer(pos);
+            List list = (List)matches.get(key);
+            if (list == null) {
+                list = new ArrayList(1);
+                matches.put(key, list);
+            }
+            list.add(match);
+        }
+
+        /**
+         * Returns the index of the first common entry starting at or after the given time.<p>
+         * 
+         * @param time the time in milliseconds
+         * 
+         * @return the index of the first common entry starting at or after the given time
+         */
+        private int firstStartingAt(long time) {
+
+            int low = 0;
+            int high = m_starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (m_starts[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * List of the calendar entries that drops the index of the calendar on every change except appending entries.<p>
+     */
+    private final class CmsEntryList extends AbstractList {
+
+        /** The list containing the entries. */
+        private final List m_list;
+
+        /**
+         * Creates a list of calendar entries backed by the given list.<p>
+         * 
+         * @param list the list containing the entries
+         */
+        CmsEntryList(List list) {
+
+            m_list = list;
+        }
+
+        /**
+         * @see java.util.AbstractList#add(int, java.lang.Object)
+         */
+        public void add(int index, Object element) {
+
+            if (index != m_list.size()) {
+                // the positions of the indexed entries change
+                m_index = null;
+            }
+            modCount++;
+            m_list.add(index, element);
+        }
+
+        /**
+         * @see java.util.AbstractList#get(int)
+         */
+        public Object get(int index) {
+
+            return m_list.get(index);
+        }
+
+        /**
+         * @see java.util.AbstractList#remove(int)
+         */
+        public Object remove(int index) {
+
+            m_index = null;
+            modCount++;
+            return m_list.remove(index);
+        }
+
+        /**
+         * @see java.util.AbstractList#set(int, java.lang.Object)
+         */
+        public Object set(int index, Object element) {
+
+            m_index = null;
+            return m_list.set(index, element);
+        }
+
+        /**
+         * @see java.util.AbstractCollection#size()
+         */
+        public int size() {
+
+            return m_list.size();
+        }
+    }
+
     /** Contains the configured calendar entries. */
     private List m_entries;
 
+    /** The index of the entries, built when needed. */
+    private volatile CmsEntryIndex m_index;
+
     /**
      * Default constructor, creates an empty calendar without entries.<p>
      */
     public CmsCalendar() {
 
-        m_entries = new ArrayList();
+        m_entries = new CmsEntryList(new ArrayList());
     }
 
     /**
@@ -67,7 +321,7 @@ public class CmsCalendar {
      */
     public CmsCalendar(List entries) {
 
-        m_entries = entries;
+        m_entries = new CmsEntryList(entries);
     }
 
     /**
@@ -77,12 +331,15 @@ public class CmsCalendar {
      */
     public void addEntry(CmsCalendarEntry entry) {
 
+        // the index remains valid, appended entries are checked separately
         m_entries.add(entry);
     }
 
     /**
      * Returns all calendar entries.<p>
      * 
+     * Changing the returned list resets the index of the entries, except appending entries.<p>
+     * 
      * @return all calendar entries
      */
     public List getEntries() {
@@ -99,6 +356,13 @@ public class CmsCalendar {
      */
     public List getEntries(I_CmsCalendarView calendarView) {
 
+        if (calendarView.getComparator() == CmsCalendarViewSimple.COMPARE_VIEW_DATE) {
+            // use the index, the comparator only checks the start dates of the entries
+            List result = getIndex().match(calendarView, m_entries);
+            calendarView.sort(result);
+            return result;
+        }
+
         List result = new ArrayList();
 
         for (int i = 0; i < m_entries.size(); i++) {
@@ -125,7 +389,37 @@ public class CmsCalendar {
      */
     public void setEntries(List entries) {
 
-        m_entries = entries;
+        m_entries = new CmsEntryList(entries);
+        m_index = null;
+    }
+
+    /**
+     * Sets the list of entries together with an already built index of the first entries.<p>
+     * 
+     * @param entries the list of entries, starting with the indexed entries
+     * @param index the index of the first entries, e.g. shared by the {@link CmsCalendarEntryCache}
+     */
+    void setEntries(List entries, CmsEntryIndex index) {
+
+        m_entries = new CmsEntryList(entries);
+        m_index = index;
+    }
+
+    /**
+     * Returns the index of the entries, building it if the entries were set without index.<p>
+     * 
+     * Changing the dates of already added entries requires to set the entries again.<p>
+     * 
+     * @return the index of the entries
+     */
+    private CmsEntryIndex getIndex() {
+
+        CmsEntryIndex index = m_index;
+        if ((index == null) || !index.isValid(m_entries)) {
+            index = new CmsEntryIndex(m_entries);
+            m_index = index;
+        }
+        return index;
     }
 
 }
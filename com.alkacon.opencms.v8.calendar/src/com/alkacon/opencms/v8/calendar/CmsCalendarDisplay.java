@@ -38,6 +38,7 @@ import com.alkacon.opencms.commons.CmsConfigurableCollector;
 import org.opencms.file.CmsFile;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsPropertyDefinition;
+import org.opencms.file.CmsRequestContext;
 import org.opencms.file.CmsResource;
 import org.opencms.file.collectors.I_CmsResourceCollector;
 import org.opencms.i18n.CmsMessages;
@@ -45,6 +46,7 @@ import org.opencms.jsp.CmsJspActionElement;
 import org.opencms.main.CmsException;
 import org.opencms.main.CmsLog;
 import org.opencms.main.OpenCms;
+import org.opencms.relations.CmsCategory;
 import org.opencms.util.CmsStringUtil;
 import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
@@ -1040,39 +1042,28 @@ public class CmsCalendarDisplay extends CmsCalendar {
     /**
      * Initializes the calendar entries using the default resource collector.<p>
      * 
+     * The collected resources and the created entries are cached in the {@link CmsCalendarEntryCache},
+     * so that following requests with the same configuration do not have to read the resources again.<p>
+     * 
      * @return the List of collected resources using the default resource collector
      */
     public List initCalendarEntries() {
 
-        return initCalendarEntries(getDefaultCollector());
+        I_CmsResourceCollector collector = getDefaultCollector();
+        return initCalendarEntries(collector, getCacheKey(collector));
     }
 
     /**
      * Initializes the calendar entries using the specified resource collector.<p>
      * 
+     * The result is not cached, since the collected resources may depend on the state of the given collector.<p>
+     * 
      * @param collector the collector to use for collecting the resources
      * @return the List of collected resources using the specified resource collector
      */
     public List initCalendarEntries(I_CmsResourceCollector collector) {
 
-        List result = null;
-        try {
-            result = collector.getResults(getJsp().getCmsObject());
-            setEntries(createCalendarEntries(
-                result,
-                PROPERTY_CALENDAR_STARTDATE,
-                PROPERTY_CALENDAR_ENDDATE,
-                CmsPropertyDefinition.PROPERTY_TITLE,
-                CmsPropertyDefinition.PROPERTY_DESCRIPTION));
-        } catch (CmsException e) {
-            // error collecting resources, an empty calendar is returned
-            if (LOG.isErrorEnabled()) {
-                LOG.error(Messages.get().getBundle().key(
-                    Messages.LOG_CALENDAR_RESOURCES_1,
-                    getJsp().getRequestContext().getUri()));
-            }
-        }
-        return result;
+        return initCalendarEntries(collector, null);
     }
 
     /**
@@ -1245,6 +1236,46 @@ public class CmsCalendarDisplay extends CmsCalendar {
         return result;
     }
 
+    /**
+     * Returns the key to cache the calendar entries collected with the given collector.<p>
+     * 
+     * The key contains the collector configuration, the current project, site, locale and user,
+     * since the collected resources and the created entries depend on them.
+     * Returns <code>null</code> if the result of the collector can not be cached, 
+     * which is the case for all collectors except the {@link CmsConfigurableCollector}.<p>
+     * 
+     * @param collector the collector to use for collecting the resources
+     * 
+     * @return the key to cache the calendar entries, or <code>null</code> if they can not be cached
+     */
+    protected String getCacheKey(I_CmsResourceCollector collector) {
+
+        if ((collector == null) || !CmsConfigurableCollector.class.equals(collector.getClass())) {
+            return null;
+        }
+        StringBuffer result = new StringBuffer(256);
+        result.append(getClass().getName());
+        result.append('|').append(collector.getDefaultCollectorParam());
+        Iterator i = ((CmsConfigurableCollector)collector).getCollectorConfigurations().iterator();
+        while (i.hasNext()) {
+            CmsCollectorConfiguration config = (CmsCollectorConfiguration)i.next();
+            result.append('|').append(config.getUri());
+            result.append(',').append(config.getResourceType());
+            result.append(',').append(config.isRecursive());
+            result.append(',').append(config.getProperties());
+            Iterator j = config.getCategories().iterator();
+            while (j.hasNext()) {
+                result.append(',').append(((CmsCategory)j.next()).getRootPath());
+            }
+        }
+        CmsRequestContext context = getJsp().getRequestContext();
+        result.append('|').append(context.currentProject().getUuid());
+        result.append('|').append(context.getSiteRoot());
+        result.append('|').append(context.getLocale());
+        result.append('|').append(context.currentUser().getName());
+        return result.toString();
+    }
+
     /**
      * Returns value of the given property from the given resource, or the given default value if any problem.<p>
      * 
@@ -1265,6 +1296,55 @@ public class CmsCalendarDisplay extends CmsCalendar {
         }
     }
 
+    /**
+     * Initializes the calendar entries using the specified resource collector, using the cache if a key is given.<p>
+     * 
+     * @param collector the collector to use for collecting the resources
+     * @param cacheKey the key to cache the result with, or <code>null</code> if the result should not be cached
+     * @return the List of collected resources using the specified resource collector
+     */
+    private List initCalendarEntries(I_CmsResourceCollector collector, String cacheKey) {
+
+        CmsCalendarEntryCache cache = null;
+        if (cacheKey != null) {
+            cache = CmsCalendarEntryCache.getSharedInstance();
+            CmsCalendarEntryCache.CmsCachedEntries cached = cache.get(cacheKey);
+            if (cached != null) {
+                // copy the entries, holidays may be added to the list of this calendar
+                setEntries(new ArrayList(cached.getEntries()), cached.getIndex());
+                return new ArrayList(cached.getResources());
+            }
+        }
+
+        List result = null;
+        try {
+            result = collector.getResults(getJsp().getCmsObject());
+            List entries = createCalendarEntries(
+                result,
+                PROPERTY_CALENDAR_STARTDATE,
+                PROPERTY_CALENDAR_ENDDATE,
+                CmsPropertyDefinition.PROPERTY_TITLE,
+                CmsPropertyDefinition.PROPERTY_DESCRIPTION);
+            if (cache != null) {
+                CmsCalendarEntryCache.CmsCachedEntries cached = cache.put(
+                    cacheKey,
+                    new ArrayList(result),
+                    new ArrayList(entries));
+                setEntries(entries, cached.getIndex());
+            } else {
+                setEntries(entries);
+            }
+        } catch (CmsException e) {
+            // error collecting resources, an empty calendar is returned
+            if (LOG.isErrorEnabled()) {
+                LOG.error(Messages.get().getBundle().key(
+                    Messages.LOG_CALENDAR_RESOURCES_1,
+                    getJsp().getRequestContext().getUri()));
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates a sorted Map of entries for the given date range.<p>
      * 
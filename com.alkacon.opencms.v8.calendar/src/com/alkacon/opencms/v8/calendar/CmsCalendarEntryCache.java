@@ -0,0 +1,391 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.calendar/src/com/alkacon/opencms/v8/calendar/CmsCalendarEntryCache.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2008 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.calendar;
+
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.collections.map.LRUMap;
+
+/**
+ * Caches the calendar entries created from collected resources for all requests of this server.<p>
+ *
+ * The entries are cached by a key describing the collector configuration, the project, the site,
+ * the locale and the user, see {@link CmsCalendarDisplay#getCacheKey(org.opencms.file.collectors.I_CmsResourceCollector)}.
+ * The rendered occurrence feeds of {@link CmsCalendarFeed} are cached in the same way, the key is extended by
+ * the requested time window and format.
+ * The whole cache is cleared if a resource is modified or a project is published.
+ * Cached entries also expire after {@link #MAX_AGE}, so that resources reaching their release
+ * or expiration date are shown or hidden in time.<p>
+ *
+ * The cached lists must not be modified, they are shared by all requests.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsCalendarEntryCache implements I_CmsEventListener {
+
+    /**
+     * The cached result of a collector.<p>
+     */
+    public static final class CmsCachedEntries {
+
+        /** The time the entries were created. */
+        private final long m_dateCreated;
+
+        /** The calendar entries. */
+        private final List<CmsCalendarEntry> m_entries;
+
+        /** The index of the calendar entries, built when needed. */
+        private volatile CmsCalendar.CmsEntryIndex m_index;
+
+        /** The collected resources. */
+        private final List<?> m_resources;
+
+        /**
+         * Creates a new cached collector result.<p>
+         *
+         * @param resources the collected resources
+         * @param entries the calendar entries created from the resources
+         */
+        CmsCachedEntries(List<?> resources, List<CmsCalendarEntry> entries) {
+
+            m_dateCreated = System.currentTimeMillis();
+            m_resources = Collections.unmodifiableList(resources);
+            m_entries = Collections.unmodifiableList(entries);
+        }
+
+        /**
+         * Returns the calendar entries.<p>
+         *
+         * @return the calendar entries
+         */
+        public List<CmsCalendarEntry> getEntries() {
+
+            return m_entries;
+        }
+
+        /**
+         * Returns the collected resources.<p>
+         *
+         * @return the collected resources
+         */
+        public List<?> getResources() {
+
+            return m_resources;
+        }
+
+        /**
+         * Returns the index of the calendar entries, which is built only once for all calendars using these entries.<p>
+         *
+         * @return the index of the calendar entries
+         */
+        CmsCalendar.CmsEntryIndex getIndex() {
+
+            CmsCalendar.CmsEntryIndex index = m_index;
+            if (index == null) {
+                // building the index twice concurrently does no harm
+                index = new CmsCalendar.CmsEntryIndex(m_entries);
+                m_index = index;
+            }
+            return index;
+        }
+
+        /**
+         * Returns if these entries are older than {@link CmsCalendarEntryCache#MAX_AGE}.<p>
+         *
+         * @return <code>true</code> if these entries are expired
+         */
+        boolean isExpired() {
+
+            return (System.currentTimeMillis() - m_dateCreated) > MAX_AGE;
+        }
+    }
+
+    /**
+     * A rendered occurrence feed.<p>
+     */
+    public static final class CmsCachedFeed {
+
+        /** The rendered feed. */
+        private final String m_content;
+
+        /** The content type of the feed. */
+        private final String m_contentType;
+
+        /** The time the feed was created. */
+        private final long m_dateCreated;
+
+        /** The entity tag of the feed. */
+        private final String m_etag;
+
+        /**
+         * Creates a new rendered feed.<p>
+         *
+         * @param content the rendered feed
+         * @param contentType the content type of the feed, including the charset
+         */
+        CmsCachedFeed(String content, String contentType) {
+
+            m_dateCreated = System.currentTimeMillis();
+            m_content = content;
+            m_contentType = contentType;
+            m_etag = createEtag(content);
+        }
+
+        /**
+         * Returns the rendered feed.<p>
+         *
+         * @return the rendered feed
+         */
+        public String getContent() {
+
+            return m_content;
+        }
+
+        /**
+         * Returns the content type of the feed, including the charset.<p>
+         *
+         * @return the content type of the feed
+         */
+        public String getContentType() {
+
+            return m_contentType;
+        }
+
+        /**
+         * Returns the quoted entity tag of the feed, derived from its content.<p>
+         *
+         * @return the entity tag of the feed
+         */
+        public String getEtag() {
+
+            return m_etag;
+        }
+
+        /**
+         * Returns if this feed is older than {@link CmsCalendarEntryCache#MAX_AGE}.<p>
+         *
+         * @return <code>true</code> if this feed is expired
+         */
+        boolean isExpired() {
+
+            return (System.currentTimeMillis() - m_dateCreated) > MAX_AGE;
+        }
+
+        /**
+         * Creates the entity tag for the given content.<p>
+         *
+         * @param content the content
+         *
+         * @return the quoted entity tag
+         */
+        private static String createEtag(String content) {
+
+            StringBuffer result = new StringBuffer(34);
+            result.append('"');
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(content.getBytes("UTF-8"));
+                for (int i = 0; i < digest.length; i++) {
+                    int b = digest[i] & 0xff;
+                    if (b < 0x10) {
+                        result.append('0');
+                    }
+                    result.append(Integer.toHexString(b));
+                }
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform has to support MD5
+                result.append(Integer.toHexString(content.hashCode()));
+            } catch (UnsupportedEncodingException e) {
+                // every Java platform has to support UTF-8
+                result.append(Integer.toHexString(content.hashCode()));
+            }
+            result.append('"');
+            return result.toString();
+        }
+    }
+
+    /** The maximum age of cached entries in milliseconds. */
+    public static final long MAX_AGE = CmsCalendarEntryDate.MILLIS_01_PER_HOUR;
+
+    /** The maximum number of cached collector results and of cached feeds. */
+    private static final int MAX_SIZE = 200;
+
+    /** The shared instance of the calendar entry cache. */
+    private static volatile CmsCalendarEntryCache sharedInstance;
+
+    /** The cached collector results. */
+    private final Map<String, CmsCachedEntries> m_cache;
+
+    /** The rendered occurrence feeds. */
+    private final Map<String, CmsCachedFeed> m_feeds;
+
+    /**
+     * Hidden constructor, use {@link #getSharedInstance()}.<p>
+     */
+    @SuppressWarnings("unchecked")
+    private CmsCalendarEntryCache() {
+
+        m_cache = Collections.synchronizedMap(new LRUMap(MAX_SIZE));
+        m_feeds = Collections.synchronizedMap(new LRUMap(MAX_SIZE));
+
+        OpenCms.addCmsEventListener(this, new int[] {
+            I_CmsEventListener.EVENT_CLEAR_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+            I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+            I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_CREATED,
+            I_CmsEventListener.EVENT_RESOURCE_DELETED,
+            I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_MOVED,
+            I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCES_MODIFIED,
+            I_CmsEventListener.EVENT_PROPERTY_MODIFIED});
+    }
+
+    /**
+     * Returns the shared instance of the calendar entry cache.<p>
+     *
+     * @return the shared instance of the calendar entry cache
+     */
+    public static CmsCalendarEntryCache getSharedInstance() {
+
+        CmsCalendarEntryCache result = sharedInstance;
+        if (result == null) {
+            synchronized (CmsCalendarEntryCache.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new CmsCalendarEntryCache();
+                    sharedInstance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cached entries and feeds.<p>
+     */
+    public void clear() {
+
+        m_cache.clear();
+        m_feeds.clear();
+    }
+
+    /**
+     * @see org.opencms.main.I_CmsEventListener#cmsEvent(org.opencms.main.CmsEvent)
+     */
+    public void cmsEvent(CmsEvent event) {
+
+        // every change may add or remove resources of any collector, so clear all
+        clear();
+    }
+
+    /**
+     * Returns the cached collector result for the given key.<p>
+     *
+     * @param key the cache key
+     *
+     * @return the cached collector result, or <code>null</code> if not cached or expired
+     */
+    public CmsCachedEntries get(String key) {
+
+        CmsCachedEntries result = m_cache.get(key);
+        if ((result != null) && result.isExpired()) {
+            m_cache.remove(key);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rendered feed for the given key.<p>
+     *
+     * @param key the feed cache key
+     *
+     * @return the rendered feed, or <code>null</code> if not cached or expired
+     */
+    public CmsCachedFeed getFeed(String key) {
+
+        CmsCachedFeed result = m_feeds.get(key);
+        if ((result != null) && result.isExpired()) {
+            m_feeds.remove(key);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the collector result for the given key.<p>
+     *
+     * @param key the cache key
+     * @param resources the collected resources
+     * @param entries the calendar entries created from the resources
+     *
+     * @return the cached collector result
+     */
+    public CmsCachedEntries put(String key, List<?> resources, List<CmsCalendarEntry> entries) {
+
+        CmsCachedEntries result = new CmsCachedEntries(resources, entries);
+        m_cache.put(key, result);
+        return result;
+    }
+
+    /**
+     * Caches the rendered feed for the given key.<p>
+     *
+     * @param key the feed cache key
+     * @param content the rendered feed
+     * @param contentType the content type of the feed, including the charset
+     *
+     * @return the cached feed
+     */
+    public CmsCachedFeed putFeed(String key, String content, String contentType) {
+
+        CmsCachedFeed result = new CmsCachedFeed(content, contentType);
+        m_feeds.put(key, result);
+        return result;
+    }
+}
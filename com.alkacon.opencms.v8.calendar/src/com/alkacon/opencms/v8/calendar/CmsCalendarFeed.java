@@ -0,0 +1,494 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.calendar/src/com/alkacon/opencms/v8/calendar/CmsCalendarFeed.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2008 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.calendar;
+
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryCache.CmsCachedFeed;
+
+import org.opencms.file.CmsResource;
+import org.opencms.file.collectors.I_CmsResourceCollector;
+import org.opencms.jsp.CmsJspActionElement;
+import org.opencms.json.JSONArray;
+import org.opencms.json.JSONException;
+import org.opencms.json.JSONObject;
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsStringUtil;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Provides the occurrences of the calendar entries of a time window as iCalendar or JSON feed.<p>
+ *
+ * The feed is created from the same entries as the calendar views, see {@link CmsCalendarDisplay#initCalendarEntries()},
+ * and serial entries are expanded to their single occurrences within the requested window.
+ * The rendered feeds are cached in the {@link CmsCalendarEntryCache}, so that polling clients usually cost only a cache lookup.
+ * Every feed is sent with an entity tag, clients sending it back in the <code>If-None-Match</code> header
+ * get a <code>304 Not Modified</code> response as long as the feed did not change. To keep the entity tag stable
+ * when the feed is rendered again, the <code>DTSTAMP</code> of the iCalendar events is the latest date of last
+ * modification of the collected resources, not the time the feed was rendered.<p>
+ *
+ * The following request parameters are supported:
+ * <ul>
+ * <li>{@link #PARAM_FORMAT}: the format of the feed, {@link #FORMAT_ICS} (default) or {@link #FORMAT_JSON}</li>
+ * <li>{@link #PARAM_START}: the first day of the window in the format <code>yyyyMMdd</code>, default is the current day</li>
+ * <li>{@link #PARAM_DAYS}: the number of days of the window, default is {@link #DEFAULT_DAYS}</li>
+ * <li>{@link #PARAM_COUNT}: the maximum number of occurrences, default is {@link #DEFAULT_COUNT}</li>
+ * <li>{@link CmsCalendarDisplay#PARAM_URI}: the URI of the calendar page to read the configuration from</li>
+ * </ul><p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsCalendarFeed {
+
+    /** The default maximum number of occurrences in the feed. */
+    public static final int DEFAULT_COUNT = 100;
+
+    /** The default number of days of the feed window. */
+    public static final int DEFAULT_DAYS = 365;
+
+    /** Format name for the iCalendar feed. */
+    public static final String FORMAT_ICS = "ics";
+
+    /** Format name for the JSON feed. */
+    public static final String FORMAT_JSON = "json";
+
+    /** The maximum number of occurrences in the feed. */
+    public static final int MAX_COUNT = 1000;
+
+    /** The maximum number of days of the feed window. */
+    public static final int MAX_DAYS = 1830;
+
+    /** Request parameter name for the maximum number of occurrences. */
+    public static final String PARAM_COUNT = "count";
+
+    /** Request parameter name for the number of days of the window. */
+    public static final String PARAM_DAYS = "days";
+
+    /** Request parameter name for the feed format. */
+    public static final String PARAM_FORMAT = "format";
+
+    /** Request parameter name for the first day of the window. */
+    public static final String PARAM_START = "start";
+
+    /** Line separator of the iCalendar format. */
+    private static final String ICS_CRLF = "\r\n";
+
+    /** The maximum length of an iCalendar content line in octets, without the line separator. */
+    private static final int ICS_LINE_LENGTH = 75;
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsCalendarFeed.class);
+
+    /** The maximum number of occurrences in the feed. */
+    private int m_count;
+
+    /** The latest date of last modification of the collected resources. */
+    private long m_dateLastModified;
+
+    /** The number of days of the feed window. */
+    private int m_days;
+
+    /** The calendar display providing the entries. */
+    private CmsCalendarDisplay m_display;
+
+    /** The feed format. */
+    private String m_format;
+
+    /** The JSP action element to use. */
+    private CmsJspActionElement m_jsp;
+
+    /** The first day of the feed window. */
+    private Calendar m_start;
+
+    /**
+     * Constructor, with parameters.<p>
+     *
+     * Reads the feed window and format from the request parameters.<p>
+     *
+     * @param jsp the JSP action element to use
+     */
+    public CmsCalendarFeed(CmsJspActionElement jsp) {
+
+        m_jsp = jsp;
+        HttpServletRequest request = jsp.getRequest();
+        String uri = request.getParameter(CmsCalendarDisplay.PARAM_URI);
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(uri)) {
+            // the calendar configuration is read from the properties of the given page
+            jsp.getRequestContext().setUri(uri);
+        }
+        m_display = new CmsCalendarDisplay(jsp);
+
+        m_format = FORMAT_JSON.equalsIgnoreCase(request.getParameter(PARAM_FORMAT)) ? FORMAT_JSON : FORMAT_ICS;
+        m_days = getIntParameter(PARAM_DAYS, DEFAULT_DAYS, MAX_DAYS);
+        m_count = getIntParameter(PARAM_COUNT, DEFAULT_COUNT, MAX_COUNT);
+
+        m_start = new GregorianCalendar(jsp.getRequestContext().getLocale());
+        String start = request.getParameter(PARAM_START);
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(start)) {
+            DateFormat df = new SimpleDateFormat("yyyyMMdd");
+            df.setLenient(false);
+            try {
+                m_start.setTime(df.parse(start.trim()));
+            } catch (ParseException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(e.getLocalizedMessage(), e);
+                }
+            }
+        }
+        m_start = CmsCalendarDisplay.setDayTime(m_start, 0, 0, 0);
+    }
+
+    /**
+     * Returns the occurrences of the calendar entries within the feed window.<p>
+     *
+     * The result is sorted by the start date of the occurrences and contains at most the requested number of occurrences.<p>
+     *
+     * @return the occurrences of the calendar entries within the feed window
+     */
+    public List getOccurences() {
+
+        m_dateLastModified = 0;
+        for (Iterator i = m_display.initCalendarEntries().iterator(); i.hasNext();) {
+            Object resource = i.next();
+            if (resource instanceof CmsResource) {
+                m_dateLastModified = Math.max(m_dateLastModified, ((CmsResource)resource).getDateLastModified());
+            }
+        }
+
+        Calendar end = (Calendar)m_start.clone();
+        end.add(Calendar.DAY_OF_YEAR, m_days - 1);
+        List viewDates = new ArrayList(1);
+        viewDates.add(new CmsCalendarEntryDate(m_start, CmsCalendarDisplay.setDayTime(end, 23, 59, 59)));
+        List result = m_display.getEntries(new CmsCalendarViewSimple(viewDates));
+        if (result.size() > m_count) {
+            // cut off all items > count
+            result = result.subList(0, m_count);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the feed to the response of the JSP action element.<p>
+     *
+     * If the client already knows the current feed, only the status <code>304 Not Modified</code> is sent.<p>
+     *
+     * @param out the writer of the response, e.g. the JSP writer
+     *
+     * @throws IOException if writing the response fails
+     */
+    public void write(Writer out) throws IOException {
+
+        CmsCalendarEntryCache cache = CmsCalendarEntryCache.getSharedInstance();
+        I_CmsResourceCollector collector = m_display.getDefaultCollector();
+        String entriesKey = m_display.getCacheKey(collector);
+        String key = null;
+        CmsCachedFeed feed = null;
+        if (entriesKey != null) {
+            StringBuffer buf = new StringBuffer(entriesKey.length() + 48);
+            buf.append(entriesKey);
+            buf.append('|').append(m_format);
+            buf.append('|').append(m_start.getTimeInMillis());
+            buf.append('|').append(m_days);
+            buf.append('|').append(m_count);
+            key = buf.toString();
+            feed = cache.getFeed(key);
+        }
+        if (feed == null) {
+            String encoding = m_jsp.getRequestContext().getEncoding();
+            String content;
+            String contentType;
+            if (FORMAT_JSON.equals(m_format)) {
+                content = createJson(getOccurences());
+                contentType = "application/json; charset=" + encoding;
+            } else {
+                content = createIcs(getOccurences());
+                contentType = "text/calendar; charset=" + encoding;
+            }
+            if (key != null) {
+                feed = cache.putFeed(key, content, contentType);
+            } else {
+                feed = new CmsCachedFeed(content, contentType);
+            }
+        }
+
+        HttpServletResponse response = m_jsp.getResponse();
+        response.setHeader("ETag", feed.getEtag());
+        String ifNoneMatch = m_jsp.getRequest().getHeader("If-None-Match");
+        if ((ifNoneMatch != null) && matchesEtag(ifNoneMatch, feed.getEtag())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(feed.getContentType());
+        out.write(feed.getContent());
+    }
+
+    /**
+     * Creates the iCalendar feed for the given occurrences.<p>
+     *
+     * @param occurences the occurrences, a list of {@link CmsCalendarEntry} objects
+     *
+     * @return the iCalendar feed
+     */
+    protected String createIcs(List occurences) {
+
+        DateFormat utcFormat = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+        utcFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        DateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+        // derived from the data, so that the same entries always result in the same feed
+        long dateStamp = (m_dateLastModified > 0) ? m_dateLastModified : m_start.getTimeInMillis();
+        String stamp = utcFormat.format(new Date(dateStamp));
+        String host = m_jsp.getRequest().getServerName();
+
+        StringBuffer result = new StringBuffer(512 + (occurences.size() * 512));
+        appendIcsLine(result, "BEGIN:VCALENDAR");
+        appendIcsLine(result, "VERSION:2.0");
+        appendIcsLine(result, "PRODID:-//Alkacon Software GmbH//OpenCms Calendar//EN");
+        appendIcsLine(result, "CALSCALE:GREGORIAN");
+        for (int i = 0; i < occurences.size(); i++) {
+            CmsCalendarEntry entry = (CmsCalendarEntry)occurences.get(i);
+            I_CmsCalendarEntryData data = entry.getEntryData();
+            CmsCalendarEntryDate date = entry.getEntryDate();
+            appendIcsLine(result, "BEGIN:VEVENT");
+            appendIcsLine(result, "UID:"
+                + Integer.toHexString(String.valueOf(data.getDetailUri()).hashCode())
+                + "-"
+                + date.getStartDate().getTimeInMillis()
+                + "@"
+                + host);
+            appendIcsLine(result, "DTSTAMP:" + stamp);
+            if (data.isShowTime()) {
+                appendIcsLine(result, "DTSTART:" + utcFormat.format(date.getStartDate().getTime()));
+                appendIcsLine(result, "DTEND:" + utcFormat.format(date.getEndDate().getTime()));
+            } else {
+                // all day event, the end date is exclusive
+                Calendar end = (Calendar)date.getEndDate().clone();
+                end.add(Calendar.DAY_OF_YEAR, 1);
+                appendIcsLine(result, "DTSTART;VALUE=DATE:" + dayFormat.format(date.getStartDate().getTime()));
+                appendIcsLine(result, "DTEND;VALUE=DATE:" + dayFormat.format(end.getTime()));
+            }
+            appendIcsLine(result, "SUMMARY:" + escapeIcsText(data.getTitle()));
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(data.getDescription())) {
+                appendIcsLine(result, "DESCRIPTION:" + escapeIcsText(data.getDescription()));
+            }
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(data.getType())) {
+                appendIcsLine(result, "CATEGORIES:" + escapeIcsText(data.getType()));
+            }
+            String link = getLink(data);
+            if (link != null) {
+                appendIcsLine(result, "URL:" + link);
+            }
+            appendIcsLine(result, "END:VEVENT");
+        }
+        appendIcsLine(result, "END:VCALENDAR");
+        return result.toString();
+    }
+
+    /**
+     * Creates the JSON feed for the given occurrences.<p>
+     *
+     * @param occurences the occurrences, a list of {@link CmsCalendarEntry} objects
+     *
+     * @return the JSON feed
+     */
+    protected String createJson(List occurences) {
+
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+        JSONArray result = new JSONArray();
+        try {
+            for (int i = 0; i < occurences.size(); i++) {
+                CmsCalendarEntry entry = (CmsCalendarEntry)occurences.get(i);
+                I_CmsCalendarEntryData data = entry.getEntryData();
+                CmsCalendarEntryDate date = entry.getEntryDate();
+                JSONObject occurence = new JSONObject();
+                occurence.put("title", data.getTitle());
+                occurence.put("description", data.getDescription());
+                occurence.put("type", data.getType());
+                occurence.put("start", df.format(date.getStartDate().getTime()));
+                occurence.put("end", df.format(date.getEndDate().getTime()));
+                occurence.put("allDay", !data.isShowTime());
+                occurence.put("serial", date.isSerialDate());
+                occurence.put("url", getLink(data));
+                result.put(occurence);
+            }
+        } catch (JSONException e) {
+            // only happens for invalid keys
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the absolute link to the detail page of the given entry.<p>
+     *
+     * @param data the entry data
+     *
+     * @return the absolute link, or <code>null</code> if the entry has no detail page
+     */
+    protected String getLink(I_CmsCalendarEntryData data) {
+
+        if (CmsStringUtil.isEmptyOrWhitespaceOnly(data.getDetailUri())) {
+            return null;
+        }
+        return OpenCms.getLinkManager().getServerLink(m_jsp.getCmsObject(), data.getDetailUri());
+    }
+
+    /**
+     * Appends a content line to the iCalendar feed, folding it if it is longer than allowed.<p>
+     *
+     * @param buf the buffer to append the line to
+     * @param line the content line
+     */
+    private void appendIcsLine(StringBuffer buf, String line) {
+
+        int octets = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            int len = (c < 0x80) ? 1 : ((c < 0x800) ? 2 : (Character.isHighSurrogate(c) ? 4 : 3));
+            if ((octets + len) > ICS_LINE_LENGTH) {
+                // continuation lines start with a space, which counts for the line length
+                buf.append(ICS_CRLF).append(' ');
+                octets = 1;
+            }
+            buf.append(c);
+            if (Character.isHighSurrogate(c) && ((i + 1) < line.length())) {
+                // never split a surrogate pair
+                buf.append(line.charAt(++i));
+            }
+            octets += len;
+        }
+        buf.append(ICS_CRLF);
+    }
+
+    /**
+     * Escapes the given text for an iCalendar text value.<p>
+     *
+     * @param text the text to escape
+     *
+     * @return the escaped text
+     */
+    private String escapeIcsText(String text) {
+
+        if (text == null) {
+            return "";
+        }
+        StringBuffer result = new StringBuffer(text.length() + 16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                case ';':
+                case ',':
+                    result.append('\\').append(c);
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    // line breaks are escaped with the following line feed
+                    break;
+                default:
+                    result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the value of the given integer request parameter, limited to the range from 1 to the given maximum.<p>
+     *
+     * @param name the name of the request parameter
+     * @param defaultValue the value to use if the parameter is missing or invalid
+     * @param maxValue the maximum value
+     *
+     * @return the value of the request parameter
+     */
+    private int getIntParameter(String name, int defaultValue, int maxValue) {
+
+        String value = m_jsp.getRequest().getParameter(name);
+        int result = defaultValue;
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(value)) {
+            try {
+                result = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(e.getLocalizedMessage(), e);
+                }
+            }
+        }
+        return Math.max(1, Math.min(result, maxValue));
+    }
+
+    /**
+     * Checks if the given <code>If-None-Match</code> header value matches the entity tag.<p>
+     *
+     * @param ifNoneMatch the value of the <code>If-None-Match</code> header
+     * @param etag the entity tag of the feed
+     *
+     * @return <code>true</code> if the header value matches
+     */
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+
+        String[] tags = CmsStringUtil.splitAsArray(ifNoneMatch, ',');
+        for (int i = 0; i < tags.length; i++) {
+            String tag = tags[i].trim();
+            if (tag.startsWith("W/")) {
+                // weak comparison is sufficient for GET requests
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
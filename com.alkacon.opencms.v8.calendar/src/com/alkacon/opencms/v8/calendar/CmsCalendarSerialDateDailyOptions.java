@@ -32,7 +32,6 @@
 
 package com.alkacon.opencms.v8.calendar;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -147,81 +146,6 @@ public class CmsCalendarSerialDateDailyOptions extends A_CmsCalendarSerialDateOp
         return m_everyWorkingDay;
     }
 
-    /**
-     * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
-     */
-    public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
-
-        List result = new ArrayList();
-        int matches = 0;
-
-        CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
-        Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
-        entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
-
-        // loop the view date ranges
-        for (int i = 0; i < calendarView.getDates().size(); i++) {
-            // get the current view date object
-            CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
-            // get the start and end times of the view
-            long viewStart = viewDate.getStartDate().getTimeInMillis();
-            long viewEnd = viewDate.getEndDate().getTimeInMillis();
-
-            // set the date for the current run
-            Calendar runDate = entryStartDayDate;
-            if ((getDailyInterval() == 1)
-                && ((entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_NEVER) || (entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_DATE))
-                && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
-                // skip to current view start date to optimize performance
-                runDate.setTimeInMillis(viewDate.getStartDay());
-            }
-
-            // occurences counter
-            int occurences = 0;
-
-            while (runDate.before(viewDate.getEndDate())) {
-
-                // check conditions to leave date series loop
-                if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
-                    break;
-                }
-                if (matches >= maxCount) {
-                    break;
-                }
-
-                // get the current week day
-                int runWeekDay = runDate.get(Calendar.DAY_OF_WEEK);
-                Integer runWeekDayInteger = new Integer(runWeekDay);
-                if (!isEveryWorkingDay() || (isEveryWorkingDay() && getWorkingDays().contains(runWeekDayInteger))) {
-                    // the current day contains a series entry
-                    occurences++;
-                    long entryStart = runDate.getTimeInMillis() + entryDate.getStartTime();
-                    // check if current entry is in view range
-                    if ((entryStart >= viewStart) && (entryStart <= viewEnd)) {
-                        // the entry is in the view time range, clone the entry 
-                        CmsCalendarEntry cloneEntry = (CmsCalendarEntry)entry.clone();
-                        cloneEntry.getEntryDate().setStartDay(runDate.getTimeInMillis());
-                        cloneEntry = checkChanges(cloneEntry);
-                        if (cloneEntry != null) {
-                            // add the cloned entry to the result list
-                            result.add(cloneEntry);
-                            matches += 1;
-                        }
-                    }
-                }
-
-                if (isEveryWorkingDay()) {
-                    // increase run date to next day
-                    runDate.add(Calendar.DAY_OF_YEAR, 1);
-                } else {
-                    // increase run date with day interval for next test
-                    runDate.add(Calendar.DAY_OF_YEAR, getDailyInterval());
-                }
-            }
-        }
-        return result;
-    }
-
     /**
      * Sets the daily interval for the calendar entry occurences.<p>
      *
@@ -256,4 +180,49 @@ public class CmsCalendarSerialDateDailyOptions extends A_CmsCalendarSerialDateOp
         m_workingDaysList = workingDays;
     }
 
-}
\ No newline at end of file
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#getOccurenceCount(java.util.Calendar, java.util.Calendar, int)
+     */
+    protected int getOccurenceCount(Calendar startDay, Calendar day, int maxCount) {
+
+        int days = getDaysBetween(startDay, day);
+        if (days <= 0) {
+            return 0;
+        }
+        int result;
+        if (isEveryWorkingDay()) {
+            // count the working days of the complete weeks and of the remaining days
+            int weeks = days / 7;
+            result = (weeks * getMatchingWeekDays(getWorkingDays(), Calendar.MONDAY, 7))
+                + getMatchingWeekDays(getWorkingDays(), startDay.get(Calendar.DAY_OF_WEEK), days % 7);
+        } else {
+            // every interval day starting with the start day is an occurence
+            result = ((days - 1) / getDailyInterval()) + 1;
+        }
+        return Math.min(result, maxCount);
+    }
+
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#moveToNextOccurence(java.util.Calendar, java.util.Calendar)
+     */
+    protected boolean moveToNextOccurence(Calendar startDay, Calendar runDate) {
+
+        if (isEveryWorkingDay()) {
+            // go forward to the next working day
+            for (int i = 0; i < 7; i++) {
+                if (getWorkingDays().contains(new Integer(runDate.get(Calendar.DAY_OF_WEEK)))) {
+                    return true;
+                }
+                runDate.add(Calendar.DAY_OF_YEAR, 1);
+            }
+            return false;
+        }
+        // go forward to the next day matching the interval
+        int offset = getDaysBetween(startDay, runDate) % getDailyInterval();
+        if (offset != 0) {
+            runDate.add(Calendar.DAY_OF_YEAR, getDailyInterval() - offset);
+        }
+        return true;
+    }
+
+}
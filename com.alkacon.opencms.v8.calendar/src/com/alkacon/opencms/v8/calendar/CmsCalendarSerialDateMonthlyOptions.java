@@ -31,10 +31,8 @@
 
 package com.alkacon.opencms.v8.calendar;
 
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -162,137 +160,6 @@ public class CmsCalendarSerialDateMonthlyOptions extends A_CmsCalendarSerialDate
         return m_useWeekDay;
     }
 
-    /**
-     * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
-     */
-    public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
-
-        List result = new ArrayList();
-        int matches = 0;
-
-        CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
-        Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
-        entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
-
-        // loop the view date ranges
-        for (int i = 0; i < calendarView.getDates().size(); i++) {
-            // get the current view date object
-            CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
-            // get the start and end times of the view
-            long viewStart = viewDate.getStartDate().getTimeInMillis();
-            long viewEnd = viewDate.getEndDate().getTimeInMillis();
-
-            // set the date for the current run
-            Calendar runDate = entryStartDayDate;
-            if ((getMonthlyInterval() == 1)
-                && ((entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_NEVER) || (entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_DATE))
-                && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
-                // skip to current view start date to optimize performance
-                runDate.setTimeInMillis(viewDate.getStartDay());
-            }
-
-            // occurences counter
-            int occurences = 0;
-
-            while (runDate.before(viewDate.getEndDate())) {
-
-                // check conditions to leave date series loop
-                if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
-                    break;
-                }
-                if (matches >= maxCount) {
-                    break;
-                }
-
-                boolean foundWeekDay = false;
-                // determine current day of the week and the number of the day in the current month
-                if (isUseWeekDay() && (runDate.get(Calendar.DAY_OF_WEEK) == getWeekDay())) {
-                    // now check which week day is currently shown...
-                    int number = runDate.get(Calendar.DAY_OF_MONTH) / 7;
-                    if ((runDate.get(Calendar.DAY_OF_MONTH) % 7) != 0) {
-                        number += 1;
-                    }
-                    if (number == getDayOfMonth()) {
-                        // we are on the matching week day of the month
-                        foundWeekDay = true;
-                    }
-                }
-
-                if ((!isUseWeekDay() && (runDate.get(Calendar.DAY_OF_MONTH) == getDayOfMonth())) || foundWeekDay) {
-                    // the current day contains a series entry
-                    occurences++;
-                    long entryStart = runDate.getTimeInMillis() + entryDate.getStartTime();
-                    // check if current entry is in view range
-                    if ((entryStart >= viewStart) && (entryStart <= viewEnd)) {
-                        // the entry is in the view time range, clone the entry 
-                        CmsCalendarEntry cloneEntry = (CmsCalendarEntry)entry.clone();
-                        cloneEntry.getEntryDate().setStartDay(runDate.getTimeInMillis());
-                        cloneEntry = checkChanges(cloneEntry);
-                        if (cloneEntry != null) {
-                            // add the cloned entry to the result list
-                            result.add(cloneEntry);
-                            matches += 1;
-                        }
-                    }
-                }
-
-                // increase run date with one month for next test depending on options
-                if (isUseWeekDay()) {
-                    // week day is specified, roll the run date accordingly
-                    if (!foundWeekDay) {
-                        // correct week day not found yet, roll to it
-                        while (runDate.get(Calendar.DAY_OF_WEEK) != getWeekDay()) {
-                            runDate.add(Calendar.DAY_OF_MONTH, 1);
-                        }
-                        // calculate the number of the week day in the current month
-                        int number = runDate.get(Calendar.DAY_OF_MONTH) / 7;
-                        if ((runDate.get(Calendar.DAY_OF_MONTH) % 7) != 0) {
-                            number += 1;
-                        }
-                        if (number > getDayOfMonth()) {
-                            // we are already past the specified date
-                            runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
-                            runDate.add(Calendar.MONTH, getMonthlyInterval() - 1);
-                        } else {
-                            // try to go to the specified week day
-                            int oldMonth = runDate.get(Calendar.MONTH);
-                            for (int k = 0; k < (getDayOfMonth() - number); k++) {
-                                runDate.add(Calendar.WEEK_OF_YEAR, 1);
-                                if (runDate.get(Calendar.MONTH) != oldMonth) {
-                                    // we have come to the next month, set day to the first day of the next month to check and leave loop
-                                    runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
-                                    runDate.add(Calendar.MONTH, getMonthlyInterval() - 1);
-                                    break;
-                                }
-                            }
-                        }
-                    } else {
-                        // found week day, go to the first day of the next month to check
-                        runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
-                        runDate.add(Calendar.MONTH, getMonthlyInterval());
-                    }
-                } else {
-                    // only the number of the day of the month is specified
-                    if (runDate.getActualMaximum(Calendar.DAY_OF_MONTH) < getDayOfMonth()) {
-                        runDate.add(Calendar.MONTH, getMonthlyInterval());
-                    } else {
-                        if (runDate.get(Calendar.DAY_OF_MONTH) < getDayOfMonth()) {
-                            // go forward to the specified day of the month
-                            runDate.add(Calendar.DAY_OF_MONTH, (getDayOfMonth() - runDate.get(Calendar.DAY_OF_MONTH)));
-                        } else {
-                            // we are exactly at the specified day or beyond it, skip months
-                            if (runDate.get(Calendar.DAY_OF_MONTH) > getDayOfMonth()) {
-                                runDate.set(Calendar.DAY_OF_MONTH, getDayOfMonth());
-                            }
-                            runDate.add(Calendar.MONTH, getMonthlyInterval());
-                        }
-                    }
-                }
-            }
-        }
-        return result;
-    }
-
     /**
      * Sets the day of month for the serial entry.<p>
      * 
@@ -333,4 +200,63 @@ public class CmsCalendarSerialDateMonthlyOptions extends A_CmsCalendarSerialDate
         m_weekDay = weekDay;
     }
 
-}
\ No newline at end of file
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#getOccurenceCount(java.util.Calendar, java.util.Calendar, int)
+     */
+    protected int getOccurenceCount(Calendar startDay, Calendar day, int maxCount) {
+
+        int maxDay = isUseWeekDay() ? 4 : 28;
+        if ((getDayOfMonth() < 1) || (getDayOfMonth() > maxDay)) {
+            // not every month contains the day, jump from occurence to occurence
+            return super.getOccurenceCount(startDay, day, maxCount);
+        }
+        if (!day.after(startDay)) {
+            return 0;
+        }
+        int months = ((day.get(Calendar.YEAR) - startDay.get(Calendar.YEAR)) * 12)
+            + (day.get(Calendar.MONTH) - startDay.get(Calendar.MONTH));
+        int weekDay = isUseWeekDay() ? getWeekDay() : -1;
+        // every month of the series contains an occurence
+        int result = (months / getMonthlyInterval()) + 1;
+        if (getMatchingDay(startDay, getDayOfMonth(), weekDay) < startDay.get(Calendar.DAY_OF_MONTH)) {
+            // the occurence of the first month is before the start day
+            result--;
+        }
+        if (((months % getMonthlyInterval()) == 0)
+            && (getMatchingDay(day, getDayOfMonth(), weekDay) >= day.get(Calendar.DAY_OF_MONTH))) {
+            // the occurence of the last month is not before the given day
+            result--;
+        }
+        return Math.min(result, maxCount);
+    }
+
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#moveToNextOccurence(java.util.Calendar, java.util.Calendar)
+     */
+    protected boolean moveToNextOccurence(Calendar startDay, Calendar runDate) {
+
+        int minDay = runDate.get(Calendar.DAY_OF_MONTH);
+        runDate.set(Calendar.DAY_OF_MONTH, 1);
+        int months = ((runDate.get(Calendar.YEAR) - startDay.get(Calendar.YEAR)) * 12)
+            + (runDate.get(Calendar.MONTH) - startDay.get(Calendar.MONTH));
+        int skippedMonths = months % getMonthlyInterval();
+        if (skippedMonths != 0) {
+            // go forward to the next month of the series
+            runDate.add(Calendar.MONTH, getMonthlyInterval() - skippedMonths);
+            minDay = 1;
+        }
+        int weekDay = isUseWeekDay() ? getWeekDay() : -1;
+        for (int i = 0; i < MAX_PERIODS; i++) {
+            int day = getMatchingDay(runDate, getDayOfMonth(), weekDay);
+            if (day >= minDay) {
+                runDate.set(Calendar.DAY_OF_MONTH, day);
+                return true;
+            }
+            // the month does not contain the day or it is already passed, check the next month of the series
+            runDate.add(Calendar.MONTH, getMonthlyInterval());
+            minDay = 1;
+        }
+        return false;
+    }
+
+}
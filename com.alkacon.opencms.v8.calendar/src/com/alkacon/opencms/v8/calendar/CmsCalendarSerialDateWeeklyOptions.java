@@ -34,7 +34,6 @@ package com.alkacon.opencms.v8.calendar;
 
 import org.opencms.util.CmsStringUtil;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -137,83 +136,6 @@ public class CmsCalendarSerialDateWeeklyOptions extends A_CmsCalendarSerialDateO
         return m_weeklyInterval;
     }
 
-    /**
-     * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
-     */
-    public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
-
-        List result = new ArrayList();
-        int matches = 0;
-
-        CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
-        Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
-        entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
-
-        // loop the view date ranges
-        for (int i = 0; i < calendarView.getDates().size(); i++) {
-            // get the current view date object
-            CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
-            // get the start and end times of the view
-            long viewStart = viewDate.getStartDate().getTimeInMillis();
-            long viewEnd = viewDate.getEndDate().getTimeInMillis();
-
-            // set the date for the current run
-            Calendar runDate = entryStartDayDate;
-            if ((getWeeklyInterval() == 1)
-                && ((entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_NEVER) || (entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_DATE))
-                && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
-                // skip to current view start date to optimize performance
-                runDate.setTimeInMillis(viewDate.getStartDay());
-            }
-
-            // occurences counter
-            int occurences = 0;
-            int oldWeekNumber = runDate.get(Calendar.WEEK_OF_YEAR);
-
-            while (runDate.before(viewDate.getEndDate())) {
-
-                // check conditions to leave date series loop
-                if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
-                    break;
-                }
-                if (matches >= maxCount) {
-                    break;
-                }
-
-                // get the current week day
-                int runWeekDay = runDate.get(Calendar.DAY_OF_WEEK);
-                Integer runWeekDayInteger = new Integer(runWeekDay);
-                if (getWeekDays().contains(runWeekDayInteger)) {
-                    // the current day contains a series entry
-                    occurences++;
-                    long entryStart = runDate.getTimeInMillis() + entryDate.getStartTime();
-                    // check if current entry is in view range
-                    if ((entryStart >= viewStart) && (entryStart <= viewEnd)) {
-                        // the entry is in the view time range, clone the entry 
-                        CmsCalendarEntry cloneEntry = (CmsCalendarEntry)entry.clone();
-                        cloneEntry.getEntryDate().setStartDay(runDate.getTimeInMillis());
-                        cloneEntry = checkChanges(cloneEntry);
-                        if (cloneEntry != null) {
-                            // add the cloned entry to the result list
-                            result.add(cloneEntry);
-                            matches += 1;
-                        }
-                    }
-                }
-
-                // increase run date with one week day for next test
-                runDate.add(Calendar.DAY_OF_YEAR, 1);
-                // skip weeks according to setting if necessary (when the week of year has changed)
-                if ((getWeeklyInterval() > 1) && (runDate.get(Calendar.WEEK_OF_YEAR) > oldWeekNumber)) {
-                    // increase week depending on weekly interval
-                    runDate.add(Calendar.WEEK_OF_YEAR, getWeeklyInterval() - 1);
-                    oldWeekNumber = runDate.get(Calendar.WEEK_OF_YEAR);
-                }
-            }
-        }
-        return result;
-    }
-
     /**
      * Sets the week days on which the calendar entry occurs.<p>
      *
@@ -236,4 +158,68 @@ public class CmsCalendarSerialDateWeeklyOptions extends A_CmsCalendarSerialDateO
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#getOccurenceCount(java.util.Calendar, java.util.Calendar, int)
+     */
+    protected int getOccurenceCount(Calendar startDay, Calendar day, int maxCount) {
+
+        if (getDaysBetween(startDay, day) <= 0) {
+            return 0;
+        }
+        Calendar weekStart = getWeekStart(startDay);
+        int firstWeekDay = weekStart.get(Calendar.DAY_OF_WEEK);
+        int days = getDaysBetween(weekStart, day);
+        int weeks = days / 7;
+        // count the week days of all complete weeks of the series
+        int result = ((weeks + getWeeklyInterval() - 1) / getWeeklyInterval())
+            * getMatchingWeekDays(getWeekDays(), firstWeekDay, 7);
+        if ((weeks % getWeeklyInterval()) == 0) {
+            // add the week days of the incomplete last week
+            result += getMatchingWeekDays(getWeekDays(), firstWeekDay, days % 7);
+        }
+        // remove the week days of the first week before the start day
+        result -= getMatchingWeekDays(getWeekDays(), firstWeekDay, getDaysBetween(weekStart, startDay));
+        return Math.min(result, maxCount);
+    }
+
+    /**
+     * Returns the first day of the week containing the given day.<p>
+     * 
+     * @param day the day to get the week start for
+     * @return the first day of the week containing the given day
+     */
+    protected Calendar getWeekStart(Calendar day) {
+
+        Calendar result = (Calendar)day.clone();
+        int offset = (day.get(Calendar.DAY_OF_WEEK) - day.getFirstDayOfWeek() + 7) % 7;
+        result.add(Calendar.DAY_OF_YEAR, -offset);
+        return result;
+    }
+
+    /**
+     * @see com.alkacon.opencms.v8.calendar.A_CmsCalendarSerialDateOptions#moveToNextOccurence(java.util.Calendar, java.util.Calendar)
+     */
+    protected boolean moveToNextOccurence(Calendar startDay, Calendar runDate) {
+
+        Calendar weekStart = getWeekStart(startDay);
+        // at most the current, a skipped and a complete week have to be checked
+        for (int i = 0; i < 3; i++) {
+            int days = getDaysBetween(weekStart, runDate);
+            int skippedWeeks = (days / 7) % getWeeklyInterval();
+            if (skippedWeeks != 0) {
+                // go forward to the first day of the next week of the series
+                runDate.add(Calendar.DAY_OF_YEAR, ((getWeeklyInterval() - skippedWeeks) * 7) - (days % 7));
+                days = 0;
+            }
+            // check the remaining days of the current week
+            for (int k = days % 7; k < 7; k++) {
+                if (getWeekDays().contains(new Integer(runDate.get(Calendar.DAY_OF_WEEK)))) {
+                    return true;
+                }
+                runDate.add(Calendar.DAY_OF_YEAR, 1);
+            }
+        }
+        return false;
+    }
+
+}
@@ -69,6 +69,7 @@ public final class AllTests {
         //$JUnit-BEGIN$
         suite.addTest(TestCalendarDailyView.suite());
         suite.addTest(TestCalendarDisplay.suite());
+        suite.addTest(TestCalendarSerialDateMatching.suite());
         suite.addTest(TestCalendarSerialDateProperties.suite());
         //$JUnit-END$
         return suite;
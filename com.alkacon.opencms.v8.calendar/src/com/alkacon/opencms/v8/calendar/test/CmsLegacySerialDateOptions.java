@@ -0,0 +1,645 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.calendar/src/com/alkacon/opencms/v8/calendar/test/CmsLegacySerialDateOptions.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This library is part of OpenCms -
+ * the Open Source Content Management System
+ *
+ * Copyright (c) 2002 - 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.opencms.v8.calendar.test;
+
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntry;
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryDate;
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryDateSerial;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateDailyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateMonthlyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateWeeklyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateYearlyOptions;
+import com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions;
+import com.alkacon.opencms.v8.calendar.I_CmsCalendarView;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Provides the serial date options with the previous matching algorithm that iterates the series step by step.<p>
+ *
+ * Used to check that the matching that jumps directly to the occurences returns the same results
+ * as the previous implementation wherever the previous implementation was correct.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsLegacySerialDateOptions {
+
+    /**
+     * Daily serial date options with the previous matching algorithm.<p>
+     */
+    static class CmsLegacyDailyOptions extends CmsCalendarSerialDateDailyOptions {
+
+        /**
+         * Constructor with the values of the given options.<p>
+         *
+         * @param options the daily options to copy
+         */
+        CmsLegacyDailyOptions(CmsCalendarSerialDateDailyOptions options) {
+
+            super(options.isEveryWorkingDay(), options.getDailyInterval());
+        }
+
+        /**
+         * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
+         */
+        public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
+
+            List result = new ArrayList();
+            int matches = 0;
+
+            CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+            Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
+            entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
+
+            // loop the view date ranges
+            for (int i = 0; i < calendarView.getDates().size(); i++) {
+                // get the current view date object
+                CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
+                // get the start and end times of the view
+                long viewStart = viewDate.getStartDate().getTimeInMillis();
+                long viewEnd = viewDate.getEndDate().getTimeInMillis();
+
+                // set the date for the current run
+                Calendar runDate = entryStartDayDate;
+                if ((getDailyInterval() == 1)
+                    && isSkippable(entryDate)
+                    && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
+                    // skip to current view start date to optimize performance
+                    runDate.setTimeInMillis(viewDate.getStartDay());
+                }
+
+                // occurences counter
+                int occurences = 0;
+
+                while (runDate.before(viewDate.getEndDate())) {
+
+                    // check conditions to leave date series loop
+                    if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
+                        break;
+                    }
+                    if (matches >= maxCount) {
+                        break;
+                    }
+
+                    // get the current week day
+                    Integer runWeekDayInteger = new Integer(runDate.get(Calendar.DAY_OF_WEEK));
+                    if (!isEveryWorkingDay() || getWorkingDays().contains(runWeekDayInteger)) {
+                        // the current day contains a series entry
+                        occurences++;
+                        matches += addMatch(entry, runDate, viewStart, viewEnd, result);
+                    }
+
+                    if (isEveryWorkingDay()) {
+                        // increase run date to next day
+                        runDate.add(Calendar.DAY_OF_YEAR, 1);
+                    } else {
+                        // increase run date with day interval for next test
+                        runDate.add(Calendar.DAY_OF_YEAR, getDailyInterval());
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the entry on the given run date to the result if it is in the view range.<p>
+         *
+         * @param entry the serial entry
+         * @param runDate the current run date
+         * @param viewStart the start time of the view
+         * @param viewEnd the end time of the view
+         * @param result the result to add the entry to
+         * @return 1 if an entry was added, otherwise 0
+         */
+        private int addMatch(CmsCalendarEntry entry, Calendar runDate, long viewStart, long viewEnd, List result) {
+
+            CmsCalendarEntry cloneEntry = createMatch(entry, runDate, viewStart, viewEnd);
+            if (cloneEntry != null) {
+                cloneEntry = checkChanges(cloneEntry);
+            }
+            return CmsLegacySerialDateOptions.addMatch(cloneEntry, result);
+        }
+    }
+
+    /**
+     * Monthly serial date options with the previous matching algorithm.<p>
+     */
+    static class CmsLegacyMonthlyOptions extends CmsCalendarSerialDateMonthlyOptions {
+
+        /**
+         * Constructor with the values of the given options.<p>
+         *
+         * @param options the monthly options to copy
+         */
+        CmsLegacyMonthlyOptions(CmsCalendarSerialDateMonthlyOptions options) {
+
+            super(options.getDayOfMonth(), options.getWeekDay(), options.getMonthlyInterval());
+        }
+
+        /**
+         * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
+         */
+        public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
+
+            List result = new ArrayList();
+            int matches = 0;
+
+            CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+            Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
+            entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
+
+            // loop the view date ranges
+            for (int i = 0; i < calendarView.getDates().size(); i++) {
+                // get the current view date object
+                CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
+                // get the start and end times of the view
+                long viewStart = viewDate.getStartDate().getTimeInMillis();
+                long viewEnd = viewDate.getEndDate().getTimeInMillis();
+
+                // set the date for the current run
+                Calendar runDate = entryStartDayDate;
+                if ((getMonthlyInterval() == 1)
+                    && isSkippable(entryDate)
+                    && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
+                    // skip to current view start date to optimize performance
+                    runDate.setTimeInMillis(viewDate.getStartDay());
+                }
+
+                // occurences counter
+                int occurences = 0;
+
+                while (runDate.before(viewDate.getEndDate())) {
+
+                    // check conditions to leave date series loop
+                    if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
+                        break;
+                    }
+                    if (matches >= maxCount) {
+                        break;
+                    }
+
+                    // determine current day of the week and the number of the day in the current month
+                    boolean foundWeekDay = isUseWeekDay()
+                        && (runDate.get(Calendar.DAY_OF_WEEK) == getWeekDay())
+                        && (getWeekDayNumber(runDate) == getDayOfMonth());
+
+                    if ((!isUseWeekDay() && (runDate.get(Calendar.DAY_OF_MONTH) == getDayOfMonth())) || foundWeekDay) {
+                        // the current day contains a series entry
+                        occurences++;
+                        matches += addMatch(entry, runDate, viewStart, viewEnd, result);
+                    }
+
+                    // increase run date with one month for next test depending on options
+                    if (isUseWeekDay()) {
+                        // week day is specified, roll the run date accordingly
+                        if (!foundWeekDay) {
+                            // correct week day not found yet, roll to it
+                            while (runDate.get(Calendar.DAY_OF_WEEK) != getWeekDay()) {
+                                runDate.add(Calendar.DAY_OF_MONTH, 1);
+                            }
+                            // calculate the number of the week day in the current month
+                            int number = getWeekDayNumber(runDate);
+                            if (number > getDayOfMonth()) {
+                                // we are already past the specified date
+                                runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                                runDate.add(Calendar.MONTH, getMonthlyInterval() - 1);
+                            } else {
+                                // try to go to the specified week day
+                                int oldMonth = runDate.get(Calendar.MONTH);
+                                for (int k = 0; k < (getDayOfMonth() - number); k++) {
+                                    runDate.add(Calendar.WEEK_OF_YEAR, 1);
+                                    if (runDate.get(Calendar.MONTH) != oldMonth) {
+                                        // we have come to the next month, set day to the first day of the month
+                                        runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                                        runDate.add(Calendar.MONTH, getMonthlyInterval() - 1);
+                                        break;
+                                    }
+                                }
+                            }
+                        } else {
+                            // found week day, go to the first day of the next month to check
+                            runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                            runDate.add(Calendar.MONTH, getMonthlyInterval());
+                        }
+                    } else {
+                        // only the number of the day of the month is specified
+                        if (runDate.getActualMaximum(Calendar.DAY_OF_MONTH) < getDayOfMonth()) {
+                            runDate.add(Calendar.MONTH, getMonthlyInterval());
+                        } else if (runDate.get(Calendar.DAY_OF_MONTH) < getDayOfMonth()) {
+                            // go forward to the specified day of the month
+                            runDate.add(Calendar.DAY_OF_MONTH, (getDayOfMonth() - runDate.get(Calendar.DAY_OF_MONTH)));
+                        } else {
+                            // we are exactly at the specified day or beyond it, skip months
+                            if (runDate.get(Calendar.DAY_OF_MONTH) > getDayOfMonth()) {
+                                runDate.set(Calendar.DAY_OF_MONTH, getDayOfMonth());
+                            }
+                            runDate.add(Calendar.MONTH, getMonthlyInterval());
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the entry on the given run date to the result if it is in the view range.<p>
+         *
+         * @param entry the serial entry
+         * @param runDate the current run date
+         * @param viewStart the start time of the view
+         * @param viewEnd the end time of the view
+         * @param result the result to add the entry to
+         * @return 1 if an entry was added, otherwise 0
+         */
+        private int addMatch(CmsCalendarEntry entry, Calendar runDate, long viewStart, long viewEnd, List result) {
+
+            CmsCalendarEntry cloneEntry = createMatch(entry, runDate, viewStart, viewEnd);
+            if (cloneEntry != null) {
+                cloneEntry = checkChanges(cloneEntry);
+            }
+            return CmsLegacySerialDateOptions.addMatch(cloneEntry, result);
+        }
+    }
+
+    /**
+     * Weekly serial date options with the previous matching algorithm.<p>
+     */
+    static class CmsLegacyWeeklyOptions extends CmsCalendarSerialDateWeeklyOptions {
+
+        /**
+         * Constructor with the values of the given options.<p>
+         *
+         * @param options the weekly options to copy
+         */
+        CmsLegacyWeeklyOptions(CmsCalendarSerialDateWeeklyOptions options) {
+
+            super(options.getWeekDays(), options.getWeeklyInterval());
+        }
+
+        /**
+         * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
+         */
+        public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
+
+            List result = new ArrayList();
+            int matches = 0;
+
+            CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+            Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
+            entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
+
+            // loop the view date ranges
+            for (int i = 0; i < calendarView.getDates().size(); i++) {
+                // get the current view date object
+                CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
+                // get the start and end times of the view
+                long viewStart = viewDate.getStartDate().getTimeInMillis();
+                long viewEnd = viewDate.getEndDate().getTimeInMillis();
+
+                // set the date for the current run
+                Calendar runDate = entryStartDayDate;
+                if ((getWeeklyInterval() == 1)
+                    && isSkippable(entryDate)
+                    && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
+                    // skip to current view start date to optimize performance
+                    runDate.setTimeInMillis(viewDate.getStartDay());
+                }
+
+                // occurences counter
+                int occurences = 0;
+                int oldWeekNumber = runDate.get(Calendar.WEEK_OF_YEAR);
+
+                while (runDate.before(viewDate.getEndDate())) {
+
+                    // check conditions to leave date series loop
+                    if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
+                        break;
+                    }
+                    if (matches >= maxCount) {
+                        break;
+                    }
+
+                    // get the current week day
+                    Integer runWeekDayInteger = new Integer(runDate.get(Calendar.DAY_OF_WEEK));
+                    if (getWeekDays().contains(runWeekDayInteger)) {
+                        // the current day contains a series entry
+                        occurences++;
+                        matches += addMatch(entry, runDate, viewStart, viewEnd, result);
+                    }
+
+                    // increase run date with one week day for next test
+                    runDate.add(Calendar.DAY_OF_YEAR, 1);
+                    // skip weeks according to setting if necessary (when the week of year has changed)
+                    if ((getWeeklyInterval() > 1) && (runDate.get(Calendar.WEEK_OF_YEAR) > oldWeekNumber)) {
+                        // increase week depending on weekly interval
+                        runDate.add(Calendar.WEEK_OF_YEAR, getWeeklyInterval() - 1);
+                        oldWeekNumber = runDate.get(Calendar.WEEK_OF_YEAR);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the entry on the given run date to the result if it is in the view range.<p>
+         *
+         * @param entry the serial entry
+         * @param runDate the current run date
+         * @param viewStart the start time of the view
+         * @param viewEnd the end time of the view
+         * @param result the result to add the entry to
+         * @return 1 if an entry was added, otherwise 0
+         */
+        private int addMatch(CmsCalendarEntry entry, Calendar runDate, long viewStart, long viewEnd, List result) {
+
+            CmsCalendarEntry cloneEntry = createMatch(entry, runDate, viewStart, viewEnd);
+            if (cloneEntry != null) {
+                cloneEntry = checkChanges(cloneEntry);
+            }
+            return CmsLegacySerialDateOptions.addMatch(cloneEntry, result);
+        }
+    }
+
+    /**
+     * Yearly serial date options with the previous matching algorithm.<p>
+     */
+    static class CmsLegacyYearlyOptions extends CmsCalendarSerialDateYearlyOptions {
+
+        /**
+         * Constructor with the values of the given options.<p>
+         *
+         * @param options the yearly options to copy
+         */
+        CmsLegacyYearlyOptions(CmsCalendarSerialDateYearlyOptions options) {
+
+            super(options.getDayOfMonth(), options.getWeekDay(), options.getMonth());
+        }
+
+        /**
+         * @see com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions#matchCalendarView(com.alkacon.opencms.v8.calendar.CmsCalendarEntry, com.alkacon.opencms.v8.calendar.I_CmsCalendarView, int)
+         */
+        public List matchCalendarView(CmsCalendarEntry entry, I_CmsCalendarView calendarView, int maxCount) {
+
+            List result = new ArrayList();
+            int matches = 0;
+
+            CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+            Calendar entryStartDayDate = (Calendar)entry.getEntryDate().getStartDate().clone();
+            entryStartDayDate.setTimeInMillis(entryDate.getStartDay());
+
+            // loop the view date ranges
+            for (int i = 0; i < calendarView.getDates().size(); i++) {
+                // get the current view date object
+                CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)calendarView.getDates().get(i);
+                // get the start and end times of the view
+                long viewStart = viewDate.getStartDate().getTimeInMillis();
+                long viewEnd = viewDate.getEndDate().getTimeInMillis();
+
+                // set the date for the current run
+                Calendar runDate = entryStartDayDate;
+                if (isSkippable(entryDate) && (entryStartDayDate.getTimeInMillis() < viewDate.getStartDay())) {
+                    // skip to current view start date to optimize performance
+                    runDate.setTimeInMillis(viewDate.getStartDay());
+                }
+
+                // occurences counter
+                int occurences = 0;
+
+                while (runDate.before(viewDate.getEndDate())) {
+
+                    // check conditions to leave date series loop
+                    if (checkLeaveLoop(entryDate, runDate, viewDate, occurences)) {
+                        break;
+                    }
+                    if (matches >= maxCount) {
+                        break;
+                    }
+
+                    // determine current day of the week and the number of the day in the current month
+                    boolean foundWeekDay = isUseWeekDay()
+                        && (runDate.get(Calendar.MONTH) == getMonth())
+                        && (runDate.get(Calendar.DAY_OF_WEEK) == getWeekDay())
+                        && (getWeekDayNumber(runDate) == getDayOfMonth());
+
+                    if ((!isUseWeekDay()
+                        && (runDate.get(Calendar.DAY_OF_MONTH) == getDayOfMonth())
+                        && (runDate.get(Calendar.MONTH) == getMonth()))
+                        || foundWeekDay) {
+                        // the current day contains a series entry
+                        occurences++;
+                        matches += addMatch(entry, runDate, viewStart, viewEnd, result);
+                    }
+
+                    // increase run date with one year for next test depending on options
+                    if (isUseWeekDay()) {
+                        // week day is specified, roll the run date accordingly
+                        if (!foundWeekDay) {
+                            // correct month is not found yet
+                            if (runDate.get(Calendar.MONTH) < getMonth()) {
+                                runDate.set(Calendar.MONTH, getMonth());
+                                runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                            } else if (runDate.get(Calendar.MONTH) > getMonth()) {
+                                runDate.set(Calendar.MONTH, getMonth());
+                                runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                                runDate.add(Calendar.YEAR, 1);
+                            }
+                            // correct week day not found yet, roll to it
+                            while (runDate.get(Calendar.DAY_OF_WEEK) != getWeekDay()) {
+                                runDate.add(Calendar.DAY_OF_MONTH, 1);
+                            }
+                            // calculate the number of the week day in the current month
+                            int number = getWeekDayNumber(runDate);
+                            if (number > getDayOfMonth()) {
+                                // we are already past the specified date
+                                runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                                runDate.add(Calendar.YEAR, 1);
+                            } else {
+                                // try to go to the specified week day
+                                int oldMonth = runDate.get(Calendar.MONTH);
+                                for (int k = 0; k < (getDayOfMonth() - number); k++) {
+                                    runDate.add(Calendar.WEEK_OF_YEAR, 1);
+                                    if (runDate.get(Calendar.MONTH) != oldMonth) {
+                                        // we have come to the next month, go to the first day of the month next year
+                                        runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                                        runDate.add(Calendar.MONTH, -1);
+                                        runDate.add(Calendar.YEAR, 1);
+                                        break;
+                                    }
+                                }
+                            }
+                        } else {
+                            // found week day, set month day to first day of the month and go to the next year
+                            runDate.add(Calendar.DAY_OF_MONTH, -(runDate.get(Calendar.DAY_OF_MONTH) - 1));
+                            runDate.add(Calendar.YEAR, 1);
+                        }
+                    } else {
+                        // only the number of the day of the month is specified
+                        if (runDate.get(Calendar.MONTH) < getMonth()) {
+                            // we are before the month, go forward to it and set the correct day
+                            runDate.add(Calendar.MONTH, getMonth() - runDate.get(Calendar.MONTH));
+                        } else {
+                            // we are at specified month or beyond it, go to next year
+                            runDate.add(Calendar.YEAR, 1);
+                            runDate.set(Calendar.MONTH, getMonth());
+                        }
+                        if (runDate.get(Calendar.DAY_OF_MONTH) != getDayOfMonth()) {
+                            runDate.set(Calendar.DAY_OF_MONTH, getDayOfMonth());
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Adds the entry on the given run date to the result if it is in the view range.<p>
+         *
+         * @param entry the serial entry
+         * @param runDate the current run date
+         * @param viewStart the start time of the view
+         * @param viewEnd the end time of the view
+         * @param result the result to add the entry to
+         * @return 1 if an entry was added, otherwise 0
+         */
+        private int addMatch(CmsCalendarEntry entry, Calendar runDate, long viewStart, long viewEnd, List result) {
+
+            CmsCalendarEntry cloneEntry = createMatch(entry, runDate, viewStart, viewEnd);
+            if (cloneEntry != null) {
+                cloneEntry = checkChanges(cloneEntry);
+            }
+            return CmsLegacySerialDateOptions.addMatch(cloneEntry, result);
+        }
+    }
+
+    /**
+     * Hides the public constructor.<p>
+     */
+    private CmsLegacySerialDateOptions() {
+
+        // noop
+    }
+
+    /**
+     * Returns serial date options with the previous matching algorithm and the values of the given options.<p>
+     *
+     * @param options the serial date options to copy
+     * @return serial date options with the previous matching algorithm
+     */
+    public static I_CmsCalendarSerialDateOptions createLegacyOptions(I_CmsCalendarSerialDateOptions options) {
+
+        I_CmsCalendarSerialDateOptions result;
+        switch (options.getSerialType()) {
+            case I_CmsCalendarSerialDateOptions.TYPE_DAILY:
+                result = new CmsLegacyDailyOptions((CmsCalendarSerialDateDailyOptions)options);
+                break;
+            case I_CmsCalendarSerialDateOptions.TYPE_WEEKLY:
+                result = new CmsLegacyWeeklyOptions((CmsCalendarSerialDateWeeklyOptions)options);
+                break;
+            case I_CmsCalendarSerialDateOptions.TYPE_MONTHLY:
+                result = new CmsLegacyMonthlyOptions((CmsCalendarSerialDateMonthlyOptions)options);
+                break;
+            default:
+                result = new CmsLegacyYearlyOptions((CmsCalendarSerialDateYearlyOptions)options);
+                break;
+        }
+        result.setSerialDateChanges(options.getSerialDateChanges());
+        result.setSerialDateInterruptions(options.getSerialDateInterruptions());
+        return result;
+    }
+
+    /**
+     * Adds the given matching entry to the result.<p>
+     *
+     * @param cloneEntry the matching entry, may be <code>null</code>
+     * @param result the result to add the entry to
+     * @return 1 if an entry was added, otherwise 0
+     */
+    static int addMatch(CmsCalendarEntry cloneEntry, List result) {
+
+        if (cloneEntry == null) {
+            return 0;
+        }
+        result.add(cloneEntry);
+        return 1;
+    }
+
+    /**
+     * Returns a clone of the entry on the given run date if the entry starts in the view range.<p>
+     *
+     * @param entry the serial entry
+     * @param runDate the current run date
+     * @param viewStart the start time of the view
+     * @param viewEnd the end time of the view
+     * @return a clone of the entry on the given run date, or <code>null</code> if it is not in the view range
+     */
+    static CmsCalendarEntry createMatch(CmsCalendarEntry entry, Calendar runDate, long viewStart, long viewEnd) {
+
+        long entryStart = runDate.getTimeInMillis() + ((CmsCalendarEntryDateSerial)entry.getEntryDate()).getStartTime();
+        // check if current entry is in view range
+        if ((entryStart < viewStart) || (entryStart > viewEnd)) {
+            return null;
+        }
+        // the entry is in the view time range, clone the entry
+        CmsCalendarEntry cloneEntry = (CmsCalendarEntry)entry.clone();
+        cloneEntry.getEntryDate().setStartDay(runDate.getTimeInMillis());
+        return cloneEntry;
+    }
+
+    /**
+     * Returns the number of the week day of the given day in its month, e.g. 2 for the second Monday.<p>
+     *
+     * @param day the day
+     * @return the number of the week day of the given day in its month
+     */
+    static int getWeekDayNumber(Calendar day) {
+
+        return ((day.get(Calendar.DAY_OF_MONTH) - 1) / 7) + 1;
+    }
+
+    /**
+     * Checks if the previous algorithm skipped the series directly to the view start for the given serial end type.<p>
+     *
+     * @param entryDate the serial entry date
+     * @return true if the series may be skipped to the view start
+     */
+    static boolean isSkippable(CmsCalendarEntryDateSerial entryDate) {
+
+        return (entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_NEVER)
+            || (entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_DATE);
+    }
+}
@@ -50,6 +50,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -94,6 +95,7 @@ public class TestCalendarDailyView extends OpenCmsTestCase {
         suite.addTest(new TestCalendarDailyView("testDailyViewMonthlySeries"));
         suite.addTest(new TestCalendarDailyView("testDailyViewMonthlySeriesExtended"));
         suite.addTest(new TestCalendarDailyView("testDailyViewYearlySeries"));
+        suite.addTest(new TestCalendarDailyView("testMonthlyViewManyEntries"));
 
         return suite;
     }
@@ -1130,4 +1132,119 @@ public class TestCalendarDailyView extends OpenCmsTestCase {
         assertEquals(9, result.size());
 
     }
+
+    /**
+     * Tests a view on many entries, some of them serial, against a scan of all entries.<p>
+     * 
+     * @throws Exception if something goes wrong
+     */
+    public void testMonthlyViewManyEntries() throws Exception {
+
+        Random random = new Random(4711);
+
+        // create a test calendar with 2000 entries in 2010, every 100th entry is a weekly series
+        CmsCalendar testCal = new CmsCalendar();
+        for (int i = 0; i < 2000; i++) {
+            Calendar start = new GregorianCalendar(2010, random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), 0);
+            Calendar end = (Calendar)start.clone();
+            end.add(Calendar.HOUR_OF_DAY, 1);
+            CmsCalendarEntryData data = new CmsCalendarEntryData();
+            data.setTitle("Test entry " + i);
+            CmsCalendarEntryDate date;
+            if ((i % 100) == 0) {
+                CmsCalendarEntryDateSerial serialDate = new CmsCalendarEntryDateSerial(start, end);
+                serialDate.setSerialEndType(I_CmsCalendarSerialDateOptions.END_TYPE_NEVER);
+                serialDate.setSerialOptions(new CmsCalendarSerialDateWeeklyOptions(
+                    Arrays.asList(new Integer[] {new Integer(start.get(Calendar.DAY_OF_WEEK))}),
+                    1));
+                date = serialDate;
+            } else {
+                date = new CmsCalendarEntryDate(start, end);
+            }
+            testCal.addEntry(new CmsCalendarEntry(data, date));
+        }
+
+        for (int month = 0; month < 12; month++) {
+            // create the monthly view with an overlapping second view date
+            List viewDates = new ArrayList();
+            viewDates.add(new CmsCalendarEntryDate(new GregorianCalendar(2010, month, 1, 0, 0, 0), new GregorianCalendar(
+                2010,
+                month,
+                28,
+                23,
+                59,
+                59)));
+            viewDates.add(new CmsCalendarEntryDate(new GregorianCalendar(2010, month, 20, 0, 0, 0), new GregorianCalendar(
+                2010,
+                month,
+                20,
+                23,
+                59,
+                59)));
+            CmsCalendarViewSimple view = new CmsCalendarViewSimple(viewDates);
+
+            // scan all entries
+            List expected = new ArrayList();
+            for (int i = 0; i < testCal.getEntries().size(); i++) {
+                expected.addAll(((CmsCalendarEntry)testCal.getEntries().get(i)).matchCalendarView(view));
+            }
+            view.sort(expected);
+
+            List result = testCal.getEntries(view);
+            assertEquals(expected.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                CmsCalendarEntry expectedEntry = (CmsCalendarEntry)expected.get(i);
+                CmsCalendarEntry resultEntry = (CmsCalendarEntry)result.get(i);
+                assertEquals(expectedEntry.getEntryData().getTitle(), resultEntry.getEntryData().getTitle());
+                assertEquals(
+                    expectedEntry.getEntryDate().getStartDate().getTimeInMillis(),
+                    resultEntry.getEntryDate().getStartDate().getTimeInMillis());
+            }
+        }
+
+        // entries added later must be found as well
+        CmsCalendarEntryData data = new CmsCalendarEntryData();
+        data.setTitle("Late entry");
+        testCal.addEntry(new CmsCalendarEntry(data, new CmsCalendarEntryDate(new GregorianCalendar(
+            2011,
+            0,
+            1,
+            10,
+            0), new GregorianCalendar(2011, 0, 1, 11, 0))));
+        List viewDates = new ArrayList();
+        viewDates.add(new CmsCalendarEntryDate(new GregorianCalendar(2011, 0, 1, 0, 0, 0), new GregorianCalendar(
+            2011,
+            0,
+            1,
+            23,
+            59,
+            59)));
+        List result = testCal.getEntries(new CmsCalendarViewSimple(viewDates));
+        // the late entry has to be part of the result
+        boolean found = false;
+        for (int i = 0; i < result.size(); i++) {
+            if ("Late entry".equals(((CmsCalendarEntry)result.get(i)).getEntryData().getTitle())) {
+                found = true;
+            }
+        }
+        assertTrue(found);
+
+        // removing an entry from the list of entries must reset the index, even if an entry is added afterwards
+        CmsCalendarEntry removed = (CmsCalendarEntry)testCal.getEntries().remove(1);
+        testCal.addEntry(new CmsCalendarEntry(data, new CmsCalendarEntryDate(new GregorianCalendar(
+            2011,
+            0,
+            2,
+            10,
+            0), new GregorianCalendar(2011, 0, 2, 11, 0))));
+        viewDates = new ArrayList();
+        viewDates.add(new CmsCalendarEntryDate(
+            removed.getEntryDate().getStartDate(),
+            removed.getEntryDate().getEndDate()));
+        result = testCal.getEntries(new CmsCalendarViewSimple(viewDates));
+        for (int i = 0; i < result.size(); i++) {
+            assertFalse(removed.getEntryData().getTitle().equals(
+                ((CmsCalendarEntry)result.get(i)).getEntryData().getTitle()));
+        }
+    }
 }
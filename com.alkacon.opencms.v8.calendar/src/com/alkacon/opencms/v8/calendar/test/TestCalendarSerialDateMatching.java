@@ -0,0 +1,423 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.calendar/src/com/alkacon/opencms/v8/calendar/test/TestCalendarSerialDateMatching.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This library is part of OpenCms -
+ * the Open Source Content Management System
+ *
+ * Copyright (c) 2002 - 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.opencms.v8.calendar.test;
+
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntry;
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryData;
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryDate;
+import com.alkacon.opencms.v8.calendar.CmsCalendarEntryDateSerial;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateDailyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateInterruption;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateMonthlyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateWeeklyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarSerialDateYearlyOptions;
+import com.alkacon.opencms.v8.calendar.CmsCalendarViewSimple;
+import com.alkacon.opencms.v8.calendar.I_CmsCalendarSerialDateOptions;
+import com.alkacon.opencms.v8.calendar.I_CmsCalendarView;
+
+import org.opencms.test.OpenCmsTestCase;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests the matching of serial calendar entries against calendar views.<p>
+ *
+ * The serial entries are matched by jumping directly to the occurences.
+ * The results are compared with a reference that checks every single day from the start of the series.
+ * Wherever the previous algorithm iterating the series step by step returns the same days as the reference,
+ * the entries found by both algorithms have to be identical.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class TestCalendarSerialDateMatching extends OpenCmsTestCase {
+
+    /** The number of random series to test. */
+    private static final int ROUNDS = 2000;
+
+    /**
+     * Default JUnit constructor.<p>
+     *
+     * @param arg0 JUnit parameters
+     */
+    public TestCalendarSerialDateMatching(String arg0) {
+
+        super(arg0, false);
+    }
+
+    /**
+     * Test suite for this test class.<p>
+     *
+     * @return the test suite
+     */
+    public static Test suite() {
+
+        TestSuite suite = new TestSuite();
+        suite.setName(TestCalendarSerialDateMatching.class.getName());
+
+        suite.addTest(new TestCalendarSerialDateMatching("testWeeklySeriesOverYearChange"));
+        suite.addTest(new TestCalendarSerialDateMatching("testRandomSeries"));
+
+        return suite;
+    }
+
+    /**
+     * Tests random series of all types against the reference checking every day and the previous algorithm.<p>
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testRandomSeries() throws Exception {
+
+        Random random = new Random(20121018L);
+        int legacyMatches = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            CmsCalendarEntry entry = createRandomEntry(random);
+            CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+
+            // create a view of a day, a week, a month or a year, starting around the series
+            Calendar viewStart = new GregorianCalendar();
+            viewStart.setTimeInMillis(entryDate.getStartDay());
+            viewStart.add(Calendar.DAY_OF_YEAR, random.nextInt(4000) - 200);
+            Calendar viewEnd = (Calendar)viewStart.clone();
+            viewEnd.add(new int[] {Calendar.DAY_OF_YEAR, Calendar.WEEK_OF_YEAR, Calendar.MONTH, Calendar.YEAR}[random.nextInt(4)], 1);
+            viewEnd.add(Calendar.MILLISECOND, -1);
+            List viewDates = new ArrayList();
+            viewDates.add(new CmsCalendarEntryDate(viewStart, viewEnd));
+            CmsCalendarViewSimple view = new CmsCalendarViewSimple(viewDates);
+
+            int maxCount = random.nextInt(5) == 0 ? 1 + random.nextInt(5) : Integer.MAX_VALUE;
+            List expected = matchEveryDay(entry, view, maxCount);
+            List result = entryDate.matchCalendarView(entry, view, maxCount);
+            String message = "Round " + round + ", " + entryDate.getConfigurationValuesAsMap();
+            assertEquals(message, expected.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                CmsCalendarEntry resEntry = (CmsCalendarEntry)result.get(i);
+                assertEquals(message, expected.get(i), new Long(resEntry.getEntryDate().getStartDay()));
+            }
+
+            List legacy = CmsLegacySerialDateOptions.createLegacyOptions(entryDate.getSerialOptions()).matchCalendarView(
+                entry,
+                view,
+                maxCount);
+            if (expected.equals(getStartDays(legacy))) {
+                // the previous algorithm is correct for this series, both have to return the same entries
+                legacyMatches++;
+                for (int i = 0; i < result.size(); i++) {
+                    CmsCalendarEntryDate resDate = ((CmsCalendarEntry)result.get(i)).getEntryDate();
+                    CmsCalendarEntryDate legacyDate = ((CmsCalendarEntry)legacy.get(i)).getEntryDate();
+                    assertEquals(message, legacyDate.getStartDate().getTime(), resDate.getStartDate().getTime());
+                    assertEquals(message, legacyDate.getEndDate().getTime(), resDate.getEndDate().getTime());
+                }
+            }
+        }
+        // make sure the comparison with the previous algorithm covers most of the series
+        assertTrue(legacyMatches > (ROUNDS / 2));
+    }
+
+    /**
+     * Tests a weekly series with an interval of two weeks over the change of a year.<p>
+     *
+     * @throws Exception if something goes wrong
+     */
+    public void testWeeklySeriesOverYearChange() throws Exception {
+
+        // every second Wednesday, starting on Wed, 12/01/2010
+        CmsCalendarEntryDateSerial serialDate = new CmsCalendarEntryDateSerial(new GregorianCalendar(
+            2010,
+            11,
+            1,
+            10,
+            0), new GregorianCalendar(2010, 11, 1, 11, 0));
+        serialDate.setSerialEndType(I_CmsCalendarSerialDateOptions.END_TYPE_NEVER);
+        List weekDays = new ArrayList();
+        weekDays.add(new Integer(Calendar.WEDNESDAY));
+        serialDate.setSerialOptions(new CmsCalendarSerialDateWeeklyOptions(weekDays, 2));
+        CmsCalendarEntry entry = new CmsCalendarEntry(new CmsCalendarEntryData(), serialDate);
+
+        // view of February 2011
+        List viewDates = new ArrayList();
+        viewDates.add(new CmsCalendarEntryDate(new GregorianCalendar(2011, 1, 1, 0, 0, 0), new GregorianCalendar(
+            2011,
+            1,
+            28,
+            23,
+            59,
+            59)));
+        List result = serialDate.matchCalendarView(entry, new CmsCalendarViewSimple(viewDates));
+
+        // the series continues every second week: 02/09/2011 and 02/23/2011
+        assertEquals(2, result.size());
+        assertEquals(9, ((CmsCalendarEntry)result.get(0)).getEntryDate().getStartDate().get(Calendar.DAY_OF_MONTH));
+        assertEquals(23, ((CmsCalendarEntry)result.get(1)).getEntryDate().getStartDate().get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Creates a random serial entry.<p>
+     *
+     * @param random the random number generator to use
+     * @return a random serial entry
+     */
+    private CmsCalendarEntry createRandomEntry(Random random) {
+
+        Calendar start = new GregorianCalendar(
+            2000 + random.nextInt(12),
+            random.nextInt(12),
+            1 + random.nextInt(28),
+            random.nextInt(24),
+            random.nextInt(4) * 15);
+        Calendar end = (Calendar)start.clone();
+        end.add(Calendar.MINUTE, 30 + random.nextInt(300));
+        CmsCalendarEntryDateSerial serialDate = new CmsCalendarEntryDateSerial(start, end);
+
+        // set a random end of the series
+        int endType = 1 + random.nextInt(3);
+        serialDate.setSerialEndType(endType);
+        if (endType == I_CmsCalendarSerialDateOptions.END_TYPE_TIMES) {
+            serialDate.setOccurences(1 + random.nextInt(400));
+        } else if (endType == I_CmsCalendarSerialDateOptions.END_TYPE_DATE) {
+            Calendar serialEnd = (Calendar)start.clone();
+            serialEnd.add(Calendar.DAY_OF_YEAR, random.nextInt(3000));
+            serialDate.setSerialEndDate(serialEnd);
+        }
+
+        // create random options of a random type
+        I_CmsCalendarSerialDateOptions options;
+        int interval = random.nextBoolean() ? 1 : 1 + random.nextInt(5);
+        int weekDay = random.nextBoolean() ? -1 : 1 + random.nextInt(7);
+        int dayOfMonth = weekDay == -1 ? 1 + random.nextInt(31) : 1 + random.nextInt(5);
+        switch (random.nextInt(4)) {
+            case 0:
+                options = new CmsCalendarSerialDateDailyOptions(random.nextInt(4) == 0, interval);
+                break;
+            case 1:
+                List weekDays = new ArrayList();
+                for (int i = Calendar.SUNDAY; i <= Calendar.SATURDAY; i++) {
+                    if (random.nextInt(3) == 0) {
+                        weekDays.add(new Integer(i));
+                    }
+                }
+                if (weekDays.isEmpty()) {
+                    weekDays.add(new Integer(1 + random.nextInt(7)));
+                }
+                options = new CmsCalendarSerialDateWeeklyOptions(weekDays, interval);
+                break;
+            case 2:
+                options = new CmsCalendarSerialDateMonthlyOptions(dayOfMonth, weekDay, interval);
+                break;
+            default:
+                options = new CmsCalendarSerialDateYearlyOptions(dayOfMonth, weekDay, random.nextInt(12));
+                break;
+        }
+
+        // add a random interruption
+        if (random.nextInt(5) == 0) {
+            Calendar intrptStart = (Calendar)start.clone();
+            intrptStart.add(Calendar.DAY_OF_YEAR, random.nextInt(2000));
+            Calendar intrptEnd = (Calendar)intrptStart.clone();
+            intrptEnd.add(Calendar.DAY_OF_YEAR, random.nextInt(100));
+            options.addSerialDateInterruption(new CmsCalendarSerialDateInterruption(intrptStart, intrptEnd));
+        }
+        serialDate.setSerialOptions(options);
+
+        return new CmsCalendarEntry(new CmsCalendarEntryData(
+            "Random serial entry",
+            "",
+            "alkacon-v8-cal-serial",
+            "/serial.html",
+            0), serialDate);
+    }
+
+    /**
+     * Returns the number of days between the given days.<p>
+     *
+     * @param startDay the first day
+     * @param endDay the second day
+     * @return the number of days between the given days
+     */
+    private static int getDays(Calendar startDay, Calendar endDay) {
+
+        return (int)Math.round((double)(endDay.getTimeInMillis() - startDay.getTimeInMillis())
+            / CmsCalendarEntryDate.MILLIS_02_PER_DAY);
+    }
+
+    /**
+     * Returns the start days of the given entries.<p>
+     *
+     * @param entries the calendar entries
+     * @return the start days of the given entries
+     */
+    private static List getStartDays(List entries) {
+
+        List result = new ArrayList(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            result.add(new Long(((CmsCalendarEntry)entries.get(i)).getEntryDate().getStartDay()));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of the week day of the given day in its month, e.g. 2 for the second Monday.<p>
+     *
+     * @param day the day
+     * @return the number of the week day of the given day in its month
+     */
+    private static int getWeekDayNumber(Calendar day) {
+
+        return ((day.get(Calendar.DAY_OF_MONTH) - 1) / 7) + 1;
+    }
+
+    /**
+     * Checks if an entry starting at the given time is removed by an interruption of the series.<p>
+     *
+     * @param options the serial options
+     * @param entryStart the start time of the entry
+     * @return true if the entry is removed by an interruption
+     */
+    private static boolean isInterrupted(I_CmsCalendarSerialDateOptions options, long entryStart) {
+
+        if (options.getSerialDateInterruptions() != null) {
+            for (int i = 0; i < options.getSerialDateInterruptions().size(); i++) {
+                CmsCalendarSerialDateInterruption interruption = (CmsCalendarSerialDateInterruption)options.getSerialDateInterruptions().get(
+                    i);
+                if ((interruption.getStartDate().getTimeInMillis() < entryStart)
+                    && (interruption.getEndDate().getTimeInMillis() > entryStart)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the given day is an occurence of the series, using only the definition of the serial options.<p>
+     *
+     * @param options the serial options
+     * @param startDay the start day of the series
+     * @param day the day to check
+     * @return true if the given day is an occurence of the series
+     */
+    private static boolean isOccurence(I_CmsCalendarSerialDateOptions options, Calendar startDay, Calendar day) {
+
+        Integer weekDay = new Integer(day.get(Calendar.DAY_OF_WEEK));
+        switch (options.getSerialType()) {
+            case I_CmsCalendarSerialDateOptions.TYPE_DAILY:
+                CmsCalendarSerialDateDailyOptions daily = (CmsCalendarSerialDateDailyOptions)options;
+                if (daily.isEveryWorkingDay()) {
+                    return daily.getWorkingDays().contains(weekDay);
+                }
+                return (getDays(startDay, day) % daily.getDailyInterval()) == 0;
+            case I_CmsCalendarSerialDateOptions.TYPE_WEEKLY:
+                CmsCalendarSerialDateWeeklyOptions weekly = (CmsCalendarSerialDateWeeklyOptions)options;
+                Calendar weekStart = (Calendar)startDay.clone();
+                while (weekStart.get(Calendar.DAY_OF_WEEK) != weekStart.getFirstDayOfWeek()) {
+                    weekStart.add(Calendar.DAY_OF_YEAR, -1);
+                }
+                int weeks = getDays(weekStart, day) / 7;
+                return weekly.getWeekDays().contains(weekDay) && ((weeks % weekly.getWeeklyInterval()) == 0);
+            case I_CmsCalendarSerialDateOptions.TYPE_MONTHLY:
+                CmsCalendarSerialDateMonthlyOptions monthly = (CmsCalendarSerialDateMonthlyOptions)options;
+                int months = ((day.get(Calendar.YEAR) - startDay.get(Calendar.YEAR)) * 12)
+                    + (day.get(Calendar.MONTH) - startDay.get(Calendar.MONTH));
+                if ((months % monthly.getMonthlyInterval()) != 0) {
+                    return false;
+                }
+                if (monthly.isUseWeekDay()) {
+                    return (weekDay.intValue() == monthly.getWeekDay())
+                        && (getWeekDayNumber(day) == monthly.getDayOfMonth());
+                }
+                return day.get(Calendar.DAY_OF_MONTH) == monthly.getDayOfMonth();
+            default:
+                CmsCalendarSerialDateYearlyOptions yearly = (CmsCalendarSerialDateYearlyOptions)options;
+                if (day.get(Calendar.MONTH) != yearly.getMonth()) {
+                    return false;
+                }
+                if (yearly.isUseWeekDay()) {
+                    return (weekDay.intValue() == yearly.getWeekDay())
+                        && (getWeekDayNumber(day) == yearly.getDayOfMonth());
+                }
+                return day.get(Calendar.DAY_OF_MONTH) == yearly.getDayOfMonth();
+        }
+    }
+
+    /**
+     * Matches the serial entry against the view by checking every day from the start of the series.<p>
+     *
+     * @param entry the serial entry
+     * @param view the calendar view
+     * @param maxCount the maximum number of matches
+     * @return the start days of the matching entries
+     */
+    private static List matchEveryDay(CmsCalendarEntry entry, I_CmsCalendarView view, int maxCount) {
+
+        List result = new ArrayList();
+        CmsCalendarEntryDateSerial entryDate = (CmsCalendarEntryDateSerial)entry.getEntryDate();
+        I_CmsCalendarSerialDateOptions options = entryDate.getSerialOptions();
+        Calendar startDay = (Calendar)entryDate.getStartDate().clone();
+        startDay.setTimeInMillis(entryDate.getStartDay());
+        for (int i = 0; i < view.getDates().size(); i++) {
+            CmsCalendarEntryDate viewDate = (CmsCalendarEntryDate)view.getDates().get(i);
+            long viewStart = viewDate.getStartDate().getTimeInMillis();
+            long viewEnd = viewDate.getEndDate().getTimeInMillis();
+            Calendar runDate = (Calendar)startDay.clone();
+            int occurences = 0;
+            while (runDate.before(viewDate.getEndDate()) && (result.size() < maxCount)) {
+                if ((entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_DATE)
+                    && runDate.after(entryDate.getSerialEndDate())) {
+                    break;
+                }
+                if ((entryDate.getSerialEndType() == I_CmsCalendarSerialDateOptions.END_TYPE_TIMES)
+                    && (occurences >= entryDate.getOccurences())) {
+                    break;
+                }
+                if (isOccurence(options, startDay, runDate)) {
+                    occurences++;
+                    long entryStart = runDate.getTimeInMillis() + entryDate.getStartTime();
+                    if ((entryStart >= viewStart) && (entryStart <= viewEnd) && !isInterrupted(options, entryStart)) {
+                        result.add(new Long(runDate.getTimeInMillis()));
+                    }
+                }
+                runDate.add(Calendar.DAY_OF_YEAR, 1);
+            }
+        }
+        return result;
+    }
+}
@@ -298,6 +298,12 @@ public class CmsCommentFormHandler extends CmsFormHandler {
         }
         // only trigger error handling for the offline project
         boolean result = super.sendData() || getCmsObject().getRequestContext().getCurrentProject().isOnlineProject();
+        try {
+            // the new comment changes the comment counts of the commented resource
+            CmsCommentsAccess.clearCachedCounts(getCmsObject().readResource(getRequestContext().getUri()).getStructureId());
+        } catch (CmsException e) {
+            CmsCommentsAccess.clearCachedCounts(null);
+        }
         return result;
     }
 
@@ -32,7 +32,6 @@
 package com.alkacon.opencms.v8.comments;
 
 import com.alkacon.opencms.v8.comments.CmsCommentConfiguration.CmsCommentSecurityMode;
-import com.alkacon.opencms.v8.formgenerator.CmsFormHandlerFactory;
 import com.alkacon.opencms.v8.formgenerator.database.CmsFormDataAccess;
 import com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean;
 import com.alkacon.opencms.v8.formgenerator.database.CmsFormDatabaseFilter;
@@ -53,6 +52,7 @@ import org.opencms.security.CmsOrganizationalUnit;
 import org.opencms.security.CmsPermissionSet;
 import org.opencms.util.CmsRequestUtil;
 import org.opencms.util.CmsStringUtil;
+import org.opencms.util.CmsUUID;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -70,6 +70,7 @@ import javax.servlet.http.HttpSession;
 import javax.servlet.jsp.PageContext;
 
 import org.apache.commons.collections.Transformer;
+import org.apache.commons.collections.map.LRUMap;
 import org.apache.commons.collections.map.LazyMap;
 import org.apache.commons.logging.Log;
 
@@ -126,9 +127,28 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
     /** The log object for this class. */
     protected static final Log LOG = CmsLog.getLog(CmsCommentsAccess.class);
 
+    /** The maximal number of resources to cache the comment counts for. */
+    private static final int MAX_CACHED_COUNTS = 1000;
+
+    /** The time in milliseconds after which all cached comment counts are read again. */
+    private static final long MAX_CACHED_COUNTS_AGE = 60000;
+
     /** Cached configurations. */
     protected static Map<String, CmsCommentConfiguration> m_configs = Collections.synchronizedMap(new HashMap<String, CmsCommentConfiguration>());
 
+    /** Cached comment counts, the key is the structure id of the commented resource, the value maps the author names to the number of comments. */
+    @SuppressWarnings("unchecked")
+    protected static Map<CmsUUID, Map<String, Integer>> m_countsByAuthor = Collections.synchronizedMap(new LRUMap(
+        MAX_CACHED_COUNTS));
+
+    /** Cached comment counts, the key is the structure id of the commented resource, the value maps the states to the number of comments. */
+    @SuppressWarnings("unchecked")
+    protected static Map<CmsUUID, Map<Integer, Integer>> m_countsByState = Collections.synchronizedMap(new LRUMap(
+        MAX_CACHED_COUNTS));
+
+    /** The time the cached comment counts were removed the last time. */
+    protected static volatile long m_countsCleared = System.currentTimeMillis();
+
     /** Property name constant. */
     private static final String PROPERTY_COMMENTS = "comments";
 
@@ -150,24 +170,9 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
     /** The URI of the comments configuration. */
     private String m_configUri;
 
-    /** Cached count of approved comments. */
-    private Integer m_countApprovedComments;
-
-    /** Cached count of blocked comments. */
-    private Integer m_countBlockedComments;
-
     /** Map where the key is the author name and the value the number of comments. */
     private Map<String, Integer> m_countByAuthor;
 
-    /** Cached count of all comments. */
-    private Integer m_countComments;
-
-    /** Cached count of new comments. */
-    private Integer m_countNewComments;
-
-    /** Cached count of filtered comments. */
-    private Integer m_countStateComments;
-
     /** Right login exception. */
     private CmsException m_exc;
 
@@ -229,7 +234,12 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
                     case EVENT_CLEAR_CACHES:
                     case EVENT_CLEAR_OFFLINE_CACHES:
                     case EVENT_CLEAR_ONLINE_CACHES:
+                        clearCachedCounts(null);
+                        m_configs.clear();
+                        break;
+
                     case EVENT_PUBLISH_PROJECT:
+                        clearCachedCounts(null);
                         m_configs.clear();
                         break;
 
@@ -266,6 +276,28 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
             I_CmsEventListener.EVENT_PUBLISH_PROJECT});
     }
 
+    /**
+     * Removes the cached comment counts for the given resource.<p>
+     * 
+     * Has to be called whenever a comment of the resource is written, changes its state or is deleted.
+     * As this only affects the counts cached on the current server, all cached counts are also removed 
+     * after publishing, when the caches are cleared and at the latest after one minute, so that comments 
+     * written on other servers of a cluster are counted as well.<p>
+     * 
+     * @param structureId the structure id of the commented resource, or <code>null</code> to remove all cached counts
+     */
+    public static void clearCachedCounts(CmsUUID structureId) {
+
+        if (structureId == null) {
+            m_countsCleared = System.currentTimeMillis();
+            m_countsByState.clear();
+            m_countsByAuthor.clear();
+        } else {
+            m_countsByState.remove(structureId);
+            m_countsByAuthor.remove(structureId);
+        }
+    }
+
     /**
      * Returns the cache key for the given data.<p>
      * 
@@ -297,6 +329,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
                 LOG.error(e.getLocalizedMessage(), e);
             }
         }
+        clearCachedCounts(getResource().getStructureId());
     }
 
     /**
@@ -316,6 +349,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
                 LOG.error(e.getLocalizedMessage(), e);
             }
         }
+        clearCachedCounts(getResource().getStructureId());
     }
 
     /**
@@ -335,6 +369,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
                 LOG.error(e.getLocalizedMessage(), e);
             }
         }
+        clearCachedCounts(getResource().getStructureId());
     }
 
     /**
@@ -386,30 +421,12 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
     public List<CmsFormDataBean> getComments() {
 
         if (m_comments == null) {
-            CmsCommentFormHandler jsp = null;
-            try {
-                jsp = (CmsCommentFormHandler)CmsFormHandlerFactory.create(
-                    null,
-                    null,
-                    null,
-                    CmsCommentFormHandler.class.getName(),
-                    null);
-                // important: initialize manually
-                jsp.init(getJspContext(), getRequest(), getResponse(), this);
-                jsp.getCommentFormConfiguration().removeCaptchaField();
-            } catch (Exception e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-            }
-            int itemSize = (jsp == null ? 2000000 : jsp.getCommentFormConfiguration().getAllFields().size());
-            int itemsPerPage = getConfig().getList() * itemSize;
-
             CmsFormDatabaseFilter filter = getCommentFilter(false, true);
             filter = filter.filterOrderDesc();
             if (getConfig().getList() > 0) {
-                int base = m_page * itemsPerPage;
-                filter = filter.filterIndex(base, base + itemsPerPage);
+                // the paging applies to whole comments
+                int base = m_page * getConfig().getList();
+                filter = filter.filterIndex(base, base + getConfig().getList());
             }
 
             try {
@@ -441,21 +458,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
      */
     public int getCountApprovedComments() {
 
-        if (m_countApprovedComments == null) {
-            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
-            filter = filter.filterFormId(CmsCommentForm.FORM_ID);
-            filter = filter.filterResourceId(m_resource.getStructureId());
-            filter = filter.filterState(STATE_APPROVED);
-            try {
-                m_countApprovedComments = new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-            } catch (SQLException e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-                m_countApprovedComments = new Integer(0);
-            }
-        }
-        return m_countApprovedComments.intValue();
+        return getCount(new Integer(STATE_APPROVED));
     }
 
     /**
@@ -470,21 +473,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
         if (!m_config.isModerated()) {
             return 0;
         }
-        if (m_countBlockedComments == null) {
-            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
-            filter = filter.filterFormId(CmsCommentForm.FORM_ID);
-            filter = filter.filterResourceId(m_resource.getStructureId());
-            filter = filter.filterState(STATE_BLOCKED);
-            try {
-                m_countBlockedComments = new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-            } catch (SQLException e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-                m_countBlockedComments = new Integer(0);
-            }
-        }
-        return m_countBlockedComments.intValue();
+        return getCount(new Integer(STATE_BLOCKED));
     }
 
     /**
@@ -492,6 +481,8 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
      * 
      * To use this method you have to define a field called {@link CmsCommentFormHandler#FIELD_USERNAME}.<p>
      * 
+     * The numbers of all authors are read at once and cached until a comment changes.<p>
+     * 
      * @return a map where the key is the author name and the value the number of comments
      */
     @SuppressWarnings("unchecked")
@@ -505,19 +496,8 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
                  */
                 public Object transform(Object input) {
 
-                    String author = String.valueOf(input);
-                    CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
-                    filter = filter.filterFormId(CmsCommentForm.FORM_ID);
-                    filter = filter.filterResourceId(getResource().getStructureId());
-                    filter = filter.filterField(CmsCommentFormHandler.FIELD_USERNAME, author);
-                    try {
-                        return new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-                    } catch (SQLException e) {
-                        if (LOG.isErrorEnabled()) {
-                            LOG.error(e.getLocalizedMessage(), e);
-                        }
-                    }
-                    return new Integer(0);
+                    Integer count = getCountsByAuthor().get(String.valueOf(input));
+                    return (count != null) ? count : new Integer(0);
                 }
             });
         }
@@ -533,18 +513,11 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
      */
     public int getCountComments() {
 
-        if (m_countComments == null) {
-            CmsFormDatabaseFilter filter = getCommentFilter(true, false);
-            try {
-                m_countComments = new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-            } catch (SQLException e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-                m_countComments = new Integer(0);
-            }
+        if (!isUserCanManage() && getConfig().isModerated()) {
+            // if not managing and moderated, only approved comments are shown
+            return getCount(new Integer(STATE_APPROVED));
         }
-        return m_countComments.intValue();
+        return getCount(null);
     }
 
     /**
@@ -559,21 +532,7 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
         if (!m_config.isModerated()) {
             return 0;
         }
-        if (m_countNewComments == null) {
-            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
-            filter = filter.filterFormId(CmsCommentForm.FORM_ID);
-            filter = filter.filterResourceId(m_resource.getStructureId());
-            filter = filter.filterState(STATE_NEW);
-            try {
-                m_countNewComments = new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-            } catch (SQLException e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-                m_countNewComments = new Integer(0);
-            }
-        }
-        return m_countNewComments.intValue();
+        return getCount(new Integer(STATE_NEW));
     }
 
     /**
@@ -585,18 +544,11 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
      */
     public int getCountStateComments() {
 
-        if (m_countStateComments == null) {
-            CmsFormDatabaseFilter filter = getCommentFilter(true, true);
-            try {
-                m_countStateComments = new Integer(CmsFormDataAccess.getInstance().countForms(filter));
-            } catch (SQLException e) {
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(e.getLocalizedMessage(), e);
-                }
-                m_countStateComments = new Integer(0);
-            }
+        if (!isUserCanManage()) {
+            return getCountComments();
         }
-        return m_countStateComments.intValue();
+        // if managing, count only the requested comments
+        return getCount(getState());
     }
 
     /**
@@ -878,6 +830,88 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
         m_exc = exc;
     }
 
+    /**
+     * Returns the number of comments with the given state.<p>
+     * 
+     * @param state the state, or <code>null</code> for all comments
+     * 
+     * @return the number of comments with the given state
+     */
+    private int getCount(Integer state) {
+
+        Map<Integer, Integer> counts = getCountsByState();
+        if (state != null) {
+            Integer count = counts.get(state);
+            return (count != null) ? count.intValue() : 0;
+        }
+        int result = 0;
+        Iterator<Integer> it = counts.values().iterator();
+        while (it.hasNext()) {
+            result += it.next().intValue();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of comments of each author for the current resource.<p>
+     * 
+     * The numbers are read with one query and cached until a comment of the resource changes.<p>
+     * 
+     * @return a map where the key is the author name and the value the number of comments
+     */
+    private Map<String, Integer> getCountsByAuthor() {
+
+        removeExpiredCounts();
+        CmsUUID structureId = getResource().getStructureId();
+        Map<String, Integer> counts = m_countsByAuthor.get(structureId);
+        if (counts == null) {
+            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
+            filter = filter.filterFormId(CmsCommentForm.FORM_ID);
+            filter = filter.filterResourceId(structureId);
+            try {
+                counts = Collections.unmodifiableMap(CmsFormDataAccess.getInstance().countFormsByField(
+                    filter,
+                    CmsCommentFormHandler.FIELD_USERNAME));
+                m_countsByAuthor.put(structureId, counts);
+            } catch (SQLException e) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(e.getLocalizedMessage(), e);
+                }
+                counts = Collections.emptyMap();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of comments in each state for the current resource.<p>
+     * 
+     * The numbers are read with one query and cached until a comment of the resource changes.<p>
+     * 
+     * @return a map where the key is the state and the value the number of comments
+     */
+    private Map<Integer, Integer> getCountsByState() {
+
+        removeExpiredCounts();
+        CmsUUID structureId = getResource().getStructureId();
+        Map<Integer, Integer> counts = m_countsByState.get(structureId);
+        if (counts == null) {
+            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.HEADERS;
+            filter = filter.filterFormId(CmsCommentForm.FORM_ID);
+            filter = filter.filterResourceId(structureId);
+            try {
+                counts = Collections.unmodifiableMap(CmsFormDataAccess.getInstance().countFormsByState(filter));
+                m_countsByState.put(structureId, counts);
+            } catch (SQLException e) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(e.getLocalizedMessage(), e);
+                }
+                counts = Collections.emptyMap();
+            }
+        }
+        return counts;
+    }
+
     /**
      * Returns the filter to read the comments.<p>
      * 
@@ -1020,4 +1054,14 @@ public class CmsCommentsAccess extends CmsJspLoginBean {
         }
         return m_configUri;
     }
+
+    /**
+     * Removes all cached comment counts if they are older than one minute.<p>
+     */
+    private void removeExpiredCounts() {
+
+        if ((System.currentTimeMillis() - m_countsCleared) > MAX_CACHED_COUNTS_AGE) {
+            clearCachedCounts(null);
+        }
+    }
 }
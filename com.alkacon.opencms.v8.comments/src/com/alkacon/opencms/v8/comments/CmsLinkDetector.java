@@ -45,6 +45,9 @@ import java.util.regex.Pattern;
  */
 public final class CmsLinkDetector {
 
+    /** The pattern to find the urls in plain text, group 1 is the url and group 3 the following white spaces. */
+    private static final Pattern PATTERN_URL = Pattern.compile("(?i)(\\b(http://|https://|www.|ftp://|file:/|mailto:)\\S*)(\\s*)");
+
     /**
      * Private constructor.<p>
      */
@@ -74,31 +77,49 @@ public final class CmsLinkDetector {
      */
     public static String substituteLinks(String text) {
 
-        Matcher matcher = Pattern.compile("(?i)(\\b(http://|https://|www.|ftp://|file:/|mailto:)\\S*)(\\s*)").matcher(
-            text);
+        Matcher matcher = PATTERN_URL.matcher(text);
+        if (!matcher.find()) {
+            return text;
+        }
 
-        String ret = "";
+        StringBuilder ret = new StringBuilder(text.length() + 64);
         int end = 0;
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            // String prefix = matcher.group(2);
-            String endingSpaces = matcher.group(3);
-
-            Matcher dotEndMatcher = Pattern.compile("([\\W&&[^/]]+)$").matcher(url);
+        do {
+            int urlStart = matcher.start(1);
+            int urlEnd = matcher.end(1);
 
             // Ending non alpha characters like [.,?%] shouldn't be included
             // in the url.
-            String endingDots = "";
-            if (dotEndMatcher.find()) {
-                endingDots = dotEndMatcher.group(1);
-                url = dotEndMatcher.replaceFirst("");
+            int dotsStart = urlEnd;
+            while ((dotsStart > urlStart) && isUrlEndingDot(text.charAt(dotsStart - 1))) {
+                dotsStart--;
             }
 
-            ret += text.substring(end, matcher.start());
-            ret += "<a href='" + url + "'>" + url + "</a>" + endingDots + endingSpaces;
+            ret.append(text, end, matcher.start());
+            ret.append("<a href='").append(text, urlStart, dotsStart).append("'>");
+            ret.append(text, urlStart, dotsStart).append("</a>");
+            // the ending dots and the ending spaces
+            ret.append(text, dotsStart, matcher.end());
             end = matcher.end();
-        }
-        ret += text.substring(end);
-        return ret;
+        } while (matcher.find());
+        ret.append(text, end, text.length());
+        return ret.toString();
+    }
+
+    /**
+     * Checks if the given character is not allowed at the end of an url, 
+     * that is if it is a non word character other than a slash.<p>
+     * 
+     * @param c the character to check
+     * 
+     * @return <code>true</code> if the given character is not allowed at the end of an url
+     */
+    private static boolean isUrlEndingDot(char c) {
+
+        boolean word = ((c >= 'a') && (c <= 'z'))
+            || ((c >= 'A') && (c <= 'Z'))
+            || ((c >= '0') && (c <= '9'))
+            || (c == '_');
+        return !word && (c != '/');
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.counter/src/com/alkacon/opencms/v8/counter/CmsCounterBuffer.java,v $
+ * Date   : $Date: 2012/06/18 17:26:12 $
+ * Version: $Revision: 1.1 $
+ *
+ * This library is part of OpenCms -
+ * the Open Source Content Mananagement System
+ *
+ * Copyright (C) 2005 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package com.alkacon.opencms.v8.counter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory buffer for the counter values that collects increments until they are
+ * written to the database by the {@link CmsCounterManager}.<p>
+ *
+ * Every counter is held as a pair of the current value and the delta that was not yet
+ * written to the database. Increments only touch these two atomic values, so concurrent
+ * hits on the same counter neither block each other nor lose updates.<p>
+ *
+ * @author Anja Roettgers
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsCounterBuffer {
+
+    /**
+     * A single buffered counter.<p>
+     */
+    public static class CmsCounterEntry {
+
+        /** The key of the counter. */
+        private final String m_key;
+
+        /** The increments not yet written to the database. */
+        private final AtomicLong m_pending;
+
+        /** The current value of the counter. */
+        private final AtomicLong m_value;
+
+        /**
+         * Creates a new buffered counter.<p>
+         *
+         * @param key the key of the counter
+         * @param value the value of the counter as stored in the database
+         */
+        protected CmsCounterEntry(String key, long value) {
+
+            m_key = key;
+            m_value = new AtomicLong(value);
+            m_pending = new AtomicLong(0);
+        }
+
+        /**
+         * Returns the key of the counter.<p>
+         *
+         * @return the key of the counter
+         */
+        public String getKey() {
+
+            return m_key;
+        }
+
+        /**
+         * Returns the increments not yet written to the database.<p>
+         *
+         * @return the increments not yet written to the database
+         */
+        public long getPending() {
+
+            return m_pending.get();
+        }
+
+        /**
+         * Returns the current value of the counter.<p>
+         *
+         * @return the current value of the counter
+         */
+        public long getValue() {
+
+            return m_value.get();
+        }
+
+        /**
+         * Increments the counter by one.<p>
+         *
+         * @return the incremented value, unique for this entry
+         */
+        protected long increment() {
+
+            m_pending.incrementAndGet();
+            return m_value.incrementAndGet();
+        }
+
+        /**
+         * Gives back a delta that could not be written to the database.<p>
+         *
+         * @param delta the delta to give back
+         */
+        protected void restore(long delta) {
+
+            m_pending.addAndGet(delta);
+        }
+
+        /**
+         * Takes the pending delta for writing it to the database.<p>
+         *
+         * @return the pending delta, which is reset to <code>0</code>
+         */
+        protected long takePending() {
+
+            return m_pending.getAndSet(0);
+        }
+    }
+
+    /** The buffered counters. */
+    private final ConcurrentHashMap<String, CmsCounterEntry> m_entries;
+
+    /**
+     * Creates a new, empty counter buffer.<p>
+     */
+    public CmsCounterBuffer() {
+
+        m_entries = new ConcurrentHashMap<String, CmsCounterEntry>();
+    }
+
+    /**
+     * Removes all buffered counters.<p>
+     */
+    public void clear() {
+
+        m_entries.clear();
+    }
+
+    /**
+     * Returns the buffered counter for the given key.<p>
+     *
+     * @param key the key of the counter
+     *
+     * @return the buffered counter, or <code>null</code> if the counter is not buffered
+     */
+    public CmsCounterEntry getEntry(String key) {
+
+        return m_entries.get(key);
+    }
+
+    /**
+     * Returns all buffered counters with pending increments.<p>
+     *
+     * @return all buffered counters with pending increments
+     */
+    public List<CmsCounterEntry> getPendingEntries() {
+
+        List<CmsCounterEntry> result = new ArrayList<CmsCounterEntry>();
+        Iterator<CmsCounterEntry> it = m_entries.values().iterator();
+        while (it.hasNext()) {
+            CmsCounterEntry entry = it.next();
+            if (entry.getPending() > 0) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a counter to the buffer, if it is not already buffered.<p>
+     *
+     * @param key the key of the counter
+     * @param value the value of the counter as stored in the database
+     *
+     * @return the buffered counter, which is the already existing one if another thread was faster
+     */
+    public CmsCounterEntry putEntry(String key, long value) {
+
+        CmsCounterEntry entry = new CmsCounterEntry(key, value);
+        CmsCounterEntry existing = m_entries.putIfAbsent(key, entry);
+        return existing != null ? existing : entry;
+    }
+
+    /**
+     * Removes the counter with the given key from the buffer.<p>
+     *
+     * Pending increments of the removed counter are discarded.<p>
+     *
+     * @param key the key of the counter
+     */
+    public void removeEntry(String key) {
+
+        m_entries.remove(key);
+    }
+
+    /**
+     * Returns the number of buffered counters.<p>
+     *
+     * @return the number of buffered counters
+     */
+    public int size() {
+
+        return m_entries.size();
+    }
+}
@@ -47,7 +47,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
@@ -55,6 +58,10 @@ import org.apache.commons.logging.Log;
 /**
  * This is a helper class that provides methods used for the table counter in the database.<p>
  * 
+ * Increments are collected in a {@link CmsCounterBuffer} and written to the database in batches
+ * every few seconds and on module shutdown. The interval is configured with the module parameter
+ * {@link #PARAM_FLUSH_INTERVAL}, a value of <code>0</code> writes every increment directly.<p>
+ * 
  * @author Anja Roettgers
  * 
  * @version $Revision: 1.2 $
@@ -63,9 +70,15 @@ import org.apache.commons.logging.Log;
  */
 public class CmsCounterManager extends A_CmsModuleAction {
 
+    /** The default interval in seconds to write buffered increments to the database. */
+    public static final int DEFAULT_FLUSH_INTERVAL = 10;
+
     /** Constant for the module name. */
     public static final String MODULE_NAME = "com.alkacon.opencms.v8.counter";
 
+    /** Module parameter name for the interval in seconds to write buffered increments to the database. */
+    public static final String PARAM_FLUSH_INTERVAL = "flush-interval";
+
     /** Query to check if the table exists in the database. */
     private static final String C_CHECK_DB = "SELECT count(*) FROM CMS_COUNTER_MODULES";
 
@@ -93,6 +106,11 @@ public class CmsCounterManager extends A_CmsModuleAction {
         + C_COUNTER_TABLE
         + " WHERE COUNTER_KEY = ?";
 
+    /** Query to add a delta to a counter entry.*/
+    private static final String C_INCREMENT_COUNTER_ENTRY = "UPDATE "
+        + C_COUNTER_TABLE
+        + " SET COUNTER_COUNT = COUNTER_COUNT + ? WHERE COUNTER_KEY = ?";
+
     /** Query to get all counter entries from the database.*/
     private static final String C_GET_COUNTERS = "SELECT * FROM " + C_COUNTER_TABLE;
 
@@ -104,15 +122,21 @@ public class CmsCounterManager extends A_CmsModuleAction {
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(CmsCounterManager.class);
 
+    /** The buffered counter values. */
+    private CmsCounterBuffer m_buffer;
+
     /** The connection pool id. */
     private String m_connectionPool;
 
+    /** The timer that writes the buffered increments to the database, <code>null</code> if increments are written directly. */
+    private Timer m_flushTimer;
+
     /**
      * default constructor.<p>
      */
     public CmsCounterManager() {
 
-        // NOOP
+        m_buffer = new CmsCounterBuffer();
     }
 
     /**
@@ -135,6 +159,9 @@ public class CmsCounterManager extends A_CmsModuleAction {
             return result;
         }
 
+        // drop the buffered value, otherwise the counter would be recreated on the next flush
+        m_buffer.removeEntry(entryKey);
+
         try {
             // get connection and execute the delete query
             con = CmsDbUtil.getInstance().getConnection(m_connectionPool);
@@ -154,49 +181,126 @@ public class CmsCounterManager extends A_CmsModuleAction {
     }
 
     /**
-     * This function returns the value of the counter entry.<p> 
+     * Writes all buffered increments to the database.<p>
      * 
-     * @param entryKey the id of the counter entry
+     * All pending deltas are sent as one JDBC batch of relative updates, so concurrent writers 
+     * (e.g. other cluster nodes) do not overwrite each other. Counters that do not exist in the 
+     * database yet are inserted. If the driver does not report the number of updated rows for a
+     * counter, the existence of the counter is checked separately. If the database can not be accessed,
+     * the deltas are kept in the buffer and written with the next flush.<p>
      * 
-     * @return return the value of the counter entry otherwise <code>null</code> if nothing is found or an exception occurred
+     * The method is synchronized, so that the timer and an explicit flush (e.g. on shutdown) 
+     * never write the same counter concurrently.<p>
      */
-    public Integer getCounter(String entryKey) {
-
-        Integer result = null;
-        Connection con = null;
-        PreparedStatement statement = null;
-        ResultSet res = null;
+    public synchronized void flush() {
 
-        // check if the parameters are empty
-        if (CmsStringUtil.isEmptyOrWhitespaceOnly(entryKey)) {
-            return result;
+        List<CmsCounterBuffer.CmsCounterEntry> entries = m_buffer.getPendingEntries();
+        if (entries.isEmpty()) {
+            return;
+        }
+        // take the deltas before accessing the database, increments arriving meanwhile go to the next flush
+        long[] deltas = new long[entries.size()];
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = entries.get(i).takePending();
         }
 
+        Connection con = null;
+        PreparedStatement statement = null;
+        boolean committed = false;
         try {
-            // get the connection and create the statement
             con = CmsDbUtil.getInstance().getConnection(m_connectionPool);
-            statement = con.prepareStatement(C_GET_COUNTER_ENTRY);
-            statement.setString(1, entryKey);
-
-            // execute the query and return the value of the entry
-            res = statement.executeQuery();
-            if (res.next()) {
-                result = new Integer(res.getInt(1));
+            con.setAutoCommit(false);
+
+            // relative update of all counters in one batch
+            statement = con.prepareStatement(C_INCREMENT_COUNTER_ENTRY);
+            for (int i = 0; i < deltas.length; i++) {
+                statement.setLong(1, deltas[i]);
+                statement.setString(2, entries.get(i).getKey());
+                statement.addBatch();
+            }
+            int[] updateCounts = statement.executeBatch();
+            statement.close();
+            statement = null;
+
+            // insert the counters that do not exist in the database yet
+            boolean hasInserts = false;
+            for (int i = 0; i < deltas.length; i++) {
+                boolean missing;
+                if ((i < updateCounts.length) && (updateCounts[i] >= 0)) {
+                    missing = (updateCounts[i] == 0);
+                } else {
+                    // the driver did not report the update count (Statement.SUCCESS_NO_INFO)
+                    missing = !existsCounter(con, entries.get(i).getKey());
+                }
+                if (missing) {
+                    if (statement == null) {
+                        statement = con.prepareStatement(C_CREATE_COUNTER_ENTRY);
+                    }
+                    statement.setString(1, entries.get(i).getKey());
+                    statement.setLong(2, deltas[i]);
+                    statement.addBatch();
+                    hasInserts = true;
+                }
             }
+            if (hasInserts) {
+                statement.executeBatch();
+            }
+            con.commit();
+            committed = true;
 
             // make a log entry
             if (LOG.isDebugEnabled()) {
-                LOG.debug(Messages.get().getBundle().key(Messages.LOG_DEBUG_GET_COUNTER_2, entryKey, result));
+                LOG.debug(Messages.get().getBundle().key(
+                    Messages.LOG_DEBUG_FLUSH_COUNTERS_1,
+                    new Integer(deltas.length)));
             }
-
-        } catch (Exception ex) {
+        } catch (SQLException ex) {
             if (LOG.isErrorEnabled()) {
                 LOG.error(Messages.get().getBundle().key(Messages.LOG_ERROR_ACCESSING_DB_1, C_COUNTER_TABLE), ex);
             }
         } finally {
-            CmsDbUtil.getInstance().closeConnection(res, statement, con);
+            if (!committed) {
+                // give the deltas back to the buffer
+                for (int i = 0; i < deltas.length; i++) {
+                    entries.get(i).restore(deltas[i]);
+                }
+                if (con != null) {
+                    try {
+                        con.rollback();
+                    } catch (SQLException e) {
+                        // ignore
+                    }
+                }
+            }
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+            CmsDbUtil.getInstance().closeConnection(null, statement, con);
         }
-        return result;
+    }
+
+    /**
+     * This function returns the value of the counter entry.<p> 
+     * 
+     * Buffered increments that are not yet written to the database are included.<p>
+     * 
+     * @param entryKey the id of the counter entry
+     * 
+     * @return return the value of the counter entry otherwise <code>null</code> if nothing is found or an exception occurred
+     */
+    public Integer getCounter(String entryKey) {
+
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(entryKey)) {
+            CmsCounterBuffer.CmsCounterEntry entry = m_buffer.getEntry(entryKey);
+            if (entry != null) {
+                return new Integer((int)entry.getValue());
+            }
+        }
+        return readCounter(entryKey);
     }
 
     /** 
@@ -206,6 +310,9 @@ public class CmsCounterManager extends A_CmsModuleAction {
      */
     public TreeMap getCounters() {
 
+        // write the buffered increments, so that the database reflects the current values
+        flush();
+
         TreeMap result = new TreeMap();
         PreparedStatement statement = null;
         Connection con = null;
@@ -239,7 +346,11 @@ public class CmsCounterManager extends A_CmsModuleAction {
     /**
      * Returns the count value of the counter entry incremented. <p>
      * 
-     * Important: the incremented value is saved in the database.<p>
+     * Important: the incremented value is saved in the database. If a flush interval is configured,
+     * the increment is buffered in memory and written with the next flush, otherwise it is written
+     * directly.<p>
+     * 
+     * The returned values are unique on this server, concurrent increments are not lost.<p>
      * 
      * @param entryKey the id of the counter entry
      * 
@@ -249,13 +360,22 @@ public class CmsCounterManager extends A_CmsModuleAction {
      */
     public int incrementCounter(String entryKey) throws CmsException {
 
-        int result = 0;
-        Integer value = getCounter(entryKey);
-        if (value != null) {
-            result = value.intValue();
+        // check if the parameters are empty
+        if (CmsStringUtil.isEmptyOrWhitespaceOnly(entryKey)) {
+            throw new CmsRuntimeException(Messages.get().container(Messages.LOG_ERROR_MISSING_VALUES_1, "increment"));
+        }
+
+        CmsCounterBuffer.CmsCounterEntry entry = m_buffer.getEntry(entryKey);
+        if (entry == null) {
+            // first access to this counter, read the stored value once
+            Integer value = readCounter(entryKey);
+            entry = m_buffer.putEntry(entryKey, value != null ? value.intValue() : 0);
+        }
+        int result = (int)entry.increment();
+        if (m_flushTimer == null) {
+            // no write-behind configured
+            flush();
         }
-        result++;
-        setCounter(entryKey, result);
         return result;
     }
 
@@ -286,6 +406,78 @@ public class CmsCounterManager extends A_CmsModuleAction {
             }
         }
 
+        // start writing the buffered increments periodically
+        int interval = DEFAULT_FLUSH_INTERVAL;
+        String intervalParam = module.getParameter(PARAM_FLUSH_INTERVAL);
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(intervalParam)) {
+            try {
+                interval = Integer.parseInt(intervalParam.trim());
+            } catch (NumberFormatException e) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(Messages.LOG_ERROR_PARSE_INTEGER_1, intervalParam), e);
+                }
+            }
+        }
+        if (interval > 0) {
+            long period = interval * 1000L;
+            m_flushTimer = new Timer(MODULE_NAME, true);
+            m_flushTimer.schedule(new TimerTask() {
+
+                /**
+                 * @see java.util.TimerTask#run()
+                 */
+                public void run() {
+
+                    flush();
+                }
+            }, period, period);
+        }
+    }
+
+    /**
+     * Reads the value of the counter entry from the database, ignoring buffered increments.<p> 
+     * 
+     * @param entryKey the id of the counter entry
+     * 
+     * @return return the value of the counter entry otherwise <code>null</code> if nothing is found or an exception occurred
+     */
+    public Integer readCounter(String entryKey) {
+
+        Integer result = null;
+        Connection con = null;
+        PreparedStatement statement = null;
+        ResultSet res = null;
+
+        // check if the parameters are empty
+        if (CmsStringUtil.isEmptyOrWhitespaceOnly(entryKey)) {
+            return result;
+        }
+
+        try {
+            // get the connection and create the statement
+            con = CmsDbUtil.getInstance().getConnection(m_connectionPool);
+            statement = con.prepareStatement(C_GET_COUNTER_ENTRY);
+            statement.setString(1, entryKey);
+
+            // execute the query and return the value of the entry
+            res = statement.executeQuery();
+            if (res.next()) {
+                result = new Integer(res.getInt(1));
+            }
+
+            // make a log entry
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(Messages.get().getBundle().key(Messages.LOG_DEBUG_GET_COUNTER_2, entryKey, result));
+            }
+
+        } catch (Exception ex) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error(Messages.get().getBundle().key(Messages.LOG_ERROR_ACCESSING_DB_1, C_COUNTER_TABLE), ex);
+            }
+        } finally {
+            CmsDbUtil.getInstance().closeConnection(res, statement, con);
+        }
+        return result;
     }
 
     /**
@@ -307,25 +499,23 @@ public class CmsCounterManager extends A_CmsModuleAction {
             throw new CmsRuntimeException(Messages.get().container(Messages.LOG_ERROR_MISSING_VALUES_1, "update"));
         }
 
+        // the new value replaces all buffered increments
+        m_buffer.removeEntry(entryKey);
+
         try {
-            // gets the connection and check if the Counter-Entry exists
+            // update the entry and create it if it does not exist, using one connection
             con = CmsDbUtil.getInstance().getConnection(m_connectionPool);
-            Integer count = getCounter(entryKey);
-
-            // create the statement to create or update
-            if (count == null) {
+            statement = con.prepareStatement(C_UPDATE_COUNTER_ENTRY);
+            statement.setInt(1, newValue);
+            statement.setString(2, entryKey);
+            if (statement.executeUpdate() == 0) {
+                statement.close();
                 statement = con.prepareStatement(C_CREATE_COUNTER_ENTRY);
                 statement.setString(1, entryKey);
                 statement.setInt(2, newValue);
-            } else {
-                statement = con.prepareStatement(C_UPDATE_COUNTER_ENTRY);
-                statement.setInt(1, newValue);
-                statement.setString(2, entryKey);
+                statement.executeUpdate();
             }
 
-            // execute the statement
-            statement.executeUpdate();
-
         } catch (SQLException ex) {
             if (LOG.isErrorEnabled()) {
                 LOG.error(Messages.get().getBundle().key(Messages.LOG_ERROR_ACCESSING_DB_1, C_COUNTER_TABLE), ex);
@@ -339,4 +529,45 @@ public class CmsCounterManager extends A_CmsModuleAction {
         }
     }
 
+    /**
+     * @see org.opencms.module.A_CmsModuleAction#shutDown(org.opencms.module.CmsModule)
+     */
+    public void shutDown(CmsModule module) {
+
+        super.shutDown(module);
+
+        if (m_flushTimer != null) {
+            m_flushTimer.cancel();
+            m_flushTimer = null;
+        }
+        // write the remaining buffered increments
+        flush();
+    }
+
+    /**
+     * Checks if the given counter exists in the database, using the given connection.<p>
+     * 
+     * @param con the connection to use
+     * @param entryKey the key of the counter
+     * 
+     * @return <code>true</code> if the counter exists in the database
+     * 
+     * @throws SQLException if the database can not be accessed
+     */
+    private boolean existsCounter(Connection con, String entryKey) throws SQLException {
+
+        PreparedStatement statement = con.prepareStatement(C_GET_COUNTER_ENTRY);
+        try {
+            statement.setString(1, entryKey);
+            ResultSet res = statement.executeQuery();
+            try {
+                return res.next();
+            } finally {
+                res.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
 }
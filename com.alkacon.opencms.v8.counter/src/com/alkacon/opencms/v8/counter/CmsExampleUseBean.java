@@ -145,7 +145,7 @@ public class CmsExampleUseBean extends CmsJspActionElement {
     public String getIncrementCounter() throws CmsException {
 
         String counterKey = getTitle();
-        if (CmsStringUtil.isEmptyOrWhitespaceOnly(counterKey)) {
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(counterKey)) {
             return String.valueOf(getCounterManager().incrementCounter(counterKey));
         }
         return null;
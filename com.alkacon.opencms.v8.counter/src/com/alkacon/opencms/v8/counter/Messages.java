@@ -57,6 +57,9 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String GUI_WIDGET_COUNTER_NAME_0 = "GUI_WIDGET_COUNTER_NAME_0";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_DEBUG_FLUSH_COUNTERS_1 = "LOG_DEBUG_FLUSH_COUNTERS_1";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_DEBUG_GET_COUNTER_2 = "LOG_DEBUG_GET_COUNTER_2";
 
@@ -1,9 +1,12 @@
-<%@ page session="false" import="org.opencms.jsp.*, com.alkacon.opencms.v8.feeder.*" %><%
+<%@ page session="false" import="org.opencms.jsp.*, org.opencms.file.*, org.opencms.main.*, com.alkacon.opencms.v8.feeder.*" %><%
 
 // Create a JSP action element
 CmsJspActionElement bean = new CmsJspActionElement(pageContext, request, response);
 
-CmsFeed feed = new CmsFeed(bean.getCmsObject());
-feed.write(out);
+// the feed is initialized by write() only if it is not found in the feed cache
+CmsObject cms = bean.getCmsObject();
+String uri = cms.getRequestContext().getUri();
+CmsFeed feed = new CmsFeed(cms, OpenCms.getLocaleManager().getDefaultLocale(cms, uri), cms.readResource(uri));
+feed.write(request, response, out);
 
 %>
\ No newline at end of file
@@ -32,6 +32,8 @@
 
 package com.alkacon.opencms.v8.feeder;
 
+import com.alkacon.opencms.v8.feeder.CmsFeedCache.CmsCachedFeed;
+
 import org.opencms.file.CmsDataAccessException;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsResource;
@@ -47,11 +49,15 @@ import org.opencms.xml.types.I_CmsXmlContentValue;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import com.sun.syndication.feed.synd.SyndImage;
 import com.sun.syndication.feed.synd.SyndImageImpl;
 import com.sun.syndication.io.FeedException;
@@ -287,6 +293,98 @@ public class CmsFeed {
         m_feed.write(m_cms, m_locale, writer);
     }
 
+    /**
+     * Write the feed result to the provided writer, supporting conditional requests.<p>
+     * 
+     * The generated feed is cached in the {@link CmsFeedCache}, if this feed was not yet initialized 
+     * and the feed is found in the cache, the resources of the feed are not collected at all.
+     * The feed is sent with an <code>ETag</code> and a <code>Last-Modified</code> header, the latter being 
+     * the time the entity tag last changed. If the client already knows the current feed, 
+     * only the status <code>304 Not Modified</code> is sent.<p>
+     * 
+     * Feeds with at least {@link CmsFeedGenerator#getStreamingThreshold()} entries are neither buffered 
+     * nor cached, they are written directly to the given writer without any validator.<p>
+     * 
+     * @param request the current request
+     * @param response the current response
+     * @param writer the writer to write the feed to, e.g. the JSP writer
+     * 
+     * @throws IOException in case of errors writing to the stream
+     * @throws FeedException in case of errors generating the feed
+     * @throws CmsException in case of errors accessing the OpenCms VFS
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, Writer writer)
+    throws IOException, FeedException, CmsException {
+
+        CmsFeedCache cache = CmsFeedCache.getSharedInstance();
+        StringBuffer buf = new StringBuffer(128);
+        buf.append(m_cms.getRequestContext().currentProject().getUuid());
+        buf.append('|').append(m_cms.getRequestContext().getSiteRoot());
+        buf.append('|').append(m_cms.getRequestContext().currentUser().getId());
+        buf.append('|').append(m_res.getStructureId());
+        buf.append('|').append(m_res.getDateLastModified());
+        buf.append('|').append(m_locale);
+        String key = buf.toString();
+        CmsCachedFeed feed = cache.getFeed(key);
+        if (feed == null) {
+            if (m_feed == null) {
+                init();
+            }
+            if (m_feed.isStreaming()) {
+                // an entity tag would require the whole feed in memory
+                m_feed.write(m_cms, m_locale, writer);
+                return;
+            }
+            StringWriter out = new StringWriter(4096);
+            m_feed.write(m_cms, m_locale, out);
+            // feeds with form data are generated for every request, new form data does not modify any resource
+            feed = cache.putFeed(key, out.toString(), !m_feed.isDataDriven());
+        }
+
+        response.setHeader("ETag", feed.getEtag());
+        response.setDateHeader("Last-Modified", feed.getDateLastModified());
+        if (isNotModified(request, feed)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        writer.write(feed.getContent());
+    }
+
+    /**
+     * Checks if the client already knows the given feed, using the conditional request headers.<p>
+     * 
+     * @param request the current request
+     * @param feed the generated feed
+     * 
+     * @return <code>true</code> if the client already knows the given feed
+     */
+    private boolean isNotModified(HttpServletRequest request, CmsCachedFeed feed) {
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // the entity tag takes precedence over the modification date
+            String[] tags = CmsStringUtil.splitAsArray(ifNoneMatch, ',');
+            for (int i = 0; i < tags.length; i++) {
+                String tag = tags[i].trim();
+                if (tag.startsWith("W/")) {
+                    // weak comparison is sufficient for GET requests
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || feed.getEtag().equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return (ifModifiedSince > 0) && (feed.getDateLastModified() <= ifModifiedSince);
+        } catch (IllegalArgumentException e) {
+            // invalid date header, ignore
+        }
+        return false;
+    }
+
     private void processResourceSet(CmsFeedGenerator feed, String resSetPath)
     throws CmsException, CmsDataAccessException {
 
@@ -0,0 +1,383 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.feeder/src/com/alkacon/opencms/v8/feeder/CmsFeedCache.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.feeder;
+
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsResource;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.collections.map.LRUMap;
+
+/**
+ * Caches the feed entries created from the XML contents, and the generated feeds, for all requests of this server.<p>
+ * 
+ * The feed entries of an XML content are cached by its structure id and date of last modification, 
+ * the locale and the default content mapping, 
+ * see {@link #getEntriesKey(CmsObject, CmsResource, Locale, CmsFeedContentMapping)}.
+ * So a modified XML content is mapped again, while all unchanged contents of a feed are taken from the cache.
+ * The entries of mappings that use form data are not cached, see {@link CmsFeedContentMapping#isDataDriven()}.<p>
+ * 
+ * The generated feeds are invalidated if any resource is modified or a project is published. 
+ * Cached feeds also expire after {@link #MAX_AGE}, so that resources reaching their release 
+ * or expiration date are added to or removed from the feed in time. An invalid feed is kept until 
+ * it is generated again, the date of last modification of a feed is the time its entity tag last changed, 
+ * see {@link CmsCachedFeed#getDateLastModified()}.<p>
+ * 
+ * The cached lists must not be modified, they are shared by all requests.<p>
+ * 
+ * @author Michael Moossen
+ * 
+ * @version $Revision: 1.1 $ 
+ * 
+ * @since 8.0.2
+ */
+public final class CmsFeedCache implements I_CmsEventListener {
+
+    /**
+     * A generated feed.<p>
+     */
+    public static final class CmsCachedFeed {
+
+        /** The generated feed. */
+        private final String m_content;
+
+        /** The time the feed was created. */
+        private final long m_dateCreated;
+
+        /** The time the entity tag of the feed last changed. */
+        private final long m_dateLastModified;
+
+        /** The entity tag of the feed. */
+        private final String m_etag;
+
+        /** Indicates if the feed may be served from the cache. */
+        private final boolean m_reusable;
+
+        /**
+         * Creates a new generated feed.<p>
+         * 
+         * @param content the generated feed
+         * @param previous the feed previously generated for the same key, or <code>null</code>
+         * @param reusable <code>false</code> if the feed must be generated again for every request
+         */
+        CmsCachedFeed(String content, CmsCachedFeed previous, boolean reusable) {
+
+            m_dateCreated = System.currentTimeMillis();
+            m_content = content;
+            m_etag = createEtag(content);
+            m_reusable = reusable;
+            if ((previous != null) && previous.m_etag.equals(m_etag)) {
+                // the content did not change, e.g. the feed was only invalidated or expired
+                m_dateLastModified = previous.m_dateLastModified;
+            } else {
+                // HTTP dates have a resolution of seconds
+                m_dateLastModified = (m_dateCreated / 1000) * 1000;
+            }
+        }
+
+        /**
+         * Returns the generated feed.<p>
+         * 
+         * @return the generated feed
+         */
+        public String getContent() {
+
+            return m_content;
+        }
+
+        /**
+         * Returns the time the entity tag of the feed last changed, in full seconds.<p>
+         * 
+         * The modification dates of the resources are not used, since resources reaching their release 
+         * or expiration date, or moved and deleted resources, change the feed without a newer date.<p>
+         * 
+         * @return the time the entity tag of the feed last changed
+         */
+        public long getDateLastModified() {
+
+            return m_dateLastModified;
+        }
+
+        /**
+         * Returns the quoted entity tag of the feed, derived from its content.<p>
+         * 
+         * @return the entity tag of the feed
+         */
+        public String getEtag() {
+
+            return m_etag;
+        }
+
+        /**
+         * Returns if this feed may still be served from the cache.<p>
+         * 
+         * @param dateInvalidated the time all cached feeds were invalidated last
+         * 
+         * @return <code>false</code> if this feed is not reusable, was invalidated 
+         *      or is older than {@link CmsFeedCache#MAX_AGE}
+         */
+        boolean isValid(long dateInvalidated) {
+
+            return m_reusable
+                && (m_dateCreated > dateInvalidated)
+                && ((System.currentTimeMillis() - m_dateCreated) <= MAX_AGE);
+        }
+
+        /**
+         * Creates the entity tag for the given content.<p>
+         * 
+         * @param content the content
+         * 
+         * @return the quoted entity tag
+         */
+        private static String createEtag(String content) {
+
+            StringBuffer result = new StringBuffer(34);
+            result.append('"');
+            try {
+                byte[] digest = MessageDigest.getInstance("MD5").digest(content.getBytes("UTF-8"));
+                for (int i = 0; i < digest.length; i++) {
+                    int b = digest[i] & 0xff;
+                    if (b < 0x10) {
+                        result.append('0');
+                    }
+                    result.append(Integer.toHexString(b));
+                }
+            } catch (NoSuchAlgorithmException e) {
+                // every Java platform has to support MD5
+                result.append(Integer.toHexString(content.hashCode()));
+            } catch (UnsupportedEncodingException e) {
+                // every Java platform has to support UTF-8
+                result.append(Integer.toHexString(content.hashCode()));
+            }
+            result.append('"');
+            return result.toString();
+        }
+    }
+
+    /** The maximum age of cached feeds in milliseconds. */
+    public static final long MAX_AGE = 10 * 60 * 1000;
+
+    /** The maximum number of cached entry lists. */
+    private static final int MAX_ENTRIES = 2000;
+
+    /** The maximum number of cached feeds. */
+    private static final int MAX_FEEDS = 100;
+
+    /** The shared instance of the feed cache. */
+    private static volatile CmsFeedCache sharedInstance;
+
+    /** The time all cached feeds were invalidated last. */
+    private volatile long m_dateInvalidated;
+
+    /** The cached feed entries by XML content. */
+    private final Map<String, List<?>> m_entries;
+
+    /** The cached feeds, including the invalid feeds that were not generated again yet. */
+    private final Map<String, CmsCachedFeed> m_feeds;
+
+    /**
+     * Hidden constructor, use {@link #getSharedInstance()}.<p>
+     */
+    @SuppressWarnings("unchecked")
+    private CmsFeedCache() {
+
+        m_entries = Collections.synchronizedMap(new LRUMap(MAX_ENTRIES));
+        m_feeds = Collections.synchronizedMap(new LRUMap(MAX_FEEDS));
+
+        OpenCms.addCmsEventListener(this, new int[] {
+            I_CmsEventListener.EVENT_CLEAR_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+            I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+            I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_CREATED,
+            I_CmsEventListener.EVENT_RESOURCE_DELETED,
+            I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_MOVED,
+            I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCES_MODIFIED,
+            I_CmsEventListener.EVENT_PROPERTY_MODIFIED});
+    }
+
+    /**
+     * Returns the key to cache the feed entries created from the given XML content with.<p>
+     * 
+     * @param cms the current users OpenCms context
+     * @param resource the XML content resource
+     * @param locale the locale of the feed
+     * @param mapping the default content mapping of the resource set the XML content was collected for
+     * 
+     * @return the cache key
+     */
+    public static String getEntriesKey(
+        CmsObject cms,
+        CmsResource resource,
+        Locale locale,
+        CmsFeedContentMapping mapping) {
+
+        String mappingKey = mapping.getCacheKey();
+        StringBuffer result = new StringBuffer(mappingKey.length() + 128);
+        result.append(cms.getRequestContext().currentProject().getUuid());
+        result.append('|').append(cms.getRequestContext().getSiteRoot());
+        result.append('|').append(resource.getStructureId());
+        result.append('|').append(resource.getDateLastModified());
+        result.append('|').append(locale);
+        result.append('|').append(mappingKey);
+        return result.toString();
+    }
+
+    /**
+     * Returns the shared instance of the feed cache.<p>
+     * 
+     * @return the shared instance of the feed cache
+     */
+    public static CmsFeedCache getSharedInstance() {
+
+        CmsFeedCache result = sharedInstance;
+        if (result == null) {
+            synchronized (CmsFeedCache.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new CmsFeedCache();
+                    sharedInstance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cached entries and invalidates all cached feeds.<p>
+     */
+    public void clear() {
+
+        m_entries.clear();
+        m_dateInvalidated = System.currentTimeMillis();
+    }
+
+    /**
+     * @see org.opencms.main.I_CmsEventListener#cmsEvent(org.opencms.main.CmsEvent)
+     */
+    public void cmsEvent(CmsEvent event) {
+
+        switch (event.getType()) {
+            case I_CmsEventListener.EVENT_RESOURCE_CREATED:
+            case I_CmsEventListener.EVENT_RESOURCE_DELETED:
+            case I_CmsEventListener.EVENT_RESOURCE_MODIFIED:
+            case I_CmsEventListener.EVENT_RESOURCES_MODIFIED:
+                // the entries of a modified content get a new key, 
+                // but any change may add or remove resources of any collector
+                m_dateInvalidated = System.currentTimeMillis();
+                break;
+            default:
+                // properties and links to moved resources may be mapped, so clear all
+                clear();
+        }
+    }
+
+    /**
+     * Returns the cached feed entries for the given key.<p>
+     * 
+     * @param key the entries cache key
+     * 
+     * @return the cached feed entries, or <code>null</code> if not cached
+     */
+    public List<?> getEntries(String key) {
+
+        return m_entries.get(key);
+    }
+
+    /**
+     * Returns the cached feed for the given key.<p>
+     * 
+     * @param key the feed cache key
+     * 
+     * @return the cached feed, or <code>null</code> if not cached or no longer valid
+     */
+    public CmsCachedFeed getFeed(String key) {
+
+        CmsCachedFeed result = m_feeds.get(key);
+        if ((result != null) && !result.isValid(m_dateInvalidated)) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Caches the feed entries for the given key.<p>
+     * 
+     * @param key the entries cache key
+     * @param entries the feed entries created from the XML content
+     * 
+     * @return the cached, unmodifiable feed entries
+     */
+    public List<?> putEntries(String key, List<?> entries) {
+
+        List<?> result = Collections.unmodifiableList(entries);
+        m_entries.put(key, result);
+        return result;
+    }
+
+    /**
+     * Caches the generated feed for the given key.<p>
+     * 
+     * If the feed previously generated for the key has the same content, its date of last modification is kept.
+     * A feed that is not reusable is never returned by {@link #getFeed(String)}, 
+     * it is only kept to compare the content generated next time.<p>
+     * 
+     * @param key the feed cache key
+     * @param content the generated feed
+     * @param reusable <code>false</code> if the feed must be generated again for every request
+     * 
+     * @return the cached feed
+     */
+    public CmsCachedFeed putFeed(String key, String content, boolean reusable) {
+
+        synchronized (m_feeds) {
+            CmsCachedFeed result = new CmsCachedFeed(content, m_feeds.get(key), reusable);
+            m_feeds.put(key, result);
+            return result;
+        }
+    }
+}
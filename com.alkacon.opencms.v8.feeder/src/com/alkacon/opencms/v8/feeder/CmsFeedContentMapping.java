@@ -430,6 +430,9 @@ public class CmsFeedContentMapping {
     /** Constant list with all possible feed mappings. */
     public static final List MAPPINGS_LIST = Collections.unmodifiableList(Arrays.asList(MAPPINGS));
 
+    /** The lazy initialized cache key describing this mapping. */
+    private String m_cacheKey;
+
     /** The data type id. */
     private String m_dataType;
 
@@ -478,6 +481,7 @@ public class CmsFeedContentMapping {
         if (MAPPINGS_LIST.contains(feedField)) {
             CmsFeedFieldMapping mapping = new CmsFeedFieldMapping(xmlFields, feedField, maxLength, defaultValue);
             m_feedMappings.put(feedField, mapping);
+            m_cacheKey = null;
         }
     }
 
@@ -507,6 +511,32 @@ public class CmsFeedContentMapping {
         addFeedFieldMapping(xmlFields, feedField, maxLengthInt, defaultValue);
     }
 
+    /**
+     * Returns a key that describes all rules of this content mapping.<p>
+     * 
+     * Two mappings with the same key create the same feed entries from the same XML content, 
+     * so the key can be used to cache the created entries, see {@link CmsFeedCache}.<p>
+     * 
+     * @return a key that describes all rules of this content mapping
+     */
+    public String getCacheKey() {
+
+        if (m_cacheKey == null) {
+            StringBuffer result = new StringBuffer(128);
+            result.append(m_descFormat).append('|').append(m_dataType).append('|').append(m_maxEntries);
+            // iterate the fields in a fixed order, the mappings are stored in a hash map
+            for (int i = 0; i < MAPPINGS.length; i++) {
+                CmsFeedFieldMapping mapping = (CmsFeedFieldMapping)m_feedMappings.get(MAPPINGS[i]);
+                if (mapping != null) {
+                    result.append('|').append(MAPPINGS[i]).append('=').append(mapping.getXmlFields());
+                    result.append(',').append(mapping.getMaxLenght()).append(',').append(mapping.getDefaultValue());
+                }
+            }
+            m_cacheKey = result.toString();
+        }
+        return m_cacheKey;
+    }
+
     /**
      * Returns a feed entry created from the given macro resolver using the configured rules of this content mapping.<p>
      * 
@@ -765,6 +795,19 @@ public class CmsFeedContentMapping {
         return entries;
     }
 
+    /**
+     * Returns <code>true</code> if the entries of this mapping are created from form data entries.<p>
+     * 
+     * The form data entries are stored in the database and not in the XML content, 
+     * so the entries of such a mapping can change without the XML content being modified.<p>
+     * 
+     * @return <code>true</code> if the entries of this mapping are created from form data entries
+     */
+    public boolean isDataDriven() {
+
+        return m_dataType != null;
+    }
+
     /**
      * Applies the max length limitation of the current field to the given value.<p>
      * 
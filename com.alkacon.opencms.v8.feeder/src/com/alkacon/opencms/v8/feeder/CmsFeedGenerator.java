@@ -48,9 +48,14 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 
+import javax.xml.stream.XMLStreamException;
+
+import com.sun.syndication.feed.synd.SyndEntry;
 import com.sun.syndication.feed.synd.SyndFeed;
 import com.sun.syndication.feed.synd.SyndFeedImpl;
 import com.sun.syndication.feed.synd.SyndImage;
@@ -60,6 +65,9 @@ import com.sun.syndication.io.SyndFeedOutput;
 /**
  * Creates a syndication feed from a List of XML content resources.<p>
  * 
+ * The feed entries created from the XML content resources are cached in the {@link CmsFeedCache}, 
+ * so only new or modified XML contents are read and mapped again.<p>
+ * 
  * @author Alexander Kandzior 
  * @author Michael Moossen
  * 
@@ -67,12 +75,18 @@ import com.sun.syndication.io.SyndFeedOutput;
  */
 public class CmsFeedGenerator {
 
+    /** The default number of resources from which on the feed is written with the {@link CmsFeedStreamWriter}. */
+    public static final int DEFAULT_STREAMING_THRESHOLD = 1000;
+
     /** Place holder for content handler defined mappings. */
     private static final CmsFeedContentMapping EMPTY_MAPPING = new CmsFeedContentMapping();
 
     /** This is a list of lists of XML content entries that make up the feed. */
     private List m_contentEntriesList;
 
+    /** Indicates if the last created feed contains entries created from form data. */
+    private boolean m_dataDriven;
+
     /** This id a list of default XML content mappings that apply in case the XML content does not use a special feed handler. */
     private List m_defaultMappingList;
 
@@ -97,6 +111,9 @@ public class CmsFeedGenerator {
     /** The type of the feed. */
     private String m_feedType;
 
+    /** The number of resources from which on the feed is written with the {@link CmsFeedStreamWriter}. */
+    private int m_streamingThreshold;
+
     /**
      * Creates a new, empty feed generator.<p>
      */
@@ -104,6 +121,7 @@ public class CmsFeedGenerator {
 
         m_contentEntriesList = new ArrayList();
         m_defaultMappingList = new ArrayList();
+        m_streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
     }
 
     /**
@@ -159,36 +177,10 @@ public class CmsFeedGenerator {
     public SyndFeed getFeed(CmsObject cms, Locale locale) throws CmsException {
 
         // create the feed instance
-        SyndFeed feed = new SyndFeedImpl();
-        // set the main feed parameters
-        if (CmsStringUtil.isNotEmpty(m_feedType)) {
-            feed.setFeedType(m_feedType);
-        }
-        if (CmsStringUtil.isNotEmpty(m_feedTitle)) {
-            feed.setTitle(m_feedTitle);
-        }
-        if (CmsStringUtil.isNotEmpty(m_feedLink)) {
-            feed.setLink(m_feedLink);
-        }
-        if (CmsStringUtil.isNotEmpty(m_feedDescription)) {
-            feed.setDescription(m_feedDescription);
-        }
-        if (m_feedImage != null) {
-            feed.setImage(m_feedImage);
-        }
-        if (CmsStringUtil.isNotEmpty(m_feedEncoding)) {
-            feed.setEncoding(CmsEncoder.lookupEncoding(m_feedEncoding, OpenCms.getSystemInfo().getDefaultEncoding()));
-        } else {
-            // use OpenCms default if nothing is set
-            feed.setEncoding(OpenCms.getSystemInfo().getDefaultEncoding());
-        }
-        if (CmsStringUtil.isNotEmpty(locale.getLanguage())) {
-            feed.setLanguage(locale.getLanguage());
-        }
-        if (CmsStringUtil.isNotEmpty(m_feedCopyright)) {
-            feed.setCopyright(m_feedCopyright);
-        }
+        SyndFeed feed = createFeed(locale);
 
+        CmsFeedCache cache = CmsFeedCache.getSharedInstance();
+        m_dataDriven = false;
         List allEntries = new ArrayList();
         for (int k = 0; k < m_contentEntriesList.size(); k++) {
             List contentEntries = (List)m_contentEntriesList.get(k);
@@ -196,27 +188,7 @@ public class CmsFeedGenerator {
             // now add the entries
             for (int i = 0; i < contentEntries.size(); i++) {
                 // iterate over all content entries
-                Object obj = contentEntries.get(i);
-                CmsXmlContent content;
-                if (obj instanceof CmsXmlContent) {
-                    content = (CmsXmlContent)obj;
-                } else {
-                    CmsResource res = (CmsResource)obj;
-                    CmsFile file = cms.readFile(res);
-                    content = CmsXmlContentFactory.unmarshal(cms, file);
-                }
-                I_CmsXmlContentHandler handler = content.getContentDefinition().getContentHandler();
-                CmsFeedContentMapping mapping = null;
-                if (handler instanceof CmsFeedXmlContentHandler) {
-                    // this content has a special feed handler
-                    mapping = ((CmsFeedXmlContentHandler)handler).getFeedMapping();
-                } else {
-                    // check if default handler applies to the content
-                    mapping = defaultMapping;
-                }
-                if (mapping != null) {
-                    allEntries.addAll(mapping.getRssEntries(cms, content, locale));
-                }
+                allEntries.addAll(createEntries(cms, locale, contentEntries.get(i), defaultMapping, cache));
             }
         }
         // set the feed entries
@@ -295,6 +267,32 @@ public class CmsFeedGenerator {
         return m_feedType;
     }
 
+    /**
+     * Returns the number of resources from which on the feed is written with the {@link CmsFeedStreamWriter}.<p>
+     *
+     * @return the number of resources from which on the feed is streamed
+     * 
+     * @see #setStreamingThreshold(int)
+     */
+    public int getStreamingThreshold() {
+
+        return m_streamingThreshold;
+    }
+
+    /**
+     * Returns <code>true</code> if the feed created last by {@link #getFeed(CmsObject, Locale)} 
+     * contains entries created from form data.<p>
+     * 
+     * The form data may change without any XML content of the feed being modified, 
+     * so such a feed must not be cached.<p>
+     * 
+     * @return <code>true</code> if the last created feed contains entries created from form data
+     */
+    public boolean isDataDriven() {
+
+        return m_dataDriven;
+    }
+
     /**
      * Sets the list of XML content entries that make up the feed.<p>
      *
@@ -371,6 +369,20 @@ public class CmsFeedGenerator {
         m_feedTitle = feedTitle;
     }
 
+    /**
+     * Sets the number of resources from which on the feed is written with the {@link CmsFeedStreamWriter}.<p>
+     * 
+     * The stream writer writes every entry as soon as it is created, instead of building the whole feed 
+     * in memory first, but supports only RSS 2.0 and Atom 1.0 feeds. 
+     * Use <code>0</code> to always stream these feed types, or a negative value to never stream.<p>
+     *
+     * @param streamingThreshold the number of resources from which on the feed is streamed
+     */
+    public void setStreamingThreshold(int streamingThreshold) {
+
+        m_streamingThreshold = streamingThreshold;
+    }
+
     /**
      * Sets the type of the feed.<p>
      *
@@ -411,8 +423,201 @@ public class CmsFeedGenerator {
      */
     public void write(CmsObject cms, Locale locale, Writer writer) throws IOException, FeedException, CmsException {
 
+        if (isStreaming()) {
+            writeStreaming(cms, locale, writer);
+            return;
+        }
         SyndFeed feed = getFeed(cms, locale);
         SyndFeedOutput out = new SyndFeedOutput();
         out.output(feed, writer);
     }
+
+    /**
+     * Creates the feed instance with the main feed parameters, but without any entry.<p>
+     * 
+     * @param locale the currently selected locale to use for the feed
+     * 
+     * @return the feed instance without any entry
+     */
+    protected SyndFeed createFeed(Locale locale) {
+
+        SyndFeed feed = new SyndFeedImpl();
+        // set the main feed parameters
+        if (CmsStringUtil.isNotEmpty(m_feedType)) {
+            feed.setFeedType(m_feedType);
+        }
+        if (CmsStringUtil.isNotEmpty(m_feedTitle)) {
+            feed.setTitle(m_feedTitle);
+        }
+        if (CmsStringUtil.isNotEmpty(m_feedLink)) {
+            feed.setLink(m_feedLink);
+        }
+        if (CmsStringUtil.isNotEmpty(m_feedDescription)) {
+            feed.setDescription(m_feedDescription);
+        }
+        if (m_feedImage != null) {
+            feed.setImage(m_feedImage);
+        }
+        if (CmsStringUtil.isNotEmpty(m_feedEncoding)) {
+            feed.setEncoding(CmsEncoder.lookupEncoding(m_feedEncoding, OpenCms.getSystemInfo().getDefaultEncoding()));
+        } else {
+            // use OpenCms default if nothing is set
+            feed.setEncoding(OpenCms.getSystemInfo().getDefaultEncoding());
+        }
+        if (CmsStringUtil.isNotEmpty(locale.getLanguage())) {
+            feed.setLanguage(locale.getLanguage());
+        }
+        if (CmsStringUtil.isNotEmpty(m_feedCopyright)) {
+            feed.setCopyright(m_feedCopyright);
+        }
+        return feed;
+    }
+
+    /**
+     * Returns the feed entries for one collected XML content, from the {@link CmsFeedCache} if possible.<p>
+     * 
+     * @param cms the OpenCms user context to generate the feed with
+     * @param locale the currently selected locale to use for the feed
+     * @param obj the collected XML content, either a {@link CmsResource} or an unmarshalled {@link CmsXmlContent}
+     * @param defaultMapping the default mapping of the resource set the XML content was collected for
+     * @param cache the feed cache
+     * 
+     * @return the list of {@link com.sun.syndication.feed.synd.SyndEntry} objects for the XML content
+     * 
+     * @throws CmsException in case of errors accessing the OpenCms VFS 
+     */
+    protected List createEntries(
+        CmsObject cms,
+        Locale locale,
+        Object obj,
+        CmsFeedContentMapping defaultMapping,
+        CmsFeedCache cache) throws CmsException {
+
+        CmsXmlContent content = null;
+        if (obj instanceof CmsXmlContent) {
+            content = (CmsXmlContent)obj;
+        }
+        CmsResource res = getResource(obj);
+        // the entries only depend on the content, the locale and the default mapping of this resource set,
+        // as the feed handler of the content is given by the content itself
+        String key = CmsFeedCache.getEntriesKey(cms, res, locale, defaultMapping);
+        List entries = cache.getEntries(key);
+        if (entries != null) {
+            return entries;
+        }
+        if (content == null) {
+            CmsFile file = cms.readFile(res);
+            content = CmsXmlContentFactory.unmarshal(cms, file);
+        }
+        I_CmsXmlContentHandler handler = content.getContentDefinition().getContentHandler();
+        CmsFeedContentMapping mapping = null;
+        if (handler instanceof CmsFeedXmlContentHandler) {
+            // this content has a special feed handler
+            mapping = ((CmsFeedXmlContentHandler)handler).getFeedMapping();
+        } else {
+            // check if default handler applies to the content
+            mapping = defaultMapping;
+        }
+        if (mapping == null) {
+            entries = Collections.EMPTY_LIST;
+        } else {
+            entries = mapping.getRssEntries(cms, content, locale);
+        }
+        if ((mapping != null) && mapping.isDataDriven()) {
+            // the form data may change without the content being modified
+            m_dataDriven = true;
+        } else {
+            entries = cache.putEntries(key, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns if the feed is written with the {@link CmsFeedStreamWriter}.<p>
+     * 
+     * @return <code>true</code> if the feed is written with the {@link CmsFeedStreamWriter}
+     * 
+     * @see #setStreamingThreshold(int)
+     */
+    protected boolean isStreaming() {
+
+        if ((m_streamingThreshold < 0) || !CmsFeedStreamWriter.isSupported(m_feedType)) {
+            return false;
+        }
+        int count = 0;
+        for (int k = 0; k < m_contentEntriesList.size(); k++) {
+            count += ((List)m_contentEntriesList.get(k)).size();
+        }
+        return count >= m_streamingThreshold;
+    }
+
+    /**
+     * Writes the feed with the {@link CmsFeedStreamWriter}, every entry is written as soon as it is created.<p>
+     * 
+     * @param cms the current users OpenCms context
+     * @param locale the locale to use
+     * @param writer the writer to write the feed to
+     * 
+     * @throws IOException in case of errors writing to the stream
+     * @throws FeedException in case of errors generating the feed
+     * @throws CmsException in case of errors accessing the OpenCms VFS
+     */
+    protected void writeStreaming(CmsObject cms, Locale locale, Writer writer)
+    throws IOException, FeedException, CmsException {
+
+        SyndFeed feed = createFeed(locale);
+        CmsFeedCache cache = CmsFeedCache.getSharedInstance();
+        m_dataDriven = false;
+        long dateLastModified = calculateDateLastModified();
+        try {
+            CmsFeedStreamWriter out = new CmsFeedStreamWriter(writer, m_feedType);
+            out.writeStart(feed, (dateLastModified > 0) ? new Date(dateLastModified) : null);
+            for (int k = 0; k < m_contentEntriesList.size(); k++) {
+                List contentEntries = (List)m_contentEntriesList.get(k);
+                CmsFeedContentMapping defaultMapping = (CmsFeedContentMapping)m_defaultMappingList.get(k);
+                for (int i = 0; i < contentEntries.size(); i++) {
+                    List entries = createEntries(cms, locale, contentEntries.get(i), defaultMapping, cache);
+                    for (int j = 0; j < entries.size(); j++) {
+                        out.writeEntry((SyndEntry)entries.get(j));
+                    }
+                }
+            }
+            out.writeEnd();
+        } catch (XMLStreamException e) {
+            throw new FeedException(e.getLocalizedMessage(), e);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Returns the latest date of last modification of all collected XML contents.<p>
+     * 
+     * @return the latest date of last modification of all collected XML contents
+     */
+    private long calculateDateLastModified() {
+
+        long result = 0;
+        for (int k = 0; k < m_contentEntriesList.size(); k++) {
+            List contentEntries = (List)m_contentEntriesList.get(k);
+            for (int i = 0; i < contentEntries.size(); i++) {
+                result = Math.max(result, getResource(contentEntries.get(i)).getDateLastModified());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the resource of a collected XML content.<p>
+     * 
+     * @param obj the collected XML content, either a {@link CmsResource} or an unmarshalled {@link CmsXmlContent}
+     * 
+     * @return the resource of the collected XML content
+     */
+    private CmsResource getResource(Object obj) {
+
+        if (obj instanceof CmsXmlContent) {
+            return ((CmsXmlContent)obj).getFile();
+        }
+        return (CmsResource)obj;
+    }
 }
\ No newline at end of file
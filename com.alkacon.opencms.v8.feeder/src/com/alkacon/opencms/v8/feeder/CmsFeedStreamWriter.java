@@ -0,0 +1,336 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.feeder/src/com/alkacon/opencms/v8/feeder/CmsFeedStreamWriter.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.feeder;
+
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.sun.syndication.feed.synd.SyndContent;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.feed.synd.SyndImage;
+
+/**
+ * Writes a RSS 2.0 or Atom 1.0 feed entry by entry, without building the document of the whole feed in memory.<p>
+ * 
+ * Call {@link #writeStart(SyndFeed, Date)} once, then {@link #writeEntry(SyndEntry)} for every entry as 
+ * it is created, and finally {@link #writeEnd()}. The entries of the given feed are ignored, 
+ * only the feed title, link, description, language, copyright and image are written.<p>
+ * 
+ * This writer is used by the {@link CmsFeedGenerator} for large feeds, all other feed types 
+ * and smaller feeds are written with the ROME <code>SyndFeedOutput</code>.<p>
+ * 
+ * @author Michael Moossen
+ * 
+ * @version $Revision: 1.1 $ 
+ * 
+ * @since 8.0.2
+ */
+public class CmsFeedStreamWriter {
+
+    /** The ROME feed type for Atom 1.0. */
+    public static final String FEED_TYPE_ATOM = "atom_1.0";
+
+    /** The ROME feed type for RSS 2.0. */
+    public static final String FEED_TYPE_RSS = "rss_2.0";
+
+    /** The Atom namespace. */
+    private static final String NS_ATOM = "http://www.w3.org/2005/Atom";
+
+    /** The Dublin Core namespace, used for the RSS item author. */
+    private static final String NS_DC = "http://purl.org/dc/elements/1.1/";
+
+    /** The XML namespace, used for the Atom language attribute. */
+    private static final String NS_XML = "http://www.w3.org/XML/1998/namespace";
+
+    /** The factory for the XML stream writers. */
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    /** Indicates if an Atom feed is written, otherwise a RSS feed is written. */
+    private boolean m_atom;
+
+    /** The format for the dates, RFC 3339 for Atom and RFC 822 for RSS. */
+    private DateFormat m_dateFormat;
+
+    /** The XML stream writer. */
+    private XMLStreamWriter m_out;
+
+    /**
+     * Creates a new feed stream writer.<p>
+     * 
+     * @param writer the writer to write the feed to
+     * @param feedType the ROME feed type, must be supported, see {@link #isSupported(String)}
+     * 
+     * @throws XMLStreamException in case the XML stream writer could not be created
+     */
+    public CmsFeedStreamWriter(Writer writer, String feedType)
+    throws XMLStreamException {
+
+        if (!isSupported(feedType)) {
+            throw new IllegalArgumentException(feedType);
+        }
+        m_out = OUTPUT_FACTORY.createXMLStreamWriter(writer);
+        m_atom = FEED_TYPE_ATOM.equals(feedType);
+        if (m_atom) {
+            m_dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        } else {
+            m_dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        }
+        m_dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    /**
+     * Returns if the given ROME feed type can be written by this writer.<p>
+     * 
+     * @param feedType the ROME feed type, e.g. <code>rss_2.0</code>
+     * 
+     * @return <code>true</code> if the given feed type can be written by this writer
+     */
+    public static boolean isSupported(String feedType) {
+
+        return FEED_TYPE_RSS.equals(feedType) || FEED_TYPE_ATOM.equals(feedType);
+    }
+
+    /**
+     * Writes the end of the feed and flushes the underlying writer.<p>
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    public void writeEnd() throws XMLStreamException {
+
+        if (!m_atom) {
+            // close the channel
+            m_out.writeEndElement();
+            newLine();
+        }
+        m_out.writeEndElement();
+        m_out.writeEndDocument();
+        m_out.flush();
+    }
+
+    /**
+     * Writes a feed entry.<p>
+     * 
+     * @param entry the entry to write
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    public void writeEntry(SyndEntry entry) throws XMLStreamException {
+
+        String id = entry.getUri();
+        if (id == null) {
+            id = entry.getLink();
+        }
+        SyndContent description = entry.getDescription();
+        if (m_atom) {
+            m_out.writeStartElement("entry");
+            newLine();
+            writeElement("title", entry.getTitle());
+            writeLink(entry.getLink());
+            writeElement("id", id);
+            writeDate("published", entry.getPublishedDate());
+            // the updated date is required for Atom entries
+            writeDate("updated", (entry.getUpdatedDate() != null) ? entry.getUpdatedDate() : entry.getPublishedDate());
+            if (entry.getAuthor() != null) {
+                m_out.writeStartElement("author");
+                writeElement("name", entry.getAuthor());
+                m_out.writeEndElement();
+                newLine();
+            }
+            if ((description != null) && (description.getValue() != null)) {
+                m_out.writeStartElement("summary");
+                if (CmsFeedContentMapping.CONTENT_TYPE_HTML.equals(description.getType())) {
+                    m_out.writeAttribute("type", "html");
+                } else {
+                    m_out.writeAttribute("type", "text");
+                }
+                m_out.writeCharacters(description.getValue());
+                m_out.writeEndElement();
+                newLine();
+            }
+        } else {
+            m_out.writeStartElement("item");
+            newLine();
+            writeElement("title", entry.getTitle());
+            writeElement("link", entry.getLink());
+            if (description != null) {
+                writeElement("description", description.getValue());
+            }
+            writeDate("pubDate", entry.getPublishedDate());
+            if (id != null) {
+                m_out.writeStartElement("guid");
+                m_out.writeAttribute("isPermaLink", String.valueOf(id.equals(entry.getLink())));
+                m_out.writeCharacters(id);
+                m_out.writeEndElement();
+                newLine();
+            }
+            if (entry.getAuthor() != null) {
+                m_out.writeStartElement(NS_DC, "creator");
+                m_out.writeCharacters(entry.getAuthor());
+                m_out.writeEndElement();
+                newLine();
+            }
+        }
+        m_out.writeEndElement();
+        newLine();
+    }
+
+    /**
+     * Writes the start of the feed, with all feed properties but without any entry.<p>
+     * 
+     * @param feed the feed to write the properties of
+     * @param updated the date the feed was last updated, required for Atom
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    public void writeStart(SyndFeed feed, Date updated) throws XMLStreamException {
+
+        String encoding = feed.getEncoding();
+        if (encoding == null) {
+            m_out.writeStartDocument();
+        } else {
+            m_out.writeStartDocument(encoding, "1.0");
+        }
+        newLine();
+        SyndImage image = feed.getImage();
+        if (m_atom) {
+            m_out.setDefaultNamespace(NS_ATOM);
+            m_out.writeStartElement(NS_ATOM, "feed");
+            m_out.writeDefaultNamespace(NS_ATOM);
+            if (feed.getLanguage() != null) {
+                m_out.writeAttribute("xml", NS_XML, "lang", feed.getLanguage());
+            }
+            newLine();
+            writeElement("title", feed.getTitle());
+            writeLink(feed.getLink());
+            writeElement("id", feed.getLink());
+            writeDate("updated", (updated != null) ? updated : new Date());
+            writeElement("subtitle", feed.getDescription());
+            writeElement("rights", feed.getCopyright());
+            if (image != null) {
+                writeElement("logo", image.getUrl());
+            }
+        } else {
+            m_out.setPrefix("dc", NS_DC);
+            m_out.writeStartElement("rss");
+            m_out.writeNamespace("dc", NS_DC);
+            m_out.writeAttribute("version", "2.0");
+            newLine();
+            m_out.writeStartElement("channel");
+            newLine();
+            writeElement("title", feed.getTitle());
+            writeElement("link", feed.getLink());
+            // the description is required for RSS channels
+            writeElement("description", (feed.getDescription() != null) ? feed.getDescription() : "");
+            writeElement("language", feed.getLanguage());
+            writeElement("copyright", feed.getCopyright());
+            if (image != null) {
+                m_out.writeStartElement("image");
+                writeElement("title", image.getTitle());
+                writeElement("url", image.getUrl());
+                writeElement("link", image.getLink());
+                writeElement("description", image.getDescription());
+                m_out.writeEndElement();
+                newLine();
+            }
+        }
+    }
+
+    /**
+     * Writes a line break, to keep the output readable.<p>
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    private void newLine() throws XMLStreamException {
+
+        m_out.writeCharacters("\n");
+    }
+
+    /**
+     * Writes a date element, if the date is not <code>null</code>.<p>
+     * 
+     * @param name the element name
+     * @param date the date
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    private void writeDate(String name, Date date) throws XMLStreamException {
+
+        if (date != null) {
+            writeElement(name, m_dateFormat.format(date));
+        }
+    }
+
+    /**
+     * Writes a simple text element, if the text is not <code>null</code>.<p>
+     * 
+     * @param name the element name
+     * @param text the text
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    private void writeElement(String name, String text) throws XMLStreamException {
+
+        if (text != null) {
+            m_out.writeStartElement(name);
+            m_out.writeCharacters(text);
+            m_out.writeEndElement();
+            newLine();
+        }
+    }
+
+    /**
+     * Writes an Atom alternate link, if the link is not <code>null</code>.<p>
+     * 
+     * @param href the link
+     * 
+     * @throws XMLStreamException in case of errors writing the feed
+     */
+    private void writeLink(String href) throws XMLStreamException {
+
+        if (href != null) {
+            m_out.writeEmptyElement("link");
+            m_out.writeAttribute("rel", "alternate");
+            m_out.writeAttribute("href", href);
+            newLine();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.feeder/test/com/alkacon/opencms/v8/feeder/BenchmarkFeedStreamWriter.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.feeder;
+
+import org.opencms.main.CmsLog;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.SyndFeedOutput;
+
+/**
+ * Compares the streaming feed writer with the ROME feed output for large feeds, by time and by peak heap usage.<p>
+ *
+ * This is no unit test, since the results depend on the machine and the JVM settings. 
+ * Run it with <code>java com.alkacon.opencms.v8.feeder.BenchmarkFeedStreamWriter [entries]</code>,
+ * the results are written to the log.<p>
+ *
+ * @author Michael Moossen
+ *  
+ * @version $Revision: 1.1 $
+ */
+public final class BenchmarkFeedStreamWriter {
+
+    /** The default number of entries of the benchmark feeds. */
+    public static final int DEFAULT_ENTRIES = 10000;
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(BenchmarkFeedStreamWriter.class);
+
+    /** The number of entries of the benchmark feeds. */
+    private int m_entries;
+
+    /**
+     * Creates a new benchmark.<p>
+     * 
+     * @param entries the number of entries of the benchmark feeds
+     */
+    public BenchmarkFeedStreamWriter(int entries) {
+
+        m_entries = entries;
+    }
+
+    /**
+     * Runs the benchmark for RSS and Atom feeds.<p>
+     * 
+     * @param args the number of entries of the benchmark feeds, optional
+     * 
+     * @throws Exception if writing or reading a feed fails
+     */
+    public static void main(String[] args) throws Exception {
+
+        int entries = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ENTRIES;
+        BenchmarkFeedStreamWriter benchmark = new BenchmarkFeedStreamWriter(entries);
+        benchmark.run(CmsFeedStreamWriter.FEED_TYPE_RSS);
+        benchmark.run(CmsFeedStreamWriter.FEED_TYPE_ATOM);
+    }
+
+    /**
+     * Writes a feed of the given type with ROME and with the streaming writer, 
+     * and logs the time and peak heap usage of both ways.<p>
+     * 
+     * The ROME output needs the list of all entries, 
+     * while the streaming writer writes every entry as soon as it is created.<p>
+     * 
+     * @param type the feed type
+     * 
+     * @throws Exception if writing or reading a feed fails
+     */
+    public void run(String type) throws Exception {
+
+        // warm up both ways once, then measure
+        writeRome(type, new StringWriter());
+        writeStreaming(type, new StringWriter());
+
+        resetPeakHeap();
+        long time = System.currentTimeMillis();
+        StringWriter rome = new StringWriter(m_entries * 512);
+        writeRome(type, rome);
+        time = System.currentTimeMillis() - time;
+        long heap = getPeakHeap();
+        LOG.info(type + " ROME:      " + time + " ms, peak heap " + (heap >> 20) + " MB");
+
+        resetPeakHeap();
+        time = System.currentTimeMillis();
+        StringWriter streamed = new StringWriter(m_entries * 512);
+        writeStreaming(type, streamed);
+        time = System.currentTimeMillis() - time;
+        heap = getPeakHeap();
+        LOG.info(type + " streaming: " + time + " ms, peak heap " + (heap >> 20) + " MB");
+
+        SyndFeed feed = new SyndFeedInput().build(new StringReader(streamed.toString()));
+        if (feed.getEntries().size() != m_entries) {
+            throw new IllegalStateException(type + ": " + feed.getEntries().size() + " entries read");
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usage of all heap memory pools since the last reset.<p>
+     * 
+     * @return the peak heap usage in bytes
+     */
+    private long getPeakHeap() {
+
+        long result = 0;
+        Iterator i = ManagementFactory.getMemoryPoolMXBeans().iterator();
+        while (i.hasNext()) {
+            MemoryPoolMXBean pool = (MemoryPoolMXBean)i.next();
+            if (pool.getType() == MemoryType.HEAP) {
+                result += pool.getPeakUsage().getUsed();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the garbage collection and resets the peak usage of all memory pools.<p>
+     */
+    private void resetPeakHeap() {
+
+        System.gc();
+        Iterator i = ManagementFactory.getMemoryPoolMXBeans().iterator();
+        while (i.hasNext()) {
+            ((MemoryPoolMXBean)i.next()).resetPeakUsage();
+        }
+    }
+
+    /**
+     * Writes a feed with the configured number of entries with the ROME feed output.<p>
+     * 
+     * @param type the feed type
+     * @param out the writer to write the feed to
+     * 
+     * @throws Exception in case writing the feed fails
+     */
+    private void writeRome(String type, Writer out) throws Exception {
+
+        SyndFeed feed = TestFeedStreamWriter.createFeed(type);
+        List entries = new ArrayList(m_entries);
+        for (int i = 0; i < m_entries; i++) {
+            entries.add(TestFeedStreamWriter.createEntry(i));
+        }
+        feed.setEntries(entries);
+        new SyndFeedOutput().output(feed, out);
+    }
+
+    /**
+     * Writes a feed with the configured number of entries with the streaming writer.<p>
+     * 
+     * @param type the feed type
+     * @param out the writer to write the feed to
+     * 
+     * @throws Exception in case writing the feed fails
+     */
+    private void writeStreaming(String type, Writer out) throws Exception {
+
+        CmsFeedStreamWriter writer = new CmsFeedStreamWriter(out, type);
+        writer.writeStart(TestFeedStreamWriter.createFeed(type), TestFeedStreamWriter.DATE);
+        for (int i = 0; i < m_entries; i++) {
+            writer.writeEntry(TestFeedStreamWriter.createEntry(i));
+        }
+        writer.writeEnd();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.feeder/test/com/alkacon/opencms/v8/feeder/TestFeedStreamWriter.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.feeder;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.sun.syndication.feed.synd.SyndContent;
+import com.sun.syndication.feed.synd.SyndContentImpl;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndEntryImpl;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.feed.synd.SyndFeedImpl;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.SyndFeedOutput;
+
+/**
+ * Tests the streaming feed writer, by comparing it to the ROME feed output.<p>
+ *
+ * For a comparison of time and memory with large feeds see {@link BenchmarkFeedStreamWriter}.<p>
+ *
+ * @author Michael Moossen
+ *  
+ * @version $Revision: 1.1 $
+ */
+public class TestFeedStreamWriter extends TestCase {
+
+    /** The date of all test entries. */
+    static final Date DATE = new Date(1350554400000L);
+
+    /**
+     * Default JUnit constructor.<p>
+     * 
+     * @param arg0 JUnit parameters
+     */
+    public TestFeedStreamWriter(String arg0) {
+
+        super(arg0);
+    }
+
+    /**
+     * Tests that the Atom output of the streaming writer is read by ROME like the ROME output.<p>
+     * 
+     * @throws Exception in case the test fails
+     */
+    public void testAtom() throws Exception {
+
+        checkRoundTrip(CmsFeedStreamWriter.FEED_TYPE_ATOM);
+    }
+
+    /**
+     * Tests that the RSS output of the streaming writer is read by ROME like the ROME output.<p>
+     * 
+     * @throws Exception in case the test fails
+     */
+    public void testRss() throws Exception {
+
+        checkRoundTrip(CmsFeedStreamWriter.FEED_TYPE_RSS);
+    }
+
+    /**
+     * Writes a small feed of the given type with ROME and with the streaming writer, 
+     * and compares the feeds read back by ROME.<p>
+     * 
+     * @param type the feed type
+     * 
+     * @throws Exception in case the test fails
+     */
+    private void checkRoundTrip(String type) throws Exception {
+
+        SyndFeed feed = createFeed(type);
+        List entries = new ArrayList();
+        for (int i = 0; i < 5; i++) {
+            entries.add(createEntry(i));
+        }
+        feed.setEntries(entries);
+        StringWriter rome = new StringWriter();
+        new SyndFeedOutput().output(feed, rome);
+
+        StringWriter streamed = new StringWriter();
+        CmsFeedStreamWriter writer = new CmsFeedStreamWriter(streamed, type);
+        writer.writeStart(feed, DATE);
+        for (int i = 0; i < entries.size(); i++) {
+            writer.writeEntry((SyndEntry)entries.get(i));
+        }
+        writer.writeEnd();
+
+        SyndFeed expected = new SyndFeedInput().build(new StringReader(rome.toString()));
+        SyndFeed result = new SyndFeedInput().build(new StringReader(streamed.toString()));
+        assertEquals(type, result.getFeedType());
+        assertEquals(expected.getTitle(), result.getTitle());
+        assertEquals(expected.getLink(), result.getLink());
+        assertEquals(expected.getDescription(), result.getDescription());
+        assertEquals(expected.getEntries().size(), result.getEntries().size());
+        Iterator i = expected.getEntries().iterator();
+        Iterator j = result.getEntries().iterator();
+        while (i.hasNext()) {
+            SyndEntry e = (SyndEntry)i.next();
+            SyndEntry r = (SyndEntry)j.next();
+            assertEquals(e.getTitle(), r.getTitle());
+            assertEquals(e.getLink(), r.getLink());
+            assertEquals(e.getAuthor(), r.getAuthor());
+            assertEquals(e.getPublishedDate(), r.getPublishedDate());
+            assertEquals(e.getDescription().getValue(), r.getDescription().getValue());
+        }
+    }
+
+    /**
+     * Creates a test entry.<p>
+     * 
+     * @param i the number of the entry
+     * 
+     * @return the test entry
+     */
+    static SyndEntry createEntry(int i) {
+
+        SyndEntry entry = new SyndEntryImpl();
+        entry.setTitle("Entry " + i + " & more");
+        entry.setLink("http://localhost/opencms/entry_" + i + ".html");
+        entry.setAuthor("Author " + i);
+        entry.setPublishedDate(DATE);
+        SyndContent description = new SyndContentImpl();
+        description.setType(CmsFeedContentMapping.CONTENT_TYPE_HTML);
+        description.setValue("<p>This is the <b>description</b> of entry " + i + ".</p>");
+        entry.setDescription(description);
+        return entry;
+    }
+
+    /**
+     * Creates a test feed without entries.<p>
+     * 
+     * @param type the feed type
+     * 
+     * @return the test feed
+     */
+    static SyndFeed createFeed(String type) {
+
+        SyndFeed feed = new SyndFeedImpl();
+        feed.setFeedType(type);
+        feed.setTitle("Test feed");
+        feed.setLink("http://localhost/opencms/feed.xml");
+        feed.setDescription("A feed for testing");
+        feed.setLanguage("en");
+        feed.setEncoding("UTF-8");
+        return feed;
+    }
+}
@@ -1,7 +1,7 @@
 <%--  
 WARNING: Do not auto - reformat! In case of data download a linebreak will cause: 
 "java.lang.IllegalStateException: getOutputStream() has already been called for this response".
---%><%@page buffer="none" session="false" import="org.apache.commons.logging.*,java.io.OutputStreamWriter,org.opencms.module.CmsModule,org.opencms.i18n.*,com.alkacon.opencms.v8.formgenerator.database.export.*,org.opencms.flex.CmsFlexController,com.alkacon.opencms.v8.formgenerator.*,java.util.*,org.opencms.file.*,org.opencms.util.*,org.opencms.widgets.*,org.opencms.main.*,org.antlr.stringtemplate.*"%><%--
+--%><%@page buffer="none" session="false" import="org.apache.commons.logging.*,java.io.BufferedWriter,java.io.OutputStreamWriter,org.opencms.module.CmsModule,org.opencms.i18n.*,com.alkacon.opencms.v8.formgenerator.database.export.*,org.opencms.flex.CmsFlexController,com.alkacon.opencms.v8.formgenerator.*,java.util.*,org.opencms.file.*,org.opencms.util.*,org.opencms.widgets.*,org.opencms.main.*,org.antlr.stringtemplate.*"%><%--
 --%><%@ taglib prefix="cms" uri="http://www.opencms.org/taglib/cms"%><%! 
 private static final Log LOG = CmsLog.getLog(CmsCvsExportBean.class);
 %>
@@ -71,7 +71,7 @@ private static final Log LOG = CmsLog.getLog(CmsCvsExportBean.class);
         res.addHeader("Content-Disposition", "attachment; filename=" + form.getFormId() + ".csv;");
         res.addHeader("Content-Transfer-Encoding", "binary");
         ServletOutputStream output = null;
-        OutputStreamWriter writer = null;
+        BufferedWriter writer = null;
         try {	
             output = res.getOutputStream();
             CmsModule webformModule = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
@@ -79,8 +79,9 @@ private static final Log LOG = CmsLog.getLog(CmsCvsExportBean.class);
             if(CmsStringUtil.isEmptyOrWhitespaceOnly(encoding)) {
                 encoding = OpenCms.getSystemInfo().getDefaultEncoding();
             }
-            writer = new OutputStreamWriter(output, encoding);
-            writer.write(exportBean.exportData());
+            // stream the data, do not hold the complete export in memory
+            writer = new BufferedWriter(new OutputStreamWriter(output, encoding));
+            exportBean.exportData(writer);
         } catch(RuntimeException f) { 
         	LOG.error("Error serving data.", f);
         	throw f;
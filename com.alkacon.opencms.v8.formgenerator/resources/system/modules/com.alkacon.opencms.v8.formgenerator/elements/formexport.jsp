@@ -31,7 +31,7 @@ private static final Log LOG = CmsLog.getLog(CmsCvsExportBean.class);
         res.addHeader("Content-Disposition", "attachment; filename=" + formid + ".csv;");
         res.addHeader("Content-Transfer-Encoding", "binary");
         ServletOutputStream output = null;
-        OutputStreamWriter writer = null;
+        BufferedWriter writer = null;
         try {	
             output = res.getOutputStream();
             CmsModule webformModule = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
@@ -39,8 +39,9 @@ private static final Log LOG = CmsLog.getLog(CmsCvsExportBean.class);
             if(CmsStringUtil.isEmptyOrWhitespaceOnly(encoding)) {
                 encoding = OpenCms.getSystemInfo().getDefaultEncoding();
             }
-            writer = new OutputStreamWriter(output, encoding);
-            writer.write(exportBean.exportData(formid,request.getLocale()));
+            // stream the data, do not hold the complete export in memory
+            writer = new BufferedWriter(new OutputStreamWriter(output, encoding));
+            exportBean.exportData(formid, request.getLocale(), writer);
         } catch(RuntimeException f) { 
         	LOG.error("Error serving data.", f);
         	throw f;
@@ -43,6 +43,8 @@ import java.awt.image.ImageFilter;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 
@@ -100,6 +102,9 @@ public class CmsCaptchaEngine extends ImageCaptchaEngine {
     /** The list with default font prefix. */
     private static final List<String> DEFAULT_FONTS_PREFIX_LIST = CmsStringUtil.splitAsList(DEFAULT_FONTS_PREFIX, "|");
 
+    /** The system fonts filtered by prefix lists, since the system fonts do not change while running. */
+    private static final Map<List<String>, Font[]> FILTERED_FONTS = new ConcurrentHashMap<List<String>, Font[]>();
+
     /**
      * Creates a new Captcha engine.
      * <p>
@@ -157,6 +162,10 @@ public class CmsCaptchaEngine extends ImageCaptchaEngine {
      * Sets the settings.
      * <p>
      * 
+     * Do not use this for engines returned by {@link CmsCaptchaServiceCache#getCaptchaEngine(CmsCaptchaSettings)}, 
+     * as they are shared by all captcha services with equal settings.
+     * <p>
+     * 
      * @param settings the settings to set
      */
     public void setSettings(CmsCaptchaSettings settings) {
@@ -226,7 +235,13 @@ public class CmsCaptchaEngine extends ImageCaptchaEngine {
             font = new RandomFontGenerator(new Integer(m_settings.getMinFontSize()), new Integer(
                 m_settings.getMaxFontSize()));
         } else {
-            Font[] fonts = getFilteredFonts(fontPrefix);
+            Font[] fonts = FILTERED_FONTS.get(fontPrefix);
+            if (fonts == null) {
+                fonts = getFilteredFonts(fontPrefix);
+                FILTERED_FONTS.put(new ArrayList<String>(fontPrefix), fonts);
+            }
+            // the font generator gets an own copy of the cached array
+            fonts = fonts.clone();
             if (fonts.length > 0) {
 
                 LOG.debug(Messages.get().getBundle().key(Messages.DEBUG_CAPTCHA_USE_FONT_0));
@@ -49,6 +49,9 @@ import com.octo.captcha.service.image.AbstractManageableImageCaptchaService;
  */
 public class CmsCaptchaService extends AbstractManageableImageCaptchaService {
 
+    /** The fingerprint of the settings the current engine renders with. */
+    private volatile String m_fingerprint;
+
     /**
      * Creates a new captcha service.
      * <p>
@@ -65,23 +68,31 @@ public class CmsCaptchaService extends AbstractManageableImageCaptchaService {
      */
     public CmsCaptchaService(CmsCaptchaSettings captchaSettings) {
 
-        super(new MapCaptchaStore(), new CmsCaptchaEngine(captchaSettings), 180, 100000, 75000);
+        super(
+            new MapCaptchaStore(),
+            CmsCaptchaServiceCache.getSharedInstance().getCaptchaEngine(captchaSettings),
+            180,
+            100000,
+            75000);
+        m_fingerprint = captchaSettings.getFingerprint();
     }
 
     /**
      * Implant new captcha settings to this service.
      * <p>
-     * This is an expensive method as new Image filters and many processing objects are allocated anew. 
-     * Prefer using the {@link CmsCaptchaServiceCache#getCaptchaService(CmsCaptchaSettings, org.opencms.file.CmsObject)} method instead. 
-     * It will return cached instances for equal settings.
+     * Nothing is done if the settings did not change. Otherwise the engine for the new settings 
+     * is taken from the {@link CmsCaptchaServiceCache}, so it is only built once per settings.
      * <p>
      *
      * @param settings the captcha settings to implant.
      */
     protected void setSettings(CmsCaptchaSettings settings) {
 
-        CmsCaptchaEngine captchaEngine = (CmsCaptchaEngine)engine;
-        captchaEngine.setSettings(settings);
+        String fingerprint = settings.getFingerprint();
+        if (!fingerprint.equals(m_fingerprint)) {
+            engine = CmsCaptchaServiceCache.getSharedInstance().getCaptchaEngine(settings);
+            m_fingerprint = fingerprint;
+        }
     }
 
 }
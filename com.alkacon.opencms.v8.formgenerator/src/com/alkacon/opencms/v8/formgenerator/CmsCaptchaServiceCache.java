@@ -37,8 +37,7 @@ import org.opencms.main.CmsEvent;
 import org.opencms.main.I_CmsEventListener;
 import org.opencms.main.OpenCms;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.octo.captcha.service.CaptchaService;
 
@@ -56,13 +55,16 @@ import com.octo.captcha.service.CaptchaService;
 public final class CmsCaptchaServiceCache implements I_CmsEventListener {
 
     /** The shared instance of the captcha service cache. */
-    private static CmsCaptchaServiceCache sharedInstance;
+    private static volatile CmsCaptchaServiceCache sharedInstance;
+
+    /** Stores the captcha engines, the key is the settings fingerprint. */
+    private final ConcurrentHashMap<String, CmsCaptchaEngine> m_captchaEngines;
 
     /** Stores the captcha services. */
-    private Map<String, CmsCaptchaService> m_captchaServices;
+    private final ConcurrentHashMap<String, CmsCaptchaService> m_captchaServices;
 
     /** Stores the maptcha services. */
-    private Map<String, CmsMaptchaService> m_maptchaServices;
+    private final ConcurrentHashMap<String, CmsMaptchaService> m_maptchaServices;
 
     /**
      * Default constructor.
@@ -79,8 +81,9 @@ public final class CmsCaptchaServiceCache implements I_CmsEventListener {
             I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
             I_CmsEventListener.EVENT_PUBLISH_PROJECT});
 
-        m_captchaServices = new HashMap<String, CmsCaptchaService>();
-        m_maptchaServices = new HashMap<String, CmsMaptchaService>();
+        m_captchaEngines = new ConcurrentHashMap<String, CmsCaptchaEngine>();
+        m_captchaServices = new ConcurrentHashMap<String, CmsCaptchaService>();
+        m_maptchaServices = new ConcurrentHashMap<String, CmsMaptchaService>();
     }
 
     /**
@@ -89,13 +92,19 @@ public final class CmsCaptchaServiceCache implements I_CmsEventListener {
      * 
      * @return the shared instance of the captcha service cache
      */
-    public static synchronized CmsCaptchaServiceCache getSharedInstance() {
-
-        if (sharedInstance == null) {
-            sharedInstance = new CmsCaptchaServiceCache();
+    public static CmsCaptchaServiceCache getSharedInstance() {
+
+        CmsCaptchaServiceCache result = sharedInstance;
+        if (result == null) {
+            synchronized (CmsCaptchaServiceCache.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new CmsCaptchaServiceCache();
+                    sharedInstance = result;
+                }
+            }
         }
-
-        return sharedInstance;
+        return result;
     }
 
     /**
@@ -117,24 +126,43 @@ public final class CmsCaptchaServiceCache implements I_CmsEventListener {
         }
     }
 
+    /**
+     * Returns the captcha engine for the given settings.
+     * <p>
+     * 
+     * Building a captcha engine is expensive, so the engines are cached by the fingerprint of the settings 
+     * and shared by all captcha services rendering with equal settings.
+     * <p>
+     * 
+     * @param captchaSettings the settings to render captcha images
+     * 
+     * @return the captcha engine
+     */
+    public CmsCaptchaEngine getCaptchaEngine(CmsCaptchaSettings captchaSettings) {
+
+        String key = captchaSettings.getFingerprint();
+        CmsCaptchaEngine captchaEngine = m_captchaEngines.get(key);
+        if (captchaEngine == null) {
+            captchaEngine = createCaptchaEngine(key, captchaSettings);
+        }
+        return captchaEngine;
+    }
+
     /**
      * Returns the captcha service specified by the settings.
      * <p>
      * 
+     * Looking up a cached service does not lock, and the engine of a cached service 
+     * is only exchanged if the settings changed.
+     * <p>
+     * 
      * @param captchaSettings the settings to render captcha images.
      * 
      * @param cms needed for context information when getting the key for caching.
      * 
      * @return the captcha service.
      */
-    public synchronized CaptchaService getCaptchaService(CmsCaptchaSettings captchaSettings, CmsObject cms) {
-
-        if (m_captchaServices == null) {
-            m_captchaServices = new HashMap<String, CmsCaptchaService>();
-        }
-        if (m_maptchaServices == null) {
-            m_maptchaServices = new HashMap<String, CmsMaptchaService>();
-        }
+    public CaptchaService getCaptchaService(CmsCaptchaSettings captchaSettings, CmsObject cms) {
 
         String key = null;
         if (captchaSettings.getPresetPath() != null) {
@@ -146,14 +174,23 @@ public final class CmsCaptchaServiceCache implements I_CmsEventListener {
             CmsMaptchaService maptchaService = m_maptchaServices.get(key);
             if (maptchaService == null) {
                 maptchaService = new CmsMaptchaService(captchaSettings);
-                m_maptchaServices.put(key, maptchaService);
+                CmsMaptchaService existing = m_maptchaServices.putIfAbsent(key, maptchaService);
+                if (existing != null) {
+                    // another thread was faster, use its service as it stores the challenges
+                    maptchaService = existing;
+                }
             }
             return maptchaService;
         } else {
             CmsCaptchaService captchaService = m_captchaServices.get(key);
             if (captchaService == null) {
                 captchaService = new CmsCaptchaService(captchaSettings);
-                m_captchaServices.put(key, captchaService);
+                CmsCaptchaService existing = m_captchaServices.putIfAbsent(key, captchaService);
+                if (existing != null) {
+                    // another thread was faster, use its service as it stores the challenges
+                    captchaService = existing;
+                    captchaService.setSettings(captchaSettings);
+                }
             } else {
                 // install the parameters to the internal engine
                 captchaService.setSettings(captchaSettings);
@@ -164,17 +201,35 @@ public final class CmsCaptchaServiceCache implements I_CmsEventListener {
     }
 
     /**
-     * Clears the map storing the captcha services.
+     * Clears the maps storing the captcha services and engines.
      * <p>
      */
-    private synchronized void clearCaptchaServices() {
+    private void clearCaptchaServices() {
 
-        if (m_captchaServices != null) {
-            m_captchaServices.clear();
-        }
+        m_captchaServices.clear();
+        m_maptchaServices.clear();
+        m_captchaEngines.clear();
+    }
+
+    /**
+     * Creates the captcha engine for the given settings and adds it to the cache.
+     * <p>
+     * 
+     * The engine is built only once, also if several threads request it at the same time.
+     * <p>
+     * 
+     * @param key the fingerprint of the settings
+     * @param captchaSettings the settings to render captcha images
+     * 
+     * @return the cached captcha engine
+     */
+    private synchronized CmsCaptchaEngine createCaptchaEngine(String key, CmsCaptchaSettings captchaSettings) {
 
-        if (m_maptchaServices != null) {
-            m_maptchaServices.clear();
+        CmsCaptchaEngine captchaEngine = m_captchaEngines.get(key);
+        if (captchaEngine == null) {
+            captchaEngine = new CmsCaptchaEngine(captchaSettings);
+            m_captchaEngines.put(key, captchaEngine);
         }
+        return captchaEngine;
     }
-}
\ No newline at end of file
+}
@@ -336,6 +336,39 @@ public final class CmsCaptchaSettings implements Cloneable {
         return m_filterWaveLength;
     }
 
+    /**
+     * Returns a string that is equal for all settings rendering the same captchas.<p>
+     * 
+     * Unlike {@link #toRequestParams(CmsObject)} the string is neither encoded nor encrypted, 
+     * so it is cheap enough to be used as cache key for every captcha request.<p>
+     * 
+     * @return a string that is equal for all settings rendering the same captchas
+     */
+    public String getFingerprint() {
+
+        StringBuffer buf = new StringBuffer(256);
+
+        buf.append(C_PARAM_IMAGE_WIDTH).append(PARAM_KV_SEPARATOR).append(m_imageWidth);
+        buf.append(PARAM_DELIM).append(C_PARAM_IMAGE_HEIGHT).append(PARAM_KV_SEPARATOR).append(m_imageHeight);
+        buf.append(PARAM_DELIM).append(C_PARAM_MIN_FONT_SIZE).append(PARAM_KV_SEPARATOR).append(m_minFontSize);
+        buf.append(PARAM_DELIM).append(C_PARAM_MAX_FONT_SIZE).append(PARAM_KV_SEPARATOR).append(m_maxFontSize);
+        buf.append(PARAM_DELIM).append(C_PARAM_MIN_PHRASE_LENGTH).append(PARAM_KV_SEPARATOR).append(m_minPhraseLength);
+        buf.append(PARAM_DELIM).append(C_PARAM_MAX_PHRASE_LENGTH).append(PARAM_KV_SEPARATOR).append(m_maxPhraseLength);
+        buf.append(PARAM_DELIM).append(C_PARAM_FONT_COLOR).append(PARAM_KV_SEPARATOR).append(getFontColorString());
+        buf.append(PARAM_DELIM).append(C_PARAM_BACKGROUND_COLOR).append(PARAM_KV_SEPARATOR).append(
+            getBackgroundColorString());
+        buf.append(PARAM_DELIM).append(C_PARAM_HOLES_PER_GLYPH).append(PARAM_KV_SEPARATOR).append(m_holesPerGlyph);
+        buf.append(PARAM_DELIM).append(C_PARAM_FILTER_AMPLITUDE).append(PARAM_KV_SEPARATOR).append(m_filterAmplitude);
+        buf.append(PARAM_DELIM).append(C_PARAM_FILTER_WAVE_LENGTH).append(PARAM_KV_SEPARATOR).append(m_filterWaveLength);
+        buf.append(PARAM_DELIM).append(C_PARAM_CHARACTERS).append(PARAM_KV_SEPARATOR).append(m_characterPool);
+        buf.append(PARAM_DELIM).append(C_PARAM_DICTIONARY).append(PARAM_KV_SEPARATOR).append(m_dictionary);
+        buf.append(PARAM_DELIM).append(C_PARAM_PRESET).append(PARAM_KV_SEPARATOR).append(m_presetPath);
+        buf.append(PARAM_DELIM).append(C_PARAM_USE_BACKGROUND_IMAGE).append(PARAM_KV_SEPARATOR).append(
+            m_useBackgroundImage);
+        buf.append(PARAM_DELIM).append(C_PARAM_MATH).append(PARAM_KV_SEPARATOR).append(m_mathField);
+        return buf.toString();
+    }
+
     /**
      * Returns the font color.<p>
      * 
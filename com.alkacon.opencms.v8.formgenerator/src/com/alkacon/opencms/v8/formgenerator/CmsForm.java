@@ -103,6 +103,12 @@ public class CmsForm {
     /** Name of the module parameter excel.delimiter defines the column delimiter in excel. */
     public static final String MODULE_PARAM_CSV_DELIMITER = "export.delimiter";
 
+    /** Name of the module parameter for the number of entry ids reserved at once by the block id generator. */
+    public static final String MODULE_PARAM_DB_IDBLOCKSIZE = "db-idblocksize";
+
+    /** Name of the module parameter for the entry id generator, either "block", "sequence" or a class name. */
+    public static final String MODULE_PARAM_DB_IDGENERATOR = "db-idgenerator";
+
     /** Name of the db index table space module parameter. */
     public static final String MODULE_PARAM_DB_INDEXTABLESPACE = "index-tablespace";
 
@@ -134,6 +140,18 @@ public class CmsForm {
     /** Name of the module parameter for the configuration of the prefix list of system readable fonts like 'arial|serif'. */
     public static final String MODULE_PARAM_FONT_PREFIX = "font-prefix";
 
+    /** Name of the module parameter to enable sending mails and storing uploads in the background (default: false). */
+    public static final String MODULE_PARAM_SUBMISSION_ASYNC = "submission.async";
+
+    /** Name of the module parameter for the maximum number of executions of a background task. */
+    public static final String MODULE_PARAM_SUBMISSION_ATTEMPTS = "submission.attempts";
+
+    /** Name of the module parameter for the maximum number of pending background tasks. */
+    public static final String MODULE_PARAM_SUBMISSION_QUEUESIZE = "submission.queuesize";
+
+    /** Name of the module parameter for the number of threads executing the background tasks. */
+    public static final String MODULE_PARAM_SUBMISSION_THREADS = "submission.threads";
+
     /** Name of the template file parameter that is used as default HTML template for the form. */
     public static final String MODULE_PARAM_TEMPLATE_FILE = "templatefile";
 
@@ -81,6 +81,7 @@ import javax.servlet.jsp.PageContext;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.logging.Log;
+import org.apache.commons.mail.Email;
 
 import org.antlr.stringtemplate.StringTemplate;
 import org.antlr.stringtemplate.StringTemplateErrorListener;
@@ -1086,56 +1087,10 @@ public class CmsFormHandler extends CmsJspActionElement {
      */
     public void sendConfirmationMail() throws Exception {
 
-        String mailTo = getFormConfiguration().getConfirmationMailEmail();
-        if (CmsStringUtil.isNotEmpty(mailTo)) {
-            // create the new confirmation mail message depending on the configured email type
-            if (getFormConfiguration().getMailType().equals(CmsForm.MAILTYPE_HTML)) {
-                // create a HTML email
-                CmsHtmlMail theMail = new CmsHtmlMail();
-                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
-                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getConfirmationMailFrom())) {
-                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getConfirmationMailFromName())) {
-                        theMail.setFrom(
-                            m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFrom()),
-                            m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFromName()));
-                    } else {
-                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFrom()));
-                    }
-                } else if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
-                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
-                        theMail.setFrom(
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
-                    } else {
-                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
-                    }
-                }
-                theMail.setTo(createInternetAddresses(mailTo));
-                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
-                    + getFormConfiguration().getConfirmationMailSubject()));
-                theMail.setHtmlMsg(createMailTextFromFields(true, true));
-                // send the mail
-                theMail.send();
-            } else {
-                // create a plain text email
-                CmsSimpleMail theMail = new CmsSimpleMail();
-                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
-                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
-                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
-                        theMail.setFrom(
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
-                    } else {
-                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
-                    }
-                }
-                theMail.setTo(createInternetAddresses(mailTo));
-                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
-                    + getFormConfiguration().getConfirmationMailSubject()));
-                theMail.setMsg(createMailTextFromFields(false, true));
-                // send the mail
-                theMail.send();
-            }
+        Email theMail = createConfirmationMail();
+        if (theMail != null) {
+            // send the mail
+            theMail.send();
         }
     }
 
@@ -1195,10 +1150,17 @@ public class CmsFormHandler extends CmsJspActionElement {
                 MACRO_DATE,
                 CmsDateUtil.getDateTime(new Date(), DateFormat.LONG, getRequestContext().getLocale()));
             // send optional confirmation mail
+            CmsFormSubmissionQueue queue = CmsFormSubmissionQueue.getInstance();
+            Email confirmationMail = null;
             if (data.isConfirmationMailEnabled()) {
                 if (!data.isConfirmationMailOptional()
                     || Boolean.valueOf(getParameter(CmsForm.PARAM_SENDCONFIRMATION)).booleanValue()) {
-                    sendConfirmationMail();
+                    if (queue.isEnabled()) {
+                        // create the mail now to report errors, it is sent after storing the submission
+                        confirmationMail = createConfirmationMail();
+                    } else {
+                        sendConfirmationMail();
+                    }
                 }
             }
             if (data.isTransportDatabase()) {
@@ -1215,6 +1177,9 @@ public class CmsFormHandler extends CmsJspActionElement {
             if (data.isTransportEmail()) {
                 result &= sendMail();
             }
+            if (confirmationMail != null) {
+                queue.sendMail(confirmationMail, m_entryId);
+            }
 
         } catch (Exception e) {
             // an error occurred during mail creation
@@ -1880,6 +1845,67 @@ public class CmsFormHandler extends CmsJspActionElement {
         setFormConfiguration(new CmsForm(this, getMessages(), isInitial(), formConfigUri, formAction));
     }
 
+    /**
+     * Creates the confirmation mail with the form data for the specified email address.<p>
+     * 
+     * @return the confirmation mail, or <code>null</code> if no confirmation email address is given
+     * 
+     * @throws Exception if creating the confirmation mail fails
+     */
+    protected Email createConfirmationMail() throws Exception {
+
+        String mailTo = getFormConfiguration().getConfirmationMailEmail();
+        if (CmsStringUtil.isNotEmpty(mailTo)) {
+            // create the new confirmation mail message depending on the configured email type
+            if (getFormConfiguration().getMailType().equals(CmsForm.MAILTYPE_HTML)) {
+                // create a HTML email
+                CmsHtmlMail theMail = new CmsHtmlMail();
+                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
+                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getConfirmationMailFrom())) {
+                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getConfirmationMailFromName())) {
+                        theMail.setFrom(
+                            m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFrom()),
+                            m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFromName()));
+                    } else {
+                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getConfirmationMailFrom()));
+                    }
+                } else if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
+                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
+                        theMail.setFrom(
+                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
+                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
+                    } else {
+                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
+                    }
+                }
+                theMail.setTo(createInternetAddresses(mailTo));
+                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
+                    + getFormConfiguration().getConfirmationMailSubject()));
+                theMail.setHtmlMsg(createMailTextFromFields(true, true));
+                return theMail;
+            } else {
+                // create a plain text email
+                CmsSimpleMail theMail = new CmsSimpleMail();
+                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
+                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
+                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
+                        theMail.setFrom(
+                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
+                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
+                    } else {
+                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
+                    }
+                }
+                theMail.setTo(createInternetAddresses(mailTo));
+                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
+                    + getFormConfiguration().getConfirmationMailSubject()));
+                theMail.setMsg(createMailTextFromFields(false, true));
+                return theMail;
+            }
+        }
+        return null;
+    }
+
     /**
      * Creates a list of Internet addresses (email) from a semicolon separated String.<p>
      * 
@@ -1904,6 +1930,91 @@ public class CmsFormHandler extends CmsJspActionElement {
         }
     }
 
+    /**
+     * Creates the mail with the form data for the specified recipients.<p>
+     * 
+     * @return the mail with the form data
+     * 
+     * @throws Exception if creating the mail fails
+     */
+    protected Email createMail() throws Exception {
+
+        // create the new mail message depending on the configured email type
+        if (getFormConfiguration().getMailType().equals(CmsForm.MAILTYPE_HTML)) {
+            // create a HTML email
+            CmsHtmlMail theMail = new CmsHtmlMail();
+            theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
+            if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
+                if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
+                    theMail.setFrom(
+                        m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
+                        m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
+                } else {
+                    theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
+                }
+            }
+            theMail.setTo(createInternetAddresses(getFormConfiguration().getMailTo()));
+            List<InternetAddress> ccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailCC()));
+            if (ccRec.size() > 0) {
+                theMail.setCc(ccRec);
+            }
+            List<InternetAddress> bccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailBCC()));
+            if (bccRec.size() > 0) {
+                theMail.setBcc(bccRec);
+            }
+            theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
+                + getFormConfiguration().getMailSubject()));
+            theMail.setHtmlMsg(createMailTextFromFields(true, false));
+
+            // attach file uploads
+            Map<String, FileItem> fileUploads = getFileUploads();
+            if (fileUploads != null) {
+                Iterator<FileItem> i = fileUploads.values().iterator();
+                while (i.hasNext()) {
+                    FileItem attachment = i.next();
+                    if (attachment != null) {
+                        String filename = attachment.getName().substring(
+                            attachment.getName().lastIndexOf(File.separator) + 1);
+                        theMail.attach(
+                            new CmsByteArrayDataSource(
+                                filename,
+                                attachment.get(),
+                                OpenCms.getResourceManager().getMimeType(filename, null, "application/octet-stream")),
+                            filename,
+                            filename);
+                    }
+                }
+            }
+            return theMail;
+        } else {
+            // create a plain text email
+            CmsSimpleMail theMail = new CmsSimpleMail();
+            theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
+            if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
+                if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
+                    theMail.setFrom(
+                        m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
+                        m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
+                } else {
+                    theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
+                }
+            }
+            theMail.setTo(createInternetAddresses(getFormConfiguration().getMailTo()));
+            List<InternetAddress> ccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailCC()));
+            if (ccRec.size() > 0) {
+                theMail.setCc(ccRec);
+            }
+            List<InternetAddress> bccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailBCC()));
+            if (bccRec.size() > 0) {
+                theMail.setBcc(bccRec);
+            }
+            theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
+                + getFormConfiguration().getMailSubject()));
+            theMail.setMsg(createMailTextFromFields(false, false));
+            return theMail;
+        }
+    }
+
     /**
      * Returns the request parameter with the specified name.<p>
      * 
@@ -1982,79 +2093,12 @@ public class CmsFormHandler extends CmsJspActionElement {
     protected boolean sendMail() {
 
         try {
-            // create the new mail message depending on the configured email type
-            if (getFormConfiguration().getMailType().equals(CmsForm.MAILTYPE_HTML)) {
-                // create a HTML email
-                CmsHtmlMail theMail = new CmsHtmlMail();
-                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
-                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
-                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
-                        theMail.setFrom(
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
-                    } else {
-                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
-                    }
-                }
-                theMail.setTo(createInternetAddresses(getFormConfiguration().getMailTo()));
-                List<InternetAddress> ccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailCC()));
-                if (ccRec.size() > 0) {
-                    theMail.setCc(ccRec);
-                }
-                List<InternetAddress> bccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailBCC()));
-                if (bccRec.size() > 0) {
-                    theMail.setBcc(bccRec);
-                }
-                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
-                    + getFormConfiguration().getMailSubject()));
-                theMail.setHtmlMsg(createMailTextFromFields(true, false));
-
-                // attach file uploads
-                Map<String, FileItem> fileUploads = getFileUploads();
-                if (fileUploads != null) {
-                    Iterator<FileItem> i = fileUploads.values().iterator();
-                    while (i.hasNext()) {
-                        FileItem attachment = i.next();
-                        if (attachment != null) {
-                            String filename = attachment.getName().substring(
-                                attachment.getName().lastIndexOf(File.separator) + 1);
-                            theMail.attach(
-                                new CmsByteArrayDataSource(
-                                    filename,
-                                    attachment.get(),
-                                    OpenCms.getResourceManager().getMimeType(filename, null, "application/octet-stream")),
-                                filename,
-                                filename);
-                        }
-                    }
-                }
-                // send the mail
-                theMail.send();
+            Email theMail = createMail();
+            CmsFormSubmissionQueue queue = CmsFormSubmissionQueue.getInstance();
+            if (queue.isEnabled()) {
+                // send the mail in the background
+                queue.sendMail(theMail, m_entryId);
             } else {
-                // create a plain text email
-                CmsSimpleMail theMail = new CmsSimpleMail();
-                theMail.setCharset(getCmsObject().getRequestContext().getEncoding());
-                if (CmsStringUtil.isNotEmpty(getFormConfiguration().getMailFrom())) {
-                    if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(getFormConfiguration().getMailFromName())) {
-                        theMail.setFrom(
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()),
-                            m_macroResolver.resolveMacros(getFormConfiguration().getMailFromName()));
-                    } else {
-                        theMail.setFrom(m_macroResolver.resolveMacros(getFormConfiguration().getMailFrom()));
-                    }
-                }
-                theMail.setTo(createInternetAddresses(getFormConfiguration().getMailTo()));
-                List<InternetAddress> ccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailCC()));
-                if (ccRec.size() > 0) {
-                    theMail.setCc(ccRec);
-                }
-                List<InternetAddress> bccRec = createInternetAddresses(m_macroResolver.resolveMacros(getFormConfiguration().getMailBCC()));
-                if (bccRec.size() > 0) {
-                    theMail.setBcc(bccRec);
-                }
-                theMail.setSubject(m_macroResolver.resolveMacros(getFormConfiguration().getMailSubjectPrefix()
-                    + getFormConfiguration().getMailSubject()));
-                theMail.setMsg(createMailTextFromFields(false, false));
                 // send the mail
                 theMail.send();
             }
@@ -51,15 +51,11 @@ import org.opencms.workplace.CmsWorkplace;
 import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
 
-import java.text.CollationKey;
-import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -74,91 +70,6 @@ import javax.servlet.jsp.PageContext;
  */
 public class CmsFormReport extends CmsJspActionElement {
 
-    /**
-     * This comparator compares the values of the field columns, it is needed for dynamic data load.<p>
-     */
-    private class FieldComparator implements Comparator<CmsFormDataBean> {
-
-        /** Needed for String comparison. */
-        private Collator m_collator;
-
-        /** The name of the field to compare. */
-        private String m_field;
-
-        /** Holds the collation keys for faster String comparison. */
-        private Map<String, CollationKey> m_keys;
-
-        /** The current sort order, either ascending or descending. */
-        private String m_sortOrder;
-
-        /**
-         * Constructor, with parameters.<p>
-         * 
-         * @param field the name of the field to compare
-         * @param sortOrder the current sort order, either ascending or descending
-         * @param locale the current Locale, used for String comparison
-         */
-        public FieldComparator(String field, String sortOrder, Locale locale) {
-
-            m_field = field;
-            m_sortOrder = sortOrder;
-            m_collator = Collator.getInstance(locale);
-            m_keys = new HashMap<String, CollationKey>();
-        }
-
-        /**
-         * Compares the two form data beans according to the field and sort state settings.<p>
-         * 
-         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-         * 
-         * @param o1 the first object to be compared
-         * @param o2 the second object to be compared
-         * 
-         * @return a negative integer, zero, or a positive integer 
-         */
-        public int compare(CmsFormDataBean o1, CmsFormDataBean o2) {
-
-            if (o1 == o2) {
-                return 0;
-            }
-
-            if (COLUMN_ID_DATE.equals(m_field)) {
-                // sort by creation date
-                Long date1 = Long.valueOf(o1.getDateCreated());
-                Long date2 = Long.valueOf(o2.getDateCreated());
-                if ("asc".equals(m_sortOrder)) {
-                    return date1.compareTo(date2);
-                } else {
-                    return date2.compareTo(date1);
-                }
-            } else {
-                // sort by specific column (treated as String)
-                String val1 = o1.getFieldValue(m_field);
-                String val2 = o2.getFieldValue(m_field);
-                // get or generate collation keys for the values
-                CollationKey key1, key2;
-                if (m_keys.containsKey(val1)) {
-                    key1 = m_keys.get(val1);
-                } else {
-                    key1 = m_collator.getCollationKey(val1);
-                    m_keys.put(val1, key1);
-                }
-                if (m_keys.containsKey(val2)) {
-                    key2 = m_keys.get(val2);
-                } else {
-                    key2 = m_collator.getCollationKey(val2);
-                    m_keys.put(val2, key2);
-                }
-
-                if ("asc".equals(m_sortOrder)) {
-                    return key1.compareTo(key2);
-                } else {
-                    return key2.compareTo(key1);
-                }
-            }
-        }
-    }
-
     /** Column ID of the creation date column. */
     public static final String COLUMN_ID_DATE = "creationdate";
 
@@ -221,6 +132,9 @@ public class CmsFormReport extends CmsJspActionElement {
     /** The number of entries per page that is preselected. */
     private int m_entriesPerPage;
 
+    /** The number of forms stored in the database, read on demand. */
+    private int m_formCount = -1;
+
     /** The form configuration object. */
     private CmsFormHandler m_formHandler;
 
@@ -299,7 +213,7 @@ public class CmsFormReport extends CmsJspActionElement {
         if (m_entriesPerPage < 1) {
             m_entriesPerPage = 100;
             if (isHeightAuto()) {
-                m_entriesPerPage = getForms().size();
+                m_entriesPerPage = getFormCount();
             } else {
                 String entriesStr = getReportContent().getStringValue(
                     getCmsObject(),
@@ -345,7 +259,7 @@ public class CmsFormReport extends CmsJspActionElement {
             // automatic height calculation
             m_heightAuto = Boolean.TRUE;
             // height: header + footer + eventual scroll bar + height of items (each item: 22px)
-            height = 57 + 28 + 15 + (getForms().size() * 22);
+            height = 57 + 28 + 15 + (getFormCount() * 22);
         } else {
             // fixed height
             try {
@@ -415,30 +329,33 @@ public class CmsFormReport extends CmsJspActionElement {
             if (sortInfo.has("sortOrder")) {
                 sortOrder = sortInfo.getString("sortOrder");
             }
-            // get all stored forms
-            List<CmsFormDataBean> forms = getForms();
-            // calculate start and end index
-            int startIndex = startRow - 1;
-            int endIndex = endRow - 1;
-            if (endIndex > (forms.size() - 1)) {
-                endIndex = forms.size() - 1;
-            }
+            CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.DEFAULT;
+            filter = filter.filterFormId(getFormConfiguration().getFormId());
             if (CmsStringUtil.isNotEmpty(sortColumn)) {
-                // sort the data according to column and order
-                String fieldName = sortColumn;
-                if (!COLUMN_ID_DATE.equals(sortColumn)) {
+                // sort the data in the database according to column and order
+                if (COLUMN_ID_DATE.equals(sortColumn)) {
+                    filter = filter.filterOrderDate();
+                } else {
                     // determine the matching field DB label to the given column ID
+                    String fieldName = sortColumn;
                     CmsFormReportColumn col = getShownColumnMappings().get(sortColumn);
                     if (col != null) {
                         fieldName = col.getColumnDbLabel();
                     }
+                    filter = filter.filterOrderField(fieldName);
+                }
+                if ("asc".equals(sortOrder)) {
+                    filter = filter.filterOrderAsc();
+                } else {
+                    filter = filter.filterOrderDesc();
                 }
-                Collections.sort(forms, new FieldComparator(fieldName, sortOrder, getRequestContext().getLocale()));
             }
+            // only read the forms of the requested page
+            filter = filter.filterIndex(startRow - 1, endRow);
             // fill the returned object with data
-            data.put("data", getDataRows(forms.subList(startIndex, endIndex + 1)));
+            data.put("data", getDataRows(CmsFormDataAccess.getInstance().readForms(filter)));
             JSONObject pageInfo = new JSONObject();
-            pageInfo.put("totalRowNum", forms.size());
+            pageInfo.put("totalRowNum", getFormCount());
             data.put("pageInfo", pageInfo);
             data.put("recordType", "array");
         } catch (Exception e) {
@@ -643,6 +560,29 @@ public class CmsFormReport extends CmsJspActionElement {
         return data;
     }
 
+    /**
+     * Returns the number of forms stored in the database.<p>
+     * 
+     * @return the number of forms stored in the database
+     */
+    protected int getFormCount() {
+
+        if (m_forms != null) {
+            return m_forms.size();
+        }
+        if (m_formCount < 0) {
+            try {
+                CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.DEFAULT;
+                filter = filter.filterFormId(getFormConfiguration().getFormId());
+                m_formCount = CmsFormDataAccess.getInstance().countForms(filter);
+            } catch (Exception e) {
+                // error reading form data
+                m_formCount = 0;
+            }
+        }
+        return m_formCount;
+    }
+
     /**
      * Returns all forms stored in the database.<p>
      * 
@@ -0,0 +1,398 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/CmsFormSubmissionQueue.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator;
+
+import com.alkacon.opencms.v8.formgenerator.database.CmsFormDataAccess;
+
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.module.CmsModule;
+import org.opencms.util.CmsStringUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Address;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.mail.Email;
+import org.apache.commons.mail.EmailException;
+
+/**
+ * Executes the slow parts of a form submission, i.e. sending the mails and storing uploaded files,
+ * in the background after the submission has been stored in the database.<p>
+ *
+ * Tasks are executed by a small pool of worker threads. A failing task is retried a configurable number
+ * of times with an increasing delay. Mails that can not be delivered at all are stored in the dead letter
+ * table CMS_WEBFORM_DEADLETTERS, so that they can be sent manually later on.<p>
+ *
+ * The number of pending tasks is limited. If the limit is reached, new tasks are executed directly by the
+ * submitting thread, as if the background processing was not enabled.<p>
+ *
+ * The background processing is enabled with the module parameter {@link CmsForm#MODULE_PARAM_SUBMISSION_ASYNC},
+ * it is disabled by default. When enabled, the form confirmation is shown before the mails are delivered,
+ * so delivery errors are not reported to the visitor anymore but only written to the log and the dead letter table.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsFormSubmissionQueue {
+
+    /**
+     * A task to execute in the background.<p>
+     */
+    public abstract static class A_CmsSubmissionTask {
+
+        /** The number of failed executions. */
+        private int m_failures;
+
+        /**
+         * Called when the task failed for the last time and is given up.<p>
+         *
+         * @param error the error of the last execution
+         */
+        protected abstract void abandon(Throwable error);
+
+        /**
+         * Executes the task.<p>
+         *
+         * @throws Exception if the execution fails and should be retried
+         */
+        protected abstract void execute() throws Exception;
+
+        /**
+         * Returns a short description of the task, used for logging.<p>
+         *
+         * @return a short description of the task
+         */
+        protected abstract String getDescription();
+    }
+
+    /** The default for the maximum number of executions of a task. */
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    /** The default for the maximum number of pending tasks. */
+    public static final int DEFAULT_QUEUE_SIZE = 500;
+
+    /** The default number of worker threads. */
+    public static final int DEFAULT_THREADS = 2;
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsFormSubmissionQueue.class);
+
+    /** The delay in seconds before the first retry of a failed task, multiplied with the number of failures. */
+    private static final int RETRY_DELAY = 30;
+
+    /** The time in seconds to wait for pending tasks on shutdown. */
+    private static final int SHUTDOWN_TIMEOUT = 30;
+
+    /** The singleton instance. */
+    private static CmsFormSubmissionQueue m_instance;
+
+    /** The maximum number of executions of a task. */
+    private int m_attempts;
+
+    /** The number of tasks that can still be added. */
+    private Semaphore m_capacity;
+
+    /** The executor running the tasks, <code>null</code> if background processing is disabled. */
+    private ScheduledThreadPoolExecutor m_executor;
+
+    /** The tasks that are not finished yet. */
+    private Map<A_CmsSubmissionTask, Boolean> m_pending;
+
+    /**
+     * Creates a new queue configured by the module parameters.<p>
+     */
+    private CmsFormSubmissionQueue() {
+
+        CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
+        if ((module == null)
+            || !Boolean.valueOf(module.getParameter(CmsForm.MODULE_PARAM_SUBMISSION_ASYNC, CmsStringUtil.FALSE)).booleanValue()) {
+            // background processing disabled
+            return;
+        }
+        m_pending = new ConcurrentHashMap<A_CmsSubmissionTask, Boolean>();
+        m_attempts = getIntParameter(module, CmsForm.MODULE_PARAM_SUBMISSION_ATTEMPTS, DEFAULT_ATTEMPTS);
+        m_capacity = new Semaphore(getIntParameter(module, CmsForm.MODULE_PARAM_SUBMISSION_QUEUESIZE, DEFAULT_QUEUE_SIZE));
+        m_executor = new ScheduledThreadPoolExecutor(
+            getIntParameter(module, CmsForm.MODULE_PARAM_SUBMISSION_THREADS, DEFAULT_THREADS),
+            new ThreadFactory() {
+
+                /** The number of created threads. */
+                private AtomicInteger m_count = new AtomicInteger();
+
+                /**
+                 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+                 */
+                public Thread newThread(Runnable r) {
+
+                    Thread thread = new Thread(r, CmsForm.MODULE_NAME + "-" + m_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * Returns the singleton instance.<p>
+     *
+     * @return the singleton instance
+     */
+    public static synchronized CmsFormSubmissionQueue getInstance() {
+
+        if (m_instance == null) {
+            m_instance = new CmsFormSubmissionQueue();
+        }
+        return m_instance;
+    }
+
+    /**
+     * Stops the background processing, waiting a while for pending tasks.<p>
+     *
+     * Tasks that are still pending afterwards are given up.<p>
+     */
+    public static synchronized void shutDown() {
+
+        if ((m_instance == null) || (m_instance.m_executor == null)) {
+            m_instance = null;
+            return;
+        }
+        CmsFormSubmissionQueue queue = m_instance;
+        m_instance = null;
+        queue.m_executor.shutdown();
+        try {
+            queue.m_executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+        queue.m_executor.shutdownNow();
+        // give up the tasks still waiting for a retry
+        Iterator<A_CmsSubmissionTask> it = queue.m_pending.keySet().iterator();
+        while (it.hasNext()) {
+            A_CmsSubmissionTask task = it.next();
+            if (queue.m_pending.remove(task) != null) {
+                task.abandon(new InterruptedException());
+            }
+        }
+    }
+
+    /**
+     * Executes the given task in the background, or directly if background processing is disabled
+     * or too many tasks are pending.<p>
+     *
+     * @param task the task to execute
+     */
+    public void execute(A_CmsSubmissionTask task) {
+
+        if ((m_executor == null) || !m_capacity.tryAcquire()) {
+            // execute directly, failures are not retried
+            try {
+                task.execute();
+            } catch (Throwable t) {
+                task.abandon(t);
+            }
+            return;
+        }
+        m_pending.put(task, Boolean.TRUE);
+        m_executor.execute(new TaskRunner(task));
+    }
+
+    /**
+     * Returns if the background processing is enabled.<p>
+     *
+     * @return if the background processing is enabled
+     */
+    public boolean isEnabled() {
+
+        return m_executor != null;
+    }
+
+    /**
+     * Sends the given mail in the background.<p>
+     *
+     * The mail message is built directly, so that errors in the mail data are reported to the caller.
+     * If the mail can not be delivered, it is stored in the dead letter table.<p>
+     *
+     * @param mail the mail to send
+     * @param entryId the id of the form submission in the database, or <code>0</code> if not stored
+     *
+     * @throws EmailException if the mail message can not be built
+     */
+    public void sendMail(final Email mail, final int entryId) throws EmailException {
+
+        mail.buildMimeMessage();
+        execute(new A_CmsSubmissionTask() {
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#abandon(java.lang.Throwable)
+             */
+            @Override
+            protected void abandon(Throwable error) {
+
+                LOG.error(Messages.get().getBundle().key(Messages.LOG_ERR_SUBMISSION_MAIL_1, getDescription()), error);
+                try {
+                    MimeMessage message = mail.getMimeMessage();
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    message.writeTo(out);
+                    CmsFormDataAccess.getInstance().writeDeadLetter(
+                        entryId,
+                        getDescription(),
+                        message.getSubject(),
+                        String.valueOf(error),
+                        out.toByteArray());
+                } catch (Throwable t) {
+                    LOG.error(t.getLocalizedMessage(), t);
+                }
+            }
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#execute()
+             */
+            @Override
+            protected void execute() throws Exception {
+
+                mail.sendMimeMessage();
+            }
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#getDescription()
+             */
+            @Override
+            protected String getDescription() {
+
+                StringBuffer result = new StringBuffer(64);
+                try {
+                    Address[] recipients = mail.getMimeMessage().getAllRecipients();
+                    for (int i = 0; (recipients != null) && (i < recipients.length); i++) {
+                        if (i > 0) {
+                            result.append(", ");
+                        }
+                        result.append(recipients[i].toString());
+                    }
+                } catch (Exception e) {
+                    // ignore, only used for logging
+                }
+                return result.toString();
+            }
+        });
+    }
+
+    /**
+     * Executes the given task once and schedules a retry if it fails.<p>
+     *
+     * @param task the task to run
+     */
+    protected void run(A_CmsSubmissionTask task) {
+
+        try {
+            task.execute();
+            m_pending.remove(task);
+            m_capacity.release();
+        } catch (Throwable t) {
+            task.m_failures++;
+            if ((task.m_failures < m_attempts) && !m_executor.isShutdown()) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn(Messages.get().getBundle().key(
+                        Messages.LOG_WARN_SUBMISSION_RETRY_2,
+                        task.getDescription(),
+                        new Integer(task.m_failures)), t);
+                }
+                m_executor.schedule(new TaskRunner(task), RETRY_DELAY * task.m_failures, TimeUnit.SECONDS);
+            } else if (m_pending.remove(task) != null) {
+                m_capacity.release();
+                task.abandon(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the value of an integer module parameter.<p>
+     *
+     * @param module the module
+     * @param name the parameter name
+     * @param defaultValue the default value
+     *
+     * @return the value of the parameter, or the default value if not set or invalid
+     */
+    private int getIntParameter(CmsModule module, String name, int defaultValue) {
+
+        try {
+            int result = Integer.parseInt(module.getParameter(name, String.valueOf(defaultValue)).trim());
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Runs a task with retries.<p>
+     */
+    private final class TaskRunner implements Runnable {
+
+        /** The task to run. */
+        private final A_CmsSubmissionTask m_task;
+
+        /**
+         * Creates a new task runner.<p>
+         *
+         * @param task the task to run
+         */
+        protected TaskRunner(A_CmsSubmissionTask task) {
+
+            m_task = task;
+        }
+
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+
+            CmsFormSubmissionQueue.this.run(m_task);
+        }
+    }
+}
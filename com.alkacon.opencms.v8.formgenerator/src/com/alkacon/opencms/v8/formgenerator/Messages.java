@@ -120,9 +120,15 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_SELECTWIDGET_XPATH_INVALID_4 = "LOG_ERR_SELECTWIDGET_XPATH_INVALID_4";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_ERR_SUBMISSION_MAIL_1 = "LOG_ERR_SUBMISSION_MAIL_1";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_TABLEFIELD_REPLACE_0 = "LOG_ERR_TABLEFIELD_REPLACE_0";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_WARN_SUBMISSION_RETRY_2 = "LOG_WARN_SUBMISSION_RETRY_2";
+
     /** Message constant for key in the resource bundle. */
     public static final String PARAMETER_FIELD_SELECTBOX = "PARAMETER_FIELD_SELECTBOX";
 
@@ -0,0 +1,80 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/database/CmsFormAggregatesJob.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator.database;
+
+import org.opencms.file.CmsObject;
+import org.opencms.scheduler.I_CmsScheduledJob;
+import org.opencms.util.CmsStringUtil;
+
+import java.util.Map;
+
+/**
+ * A schedulable OpenCms job that rebuilds the aggregated answers of the stored form submissions.<p>
+ * 
+ * The aggregates are updated with every submission, so this job is only needed to repair them, 
+ * e.g. after a failed update or after the database was changed directly.<p>
+ * 
+ * Job parameters:<p>
+ * <dl>
+ * <dt><code>formid={form id}</code></dt>
+ * <dd>Optional, the id of the form to rebuild the aggregates for. If not set, the aggregates of all forms are rebuilt.</dd>
+ * </dl>
+ * 
+ * @author Michael Moossen
+ * 
+ * @version $Revision: 1.1 $
+ * 
+ * @since 8.0.2
+ * 
+ * @see CmsFormDataAccess#readAggregates(String)
+ */
+public class CmsFormAggregatesJob implements I_CmsScheduledJob {
+
+    /** Form id parameter. */
+    public static final String PARAM_FORMID = "formid";
+
+    /**
+     * @see org.opencms.scheduler.I_CmsScheduledJob#launch(CmsObject, Map)
+     */
+    public String launch(CmsObject cms, Map parameters) throws Exception {
+
+        String formId = (String)parameters.get(PARAM_FORMID);
+        if (CmsStringUtil.isEmptyOrWhitespaceOnly(formId)) {
+            CmsFormDataAccess.getInstance().rebuildAggregates(null);
+            return Messages.get().getBundle().key(Messages.LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_ALL_0);
+        }
+        formId = formId.trim();
+        CmsFormDataAccess.getInstance().rebuildAggregates(formId);
+        return Messages.get().getBundle().key(Messages.LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_1, formId);
+    }
+}
@@ -38,13 +38,14 @@ import com.alkacon.opencms.v8.formgenerator.CmsEmptyField;
 import com.alkacon.opencms.v8.formgenerator.CmsFieldItem;
 import com.alkacon.opencms.v8.formgenerator.CmsForm;
 import com.alkacon.opencms.v8.formgenerator.CmsFormHandler;
+import com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue;
 import com.alkacon.opencms.v8.formgenerator.CmsHiddenDisplayField;
 import com.alkacon.opencms.v8.formgenerator.CmsPagingField;
 import com.alkacon.opencms.v8.formgenerator.CmsTableField;
 import com.alkacon.opencms.v8.formgenerator.I_CmsField;
 
 import org.opencms.file.CmsObject;
-import org.opencms.file.CmsProject;
+import org.opencms.file.CmsResource;
 import org.opencms.file.types.CmsResourceTypeFolder;
 import org.opencms.main.CmsException;
 import org.opencms.main.CmsLog;
@@ -55,6 +56,7 @@ import org.opencms.util.CmsRfsException;
 import org.opencms.util.CmsStringUtil;
 import org.opencms.util.CmsUUID;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -63,9 +65,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -90,6 +95,12 @@ import org.apache.commons.logging.Log;
  */
 public final class CmsFormDataAccess {
 
+    /** Module parameter value for the entry id generator reserving blocks of ids, see {@link CmsFormEntryIdBlockGenerator}. */
+    public static final String ID_GENERATOR_BLOCK = "block";
+
+    /** Module parameter value for the entry id generator using a database sequence, see {@link CmsFormEntryIdSequenceGenerator}. */
+    public static final String ID_GENERATOR_SEQUENCE = "sequence";
+
     /** Database column name constant. */
     private static final String DB_COUNT = "COUNT";
 
@@ -129,12 +140,24 @@ public final class CmsFormDataAccess {
     /** Database column name constant. */
     private static final String DB_STATE = "STATE";
 
+    /** Database column name constant. */
+    private static final String DB_VALUE_COUNT = "VALUE_COUNT";
+
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(CmsFormDataAccess.class);
 
     /** The singleton object. */
     private static CmsFormDataAccess m_instance;
 
+    /** The maximal length of aggregated field values, longer values are aggregated by their prefix. */
+    private static final int MAX_AGGREGATE_VALUE_LENGTH = 128;
+
+    /** The separator of the items of a field with multiple selected items, e.g. check boxes. */
+    private static final String MULTI_VALUE_SEPARATOR = ", ";
+
+    /** The maximal number of entry ids to read the fields for in a single query. */
+    private static final int MAX_ENTRY_IDS = 500;
+
     /** The properties file extension. */
     private static final String PROPERTIES_EXTENSION = ".properties";
 
@@ -147,6 +170,9 @@ public final class CmsFormDataAccess {
     /** The current used db SQL properties file name. */
     private String m_db;
 
+    /** The generator for the ids of new form submissions. */
+    private I_CmsFormEntryIdGenerator m_idGenerator;
+
     /** A map holding all SQL queries. */
     private Map<Object, Object> m_queries;
 
@@ -175,6 +201,9 @@ public final class CmsFormDataAccess {
             loadQueryProperties(DB_PATH + db + PROPERTIES_EXTENSION);
             m_db = db;
         }
+        m_idGenerator = createIdGenerator(module.getParameter(
+            CmsForm.MODULE_PARAM_DB_IDGENERATOR,
+            getQuery("ENTRY_ID_GENERATOR")));
     }
 
     /**
@@ -237,15 +266,7 @@ public final class CmsFormDataAccess {
             List<Object> params = new ArrayList<Object>();
             con = getConnection();
             stmt = con.prepareStatement(getReadQuery(filter, params, true));
-            for (int i = 0; i < params.size(); i++) {
-                if (params.get(i) instanceof Integer) {
-                    stmt.setInt(i + 1, ((Integer)params.get(i)).intValue());
-                } else if (params.get(i) instanceof Long) {
-                    stmt.setLong(i + 1, ((Long)params.get(i)).longValue());
-                } else {
-                    stmt.setString(i + 1, (String)params.get(i));
-                }
-            }
+            setParameters(stmt, params);
             res = stmt.executeQuery();
             if (res.next()) {
                 result = res.getInt(DB_COUNT);
@@ -256,6 +277,80 @@ public final class CmsFormDataAccess {
         return result;
     }
 
+    /**
+     * Counts all submitted forms matching the given filter, grouped by the values of the given field.<p>
+     * 
+     * All counts are read with a single query. Forms without a value for the given field are not counted.<p>
+     * 
+     * @param filter the filter to match, the form data is never read
+     * @param fieldName the name of the field to group by
+     * 
+     * @return <code>{@link Map}&lt;{@link String}, {@link Integer}&gt;</code> with the field values as keys and the count as value
+     *      
+     * @throws SQLException if sth goes wrong 
+     */
+    public Map<String, Integer> countFormsByField(CmsFormDatabaseFilter filter, String fieldName) throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        Map<String, Integer> result = new HashMap<String, Integer>();
+
+        try {
+            List<Object> params = new ArrayList<Object>();
+            con = getConnection();
+            stmt = con.prepareStatement(getReadQuery(
+                filter.toHeadersOnly(),
+                params,
+                "COUNT_FORM_ENTRIES_BY_FIELD",
+                fieldName));
+            setParameters(stmt, params);
+            res = stmt.executeQuery();
+            while (res.next()) {
+                String value = res.getString(DB_FIELDVALUE);
+                if (value != null) {
+                    result.put(value, new Integer(res.getInt(DB_COUNT)));
+                }
+            }
+        } finally {
+            closeAll(con, stmt, res);
+        }
+        return result;
+    }
+
+    /**
+     * Counts all submitted forms matching the given filter, grouped by their state.<p>
+     * 
+     * All counts are read with a single query. States without any form are not contained in the result.<p>
+     * 
+     * @param filter the filter to match, the form data is never read
+     * 
+     * @return <code>{@link Map}&lt;{@link Integer}, {@link Integer}&gt;</code> with the states as keys and the count as value
+     *      
+     * @throws SQLException if sth goes wrong 
+     */
+    public Map<Integer, Integer> countFormsByState(CmsFormDatabaseFilter filter) throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+
+        try {
+            List<Object> params = new ArrayList<Object>();
+            con = getConnection();
+            stmt = con.prepareStatement(getReadQuery(filter.toHeadersOnly(), params, "COUNT_FORM_ENTRIES_BY_STATE", null));
+            setParameters(stmt, params);
+            res = stmt.executeQuery();
+            while (res.next()) {
+                result.put(new Integer(res.getInt(DB_STATE)), new Integer(res.getInt(DB_COUNT)));
+            }
+        } finally {
+            closeAll(con, stmt, res);
+        }
+        return result;
+    }
+
     /**
      * Deletes the form with all fields and data.<p>
      * 
@@ -265,24 +360,41 @@ public final class CmsFormDataAccess {
      */
     public void deleteForm(int entryId) throws SQLException {
 
+        // the values are needed to update the aggregates
+        CmsFormDataBean form = readForm(entryId);
         Connection con = null;
-        PreparedStatement stmt = null;
         try {
-            // delete the entries
             con = getConnection();
-            stmt = con.prepareStatement(getQuery("DELETE_FORM_ENTRY"));
-            stmt.setInt(1, entryId);
-            stmt.executeUpdate();
-
-            // delete the data
-            closeAll(null, stmt, null);
-            stmt = con.prepareStatement(getQuery("DELETE_FORM_DATA"));
-            stmt.setInt(1, entryId);
-            stmt.executeUpdate();
+            boolean autoCommit = con.getAutoCommit();
+            try {
+                // delete the form and update the aggregates in one transaction
+                con.setAutoCommit(false);
+                deleteForm(con, entryId);
+                if (form != null) {
+                    List<String> fieldNames = new ArrayList<String>();
+                    List<String> fieldValues = new ArrayList<String>();
+                    Iterator<Entry<String, String>> itFields = form.getAllFields().entrySet().iterator();
+                    while (itFields.hasNext()) {
+                        Entry<String, String> field = itFields.next();
+                        fieldNames.add(field.getKey());
+                        fieldValues.add(field.getValue());
+                    }
+                    updateAggregates(con, form.getFormId(), fieldNames, fieldValues, -1);
+                }
+                con.commit();
+            } catch (SQLException e) {
+                try {
+                    con.rollback();
+                } catch (SQLException e1) {
+                    // not supported, e.g. MyISAM
+                }
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
         } finally {
-            closeAll(con, stmt, null);
+            closeAll(con, null, null);
         }
-
     }
 
     /**
@@ -301,8 +413,56 @@ public final class CmsFormDataAccess {
                 updateDBTables();
                 break;
             default:
-                return;
+                break;
+        }
+        ensureDBTableExistance("CHECK_TABLE_DEADLETTERS", "CREATE_TABLE_CMS_WEBFORM_DEADLETTERS");
+        if (ensureDBTableExistance("CHECK_TABLE_AGGREGATES", "CREATE_TABLE_CMS_WEBFORM_AGGREGATES")) {
+            // aggregate the submissions stored so far
+            rebuildAggregates(null);
+        }
+        m_idGenerator.initialize(this);
+    }
+
+    /**
+     * Reads the aggregated answers of the forms submitted with the given form id.<p>
+     * 
+     * The aggregates contain the number of submissions for each value of each field. 
+     * The items of values with multiple selected items, separated by <code>", "</code>, are counted 
+     * separately, and values longer than 128 characters are counted by their first 128 characters. 
+     * The aggregates are updated in the same transaction whenever a submission is stored, changed 
+     * or deleted, so the time to read them does not depend on the number of submissions. 
+     * Use {@link CmsFormAggregatesJob} to rebuild them.<p>
+     * 
+     * @param formId the form id
+     * 
+     * @return a map from the field names to maps from the field values to the number of submissions
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    public Map<String, Map<String, Integer>> readAggregates(String formId) throws SQLException {
+
+        Map<String, Map<String, Integer>> result = new HashMap<String, Map<String, Integer>>();
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            con = getConnection();
+            stmt = con.prepareStatement(getQuery("READ_AGGREGATES"));
+            stmt.setString(1, formId);
+            res = stmt.executeQuery();
+            while (res.next()) {
+                String fieldName = res.getString(DB_FIELDNAME);
+                Map<String, Integer> values = result.get(fieldName);
+                if (values == null) {
+                    values = new HashMap<String, Integer>();
+                    result.put(fieldName, values);
+                }
+                values.put(res.getString(DB_FIELDVALUE), new Integer(res.getInt(DB_VALUE_COUNT)));
+            }
+        } finally {
+            closeAll(con, stmt, res);
         }
+        return result;
     }
 
     /**
@@ -376,58 +536,90 @@ public final class CmsFormDataAccess {
      */
     public List<CmsFormDataBean> readForms(CmsFormDatabaseFilter filter) throws SQLException {
 
-        Connection con = null;
-        PreparedStatement stmt = null;
-        ResultSet res = null;
-        List<CmsFormDataBean> result = new ArrayList<CmsFormDataBean>();
-
+        final List<CmsFormDataBean> result = new ArrayList<CmsFormDataBean>();
         try {
-            List<Object> params = new ArrayList<Object>();
-            con = getConnection();
-            stmt = con.prepareStatement(getReadQuery(filter, params, false));
-            for (int i = 0; i < params.size(); i++) {
-                if (params.get(i) instanceof Integer) {
-                    stmt.setInt(i + 1, ((Integer)params.get(i)).intValue());
-                } else if (params.get(i) instanceof Long) {
-                    stmt.setLong(i + 1, ((Long)params.get(i)).longValue());
-                } else {
-                    stmt.setString(i + 1, (String)params.get(i));
+            readForms(filter, new I_CmsFormDataHandler() {
+
+                /**
+                 * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormDataHandler#handleFormData(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean)
+                 */
+                public void handleFormData(CmsFormDataBean formData) {
+
+                    result.add(formData);
                 }
+            });
+        } catch (IOException e) {
+            // can not happen, the handler does not throw it
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Reads all submitted forms matching the given filter and passes them one after another to the given handler.<p>
+     * 
+     * The result set is read with the fetch size configured for the database. With the innodb 
+     * configuration the MySQL driver streams the rows, so that the memory used does not depend 
+     * on the number of submitted forms.<p>
+     * 
+     * If only a range of the forms is requested, or the forms are ordered by a field value, the matching 
+     * form headers are read first and the fields are read for these forms only, so that the paging applies 
+     * to the forms and not to the single field values.<p>
+     * 
+     * @param filter the filter to match 
+     * @param handler the handler for the submitted forms
+     *      
+     * @throws SQLException if sth goes wrong 
+     * @throws IOException if the handler fails
+     */
+    public void readForms(CmsFormDatabaseFilter filter, I_CmsFormDataHandler handler) throws SQLException, IOException {
+
+        if (filter.isHeadersOnly() || (!filter.isPaged() && (filter.getOrderField() == null))) {
+            readFormRows(filter, handler);
+            return;
+        }
+
+        // read the headers first, paged and ordered
+        final List<CmsFormDataBean> headers = new ArrayList<CmsFormDataBean>();
+        readFormRows(filter.toHeadersOnly(), new I_CmsFormDataHandler() {
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormDataHandler#handleFormData(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean)
+             */
+            public void handleFormData(CmsFormDataBean formData) {
+
+                headers.add(formData);
             }
-            res = stmt.executeQuery();
-            CmsFormDataBean bean = null;
-            while (res.next()) {
-                int entryId = res.getInt(DB_ENTRY_ID);
-                if ((bean == null) || (bean.getEntryId() != entryId)) {
-                    bean = new CmsFormDataBean();
-                    bean.setEntryId(entryId);
-                    bean.setDateCreated(res.getLong(DB_DATE_CREATED));
-                    bean.setFormId(res.getString(DB_FORM_ID));
-                    bean.setState(res.getInt(DB_STATE));
-                    // set the id
-                    CmsUUID resId;
-                    try {
-                        // assume it is an id
-                        resId = new CmsUUID(res.getString(DB_RESOURCE_ID));
-                    } catch (NumberFormatException e) {
-                        try {
-                            // it could also be a path
-                            resId = m_cms.readResource(res.getString(DB_RESOURCE_ID)).getStructureId();
-                        } catch (Throwable e1) {
-                            resId = CmsUUID.getNullUUID();
-                        }
-                    }
-                    bean.setResourceId(resId);
-                    result.add(bean);
-                }
-                if (!filter.isHeadersOnly()) {
-                    bean.addField(res.getString(DB_FIELDNAME), res.getString(DB_FIELDVALUE));
+        });
+
+        // then read the fields of these forms, in blocks to keep the statements small
+        for (int i = 0; i < headers.size(); i += MAX_ENTRY_IDS) {
+            List<CmsFormDataBean> block = headers.subList(i, Math.min(i + MAX_ENTRY_IDS, headers.size()));
+            List<Integer> entryIds = new ArrayList<Integer>(block.size());
+            Iterator<CmsFormDataBean> itHeaders = block.iterator();
+            while (itHeaders.hasNext()) {
+                entryIds.add(new Integer(itHeaders.next().getEntryId()));
+            }
+            final Map<Integer, CmsFormDataBean> forms = new HashMap<Integer, CmsFormDataBean>();
+            readFormRows(CmsFormDatabaseFilter.DEFAULT.filterEntryIds(entryIds), new I_CmsFormDataHandler() {
+
+                /**
+                 * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormDataHandler#handleFormData(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean)
+                 */
+                public void handleFormData(CmsFormDataBean formData) {
+
+                    forms.put(new Integer(formData.getEntryId()), formData);
                 }
+            });
+            // keep the order of the headers
+            itHeaders = block.iterator();
+            while (itHeaders.hasNext()) {
+                CmsFormDataBean header = itHeaders.next();
+                CmsFormDataBean form = forms.get(new Integer(header.getEntryId()));
+                // a form without any field value is only found as header
+                handler.handleFormData(form != null ? form : header);
             }
-        } finally {
-            closeAll(con, stmt, res);
         }
-        return result;
     }
 
     /**
@@ -479,6 +671,101 @@ public final class CmsFormDataAccess {
         return readForms(filter);
     }
 
+    /**
+     * Recomputes the aggregated answers from the stored submissions.<p>
+     * 
+     * @param formId the id of the form to recompute the aggregates for, or <code>null</code> for all forms
+     * 
+     * @throws SQLException if something goes wrong
+     * 
+     * @see #readAggregates(String)
+     */
+    public void rebuildAggregates(String formId) throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        boolean autoCommit = true;
+        try {
+            con = getConnection();
+
+            // count the values first, the rows may be streamed so the connection can not be used meanwhile
+            Map<List<String>, Integer> counts = new HashMap<List<String>, Integer>();
+            try {
+                stmt = con.prepareStatement(getQuery(
+                    "READ_AGGREGATE_VALUES",
+                    formId == null ? "" : getQuery("READ_AGGREGATE_VALUES_FORM_COND")),
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+                stmt.setFetchSize(Integer.parseInt(getQuery("READ_FORM_DATA_FETCH_SIZE").trim()));
+                if (formId != null) {
+                    stmt.setString(1, formId);
+                }
+                res = stmt.executeQuery();
+                while (res.next()) {
+                    String form = res.getString(DB_FORM_ID);
+                    String fieldName = res.getString(DB_FIELDNAME);
+                    Iterator<String> itValues = getAggregatedValues(res.getString(DB_FIELDVALUE)).iterator();
+                    while (itValues.hasNext()) {
+                        List<String> key = Arrays.asList(new String[] {form, fieldName, itValues.next()});
+                        Integer count = counts.get(key);
+                        counts.put(key, new Integer(count == null ? 1 : count.intValue() + 1));
+                    }
+                }
+            } finally {
+                // the connection is still needed
+                closeAll(null, stmt, res);
+                stmt = null;
+                res = null;
+            }
+
+            autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                stmt = con.prepareStatement(getQuery(
+                    "DELETE_AGGREGATES",
+                    formId == null ? "" : getQuery("DELETE_AGGREGATES_FORM_COND")));
+                if (formId != null) {
+                    stmt.setString(1, formId);
+                }
+                stmt.executeUpdate();
+                closeAll(null, stmt, null);
+                stmt = null;
+
+                if (!counts.isEmpty()) {
+                    stmt = con.prepareStatement(getQuery("WRITE_AGGREGATE"));
+                    Iterator<Entry<List<String>, Integer>> itCounts = counts.entrySet().iterator();
+                    while (itCounts.hasNext()) {
+                        Entry<List<String>, Integer> entry = itCounts.next();
+                        stmt.setString(1, entry.getKey().get(0));
+                        stmt.setString(2, entry.getKey().get(1));
+                        stmt.setString(3, entry.getKey().get(2));
+                        stmt.setInt(4, entry.getValue().intValue());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                con.commit();
+            } catch (SQLException e) {
+                try {
+                    con.rollback();
+                } catch (SQLException e1) {
+                    // not supported, e.g. MyISAM
+                }
+                throw e;
+            }
+        } finally {
+            closeAll(null, stmt, null);
+            if (con != null) {
+                try {
+                    con.setAutoCommit(autoCommit);
+                } finally {
+                    closeAll(con, null, null);
+                }
+            }
+        }
+    }
+
     /**
      * Updates the field with the new value for the given form.<p>
      * 
@@ -490,28 +777,70 @@ public final class CmsFormDataAccess {
      */
     public void updateFieldValue(int formEntryId, String field, String value) throws SQLException {
 
+        // the old value is needed to update the aggregates
+        CmsFormDataBean form = readForm(formEntryId);
         Connection con = null;
         PreparedStatement stmt = null;
         try {
-
-            // delete the current field in the web form
             con = getConnection();
-            stmt = con.prepareStatement(getQuery("DELETE_FORM_FIELD"));
-            stmt.setInt(1, formEntryId);
-            stmt.setString(2, field);
-            int rowCount = stmt.executeUpdate();
+            boolean autoCommit = con.getAutoCommit();
+            try {
+                // change the value and update the aggregates in one transaction
+                con.setAutoCommit(false);
 
-            // add the new entry if its not empty or if database row was present before
-            if (!CmsStringUtil.isEmptyOrWhitespaceOnly(value) || (rowCount > 0)) {
-                closeAll(null, stmt, null);
-                stmt = con.prepareStatement(getQuery("WRITE_FORM_DATA"));
+                // delete the current field in the web form
+                stmt = con.prepareStatement(getQuery("DELETE_FORM_FIELD"));
                 stmt.setInt(1, formEntryId);
                 stmt.setString(2, field);
-                if (value == null) {
-                    value = "";
+                int rowCount = stmt.executeUpdate();
+                closeAll(null, stmt, null);
+                stmt = null;
+
+                // add the new entry if its not empty or if database row was present before
+                String newValue = null;
+                if (!CmsStringUtil.isEmptyOrWhitespaceOnly(value) || (rowCount > 0)) {
+                    stmt = con.prepareStatement(getQuery("WRITE_FORM_DATA"));
+                    stmt.setInt(1, formEntryId);
+                    stmt.setString(2, field);
+                    if (value == null) {
+                        value = "";
+                    }
+                    stmt.setString(3, value);
+                    stmt.executeUpdate();
+                    closeAll(null, stmt, null);
+                    stmt = null;
+                    newValue = value;
                 }
-                stmt.setString(3, value);
-                stmt.executeUpdate();
+
+                if (form != null) {
+                    String oldValue = form.getFieldValue(field);
+                    if (oldValue != null) {
+                        updateAggregates(
+                            con,
+                            form.getFormId(),
+                            Collections.singletonList(field),
+                            Collections.singletonList(oldValue),
+                            -1);
+                    }
+                    if (newValue != null) {
+                        updateAggregates(
+                            con,
+                            form.getFormId(),
+                            Collections.singletonList(field),
+                            Collections.singletonList(newValue),
+                            1);
+                    }
+                }
+                con.commit();
+            } catch (SQLException e) {
+                try {
+                    con.rollback();
+                } catch (SQLException e1) {
+                    // not supported, e.g. MyISAM
+                }
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
             }
         } finally {
             closeAll(con, stmt, null);
@@ -543,6 +872,37 @@ public final class CmsFormDataAccess {
         }
     }
 
+    /**
+     * Stores a mail of a form submission that could not be delivered.<p>
+     * 
+     * @param entryId the id of the form submission, or <code>0</code> if the submission is not stored
+     * @param recipients the recipients of the mail
+     * @param subject the subject of the mail
+     * @param error the error message of the last delivery attempt
+     * @param content the complete MIME content of the mail, stored unchanged as binary data
+     * 
+     * @throws SQLException if something goes wrong 
+     */
+    public void writeDeadLetter(int entryId, String recipients, String subject, String error, byte[] content)
+    throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        try {
+            con = getConnection();
+            stmt = con.prepareStatement(getQuery("WRITE_DEADLETTER"));
+            stmt.setInt(1, entryId);
+            stmt.setLong(2, System.currentTimeMillis());
+            stmt.setString(3, recipients);
+            stmt.setString(4, subject);
+            stmt.setString(5, error);
+            stmt.setBinaryStream(6, new ByteArrayInputStream(content), content.length);
+            stmt.executeUpdate();
+        } finally {
+            closeAll(con, stmt, null);
+        }
+    }
+
     /**
      * Persists the values of the given form.<p>
      * 
@@ -558,125 +918,159 @@ public final class CmsFormDataAccess {
      */
     public int writeFormData(CmsFormHandler formHandler) throws SQLException {
 
-        Connection con = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
+        CmsForm form = formHandler.getFormConfiguration();
+        String formId = form.getFormId();
+        long dateCreated = System.currentTimeMillis();
+        CmsUUID resourceId;
+        try {
+            resourceId = formHandler.getCmsObject().readResource(formHandler.getRequestContext().getUri()).getStructureId();
+        } catch (CmsException e) {
+            resourceId = CmsUUID.getNullUUID();
+        }
 
-        int newId = 0;
+        // collect the data values before accessing the database, storing upload files may take a while
+        List<String> fieldNames = new ArrayList<String>();
+        List<String> fieldValues = new ArrayList<String>();
+        // loop over all form fields: 
+        List<I_CmsField> formFields = form.getAllFields(false, true, true);
+        Iterator<I_CmsField> itFormFields = formFields.iterator();
+        while (itFormFields.hasNext()) {
+            I_CmsField field = itFormFields.next();
+            // do not store empty fields: users will not be able to enter something and "duplicate entry" errors may happen
+            // do not store paging fields as well
+            if ((field instanceof CmsPagingField) || (field instanceof CmsEmptyField)) {
+                continue;
+            }
+
+            // returns null if we do not deal with a CmsUploadFileItem: 
+            FileItem fileItem = formHandler.getUploadFile(field);
+            if (fileItem != null) {
+                // save the location of the file and 
+                // store it from the temp file to a save place: 
+                String absPath = storeFile(fileItem, formHandler);
+                fieldNames.add(field.getDbLabel());
+                fieldValues.add(absPath);
+            } else if ((field instanceof CmsDisplayField) || (field instanceof CmsHiddenDisplayField)) {
+                fieldNames.add(field.getDbLabel());
+                fieldValues.add(field.getValue());
+            } else if (field instanceof CmsDynamicField) {
+                fieldNames.add(field.getDbLabel());
+                fieldValues.add(formHandler.getFormConfiguration().getFieldStringValueByName(field.getName()));
+            } else if (field instanceof CmsTableField) {
+                // a table field contains more than one value, so for all values one entry is created
+                for (int i = 0; i < field.getItems().size(); i++) {
+                    CmsFieldItem fieldItem = field.getItems().get(i);
+                    fieldNames.add(fieldItem.getDbLabel());
+                    fieldValues.add(fieldItem.getValue());
+                }
+            } else {
+                fieldNames.add(field.getDbLabel());
+                fieldValues.add(field.getValue());
+            }
+        }
 
+        Connection con = null;
+        int newId = 0;
         try {
             con = getConnection();
             // 1) Compute next id
-            stmt = con.prepareStatement(getQuery("READ_NEXT_ENTRY_ID"));
-            rs = stmt.executeQuery();
-            if (rs.next()) {
-                newId = rs.getInt("MAXID");
-            }
-            newId++;
+            newId = m_idGenerator.nextEntryId(con);
 
-            // 2) Write a new entry 
-            stmt = con.prepareStatement(getQuery("WRITE_FORM_ENTRY"));
-
-            CmsForm form = formHandler.getFormConfiguration();
-            String formId = form.getFormId();
-            long dateCreated = System.currentTimeMillis();
-            CmsUUID resourceId;
+            boolean autoCommit = con.getAutoCommit();
             try {
-                resourceId = formHandler.getCmsObject().readResource(formHandler.getRequestContext().getUri()).getStructureId();
-            } catch (CmsException e) {
-                resourceId = CmsUUID.getNullUUID();
-            }
-            stmt.setInt(1, newId);
-            stmt.setString(2, formId);
-            stmt.setLong(3, dateCreated);
-            stmt.setString(4, resourceId.toString());
-            stmt.setInt(5, 0); // initial state
-            int rc = stmt.executeUpdate();
-            if (rc != 1) {
-                LOG.error(Messages.get().getBundle().key(
-                    Messages.LOG_ERR_DATAACCESS_SQL_WRITE_SUBMISSION_1,
-                    new Object[] {formHandler.createMailTextFromFields(false, false)}));
-                newId = -1;
-                return newId;
-            }
-
-            // connection is still needed, so only close statement
-            closeAll(null, stmt, null);
-
-            // 3) Now insert the data values for this submission with that ref_id: 
-            stmt = con.prepareStatement(getQuery("WRITE_FORM_DATA"));
-            // loop over all form fields: 
-            List<I_CmsField> formFields = form.getAllFields(false, true, true);
-            Iterator<I_CmsField> itFormFields = formFields.iterator();
-            while (itFormFields.hasNext()) {
-                I_CmsField field = itFormFields.next();
-                // do not store empty fields: users will not be able to enter something and "duplicate entry" errors may happen
-                // do not store paging fields as well
-                if ((field instanceof CmsPagingField) || (field instanceof CmsEmptyField)) {
-                    continue;
+                // 2) Write the new entry and all data values in one transaction, the data values as one batch
+                con.setAutoCommit(false);
+                if (writeFormEntry(con, newId, formId, dateCreated, resourceId) != 1) {
+                    con.rollback();
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERR_DATAACCESS_SQL_WRITE_SUBMISSION_1,
+                        new Object[] {formHandler.createMailTextFromFields(false, false)}));
+                    return -1;
                 }
-
-                // returns null if we do not deal with a CmsUploadFileItem: 
-                FileItem fileItem = formHandler.getUploadFile(field);
-                List<String> fieldNames = new ArrayList<String>();
-                List<String> fieldValues = new ArrayList<String>();
-                if (fileItem != null) {
-                    // save the location of the file and 
-                    // store it from the temp file to a save place: 
-                    String absPath = storeFile(fileItem, formHandler);
-                    fieldNames.add(field.getDbLabel());
-                    fieldValues.add(absPath);
-                } else if ((field instanceof CmsDisplayField) || (field instanceof CmsHiddenDisplayField)) {
-                    fieldNames.add(field.getDbLabel());
-                    fieldValues.add(field.getValue());
-                } else if (field instanceof CmsDynamicField) {
-                    fieldNames.add(field.getDbLabel());
-                    fieldValues.add(formHandler.getFormConfiguration().getFieldStringValueByName(field.getName()));
-                } else if (field instanceof CmsTableField) {
-                    for (int i = 0; i < field.getItems().size(); i++) {
-                        CmsFieldItem fieldItem = field.getItems().get(i);
-                        fieldNames.add(fieldItem.getDbLabel());
-                        fieldValues.add(fieldItem.getValue());
-                    }
-                } else {
-                    fieldNames.add(field.getDbLabel());
-                    fieldValues.add(field.getValue());
+                writeFormFields(con, newId, fieldNames, fieldValues, formHandler, true);
+                updateAggregates(con, formId, fieldNames, fieldValues, 1);
+                con.commit();
+            } catch (SQLException e) {
+                if (LOG.isWarnEnabled()) {
+                    LOG.warn(Messages.get().getBundle().key(Messages.LOG_WARN_DATAACCESS_SQL_WRITE_BATCH_0), e);
                 }
+                try {
+                    con.rollback();
+                } catch (SQLException e1) {
+                    // not supported, e.g. MyISAM
+                }
+                con.setAutoCommit(true);
 
-                // a field can contain more than one value (e.g. table field), so for all values one entry is created
-                for (int i = 0; i < fieldValues.size(); i++) {
-                    String fieldName = fieldNames.get(i);
-                    String fieldValue = fieldValues.get(i);
-                    stmt.setInt(1, newId);
-                    stmt.setString(2, fieldName);
-                    stmt.setString(3, fieldValue);
-
-                    /*
-                     * at this level we can allow to loose a field value and try 
-                     * to save the others instead of failing everything. 
-                     */
-                    try {
-                        rc = stmt.executeUpdate();
-                    } catch (SQLException sqlex) {
-                        LOG.error(
-                            Messages.get().getBundle().key(
-                                Messages.LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3,
-                                new Object[] {fieldName, fieldValue, formHandler.createMailTextFromFields(false, false)}),
-                            sqlex);
-                    }
-                    if (rc != 1) {
-                        LOG.error(Messages.get().getBundle().key(
-                            Messages.LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3,
-                            new Object[] {fieldName, fieldValue, formHandler.createMailTextFromFields(false, false)}));
-                    }
+                // 3) Fall back to writing the values one by one, so that a single failing field does not 
+                // prevent storing the others. Remove what may be left over without transaction support. 
+                deleteForm(con, newId);
+                if (writeFormEntry(con, newId, formId, dateCreated, resourceId) != 1) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERR_DATAACCESS_SQL_WRITE_SUBMISSION_1,
+                        new Object[] {formHandler.createMailTextFromFields(false, false)}));
+                    return -1;
+                }
+                writeFormFields(con, newId, fieldNames, fieldValues, formHandler, false);
+                try {
+                    // the submission is stored, so errors are only logged, the aggregates have to be rebuilt
+                    updateAggregates(con, formId, fieldNames, fieldValues, 1);
+                } catch (SQLException e1) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERR_DATAACCESS_SQL_UPDATE_AGGREGATES_1,
+                        formId), e1);
                 }
+            } finally {
+                con.setAutoCommit(autoCommit);
             }
         } finally {
-            closeAll(con, stmt, rs);
+            closeAll(con, null, null);
         }
         return newId;
     }
 
+    /**
+     * Returns the table space to use for indexes, only relevant for Oracle.<p>
+     * 
+     * @return the table space to use for indexes, or an empty String if not relevant
+     */
+    protected String getIndexTablespace() {
+
+        if (m_db.equals(DB_ORACLE)) {
+            CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
+            return module.getParameter(CmsForm.MODULE_PARAM_DB_INDEXTABLESPACE, "users");
+        }
+        return "";
+    }
+
+    /**
+     * Reads the highest entry id of all stored form submissions.<p>
+     * 
+     * Only used to initialize the entry id generators, new ids are never computed this way.<p>
+     * 
+     * @param con the connection to use
+     * 
+     * @return the highest entry id, or <code>0</code> if no form submission is stored
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    protected int readMaxEntryId(Connection con) throws SQLException {
+
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        int result = 0;
+        try {
+            stmt = con.prepareStatement(getQuery("READ_NEXT_ENTRY_ID"));
+            rs = stmt.executeQuery();
+            if (rs.next()) {
+                result = rs.getInt("MAXID");
+            }
+        } finally {
+            // the connection is still needed
+            closeAll(null, stmt, rs);
+        }
+        return result;
+    }
+
     /**
      * Sets the cms context.<p>
      * 
@@ -701,7 +1095,7 @@ public final class CmsFormDataAccess {
      * @param statement The statement.
      * @param res The result set.
      */
-    private void closeAll(Connection con, Statement statement, ResultSet res) {
+    protected void closeAll(Connection con, Statement statement, ResultSet res) {
 
         // result set
         if (res != null) {
@@ -737,6 +1131,31 @@ public final class CmsFormDataAccess {
         }
     }
 
+    /**
+     * Creates the generator for the ids of new form submissions.<p>
+     * 
+     * @param name either {@link #ID_GENERATOR_BLOCK}, {@link #ID_GENERATOR_SEQUENCE} 
+     *      or the class name of an {@link I_CmsFormEntryIdGenerator} implementation
+     * 
+     * @return the generator for the ids of new form submissions
+     */
+    private I_CmsFormEntryIdGenerator createIdGenerator(String name) {
+
+        if (ID_GENERATOR_SEQUENCE.equals(name)) {
+            return new CmsFormEntryIdSequenceGenerator();
+        }
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(name) && !ID_GENERATOR_BLOCK.equals(name)) {
+            try {
+                return (I_CmsFormEntryIdGenerator)Class.forName(name.trim()).newInstance();
+            } catch (Throwable t) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(Messages.LOG_ERR_DATAACCESS_IDGENERATOR_1, name), t);
+                }
+            }
+        }
+        return new CmsFormEntryIdBlockGenerator();
+    }
+
     /**
      * Unconditionally tries to create the db tables needed for form data.<p>
      * 
@@ -744,11 +1163,7 @@ public final class CmsFormDataAccess {
      */
     private void createDBTables() throws SQLException {
 
-        String indexTablespace = "";
-        if (m_db.equals(DB_ORACLE)) {
-            CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
-            indexTablespace = module.getParameter(CmsForm.MODULE_PARAM_DB_INDEXTABLESPACE, "users");
-        }
+        String indexTablespace = getIndexTablespace();
         Connection con = null;
         PreparedStatement stmt = null;
         try {
@@ -821,6 +1236,71 @@ public final class CmsFormDataAccess {
         }
     }
 
+    /**
+     * Deletes the form with all fields and data, using the given connection.<p>
+     * 
+     * @param con the connection to use
+     * @param entryId to find the form data in the database 
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    private void deleteForm(Connection con, int entryId) throws SQLException {
+
+        PreparedStatement stmt = null;
+        try {
+            // delete the entries
+            stmt = con.prepareStatement(getQuery("DELETE_FORM_ENTRY"));
+            stmt.setInt(1, entryId);
+            stmt.executeUpdate();
+
+            // delete the data
+            closeAll(null, stmt, null);
+            stmt = con.prepareStatement(getQuery("DELETE_FORM_DATA"));
+            stmt.setInt(1, entryId);
+            stmt.executeUpdate();
+        } finally {
+            // the connection is still needed
+            closeAll(null, stmt, null);
+        }
+    }
+
+    /**
+     * Creates an additional db table if it does not exist.<p>
+     * 
+     * @param checkQueryKey the key of the query to check the existence of the table
+     * @param createQueryKey the key of the query to create the table
+     * 
+     * @return <code>true</code> if the table was created
+     * 
+     * @throws SQLException if sth goes wrong
+     */
+    private boolean ensureDBTableExistance(String checkQueryKey, String createQueryKey) throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            con = getConnection();
+            stmt = con.prepareStatement(getQuery(checkQueryKey));
+            try {
+                res = stmt.executeQuery();
+                // the table exists
+                return false;
+            } catch (SQLException e) {
+                if (LOG.isInfoEnabled()) {
+                    LOG.info(Messages.get().getBundle().key(Messages.LOG_INFO_DATAACESS_SQL_TABLE_NOTEXISTS_0), e);
+                }
+            }
+            closeAll(null, stmt, res);
+            res = null;
+            stmt = con.prepareStatement(getQuery(createQueryKey, getIndexTablespace()));
+            stmt.executeUpdate();
+            return true;
+        } finally {
+            closeAll(con, stmt, res);
+        }
+    }
+
     /**
      * Checks if the db tables for the webform data exist and is up-to-date.<p> 
      * 
@@ -869,7 +1349,7 @@ public final class CmsFormDataAccess {
      *      
      * @throws SQLException if sth goes wrong 
      */
-    private Connection getConnection() throws SQLException {
+    protected Connection getConnection() throws SQLException {
 
         return OpenCms.getSqlManager().getConnection(m_connectionPool);
     }
@@ -881,7 +1361,7 @@ public final class CmsFormDataAccess {
      * 
      * @return the the SQL query in this property list with the specified key
      */
-    private String getQuery(String queryKey) {
+    protected String getQuery(String queryKey) {
 
         return (String)m_queries.get(queryKey);
     }
@@ -894,7 +1374,7 @@ public final class CmsFormDataAccess {
      * 
      * @return the the SQL query in this property list with the specified key
      */
-    private String getQuery(String queryKey, String placeHolder) {
+    protected String getQuery(String queryKey, String placeHolder) {
 
         String query = getQuery(queryKey);
         if (placeHolder != null) {
@@ -903,6 +1383,42 @@ public final class CmsFormDataAccess {
         return query;
     }
 
+    /**
+     * Returns the values to aggregate for the given field value.<p>
+     * 
+     * The items of a value with multiple selected items, e.g. of check boxes, are aggregated separately. 
+     * Values longer than {@link #MAX_AGGREGATE_VALUE_LENGTH} characters are aggregated by their prefix, 
+     * so that long answers are still counted.<p>
+     * 
+     * @param value the field value, may be <code>null</code>
+     * 
+     * @return the values to aggregate, empty if the field value is not aggregated
+     */
+    private List<String> getAggregatedValues(String value) {
+
+        List<String> result = new ArrayList<String>();
+        if (value == null) {
+            return result;
+        }
+        String[] items = value.split(MULTI_VALUE_SEPARATOR, -1);
+        for (int i = 0; i < items.length; i++) {
+            String item = items[i];
+            if (item.length() > MAX_AGGREGATE_VALUE_LENGTH) {
+                int end = MAX_AGGREGATE_VALUE_LENGTH;
+                if (Character.isHighSurrogate(item.charAt(end - 1))) {
+                    // do not split a surrogate pair
+                    end--;
+                }
+                item = item.substring(0, end);
+            }
+            // Oracle stores empty Strings as null
+            if ((item.length() > 0) || !m_db.equals(DB_ORACLE)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
     /**
      * Build the whole sql statement for the given form filter.<p>
      * 
@@ -914,13 +1430,42 @@ public final class CmsFormDataAccess {
      */
     private String getReadQuery(CmsFormDatabaseFilter filter, List<Object> params, boolean count) {
 
+        return getReadQuery(filter, params, count ? "COUNT_FORM_ENTRIES" : null, null);
+    }
+
+    /**
+     * Build the whole sql statement for the given form filter.<p>
+     * 
+     * @param filter the filter
+     * @param params the parameter values (return parameter)
+     * @param countQueryKey the key of the count query to use, or <code>null</code> to select the rows
+     * @param groupField the name of the field to group the counted forms by, 
+     *      only used with the count query <code>COUNT_FORM_ENTRIES_BY_FIELD</code>
+     * 
+     * @return the sql statement string
+     */
+    private String getReadQuery(
+        CmsFormDatabaseFilter filter,
+        List<Object> params,
+        String countQueryKey,
+        String groupField) {
+
         StringBuffer sql = new StringBuffer(128);
         params.clear(); // be sure the parameters list is clear
 
+        boolean count = (countQueryKey != null);
         if (count) {
-            sql.append(getQuery("COUNT_FORM_ENTRIES"));
+            if (filter.isHeadersOnly() && "COUNT_FORM_ENTRIES".equals(countQueryKey)) {
+                // avoid joining the data table without any condition
+                sql.append(getQuery("COUNT_FORM_HEADERS"));
+            } else {
+                sql.append(getQuery(countQueryKey));
+            }
         } else {
-            if (filter.isHeadersOnly()) {
+            if (filter.isHeadersOnly() && (filter.getOrderField() != null)) {
+                sql.append(getQuery("READ_FORM_ENTRY_ORDERED"));
+                params.add(filter.getOrderField());
+            } else if (filter.isHeadersOnly()) {
                 sql.append(getQuery("READ_FORM_ENTRY"));
             } else {
                 sql.append(getQuery("READ_FORM_DATA"));
@@ -933,7 +1478,14 @@ public final class CmsFormDataAccess {
                 sql.append(",").append(getQuery("COND_FIELD_FROM", "" + i));
             }
         }
+        if (groupField != null) {
+            where.append(getQuery("COND_GROUP_FIELD"));
+            params.add(groupField);
+        }
         if (!filter.isHeadersOnly()) {
+            if (where.length() > 0) {
+                where.append(" ").append(getQuery("COND_AND")).append(" ");
+            }
             where.append(getQuery("COND_JOIN"));
         }
         if (filter.getEntryId() > 0) {
@@ -943,6 +1495,21 @@ public final class CmsFormDataAccess {
             where.append(getQuery("FILTER_ENTRY_ID"));
             params.add(new Integer(filter.getEntryId()));
         }
+        List<Integer> entryIds = filter.getEntryIds();
+        if (!entryIds.isEmpty()) {
+            if (where.length() > 0) {
+                where.append(" ").append(getQuery("COND_AND")).append(" ");
+            }
+            String ph = "";
+            for (int i = 0; i < entryIds.size(); i++) {
+                ph += "?";
+                if (i < (entryIds.size() - 1)) {
+                    ph += ", ";
+                }
+            }
+            where.append(getQuery("FILTER_ENTRY_IDS", ph));
+            params.addAll(entryIds);
+        }
         if (filter.getFormId() != null) {
             if (where.length() > 0) {
                 where.append(" ").append(getQuery("COND_AND")).append(" ");
@@ -1014,11 +1581,23 @@ public final class CmsFormDataAccess {
         if (where.length() > 0) {
             sql.append(" ").append(getQuery("COND_WHERE")).append(" ").append(where);
         }
+        if (groupField != null) {
+            sql.append(" ").append(getQuery("COND_GROUP_BY_FIELD"));
+        } else if ("COUNT_FORM_ENTRIES_BY_STATE".equals(countQueryKey)) {
+            sql.append(" ").append(getQuery("COND_GROUP_BY_STATE"));
+        }
         if (!count) {
+            String order = "COND_ORDER";
+            if (filter.isHeadersOnly() && (filter.getOrderField() != null)) {
+                order = "COND_ORDER_FIELD";
+            } else if (filter.isOrderDate()) {
+                // the entry id is the second criteria, so the rows of a form stay together
+                order = "COND_ORDER_DATE";
+            }
             if (filter.isOrderAsc()) {
-                sql.append(" ").append(getQuery("COND_ORDER_ASC"));
+                sql.append(" ").append(getQuery(order + "_ASC"));
             } else {
-                sql.append(" ").append(getQuery("COND_ORDER_DESC"));
+                sql.append(" ").append(getQuery(order + "_DESC"));
             }
         }
         if ((filter.getIndexFrom() != CmsFormDatabaseFilter.INDEX_IGNORE_FROM)
@@ -1029,14 +1608,21 @@ public final class CmsFormDataAccess {
             }
             sql.insert(0, " ").insert(0, getQuery("FILTER_LIMIT_PREFIX"));
             sql.append(" ").append(getQuery("FILTER_LIMIT_POSTFIX")).append(" ");
-            sql.append(" ").append(getQuery("FILTER_LIMIT", "" + rows));
-            if (filter.getIndexFrom() != 0) {
+            if (m_db.equals(DB_MSSQL)) {
+                // MS SQL needs the offset in any case and before the number of rows
                 sql.append(" ").append(getQuery("FILTER_OFFSET", "" + filter.getIndexFrom()));
+                sql.append(" ").append(getQuery("FILTER_LIMIT", "" + rows));
+            } else {
+                sql.append(" ").append(getQuery("FILTER_LIMIT", "" + rows));
+                if (filter.getIndexFrom() != 0) {
+                    sql.append(" ").append(getQuery("FILTER_OFFSET", "" + filter.getIndexFrom()));
+                }
             }
         }
         return sql.toString();
     }
 
+
     /**
      * Loads a Java properties hash containing SQL queries.<p>
      * 
@@ -1056,6 +1642,111 @@ public final class CmsFormDataAccess {
         }
     }
 
+    /**
+     * Reads the rows matching the given filter in a single query and passes the forms one after another to the given handler.<p>
+     * 
+     * @param filter the filter to match 
+     * @param handler the handler for the submitted forms
+     *      
+     * @throws SQLException if sth goes wrong 
+     * @throws IOException if the handler fails
+     */
+    private void readFormRows(CmsFormDatabaseFilter filter, I_CmsFormDataHandler handler)
+    throws SQLException, IOException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        boolean autoCommit = true;
+
+        try {
+            List<Object> params = new ArrayList<Object>();
+            con = getConnection();
+            // some drivers only use a cursor inside of a transaction
+            autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            stmt = con.prepareStatement(
+                getReadQuery(filter, params, false),
+                ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(Integer.parseInt(getQuery("READ_FORM_DATA_FETCH_SIZE").trim()));
+            setParameters(stmt, params);
+            res = stmt.executeQuery();
+            CmsFormDataBean bean = null;
+            while (res.next()) {
+                int entryId = res.getInt(DB_ENTRY_ID);
+                if ((bean == null) || (bean.getEntryId() != entryId)) {
+                    // the rows are ordered by entry id, so the previous bean is complete
+                    if (bean != null) {
+                        handler.handleFormData(bean);
+                    }
+                    bean = new CmsFormDataBean();
+                    bean.setEntryId(entryId);
+                    bean.setDateCreated(res.getLong(DB_DATE_CREATED));
+                    bean.setFormId(res.getString(DB_FORM_ID));
+                    bean.setState(res.getInt(DB_STATE));
+                    // set the id
+                    CmsUUID resId;
+                    try {
+                        // assume it is an id
+                        resId = new CmsUUID(res.getString(DB_RESOURCE_ID));
+                    } catch (NumberFormatException e) {
+                        try {
+                            // it could also be a path
+                            resId = m_cms.readResource(res.getString(DB_RESOURCE_ID)).getStructureId();
+                        } catch (Throwable e1) {
+                            resId = CmsUUID.getNullUUID();
+                        }
+                    }
+                    bean.setResourceId(resId);
+                }
+                if (!filter.isHeadersOnly()) {
+                    bean.addField(res.getString(DB_FIELDNAME), res.getString(DB_FIELDVALUE));
+                }
+            }
+            if (bean != null) {
+                handler.handleFormData(bean);
+            }
+        } finally {
+            // close the result set and statement before ending the transaction
+            closeAll(null, stmt, res);
+            if (con != null) {
+                try {
+                    // only read, nothing to commit
+                    con.rollback();
+                } catch (SQLException e) {
+                    // not supported, e.g. MyISAM
+                }
+                try {
+                    con.setAutoCommit(autoCommit);
+                } finally {
+                    closeAll(con, null, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the parameter values built by {@link #getReadQuery(CmsFormDatabaseFilter, List, String, String)}.<p>
+     * 
+     * @param stmt the statement to set the parameters for
+     * @param params the parameter values
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    private void setParameters(PreparedStatement stmt, List<Object> params) throws SQLException {
+
+        for (int i = 0; i < params.size(); i++) {
+            if (params.get(i) instanceof Integer) {
+                stmt.setInt(i + 1, ((Integer)params.get(i)).intValue());
+            } else if (params.get(i) instanceof Long) {
+                stmt.setLong(i + 1, ((Long)params.get(i)).longValue());
+            } else {
+                stmt.setString(i + 1, (String)params.get(i));
+            }
+        }
+    }
+
     /**
      * Stores the content of the given file to a 
      * place specified by the module parameter "uploadfolder".<p>
@@ -1066,6 +1757,10 @@ public final class CmsFormDataAccess {
      * This must be called, when the form submission is stored to the database 
      * as the content would be lost.<p>
      * 
+     * Only the target path is computed directly, the file itself is written by the 
+     * {@link CmsFormSubmissionQueue}, in the background if enabled. The contents are spooled 
+     * to a temporary file before, so that pending tasks do not keep the uploads in memory.<p>
+     * 
      * @param item the upload file item to store 
      * @param formHandler only used for exception logging 
      * 
@@ -1073,8 +1768,7 @@ public final class CmsFormDataAccess {
      */
     private String storeFile(FileItem item, CmsFormHandler formHandler) {
 
-        String fullResourceName = "";
-        CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
+        final CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
         if (module == null) {
             throw new CmsRuntimeException(Messages.get().container(
                 Messages.LOG_ERR_DATAACCESS_MODULE_MISSING_1,
@@ -1106,93 +1800,173 @@ public final class CmsFormDataAccess {
         itemName = sdf.format(new Date()) + itemName;
         // determine upload target: RFS (default) or VFS
         String vfsUpload = module.getParameter(CmsForm.MODULE_PARAM_UPLOADVFS, CmsStringUtil.FALSE);
-        if (Boolean.valueOf(vfsUpload).booleanValue()) {
+        final boolean vfs = Boolean.valueOf(vfsUpload).booleanValue();
+        final String fullResourceName;
+        if (vfs) {
             // upload to OpenCms VFS
             if (!filePath.endsWith("/")) {
                 filePath += "/";
             }
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(formName)) {
+                // use the sub folder, it is created if necessary
+                filePath += formName + "/";
+            }
             // translate resource name to valid VFS resource name
             itemName = m_cms.getRequestContext().getFileTranslator().translateResource(itemName);
+            fullResourceName = filePath + itemName;
+        } else {
+            // upload to server RFS
+            File folder = new File(filePath);
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(formName)) {
+                folder = new File(folder, formName);
+            }
+            fullResourceName = new File(folder, itemName).getAbsolutePath();
+        }
+
+        // spool the contents now, the temporary file of the upload is deleted after the request
+        final String submission = formHandler.createMailTextFromFields(false, false);
+        final File spoolFile;
+        try {
+            spoolFile = File.createTempFile("webform", ".upload");
+            item.write(spoolFile);
+        } catch (Exception e) {
+            LOG.error(Messages.get().getBundle().key(
+                Messages.LOG_ERR_DATAACCESS_UPLOADFILE_LOST_1,
+                new Object[] {submission}), e);
+            return fullResourceName;
+        }
+        CmsFormSubmissionQueue.getInstance().execute(new CmsFormSubmissionQueue.A_CmsSubmissionTask() {
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#abandon(java.lang.Throwable)
+             */
+            @Override
+            protected void abandon(Throwable error) {
 
-            // store current project
-            CmsProject currProject = m_cms.getRequestContext().getCurrentProject();
-            try {
-                // switch to an offline project
-                String projectName = module.getParameter(CmsForm.MODULE_PARAM_UPLOADPROJECT, "Offline");
-                m_cms.getRequestContext().setCurrentProject(m_cms.readProject(projectName));
-                if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(formName)) {
-                    // check if the sub folder exists and create it if necessary
-                    String subFolder = filePath + formName;
-                    if (!m_cms.existsResource(subFolder)) {
-                        try {
-                            m_cms.createResource(subFolder, CmsResourceTypeFolder.getStaticTypeId(), null, null);
-                            m_cms.unlockResource(subFolder);
-                            // publish the folder
-                            OpenCms.getPublishManager().publishResource(m_cms, subFolder);
-                            // wait a little bit to avoid problems when publishing the uploaded file afterwards
-                            OpenCms.getPublishManager().waitWhileRunning(3000);
-                            // set the file path to sub folder
-                            filePath = subFolder + "/";
-                        } catch (Exception e) {
-                            // error creating the folder in VFS
-                            LOG.error(e);
-                        }
-                    }
-                }
-                // create full resource name
-                fullResourceName = filePath + itemName;
-                // determine the resource type id from the given information
-                int resTypeId = OpenCms.getResourceManager().getDefaultTypeForName(itemName).getTypeId();
-                // create the resource in VFS
-                m_cms.createResource(fullResourceName, resTypeId, item.get(), null);
-                m_cms.unlockResource(fullResourceName);
-                try {
-                    // publish the resource
-                    OpenCms.getPublishManager().publishResource(m_cms, fullResourceName);
-                } catch (Exception e) {
-                    // error publishing the created file
-                    LOG.error(e);
-                }
-            } catch (CmsException e) {
-                // error creating the file in VFS
                 LOG.error(Messages.get().getBundle().key(
                     Messages.LOG_ERR_DATAACCESS_UPLOADFILE_LOST_1,
-                    new Object[] {formHandler.createMailTextFromFields(false, false)}), e);
-            } finally {
-                // switch back to stored project
-                m_cms.getRequestContext().setCurrentProject(currProject);
+                    new Object[] {submission}), error);
+                spoolFile.delete();
             }
-        } else {
-            // upload to server RFS
-            try {
-                File folder = new File(filePath);
-                CmsFileUtil.assertFolder(folder, CmsFileUtil.MODE_READ, true);
-                if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(formName)) {
-                    File subFolder = new File(folder, formName);
-                    CmsFileUtil.assertFolder(subFolder, CmsFileUtil.MODE_READ, true);
-                    folder = subFolder;
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#execute()
+             */
+            @Override
+            protected void execute() throws Exception {
+
+                byte[] contents = org.opencms.util.CmsFileUtil.readFile(spoolFile);
+                if (vfs) {
+                    writeVfsFile(
+                        fullResourceName,
+                        contents,
+                        module.getParameter(CmsForm.MODULE_PARAM_UPLOADPROJECT, "Offline"));
+                } else {
+                    writeRfsFile(fullResourceName, contents);
+                }
+                spoolFile.delete();
+            }
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue.A_CmsSubmissionTask#getDescription()
+             */
+            @Override
+            protected String getDescription() {
+
+                return fullResourceName;
+            }
+        });
+        return fullResourceName;
+    }
+
+    /**
+     * Adds the given delta to the aggregated count of a single field value.<p>
+     * 
+     * @param con the connection to use
+     * @param formId the form id
+     * @param fieldName the name of the field
+     * @param value the value of the field
+     * @param delta the delta to add
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    private void updateAggregate(Connection con, String formId, String fieldName, String value, int delta)
+    throws SQLException {
+
+        PreparedStatement stmt = null;
+        try {
+            // a second attempt is needed if another submission inserted the same value meanwhile
+            for (int i = 0; i < 2; i++) {
+                stmt = con.prepareStatement(getQuery("UPDATE_AGGREGATE"));
+                stmt.setInt(1, delta);
+                stmt.setString(2, formId);
+                stmt.setString(3, fieldName);
+                stmt.setString(4, value);
+                int rc = stmt.executeUpdate();
+                closeAll(null, stmt, null);
+                stmt = null;
+                if ((rc > 0) || (delta < 0)) {
+                    return;
                 }
-                File storeFile = new File(folder, itemName);
-                fullResourceName = storeFile.getAbsolutePath();
-                byte[] contents = item.get();
+
+                // some databases, e.g. PostgreSQL, abort the whole transaction if the insert fails
+                Savepoint savepoint = con.getAutoCommit() ? null : con.setSavepoint();
+                stmt = con.prepareStatement(getQuery("WRITE_AGGREGATE"));
+                stmt.setString(1, formId);
+                stmt.setString(2, fieldName);
+                stmt.setString(3, value);
+                stmt.setInt(4, delta);
                 try {
-                    OutputStream out = new FileOutputStream(storeFile);
-                    out.write(contents);
-                    out.flush();
-                    out.close();
-                } catch (IOException e) {
-                    // should never happen
-                    LOG.error(Messages.get().getBundle().key(
-                        Messages.LOG_ERR_DATAACCESS_UPLOADFILE_LOST_1,
-                        new Object[] {formHandler.createMailTextFromFields(false, false)}), e);
+                    stmt.executeUpdate();
+                    return;
+                } catch (SQLException e) {
+                    if (i > 0) {
+                        throw e;
+                    }
+                    if (savepoint != null) {
+                        con.rollback(savepoint);
+                    }
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(e.getLocalizedMessage(), e);
+                    }
+                } finally {
+                    closeAll(null, stmt, null);
+                    stmt = null;
                 }
-            } catch (CmsRfsException ex) {
-                LOG.error(Messages.get().getBundle().key(
-                    Messages.LOG_ERR_DATAACCESS_UPLOADFILE_LOST_1,
-                    new Object[] {formHandler.createMailTextFromFields(false, false)}), ex);
+            }
+        } finally {
+            // the connection is still needed
+            closeAll(null, stmt, null);
+        }
+    }
+
+    /**
+     * Adds the given delta to the aggregated counts of the given field values.<p>
+     * 
+     * Called with the connection of the transaction changing the submission, 
+     * so that the aggregates are changed together with the submission.<p>
+     * 
+     * @param con the connection to use
+     * @param formId the form id
+     * @param fieldNames the names of the fields
+     * @param fieldValues the values of the fields, in the same order as the names
+     * @param delta the delta to add, <code>1</code> for added and <code>-1</code> for removed values
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    private void updateAggregates(
+        Connection con,
+        String formId,
+        List<String> fieldNames,
+        List<String> fieldValues,
+        int delta) throws SQLException {
+
+        for (int i = 0; i < fieldNames.size(); i++) {
+            Iterator<String> itValues = getAggregatedValues(fieldValues.get(i)).iterator();
+            while (itValues.hasNext()) {
+                updateAggregate(con, formId, fieldNames.get(i), itValues.next(), delta);
             }
         }
-        return fullResourceName;
     }
 
     /**
@@ -1217,4 +1991,175 @@ public final class CmsFormDataAccess {
             closeAll(con, stmt, null);
         }
     }
+
+    /**
+     * Writes a new form submission entry, without the data values.<p>
+     * 
+     * @param con the connection to use
+     * @param entryId the id of the new entry
+     * @param formId the id of the form
+     * @param dateCreated the submission date
+     * @param resourceId the structure id of the form resource
+     * 
+     * @return the number of written rows, <code>1</code> if successful
+     * 
+     * @throws SQLException if something goes wrong
+     */
+    private int writeFormEntry(Connection con, int entryId, String formId, long dateCreated, CmsUUID resourceId)
+    throws SQLException {
+
+        PreparedStatement stmt = null;
+        try {
+            stmt = con.prepareStatement(getQuery("WRITE_FORM_ENTRY"));
+            stmt.setInt(1, entryId);
+            stmt.setString(2, formId);
+            stmt.setLong(3, dateCreated);
+            stmt.setString(4, resourceId.toString());
+            stmt.setInt(5, 0); // initial state
+            return stmt.executeUpdate();
+        } finally {
+            // the connection is still needed
+            closeAll(null, stmt, null);
+        }
+    }
+
+    /**
+     * Writes the data values of a form submission.<p>
+     * 
+     * In batch mode, all values are sent as one JDBC batch and the first failure is thrown. 
+     * Otherwise every value is written on its own and failures are only logged, so that a single 
+     * failing field does not prevent storing the others. In both modes, values reported as not 
+     * written by the database are logged.<p>
+     * 
+     * @param con the connection to use
+     * @param entryId the id of the form submission entry
+     * @param fieldNames the names of the fields to write
+     * @param fieldValues the values of the fields to write
+     * @param formHandler only used for error logging
+     * @param batch if the values should be written as one batch
+     * 
+     * @throws SQLException if something goes wrong in batch mode
+     */
+    private void writeFormFields(
+        Connection con,
+        int entryId,
+        List<String> fieldNames,
+        List<String> fieldValues,
+        CmsFormHandler formHandler,
+        boolean batch) throws SQLException {
+
+        PreparedStatement stmt = null;
+        try {
+            stmt = con.prepareStatement(getQuery("WRITE_FORM_DATA"));
+            int[] rcs = new int[fieldValues.size()];
+            for (int i = 0; i < fieldValues.size(); i++) {
+                stmt.setInt(1, entryId);
+                stmt.setString(2, fieldNames.get(i));
+                stmt.setString(3, fieldValues.get(i));
+                if (batch) {
+                    stmt.addBatch();
+                    continue;
+                }
+                /*
+                 * at this level we can allow to loose a field value and try 
+                 * to save the others instead of failing everything. 
+                 */
+                try {
+                    rcs[i] = stmt.executeUpdate();
+                } catch (SQLException sqlex) {
+                    rcs[i] = Statement.EXECUTE_FAILED;
+                    LOG.error(
+                        Messages.get().getBundle().key(
+                            Messages.LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3,
+                            new Object[] {
+                                fieldNames.get(i),
+                                fieldValues.get(i),
+                                formHandler.createMailTextFromFields(false, false)}),
+                        sqlex);
+                }
+            }
+            if (batch && !fieldValues.isEmpty()) {
+                rcs = stmt.executeBatch();
+            }
+            // check the update counts, a driver may report success without the row count
+            for (int i = 0; i < rcs.length; i++) {
+                if ((rcs[i] != 1) && (rcs[i] != Statement.SUCCESS_NO_INFO) && (rcs[i] != Statement.EXECUTE_FAILED)) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3,
+                        new Object[] {fieldNames.get(i), fieldValues.get(i), formHandler.createMailTextFromFields(false, false)}));
+                }
+            }
+        } finally {
+            // the connection is still needed
+            closeAll(null, stmt, null);
+        }
+    }
+
+    /**
+     * Writes an uploaded file to the server RFS.<p>
+     * 
+     * @param fileName the absolute path of the file
+     * @param contents the contents of the file
+     * 
+     * @throws CmsRfsException if the folder of the file can not be created
+     * @throws IOException if writing the file fails
+     */
+    private void writeRfsFile(String fileName, byte[] contents) throws CmsRfsException, IOException {
+
+        File storeFile = new File(fileName);
+        CmsFileUtil.assertFolder(storeFile.getParentFile(), CmsFileUtil.MODE_READ, true);
+        OutputStream out = new FileOutputStream(storeFile);
+        try {
+            out.write(contents);
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes an uploaded file to the OpenCms VFS and publishes it.<p>
+     * 
+     * The parent folder of the file is created and published first if it does not exist.<p>
+     * 
+     * @param resourceName the VFS path of the file
+     * @param contents the contents of the file
+     * @param projectName the name of the offline project to create the file in
+     * 
+     * @throws CmsException if creating the file fails
+     */
+    private void writeVfsFile(String resourceName, byte[] contents, String projectName) throws CmsException {
+
+        // use an own context, the admin context is shared by all submissions
+        CmsObject cms = OpenCms.initCmsObject(m_cms);
+        cms.getRequestContext().setCurrentProject(cms.readProject(projectName));
+        String folder = CmsResource.getParentFolder(resourceName);
+        if (!cms.existsResource(folder)) {
+            cms.createResource(folder, CmsResourceTypeFolder.getStaticTypeId(), null, null);
+            cms.unlockResource(folder);
+            try {
+                // publish the folder
+                OpenCms.getPublishManager().publishResource(cms, folder);
+                // wait a little bit to avoid problems when publishing the uploaded file afterwards
+                OpenCms.getPublishManager().waitWhileRunning(3000);
+            } catch (Exception e) {
+                // error publishing the created folder
+                LOG.error(e);
+            }
+        }
+        if (!cms.existsResource(resourceName)) {
+            // determine the resource type id from the given information
+            int resTypeId = OpenCms.getResourceManager().getDefaultTypeForName(resourceName).getTypeId();
+            // create the resource in VFS
+            cms.createResource(resourceName, resTypeId, contents, null);
+            cms.unlockResource(resourceName);
+        }
+        try {
+            // publish the resource
+            OpenCms.getPublishManager().publishResource(cms, resourceName);
+        } catch (Exception e) {
+            // error publishing the created file
+            LOG.error(e);
+        }
+    }
 }
@@ -34,9 +34,12 @@ package com.alkacon.opencms.v8.formgenerator.database;
 import org.opencms.file.CmsResource;
 import org.opencms.util.CmsUUID;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -78,6 +81,9 @@ public final class CmsFormDatabaseFilter implements Cloneable {
     /** To filter forms for a given entry id. */
     private int m_entryId;
 
+    /** To filter forms for the given entry ids. */
+    private List<Integer> m_entryIds = new ArrayList<Integer>();
+
     /** The fields to filter. */
     private Map<String, String> m_fields = new HashMap<String, String>();
 
@@ -96,6 +102,12 @@ public final class CmsFormDatabaseFilter implements Cloneable {
     /** If ascending order, descending order otherwise. */
     private boolean m_orderAsc;
 
+    /** If ordering by the creation date instead of the entry id. */
+    private boolean m_orderDate;
+
+    /** The field to order by, <code>null</code> to order by the entry id or creation date. */
+    private String m_orderField;
+
     /** To filter forms for a given resource id. */
     private CmsUUID m_resourceId;
 
@@ -118,18 +130,7 @@ public final class CmsFormDatabaseFilter implements Cloneable {
     @Override
     public Object clone() {
 
-        CmsFormDatabaseFilter filter = new CmsFormDatabaseFilter(m_headersOnly);
-        filter.m_entryId = m_entryId;
-        filter.m_formId = m_formId;
-        filter.m_resourceId = m_resourceId;
-        filter.m_dateFrom = m_dateFrom;
-        filter.m_dateTo = m_dateTo;
-        filter.m_indexFrom = m_indexFrom;
-        filter.m_indexTo = m_indexTo;
-        filter.m_states = new HashSet<Integer>(m_states);
-        filter.m_fields = new HashMap<String, String>(m_fields);
-        filter.m_orderAsc = m_orderAsc;
-        return filter;
+        return copy(m_headersOnly);
     }
 
     /**
@@ -162,6 +163,20 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return filter;
     }
 
+    /**
+     * Returns an extended filter with the given entry ids restriction.<p>
+     * 
+     * @param entryIds the entry ids to filter
+     *  
+     * @return an extended filter with the given entry ids restriction
+     */
+    public CmsFormDatabaseFilter filterEntryIds(Collection<Integer> entryIds) {
+
+        CmsFormDatabaseFilter filter = (CmsFormDatabaseFilter)this.clone();
+        filter.m_entryIds.addAll(entryIds);
+        return filter;
+    }
+
     /**
      * Returns an extended filter with the given field/value pair restriction.<p>
      * 
@@ -219,6 +234,21 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return filter;
     }
 
+    /**
+     * Returns an extended filter ordering by the creation date.<p>
+     * 
+     * The direction is set with {@link #filterOrderAsc()} and {@link #filterOrderDesc()}.<p>
+     * 
+     * @return an extended filter ordering by the creation date
+     */
+    public CmsFormDatabaseFilter filterOrderDate() {
+
+        CmsFormDatabaseFilter filter = (CmsFormDatabaseFilter)this.clone();
+        filter.m_orderDate = true;
+        filter.m_orderField = null;
+        return filter;
+    }
+
     /**
      * Returns an extended filter with desc ordering.<p>
      * 
@@ -231,6 +261,24 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return filter;
     }
 
+    /**
+     * Returns an extended filter ordering by the value of the given field.<p>
+     * 
+     * The direction is set with {@link #filterOrderAsc()} and {@link #filterOrderDesc()}. 
+     * Forms without the field are ordered as if the value was <code>null</code>.<p>
+     * 
+     * @param field the name of the field to order by
+     * 
+     * @return an extended filter ordering by the value of the given field
+     */
+    public CmsFormDatabaseFilter filterOrderField(String field) {
+
+        CmsFormDatabaseFilter filter = (CmsFormDatabaseFilter)this.clone();
+        filter.m_orderField = field;
+        filter.m_orderDate = false;
+        return filter;
+    }
+
     /**
      * Returns an extended filter with the given resource id restriction.<p>
      * 
@@ -279,6 +327,16 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return m_entryId;
     }
 
+    /**
+     * Returns the entry ids to filter.<p>
+     *
+     * @return the entry ids to filter
+     */
+    public List<Integer> getEntryIds() {
+
+        return Collections.unmodifiableList(m_entryIds);
+    }
+
     /**
      * Returns the fields to filter.<p>
      *
@@ -319,6 +377,16 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return m_indexTo;
     }
 
+    /**
+     * Returns the name of the field to order by.<p>
+     *
+     * @return the name of the field to order by, or <code>null</code> if not ordering by a field
+     */
+    public String getOrderField() {
+
+        return m_orderField;
+    }
+
     /**
      * Returns the resource id to filter.<p>
      *
@@ -369,6 +437,26 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         return m_orderAsc;
     }
 
+    /**
+     * Checks if ordering by the creation date.<p>
+     *
+     * @return <code>true</code> if ordering by the creation date
+     */
+    public boolean isOrderDate() {
+
+        return m_orderDate;
+    }
+
+    /**
+     * Checks if only a range of the forms is requested.<p>
+     *
+     * @return <code>true</code> if only a range of the forms is requested
+     */
+    public boolean isPaged() {
+
+        return (m_indexFrom != INDEX_IGNORE_FROM) || (m_indexTo != INDEX_IGNORE_TO);
+    }
+
     /**
      * Checks if the given field/value pair matches this filter.<p>
      * 
@@ -442,7 +530,53 @@ public final class CmsFormDatabaseFilter implements Cloneable {
         if (!m_fields.isEmpty()) {
             str.append(", ").append("fields").append("=").append(m_fields);
         }
+        if (!m_entryIds.isEmpty()) {
+            str.append(", ").append("entryIds").append("=").append(m_entryIds);
+        }
+        if (m_orderDate) {
+            str.append(", ").append("orderDate").append("=").append(m_orderDate);
+        }
+        if (m_orderField != null) {
+            str.append(", ").append("orderField").append("=").append(m_orderField);
+        }
+        str.append(", ").append("orderAsc").append("=").append(m_orderAsc);
         str.append("]");
         return str.toString();
     }
+
+    /**
+     * Returns the same filter, but returning only form headers.<p>
+     * 
+     * @return the same filter, but returning only form headers
+     */
+    protected CmsFormDatabaseFilter toHeadersOnly() {
+
+        return copy(true);
+    }
+
+    /**
+     * Returns a copy of this filter.<p>
+     * 
+     * @param headersOnly if returning only form headers, or full forms
+     * 
+     * @return a copy of this filter
+     */
+    private CmsFormDatabaseFilter copy(boolean headersOnly) {
+
+        CmsFormDatabaseFilter filter = new CmsFormDatabaseFilter(headersOnly);
+        filter.m_entryId = m_entryId;
+        filter.m_entryIds = new ArrayList<Integer>(m_entryIds);
+        filter.m_formId = m_formId;
+        filter.m_resourceId = m_resourceId;
+        filter.m_dateFrom = m_dateFrom;
+        filter.m_dateTo = m_dateTo;
+        filter.m_indexFrom = m_indexFrom;
+        filter.m_indexTo = m_indexTo;
+        filter.m_states = new HashSet<Integer>(m_states);
+        filter.m_fields = new HashMap<String, String>(m_fields);
+        filter.m_orderAsc = m_orderAsc;
+        filter.m_orderDate = m_orderDate;
+        filter.m_orderField = m_orderField;
+        return filter;
+    }
 }
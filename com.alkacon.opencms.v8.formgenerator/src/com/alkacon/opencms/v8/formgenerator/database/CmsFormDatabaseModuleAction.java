@@ -32,6 +32,8 @@
 
 package com.alkacon.opencms.v8.formgenerator.database;
 
+import com.alkacon.opencms.v8.formgenerator.CmsFormSubmissionQueue;
+
 import org.opencms.configuration.CmsConfigurationManager;
 import org.opencms.file.CmsObject;
 import org.opencms.main.CmsLog;
@@ -81,4 +83,15 @@ public class CmsFormDatabaseModuleAction extends A_CmsModuleAction {
             }
         }
     }
+
+    /**
+     * @see org.opencms.module.A_CmsModuleAction#shutDown(org.opencms.module.CmsModule)
+     */
+    @Override
+    public void shutDown(CmsModule module) {
+
+        // send the pending mails and store the pending uploads
+        CmsFormSubmissionQueue.shutDown();
+        super.shutDown(module);
+    }
 }
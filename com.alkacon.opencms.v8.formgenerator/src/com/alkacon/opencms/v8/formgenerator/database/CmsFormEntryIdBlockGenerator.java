@@ -0,0 +1,216 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/database/CmsFormEntryIdBlockGenerator.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator.database;
+
+import com.alkacon.opencms.v8.formgenerator.CmsForm;
+
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.module.CmsModule;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Generates the ids of new form submissions by reserving blocks of ids in the table CMS_WEBFORM_SEQUENCES.<p>
+ *
+ * A block is reserved with a single conditional update, which only succeeds if no other server
+ * reserved the same block meanwhile. The ids of a reserved block are then handed out from memory,
+ * so the database is only accessed once per block. Ids of a block not used up before a restart are lost.<p>
+ *
+ * The block size is configured with the module parameter {@link CmsForm#MODULE_PARAM_DB_IDBLOCKSIZE}.
+ * This generator works with all supported databases, also without transaction support.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsFormEntryIdBlockGenerator implements I_CmsFormEntryIdGenerator {
+
+    /** The default number of ids to reserve at once. */
+    public static final int DEFAULT_BLOCK_SIZE = 10;
+
+    /** The name of the sequence for the entry ids. */
+    public static final String SEQUENCE_ENTRY_ID = "ENTRY_ID";
+
+    /** Database column name constant. */
+    private static final String DB_NEXT_ID = "NEXT_ID";
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsFormEntryIdBlockGenerator.class);
+
+    /** The number of attempts to reserve a block before giving up. */
+    private static final int MAX_ATTEMPTS = 100;
+
+    /** The number of ids to reserve at once. */
+    private int m_blockSize;
+
+    /** The form data access. */
+    private CmsFormDataAccess m_dataAccess;
+
+    /** The first id not belonging to the current block anymore. */
+    private int m_limit;
+
+    /** The next id to hand out from the current block. */
+    private int m_next;
+
+    /**
+     * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormEntryIdGenerator#initialize(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataAccess)
+     */
+    public void initialize(CmsFormDataAccess dataAccess) throws SQLException {
+
+        m_dataAccess = dataAccess;
+        m_blockSize = DEFAULT_BLOCK_SIZE;
+        CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
+        if (module != null) {
+            try {
+                m_blockSize = Integer.parseInt(module.getParameter(
+                    CmsForm.MODULE_PARAM_DB_IDBLOCKSIZE,
+                    String.valueOf(DEFAULT_BLOCK_SIZE)).trim());
+            } catch (NumberFormatException e) {
+                LOG.error(e.getLocalizedMessage(), e);
+            }
+        }
+        if (m_blockSize < 1) {
+            m_blockSize = 1;
+        }
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            con = m_dataAccess.getConnection();
+            stmt = con.prepareStatement(m_dataAccess.getQuery("CHECK_TABLE_SEQUENCES"));
+            try {
+                res = stmt.executeQuery();
+                // the table exists
+                return;
+            } catch (SQLException e) {
+                if (LOG.isInfoEnabled()) {
+                    LOG.info(Messages.get().getBundle().key(Messages.LOG_INFO_DATAACESS_SQL_SEQUENCE_NOTEXISTS_0), e);
+                }
+            }
+            m_dataAccess.closeAll(null, stmt, res);
+            res = null;
+            stmt = con.prepareStatement(m_dataAccess.getQuery(
+                "CREATE_TABLE_CMS_WEBFORM_SEQUENCES",
+                m_dataAccess.getIndexTablespace()));
+            stmt.executeUpdate();
+        } finally {
+            m_dataAccess.closeAll(con, stmt, res);
+        }
+    }
+
+    /**
+     * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormEntryIdGenerator#nextEntryId(java.sql.Connection)
+     */
+    public synchronized int nextEntryId(Connection con) throws SQLException {
+
+        if (m_next >= m_limit) {
+            // the block is used up, reserve a new one with an own connection
+            // so that the reservation is not part of the transaction storing the submission
+            m_next = reserveBlock();
+            m_limit = m_next + m_blockSize;
+        }
+        return m_next++;
+    }
+
+    /**
+     * Reserves a new block of ids in the database.<p>
+     *
+     * @return the first id of the reserved block
+     *
+     * @throws SQLException if something goes wrong
+     */
+    private int reserveBlock() throws SQLException {
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            con = m_dataAccess.getConnection();
+            for (int i = 0; i < MAX_ATTEMPTS; i++) {
+                // read the current position of the sequence
+                stmt = con.prepareStatement(m_dataAccess.getQuery("READ_SEQUENCE"));
+                stmt.setString(1, SEQUENCE_ENTRY_ID);
+                res = stmt.executeQuery();
+                boolean exists = res.next();
+                int start = exists ? res.getInt(DB_NEXT_ID) : 0;
+                m_dataAccess.closeAll(null, stmt, res);
+                res = null;
+
+                if (!exists) {
+                    // first use, start after the highest id stored so far
+                    start = m_dataAccess.readMaxEntryId(con) + 1;
+                    stmt = con.prepareStatement(m_dataAccess.getQuery("WRITE_SEQUENCE"));
+                    stmt.setString(1, SEQUENCE_ENTRY_ID);
+                    stmt.setInt(2, start + m_blockSize);
+                    try {
+                        stmt.executeUpdate();
+                        return start;
+                    } catch (SQLException e) {
+                        // another server created the sequence meanwhile, try again
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug(e.getLocalizedMessage(), e);
+                        }
+                    } finally {
+                        m_dataAccess.closeAll(null, stmt, null);
+                        stmt = null;
+                    }
+                    continue;
+                }
+
+                // move the sequence, only if no other server did meanwhile
+                stmt = con.prepareStatement(m_dataAccess.getQuery("UPDATE_SEQUENCE"));
+                stmt.setInt(1, start + m_blockSize);
+                stmt.setString(2, SEQUENCE_ENTRY_ID);
+                stmt.setInt(3, start);
+                int rc = stmt.executeUpdate();
+                m_dataAccess.closeAll(null, stmt, null);
+                stmt = null;
+                if (rc == 1) {
+                    return start;
+                }
+            }
+        } finally {
+            m_dataAccess.closeAll(con, stmt, res);
+        }
+        throw new SQLException(Messages.get().getBundle().key(Messages.ERR_DATAACCESS_SQL_NEXT_ENTRY_ID_0));
+    }
+}
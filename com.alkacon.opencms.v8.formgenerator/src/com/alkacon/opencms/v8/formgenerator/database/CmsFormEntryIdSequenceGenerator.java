@@ -0,0 +1,119 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/database/CmsFormEntryIdSequenceGenerator.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator.database;
+
+import org.opencms.main.CmsLog;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Generates the ids of new form submissions with a native database sequence.<p>
+ *
+ * Can only be used with databases supporting sequences, i.e. Oracle, PostgreSQL and MS SQL Server 2012 or newer.
+ * The sequence is created on first use, starting after the highest existing entry id.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsFormEntryIdSequenceGenerator implements I_CmsFormEntryIdGenerator {
+
+    /** Database column name constant. */
+    private static final String DB_NEXTID = "NEXTID";
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsFormEntryIdSequenceGenerator.class);
+
+    /** The form data access. */
+    private CmsFormDataAccess m_dataAccess;
+
+    /**
+     * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormEntryIdGenerator#initialize(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataAccess)
+     */
+    public void initialize(CmsFormDataAccess dataAccess) throws SQLException {
+
+        m_dataAccess = dataAccess;
+
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            con = m_dataAccess.getConnection();
+            stmt = con.prepareStatement(m_dataAccess.getQuery("READ_SEQUENCE_ENTRY_ID"));
+            try {
+                res = stmt.executeQuery();
+                // the sequence exists
+                return;
+            } catch (SQLException e) {
+                if (LOG.isInfoEnabled()) {
+                    LOG.info(Messages.get().getBundle().key(Messages.LOG_INFO_DATAACESS_SQL_SEQUENCE_NOTEXISTS_0), e);
+                }
+            }
+            m_dataAccess.closeAll(null, stmt, res);
+            res = null;
+            stmt = con.prepareStatement(m_dataAccess.getQuery(
+                "CREATE_SEQUENCE_ENTRY_ID",
+                String.valueOf(m_dataAccess.readMaxEntryId(con) + 1)));
+            stmt.executeUpdate();
+        } finally {
+            m_dataAccess.closeAll(con, stmt, res);
+        }
+    }
+
+    /**
+     * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormEntryIdGenerator#nextEntryId(java.sql.Connection)
+     */
+    public int nextEntryId(Connection con) throws SQLException {
+
+        PreparedStatement stmt = null;
+        ResultSet res = null;
+        try {
+            stmt = con.prepareStatement(m_dataAccess.getQuery("READ_SEQUENCE_ENTRY_ID"));
+            res = stmt.executeQuery();
+            if (!res.next()) {
+                throw new SQLException(Messages.get().getBundle().key(Messages.ERR_DATAACCESS_SQL_NEXT_ENTRY_ID_0));
+            }
+            return res.getInt(DB_NEXTID);
+        } finally {
+            // the connection is still needed
+            m_dataAccess.closeAll(null, stmt, res);
+        }
+    }
+}
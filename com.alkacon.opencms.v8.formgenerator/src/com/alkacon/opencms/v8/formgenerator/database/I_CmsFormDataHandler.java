@@ -0,0 +1,59 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/database/I_CmsFormDataHandler.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator.database;
+
+import java.io.IOException;
+
+/**
+ * Handles the submitted forms read by {@link CmsFormDataAccess#readForms(CmsFormDatabaseFilter, I_CmsFormDataHandler)}
+ * one after another, without holding all of them in memory.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public interface I_CmsFormDataHandler {
+
+    /**
+     * Handles a single submitted form.<p>
+     *
+     * The bean is complete, i.e. it contains all fields of the submission.<p>
+     *
+     * @param formData the submitted form
+     *
+     * @throws IOException if writing the form data fails
+     */
+    void handleFormData(CmsFormDataBean formData) throws IOException;
+}
@@ -0,0 +1,73 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.formgenerator/src/com/alkacon/opencms/v8/formgenerator/database/I_CmsFormEntryIdGenerator.java,v $
+ * Date   : $Date: 2012/06/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2010 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.formgenerator.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Generates the ids of new form submissions in the table CMS_WEBFORM_ENTRIES.<p>
+ *
+ * Implementations have to return unique ids also if several submissions are stored in parallel,
+ * possibly by different servers using the same database.<p>
+ *
+ * The implementation is selected with the module parameter {@link com.alkacon.opencms.v8.formgenerator.CmsForm#MODULE_PARAM_DB_IDGENERATOR}.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public interface I_CmsFormEntryIdGenerator {
+
+    /**
+     * Initializes the generator, creating the required database objects if they do not exist.<p>
+     *
+     * @param dataAccess the form data access that uses this generator
+     *
+     * @throws SQLException if something goes wrong
+     */
+    void initialize(CmsFormDataAccess dataAccess) throws SQLException;
+
+    /**
+     * Returns the id to use for the next form submission.<p>
+     *
+     * @param con the connection used to store the form submission
+     *
+     * @return the id to use for the next form submission
+     *
+     * @throws SQLException if something goes wrong
+     */
+    int nextEntryId(Connection con) throws SQLException;
+}
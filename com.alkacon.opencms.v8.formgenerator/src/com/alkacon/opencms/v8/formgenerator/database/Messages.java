@@ -46,6 +46,9 @@ import org.opencms.i18n.I_CmsMessageBundle;
  */
 public final class Messages extends A_CmsMessageBundle {
 
+    /** Message constant for key in the resource bundle. */
+    public static final String ERR_DATAACCESS_SQL_NEXT_ENTRY_ID_0 = "ERR_DATAACCESS_SQL_NEXT_ENTRY_ID_0";
+
     /** Message constant for key in the resource bundle. */
     public static final String ERR_FILE_ARG_ACCESS_1 = "ERR_FILE_ARG_ACCESS_1";
 
@@ -73,12 +76,18 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String ERR_FILE_ARG_NULL_0 = "ERR_FILE_ARG_NULL_0";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_ERR_DATAACCESS_IDGENERATOR_1 = "LOG_ERR_DATAACCESS_IDGENERATOR_1";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_DATAACCESS_MODULE_MISSING_1 = "LOG_ERR_DATAACCESS_MODULE_MISSING_1";
 
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_DATAACCESS_MODULE_PARAM_MISSING_2 = "LOG_ERR_DATAACCESS_MODULE_PARAM_MISSING_2";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_ERR_DATAACCESS_SQL_UPDATE_AGGREGATES_1 = "LOG_ERR_DATAACCESS_SQL_UPDATE_AGGREGATES_1";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3 = "LOG_ERR_DATAACCESS_SQL_WRITE_FIELD_3";
 
@@ -94,12 +103,24 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERR_DATACCESS_SQL_READ_SUBMISSION_ID_1 = "LOG_ERR_DATACCESS_SQL_READ_SUBMISSION_ID_1";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_1 = "LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_1";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_ALL_0 = "LOG_INFO_DATAACCESS_AGGREGATES_REBUILT_ALL_0";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_INFO_DATAACESS_SQL_SEQUENCE_NOTEXISTS_0 = "LOG_INFO_DATAACESS_SQL_SEQUENCE_NOTEXISTS_0";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_INFO_DATAACESS_SQL_TABLE_NOTEXISTS_0 = "LOG_INFO_DATAACESS_SQL_TABLE_NOTEXISTS_0";
 
     /** Message constant for key in the resource bundle. */
     public static final String LOG_INFO_DATAACESS_SQL_TABLE_OLD_0 = "LOG_INFO_DATAACESS_SQL_TABLE_OLD_0";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_WARN_DATAACCESS_SQL_WRITE_BATCH_0 = "LOG_WARN_DATAACCESS_SQL_WRITE_BATCH_0";
+
     /** Name of the used resource bundle. */
     private static final String BUNDLE_NAME = "com.alkacon.opencms.v8.formgenerator.database.messages";
 
@@ -36,6 +36,8 @@ import com.alkacon.opencms.v8.formgenerator.CmsForm;
 import com.alkacon.opencms.v8.formgenerator.CmsFormHandler;
 import com.alkacon.opencms.v8.formgenerator.database.CmsFormDataAccess;
 import com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean;
+import com.alkacon.opencms.v8.formgenerator.database.CmsFormDatabaseFilter;
+import com.alkacon.opencms.v8.formgenerator.database.I_CmsFormDataHandler;
 
 import org.opencms.file.CmsObject;
 import org.opencms.main.CmsLog;
@@ -44,15 +46,21 @@ import org.opencms.module.CmsModule;
 import org.opencms.util.CmsStringUtil;
 import org.opencms.util.CmsUUID;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.text.Collator;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 
@@ -134,6 +142,9 @@ public class CmsCvsExportBean {
     /**
      * Returns the CSV export file content.<p> 
      * 
+     * Better use {@link #exportData(String, Locale, Writer)} for large exports, 
+     * as this method holds the complete export in memory.<p>
+     * 
      * @param formId the current selected web form
      * @param locale the current local
      * 
@@ -143,13 +154,37 @@ public class CmsCvsExportBean {
      */
     public String exportData(String formId, Locale locale) throws SQLException {
 
+        StringWriter result = new StringWriter();
+        try {
+            exportData(formId, locale, result);
+        } catch (IOException e) {
+            // can not happen when writing to a String
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes the CSV export file content to the given writer.<p> 
+     * 
+     * The submitted forms are read from the database and written one after another, 
+     * so the memory used does not depend on the number of exported forms.<p>
+     * 
+     * @param formId the current selected web form
+     * @param locale the current local
+     * @param writer the writer to write the CSV export file content to, should be buffered
+     * 
+     * @throws SQLException if something goes wrong 
+     * @throws IOException if writing fails
+     */
+    public void exportData(String formId, Locale locale, final Writer writer) throws SQLException, IOException {
+
         /*
          * TODO: Access the CmsForm (or CmsFormHandler) and put out all 
          * fields in the exact order - put fields that do not exist any longer 
          * to the back (note: readAllFormFieldNames is required for the old values). 
          */
 
-        StringBuffer result = new StringBuffer();
         CmsModule module = OpenCms.getModuleManager().getModule(CmsForm.MODULE_NAME);
 
         // time format: 
@@ -164,6 +199,7 @@ public class CmsCvsExportBean {
                     new Object[] {CmsForm.MODULE_PARAM_EXPORT_TIMEFORMAT, formatString}));
             }
         }
+        final DateFormat dateFormat = df;
 
         // line separator: 
         boolean isWindowsLineSeparator = false;
@@ -178,105 +214,126 @@ public class CmsCvsExportBean {
                 isUnixLineSeparator = true;
             }
         }
+        final boolean windowsLineSeparator = isWindowsLineSeparator;
+        final boolean unixLineSeparator = isUnixLineSeparator;
 
         // export numbers as string:
         String nasParam = module.getParameter(CmsForm.MODULE_PARAM_EXPORT_NUMBERASSTRING, CmsStringUtil.FALSE);
-        boolean numberAsString = Boolean.valueOf(nasParam).booleanValue();
+        final boolean numberAsString = Boolean.valueOf(nasParam).booleanValue();
 
         // csv delimiter
-        String lineSeparator = EXCEL_DEFAULT_CSV_DELMITER;
         String configLineSeparator = module.getParameter(CmsForm.MODULE_PARAM_CSV_DELIMITER);
-        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(configLineSeparator)) {
-
-            lineSeparator = configLineSeparator.trim();
-        }
+        final String lineSeparator = CmsStringUtil.isNotEmptyOrWhitespaceOnly(configLineSeparator)
+        ? configLineSeparator.trim()
+        : EXCEL_DEFAULT_CSV_DELMITER;
 
-        // get the column names
-        List<String> columnNames = CmsFormDataAccess.getInstance().readFormFieldNames(
+        // get the column names, 
+        // skip empty columns (previous versions saved CmsEmptyField with empty values which will not be deleted):
+        List<String> allColumnNames = CmsFormDataAccess.getInstance().readFormFieldNames(
             formId,
             getStartTime().getTime(),
             getEndTime().getTime());
-        Collections.sort(columnNames, Collator.getInstance(locale));
-
-        // get the entries
-        List<CmsFormDataBean> dataEntries = CmsFormDataAccess.getInstance().readForms(
-            formId,
-            getStartTime().getTime(),
-            getEndTime().getTime());
-
-        // loop 1 - write the headers:
-        result.append(escapeExcelCsv("Creation date", numberAsString));
-        result.append(lineSeparator);
-        result.append(escapeExcelCsv("Resource path", numberAsString));
-        result.append(lineSeparator);
-        result.append(escapeExcelCsv("Resource UUID", numberAsString));
-        result.append(lineSeparator);
-        Iterator<String> itColumns = columnNames.iterator();
+        final List<String> columnNames = new ArrayList<String>(allColumnNames.size());
+        Iterator<String> itColumns = allColumnNames.iterator();
         while (itColumns.hasNext()) {
             String columnName = itColumns.next();
-            // skip empty columns (previous versions saved CmsEmptyField with empty values which will not be deleted):
             if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(columnName)) {
-                columnName = escapeExcelCsv(columnName, numberAsString);
-                result.append(columnName);
-                if (itColumns.hasNext()) {
-                    result.append(lineSeparator);
-                }
+                columnNames.add(columnName);
             }
         }
-        result.append("\r\n");
-        // loop 2 - write the data:
-        Iterator<CmsFormDataBean> itRows = dataEntries.iterator();
-        String path;
-        CmsUUID uuid = null;
-        while (itRows.hasNext()) {
-            CmsFormDataBean row = itRows.next();
-            // create an entry for each column, even if some rows (data sets) 
-            // do not contain the field value because it was 
-            // a) not entered 
-            // b) the form was changed in structure over time 
-            // c) developer errors,  hw /sw problems... 
-            Date creationDate = new Date(row.getDateCreated());
-            if (df == null) {
-                result.append(creationDate);
-            } else {
-                result.append(df.format(creationDate));
-            }
-            DateFormat.getDateTimeInstance();
-            result.append(lineSeparator);
-            uuid = row.getResourceId();
-            try {
-                path = m_cms.readResource(uuid).getRootPath();
-            } catch (Exception e) {
-                path = row.getResourceId().toString();
+        Collections.sort(columnNames, Collator.getInstance(locale));
+
+        // loop 1 - write the headers:
+        writer.write(escapeExcelCsv("Creation date", numberAsString));
+        writer.write(lineSeparator);
+        writer.write(escapeExcelCsv("Resource path", numberAsString));
+        writer.write(lineSeparator);
+        writer.write(escapeExcelCsv("Resource UUID", numberAsString));
+        writer.write(lineSeparator);
+        itColumns = columnNames.iterator();
+        while (itColumns.hasNext()) {
+            writer.write(escapeExcelCsv(itColumns.next(), numberAsString));
+            if (itColumns.hasNext()) {
+                writer.write(lineSeparator);
             }
-            result.append(path);
-            result.append(lineSeparator);
-            result.append(String.valueOf(uuid));
-            result.append(lineSeparator);
-            itColumns = columnNames.iterator();
-            while (itColumns.hasNext()) {
-                String columnName = itColumns.next();
-                // skip empty columns (previous versions saved CmsEmptyField with empty values which will not be deleted):
-                if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(columnName)) {
-
-                    String value = row.getFieldValue(columnName);
+        }
+        writer.write("\r\n");
+
+        // loop 2 - write the data, while reading it from the database:
+        CmsFormDatabaseFilter filter = CmsFormDatabaseFilter.DEFAULT;
+        filter = filter.filterFormId(formId);
+        filter = filter.filterDate(getStartTime().getTime(), getEndTime().getTime());
+        // the resource paths are cached, most submissions are from the same few resources
+        final Map<CmsUUID, String> paths = new HashMap<CmsUUID, String>();
+        CmsFormDataAccess.getInstance().readForms(filter, new I_CmsFormDataHandler() {
+
+            /**
+             * @see com.alkacon.opencms.v8.formgenerator.database.I_CmsFormDataHandler#handleFormData(com.alkacon.opencms.v8.formgenerator.database.CmsFormDataBean)
+             */
+            public void handleFormData(CmsFormDataBean row) throws IOException {
+
+                // create an entry for each column, even if some rows (data sets) 
+                // do not contain the field value because it was 
+                // a) not entered 
+                // b) the form was changed in structure over time 
+                // c) developer errors,  hw /sw problems... 
+                Date creationDate = new Date(row.getDateCreated());
+                if (dateFormat == null) {
+                    writer.write(String.valueOf(creationDate));
+                } else {
+                    writer.write(dateFormat.format(creationDate));
+                }
+                writer.write(lineSeparator);
+                CmsUUID uuid = row.getResourceId();
+                String path = paths.get(uuid);
+                if (path == null) {
+                    try {
+                        path = m_cms.readResource(uuid).getRootPath();
+                    } catch (Exception e) {
+                        path = String.valueOf(uuid);
+                    }
+                    paths.put(uuid, path);
+                }
+                writer.write(path);
+                writer.write(lineSeparator);
+                writer.write(String.valueOf(uuid));
+                writer.write(lineSeparator);
+                Iterator<String> itRowColumns = columnNames.iterator();
+                while (itRowColumns.hasNext()) {
+                    String value = row.getFieldValue(itRowColumns.next());
                     if (value != null) {
-                        if (isWindowsLineSeparator) {
+                        if (windowsLineSeparator) {
                             value = transformWindowsLineseparator(value);
-                        } else if (isUnixLineSeparator) {
+                        } else if (unixLineSeparator) {
                             value = transformUnixLineseparator(value);
                         }
-                        value = escapeExcelCsv(value, numberAsString);
-                        result.append(value);
+                        writer.write(escapeExcelCsv(value, numberAsString));
                     }
-                    if (itColumns.hasNext()) {
-                        result.append(lineSeparator);
+                    if (itRowColumns.hasNext()) {
+                        writer.write(lineSeparator);
                     }
                 }
+                writer.write("\r\n");
             }
-            result.append("\r\n");
-        }
-        return result.toString();
+        });
+    }
+
+    /**
+     * Writes the csv export file content to the given writer.<p> 
+     * 
+     * @param writer the writer to write the csv export file content to, should be buffered
+     * 
+     * @throws SQLException if sth goes wrong 
+     * @throws IOException if writing fails
+     * 
+     * @see #exportData(String, Locale, Writer)
+     */
+    public void exportData(Writer writer) throws SQLException, IOException {
+
+        exportData(
+            getForm().getFormConfiguration().getFormId(),
+            getForm().getRequestContext().getLocale(),
+            writer);
     }
 
     /**
@@ -0,0 +1,5 @@
+<%@ page import="com.alkacon.opencms.v8.newsletter.admin.*"%><%
+
+	CmsSubscriberImportReport wp = new CmsSubscriberImportReport(pageContext, request, response);
+	wp.displayReport();
+%>
\ No newline at end of file
@@ -46,9 +46,11 @@ import org.opencms.module.CmsModule;
 import org.opencms.security.CmsOrganizationalUnit;
 import org.opencms.security.CmsRole;
 import org.opencms.util.CmsMacroResolver;
+import org.opencms.util.CmsStringUtil;
 import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
 
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -92,6 +94,9 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(A_CmsNewsletterMailData.class);
 
+    /** Replaces the prefix of the recipient placeholders while resolving the macros, so that they are kept. */
+    private static final String PLACEHOLDER_PREFIX_PROTECTED = "\u0000recipient.";
+
     /** The OpenCms user context. */
     private CmsObject m_cms;
 
@@ -135,6 +140,31 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
         return m_content;
     }
 
+    /**
+     * Returns the id of the delivery of this newsletter to its mailing list or organizational unit.<p>
+     * 
+     * The id is used to record the delivery status of every recipient in a {@link CmsNewsletterDeliveryJournal}, 
+     * so that an interrupted delivery can be resumed. If the recipients were set explicitly, 
+     * <code>null</code> is returned, as such deliveries are not resumed.<p>
+     * 
+     * @return the id of the delivery, or <code>null</code> if the recipients were set explicitly
+     */
+    public String getDeliveryId() {
+
+        if (m_recipients != null) {
+            return null;
+        }
+        String target;
+        if (getGroup() != null) {
+            target = getGroup().getId().toString();
+        } else if (getOu() != null) {
+            target = "ou_" + getOu().getName();
+        } else {
+            return null;
+        }
+        return getContent().getFile().getStructureId() + "_" + target;
+    }
+
     /**
      * @see com.alkacon.opencms.v8.newsletter.I_CmsNewsletterMailData#getEmail()
      */
@@ -153,6 +183,27 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
      */
     public abstract String getEmailContentPreview(boolean onlyPartialHtml) throws CmsException;
 
+    /**
+     * Returns an iterator over the recipients of the newsletter mail.<p>
+     * 
+     * If the newsletter is sent to a mailing list or organizational unit, the users are read in chunks 
+     * while iterating, see {@link CmsNewsletterRecipientIterator}. Use this instead of {@link #getRecipients()} 
+     * to start sending before all recipients are read.<p>
+     * 
+     * @return an iterator over the recipients of the newsletter mail
+     * 
+     * @throws CmsException if getting the recipients from a mailing list group fails
+     */
+    public Iterator<InternetAddress> getRecipientIterator() throws CmsException {
+
+        if (m_recipients != null) {
+            // we have explicitly set recipients, use these
+            return m_recipients.iterator();
+        }
+        // we have a group or an OU to check for recipients
+        return new CmsNewsletterRecipientIterator(this);
+    }
+
     /**
      * @see com.alkacon.opencms.v8.newsletter.I_CmsNewsletterMailData#getRecipients()
      */
@@ -162,49 +213,9 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
             // we have explicitly set recipients, use these
             return m_recipients;
         }
-        // we have a group or an OU to check for recipients
         List<InternetAddress> recipients = new ArrayList<InternetAddress>();
-        Iterator<CmsUser> i = new ArrayList<CmsUser>().iterator();
-        String groupName = "";
-        if (getGroup() != null) {
-            // iterate over mailing list members (i.e. an OpenCms group)
-            groupName = getGroup().getName();
-            i = getCms().getUsersOfGroup(groupName).iterator();
-        } else if (getOu() != null) {
-            i = getOuUsers().iterator();
-        }
-        while (i.hasNext()) {
-            CmsUser user = i.next();
-            if (CmsNewsletterManager.isActiveUser(user, groupName)) {
-                // add active users to the recipients
-                try {
-                    recipients.add(new InternetAddress(user.getEmail()));
-                } catch (MessagingException e) {
-                    // log invalid email address
-                    if (LOG.isErrorEnabled()) {
-                        LOG.error(Messages.get().getBundle().key(
-                            Messages.LOG_ERROR_NEWSLETTER_EMAIL_3,
-                            user.getEmail(),
-                            user.getName(),
-                            getContent().getFile().getRootPath()));
-                    }
-                }
-            }
-        }
-
-        if (getContent().hasValue(NODE_BCC, getLocale())) {
-            // add the configured email address to the list of BCC recipients
-            try {
-                recipients.add(new InternetAddress(getContent().getStringValue(getCms(), NODE_BCC, getLocale())));
-            } catch (MessagingException e) {
-                // log invalid email address
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(Messages.get().getBundle().key(
-                        Messages.LOG_ERROR_NEWSLETTER_EMAIL_BCC_2,
-                        getContent().getStringValue(getCms(), NODE_BCC, getLocale()),
-                        getContent().getFile().getRootPath()));
-                }
-            }
+        for (Iterator<InternetAddress> i = getRecipientIterator(); i.hasNext();) {
+            recipients.add(i.next());
         }
         return recipients;
     }
@@ -214,6 +225,30 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
      */
     public abstract String getResourceTypeName();
 
+    /**
+     * Returns the link to unsubscribe a recipient from the newsletter, without the email address.<p>
+     * 
+     * The link points to the subscription page configured with the module parameter 
+     * {@link CmsNewsletterManager#MODULE_PARAM_UNSUBSCRIBE_URI}, the URL encoded email address of the recipient 
+     * has to be appended. It is used for the placeholder {@link CmsNewsletterMailTemplate#PLACEHOLDER_UNSUBSCRIBE}.<p>
+     * 
+     * @return the link to unsubscribe a recipient, or <code>null</code> if no subscription page is configured
+     */
+    public String getUnsubscribeLink() {
+
+        String uri = CmsNewsletterManager.getUnsubscribeUri();
+        if (uri == null) {
+            return null;
+        }
+        StringBuffer result = new StringBuffer(256);
+        result.append(OpenCms.getSiteManager().getCurrentSite(getCms()).getUrl());
+        result.append(OpenCms.getLinkManager().substituteLink(getCms(), uri));
+        result.append("?").append(CmsNewsletterSubscriptionBean.PARAM_ACTION).append("=").append(
+            CmsNewsletterSubscriptionBean.ACTION_UNSUBSCRIBE);
+        result.append("&").append(CmsNewsletterSubscriptionBean.PARAM_EMAIL).append("=");
+        return result.toString();
+    }
+
     /**
      * @see com.alkacon.opencms.v8.newsletter.I_CmsNewsletterMailData#initialize(org.opencms.jsp.CmsJspActionElement, org.opencms.file.CmsGroup, java.lang.String)
      */
@@ -269,6 +304,8 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
                 }
                 CmsProperty property = new CmsProperty(CmsNewsletterManager.PROPERTY_NEWSLETTER_DATA, value, null, true);
                 getCms().writePropertyObject(resourceName, property);
+                // update the send information in the newsletter archive
+                CmsNewsletterArchive.getSharedInstance().update(getCms(), file);
                 try {
                     getCms().unlockResource(resourceName);
                     unLocked = false;
@@ -296,6 +333,39 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
 
     }
 
+    /**
+     * Creates the recipient for the given user, with the first and last name of the user as personal name.<p>
+     * 
+     * @param user the user
+     * 
+     * @return the recipient
+     * 
+     * @throws MessagingException if the email address of the user is invalid
+     */
+    protected InternetAddress createRecipient(CmsUser user) throws MessagingException {
+
+        InternetAddress result = new InternetAddress(user.getEmail());
+        StringBuffer name = new StringBuffer(64);
+        // newsletter subscribers get the name "_" if no name was entered
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(user.getFirstname()) && !"_".equals(user.getFirstname())) {
+            name.append(user.getFirstname().trim());
+        }
+        if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(user.getLastname()) && !"_".equals(user.getLastname())) {
+            if (name.length() > 0) {
+                name.append(' ');
+            }
+            name.append(user.getLastname().trim());
+        }
+        if (name.length() > 0) {
+            try {
+                result.setPersonal(name.toString(), getEncoding());
+            } catch (UnsupportedEncodingException e) {
+                // ignore, send the newsletter without the name of the recipient
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns the OpenCms user context.<p>
      * 
@@ -394,13 +464,13 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
     }
 
     /**
-     * Returns the users for the current OU and all sub OUs which are no web user or newsletter units.<p>
+     * Returns the current OU and all sub OUs which are no web user or newsletter units.<p>
      * 
-     * @return the users for the current OU and all sub OUs
+     * @return the current OU and all sub OUs which are no web user or newsletter units
      */
-    protected List<CmsUser> getOuUsers() {
+    protected List<CmsOrganizationalUnit> getOuUnits() {
 
-        List<CmsUser> result = new ArrayList<CmsUser>(128);
+        List<CmsOrganizationalUnit> result = new ArrayList<CmsOrganizationalUnit>();
         try {
             List<CmsOrganizationalUnit> units = OpenCms.getRoleManager().getOrgUnitsForRole(
                 getCms(),
@@ -411,7 +481,7 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
                 CmsOrganizationalUnit ou = i.next();
                 if (!ou.hasFlagWebuser()
                     && !ou.getSimpleName().startsWith(CmsNewsletterManager.NEWSLETTER_OU_NAMEPREFIX)) {
-                    result.addAll(OpenCms.getOrgUnitManager().getUsers(getCms(), ou.getName(), false));
+                    result.add(ou);
                 }
             }
         } catch (CmsException e) {
@@ -427,6 +497,31 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
         return result;
     }
 
+    /**
+     * Returns the users for the current OU and all sub OUs which are no web user or newsletter units.<p>
+     * 
+     * @return the users for the current OU and all sub OUs
+     */
+    protected List<CmsUser> getOuUsers() {
+
+        List<CmsUser> result = new ArrayList<CmsUser>(128);
+        for (Iterator<CmsOrganizationalUnit> i = getOuUnits().iterator(); i.hasNext();) {
+            CmsOrganizationalUnit ou = i.next();
+            try {
+                result.addAll(OpenCms.getOrgUnitManager().getUsers(getCms(), ou.getName(), false));
+            } catch (CmsException e) {
+                // log error
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERROR_NEWSLETTER_UNITS_2,
+                        getCms().getRequestContext().currentUser(),
+                        ou.getName()));
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns the email subject.<p>
      * 
@@ -451,6 +546,9 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
     /**
      * Returns the input with resolved macros.<p>
      * 
+     * The recipient placeholders of {@link CmsNewsletterMailTemplate} are kept, 
+     * they are replaced for every recipient when the newsletter is sent.<p>
+     * 
      * @param input the input to resolve
      * @return the input with resolved macros
      */
@@ -459,7 +557,9 @@ public abstract class A_CmsNewsletterMailData implements I_CmsNewsletterMailData
         CmsMacroResolver resolver = CmsMacroResolver.newInstance().setCmsObject(getCms()).setKeepEmptyMacros(false);
         resolver.addMacro(MACRO_SITEURL, OpenCms.getSiteManager().getCurrentSite(getCms()).getUrl());
         resolver.addMacro(MACRO_TITLE, getSubject());
-        return resolver.resolveMacros(input);
+        String result = input.replace(CmsNewsletterMailTemplate.PLACEHOLDER_PREFIX, PLACEHOLDER_PREFIX_PROTECTED);
+        result = resolver.resolveMacros(result);
+        return result.replace(PLACEHOLDER_PREFIX_PROTECTED, CmsNewsletterMailTemplate.PLACEHOLDER_PREFIX);
     }
 
     /**
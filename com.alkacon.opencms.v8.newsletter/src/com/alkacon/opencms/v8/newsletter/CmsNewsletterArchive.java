@@ -0,0 +1,672 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterArchive.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.db.CmsPublishedResource;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsProperty;
+import org.opencms.file.CmsPropertyDefinition;
+import org.opencms.file.CmsResource;
+import org.opencms.file.CmsResourceFilter;
+import org.opencms.file.CmsVfsResourceNotFoundException;
+import org.opencms.main.CmsEvent;
+import org.opencms.main.CmsException;
+import org.opencms.main.CmsLog;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsFileUtil;
+import org.opencms.util.CmsStringUtil;
+import org.opencms.util.CmsUUID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Index of all newsletters of this server, sorted by their send date, for the Online and the Offline project.<p>
+ *
+ * For every newsletter, the send date, the mailing list and the title are read once from the properties,
+ * so that archive lists and the "send last newsletter" action do not have to read the properties of
+ * every newsletter again. The index is built when it is used for the first time and is kept up to date
+ * afterwards: the entries of modified newsletters are read again when the index is used next,
+ * the Online index is updated with the newsletters of every published project.
+ * Modifying a folder invalidates the newsletters contained in it. Publishing a moved folder and clearing
+ * the caches drop the whole index.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsNewsletterArchive implements I_CmsEventListener {
+
+    /**
+     * A newsletter in the archive index.<p>
+     */
+    public static final class CmsArchiveEntry {
+
+        /** The date used to sort the newsletter, the send date or the date of last modification. */
+        private final long m_date;
+
+        /** The mailing list the newsletter was sent to, the group id or <code>ou:</code> followed by the OU name. */
+        private final String m_mailingList;
+
+        /** The root path of the newsletter. */
+        private final String m_rootPath;
+
+        /** The date the newsletter was sent, <code>0</code> if it was not sent yet. */
+        private final long m_sendDate;
+
+        /** The structure id of the newsletter. */
+        private final CmsUUID m_structureId;
+
+        /** The title of the newsletter. */
+        private final String m_title;
+
+        /**
+         * Creates a new archive entry for the given newsletter.<p>
+         *
+         * @param resource the newsletter
+         * @param properties the properties of the newsletter
+         */
+        CmsArchiveEntry(CmsResource resource, List<CmsProperty> properties) {
+
+            m_structureId = resource.getStructureId();
+            m_rootPath = resource.getRootPath();
+            m_title = getValue(CmsPropertyDefinition.PROPERTY_TITLE, properties);
+            long sendDate = 0;
+            String mailingList = null;
+            String data = getValue(CmsNewsletterManager.PROPERTY_NEWSLETTER_DATA, properties);
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(data)) {
+                // the send information is stored as "{send date}|{mailing list}"
+                List<String> valueParts = CmsStringUtil.splitAsList(data, CmsProperty.VALUE_LIST_DELIMITER, true);
+                try {
+                    sendDate = Long.parseLong(valueParts.get(0));
+                } catch (NumberFormatException e) {
+                    // ignore, the newsletter is handled as not sent
+                }
+                if (valueParts.size() > 1) {
+                    mailingList = valueParts.get(1);
+                }
+            }
+            m_sendDate = sendDate;
+            m_mailingList = mailingList;
+            m_date = (sendDate != 0) ? sendDate : resource.getDateLastModified();
+        }
+
+        /**
+         * Returns the date used to sort the newsletter, i.e. the send date or
+         * the date of last modification if the newsletter was not sent yet.<p>
+         *
+         * @return the date used to sort the newsletter
+         */
+        public long getDate() {
+
+            return m_date;
+        }
+
+        /**
+         * Returns the mailing list the newsletter was sent to last.<p>
+         *
+         * @return the group id or <code>ou:</code> followed by the OU name, <code>null</code> if not sent yet
+         */
+        public String getMailingList() {
+
+            return m_mailingList;
+        }
+
+        /**
+         * Returns the root path of the newsletter.<p>
+         *
+         * @return the root path of the newsletter
+         */
+        public String getRootPath() {
+
+            return m_rootPath;
+        }
+
+        /**
+         * Returns the date the newsletter was sent last.<p>
+         *
+         * @return the date the newsletter was sent last, <code>0</code> if it was not sent yet
+         */
+        public long getSendDate() {
+
+            return m_sendDate;
+        }
+
+        /**
+         * Returns the structure id of the newsletter.<p>
+         *
+         * @return the structure id of the newsletter
+         */
+        public CmsUUID getStructureId() {
+
+            return m_structureId;
+        }
+
+        /**
+         * Returns the title of the newsletter.<p>
+         *
+         * @return the title of the newsletter, <code>null</code> if not set
+         */
+        public String getTitle() {
+
+            return m_title;
+        }
+
+        /**
+         * Returns if the newsletter was sent.<p>
+         *
+         * @return <code>true</code> if the newsletter was sent
+         */
+        public boolean isSent() {
+
+            return m_sendDate != 0;
+        }
+
+        /**
+         * Returns the value of the property with the given name.<p>
+         *
+         * @param name the property name
+         * @param properties the properties to search
+         *
+         * @return the property value, or <code>null</code> if the property is not set
+         */
+        private static String getValue(String name, List<CmsProperty> properties) {
+
+            for (Iterator<CmsProperty> i = properties.iterator(); i.hasNext();) {
+                CmsProperty property = i.next();
+                if (name.equals(property.getName())) {
+                    return property.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The newsletters of one project.<p>
+     */
+    private static final class CmsArchiveIndex {
+
+        /** The archive entries by structure id, <code>null</code> if not built yet. */
+        private Map<CmsUUID, CmsArchiveEntry> m_entries;
+
+        /** The archive entries sorted by date, <code>null</code> if they have to be sorted again. */
+        private List<CmsArchiveEntry> m_sorted;
+
+        /** The structure ids of the newsletters that have to be read again. */
+        private Set<CmsUUID> m_stale;
+
+        /**
+         * Creates a new, not yet built index.<p>
+         */
+        CmsArchiveIndex() {
+
+            m_stale = new HashSet<CmsUUID>();
+        }
+
+        /**
+         * Drops the index, it is built again when used next.<p>
+         */
+        synchronized void clear() {
+
+            m_entries = null;
+            m_sorted = null;
+            m_stale.clear();
+        }
+
+        /**
+         * Returns the archive entries, sorted by date with the newest first.<p>
+         *
+         * @param cms the admin user context in the project of this index, with the root site
+         * @param typeId the resource type id of the newsletters
+         *
+         * @return the archive entries
+         *
+         * @throws CmsException if reading the newsletters fails
+         */
+        synchronized List<CmsArchiveEntry> getEntries(CmsObject cms, int typeId) throws CmsException {
+
+            if (m_entries == null) {
+                // build the index
+                Map<CmsUUID, CmsArchiveEntry> entries = new HashMap<CmsUUID, CmsArchiveEntry>();
+                List<CmsResource> resources = cms.readResources(
+                    "/",
+                    CmsResourceFilter.ALL.addRequireType(typeId),
+                    true);
+                for (Iterator<CmsResource> i = resources.iterator(); i.hasNext();) {
+                    CmsResource resource = i.next();
+                    entries.put(
+                        resource.getStructureId(),
+                        new CmsArchiveEntry(resource, cms.readPropertyObjects(resource, false)));
+                }
+                m_entries = entries;
+                m_stale.clear();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(Messages.get().getBundle().key(
+                        Messages.LOG_NEWSLETTER_ARCHIVE_BUILT_2,
+                        cms.getRequestContext().getCurrentProject().getName(),
+                        new Integer(entries.size())));
+                }
+            } else if (!m_stale.isEmpty()) {
+                // read the modified newsletters again
+                for (Iterator<CmsUUID> i = m_stale.iterator(); i.hasNext();) {
+                    CmsUUID structureId = i.next();
+                    m_entries.remove(structureId);
+                    try {
+                        CmsResource resource = cms.readResource(structureId, CmsResourceFilter.ALL);
+                        if (resource.getTypeId() == typeId) {
+                            List<CmsProperty> properties = cms.readPropertyObjects(resource, false);
+                            m_entries.put(structureId, new CmsArchiveEntry(resource, properties));
+                        }
+                    } catch (CmsVfsResourceNotFoundException e) {
+                        // the newsletter has been deleted
+                    }
+                    i.remove();
+                }
+            }
+            if (m_sorted == null) {
+                List<CmsArchiveEntry> sorted = new ArrayList<CmsArchiveEntry>(m_entries.values());
+                Collections.sort(sorted, DATE_COMPARATOR);
+                m_sorted = Collections.unmodifiableList(sorted);
+            }
+            return m_sorted;
+        }
+
+        /**
+         * Returns the archive entry of the newsletter with the given structure id.<p>
+         *
+         * @param cms the admin user context in the project of this index, with the root site
+         * @param typeId the resource type id of the newsletters
+         * @param structureId the structure id of the newsletter
+         *
+         * @return the archive entry, or <code>null</code> if the newsletter is not in the index
+         *
+         * @throws CmsException if reading the newsletters fails
+         */
+        synchronized CmsArchiveEntry getEntry(CmsObject cms, int typeId, CmsUUID structureId) throws CmsException {
+
+            getEntries(cms, typeId);
+            return m_entries.get(structureId);
+        }
+
+        /**
+         * Marks the newsletter with the given structure id to be read again when the index is used next.<p>
+         *
+         * @param structureId the structure id of the newsletter
+         */
+        synchronized void invalidate(CmsUUID structureId) {
+
+            if (m_entries != null) {
+                m_stale.add(structureId);
+                m_sorted = null;
+            }
+        }
+
+        /**
+         * Marks the newsletters in the folder with the given root path to be read again when the index is used next.<p>
+         *
+         * @param rootPath the root path of the folder
+         */
+        synchronized void invalidateFolder(String rootPath) {
+
+            if (m_entries == null) {
+                return;
+            }
+            String prefix = CmsFileUtil.addTrailingSeparator(rootPath);
+            for (Iterator<CmsArchiveEntry> i = m_entries.values().iterator(); i.hasNext();) {
+                CmsArchiveEntry entry = i.next();
+                if (entry.getRootPath().startsWith(prefix)) {
+                    m_stale.add(entry.getStructureId());
+                    m_sorted = null;
+                }
+            }
+        }
+    }
+
+    /** Sorts the archive entries by date, the newest first. */
+    private static final Comparator<CmsArchiveEntry> DATE_COMPARATOR = new Comparator<CmsArchiveEntry>() {
+
+        /**
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(CmsArchiveEntry entry0, CmsArchiveEntry entry1) {
+
+            if (entry0.getDate() > entry1.getDate()) {
+                return -1;
+            }
+            if (entry0.getDate() < entry1.getDate()) {
+                return 1;
+            }
+            return entry0.getRootPath().compareTo(entry1.getRootPath());
+        }
+    };
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsNewsletterArchive.class);
+
+    /** The shared instance of the newsletter archive. */
+    private static volatile CmsNewsletterArchive sharedInstance;
+
+    /** The admin user context used to read the newsletters. */
+    private CmsObject m_adminCms;
+
+    /** The index of the Offline project. */
+    private final CmsArchiveIndex m_offline;
+
+    /** The index of the Online project. */
+    private final CmsArchiveIndex m_online;
+
+    /** The resource type id of the newsletters, <code>-1</code> if not read yet. */
+    private volatile int m_typeId;
+
+    /**
+     * Hidden constructor, use {@link #getSharedInstance()}.<p>
+     */
+    private CmsNewsletterArchive() {
+
+        m_online = new CmsArchiveIndex();
+        m_offline = new CmsArchiveIndex();
+        m_typeId = -1;
+
+        OpenCms.addCmsEventListener(this, new int[] {
+            I_CmsEventListener.EVENT_CLEAR_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+            I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+            I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_CREATED,
+            I_CmsEventListener.EVENT_RESOURCE_DELETED,
+            I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_MOVED,
+            I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCES_MODIFIED,
+            I_CmsEventListener.EVENT_PROPERTY_MODIFIED});
+    }
+
+    /**
+     * Returns the shared instance of the newsletter archive.<p>
+     *
+     * @return the shared instance of the newsletter archive
+     */
+    public static CmsNewsletterArchive getSharedInstance() {
+
+        CmsNewsletterArchive result = sharedInstance;
+        if (result == null) {
+            synchronized (CmsNewsletterArchive.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new CmsNewsletterArchive();
+                    sharedInstance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the index of both projects.<p>
+     */
+    public void clear() {
+
+        m_typeId = -1;
+        m_online.clear();
+        m_offline.clear();
+    }
+
+    /**
+     * @see org.opencms.main.I_CmsEventListener#cmsEvent(org.opencms.main.CmsEvent)
+     */
+    public void cmsEvent(CmsEvent event) {
+
+        switch (event.getType()) {
+            case I_CmsEventListener.EVENT_CLEAR_CACHES:
+                clear();
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES:
+                m_online.clear();
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES:
+                m_offline.clear();
+                break;
+            case I_CmsEventListener.EVENT_PUBLISH_PROJECT:
+                invalidatePublished((String)event.getData().get(I_CmsEventListener.KEY_PUBLISHID));
+                break;
+            default:
+                // resources can only be modified in an Offline project
+                Object resource = event.getData().get(I_CmsEventListener.KEY_RESOURCE);
+                if (resource instanceof CmsResource) {
+                    invalidate((CmsResource)resource);
+                }
+                Object resources = event.getData().get(I_CmsEventListener.KEY_RESOURCES);
+                if (resources instanceof List<?>) {
+                    for (Iterator<?> i = ((List<?>)resources).iterator(); i.hasNext();) {
+                        Object o = i.next();
+                        if (o instanceof CmsResource) {
+                            invalidate((CmsResource)o);
+                        }
+                    }
+                }
+        }
+    }
+
+    /**
+     * Returns all newsletters in the project of the given user context, sorted by date with the newest first.<p>
+     *
+     * The date is the send date, or the date of last modification for newsletters that were not sent yet.
+     * The returned list must not be modified. It contains all newsletters of the server, including deleted
+     * newsletters of the Offline project, regardless of the permissions of the current user.<p>
+     *
+     * @param cms the current user context
+     *
+     * @return the newsletters sorted by date
+     *
+     * @throws CmsException if reading the newsletters fails
+     */
+    public List<CmsArchiveEntry> getEntries(CmsObject cms) throws CmsException {
+
+        boolean online = cms.getRequestContext().getCurrentProject().isOnlineProject();
+        CmsArchiveIndex index = online ? m_online : m_offline;
+        return index.getEntries(getIndexCms(cms), getTypeId());
+    }
+
+    /**
+     * Returns the newsletter with the given structure id in the project of the given user context.<p>
+     *
+     * @param cms the current user context
+     * @param structureId the structure id of the newsletter
+     *
+     * @return the newsletter, or <code>null</code> if it is not in the index
+     *
+     * @throws CmsException if reading the newsletters fails
+     */
+    public CmsArchiveEntry getEntry(CmsObject cms, CmsUUID structureId) throws CmsException {
+
+        boolean online = cms.getRequestContext().getCurrentProject().isOnlineProject();
+        CmsArchiveIndex index = online ? m_online : m_offline;
+        return index.getEntry(getIndexCms(cms), getTypeId(), structureId);
+    }
+
+    /**
+     * Returns the newsletter sent last to the given mailing list, in the project of the given user context.<p>
+     *
+     * @param cms the current user context
+     * @param mailingList the group id of the mailing list, or <code>ou:</code> followed by the OU name
+     *
+     * @return the newsletter sent last to the mailing list, or <code>null</code> if none was sent to it
+     *
+     * @throws CmsException if reading the newsletters fails
+     */
+    public CmsArchiveEntry getLastSent(CmsObject cms, String mailingList) throws CmsException {
+
+        // the sent newsletters are sorted by their send date
+        for (Iterator<CmsArchiveEntry> i = getEntries(cms).iterator(); i.hasNext();) {
+            CmsArchiveEntry entry = i.next();
+            if (entry.isSent() && mailingList.equals(entry.getMailingList())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the resource type id of the newsletters in the archive.<p>
+     *
+     * @return the resource type id of the newsletters
+     */
+    public int getTypeId() {
+
+        int result = m_typeId;
+        if (result == -1) {
+            String typeName = CmsNewsletterMailData.RESOURCETYPE_NEWSLETTER_NAME;
+            try {
+                typeName = CmsNewsletterManager.getMailDataResourceTypeName();
+            } catch (Exception e) {
+                // should never happen
+            }
+            try {
+                result = OpenCms.getResourceManager().getResourceType(typeName).getTypeId();
+                m_typeId = result;
+            } catch (CmsException e) {
+                // the resource type is not configured, there are no newsletters
+                LOG.error(e.getLocalizedMessage(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the admin user context used to read the newsletters.<p>
+     *
+     * Without an admin user context, the index is read with the permissions of the first user using it.<p>
+     *
+     * @param adminCms the admin user context
+     */
+    public void setAdminCms(CmsObject adminCms) {
+
+        m_adminCms = adminCms;
+    }
+
+    /**
+     * Updates the given newsletter in the index of the project of the given user context.<p>
+     *
+     * The newsletter is read again when the index is used next.<p>
+     *
+     * @param cms the current user context
+     * @param resource the newsletter
+     */
+    public void update(CmsObject cms, CmsResource resource) {
+
+        boolean online = cms.getRequestContext().getCurrentProject().isOnlineProject();
+        (online ? m_online : m_offline).invalidate(resource.getStructureId());
+    }
+
+    /**
+     * Returns the user context to read the newsletters with, using the admin user if available.<p>
+     *
+     * @param cms the current user context
+     *
+     * @return the user context to read the newsletters with, in the current project with the root site
+     *
+     * @throws CmsException if initializing the user context fails
+     */
+    private CmsObject getIndexCms(CmsObject cms) throws CmsException {
+
+        CmsObject result = OpenCms.initCmsObject((m_adminCms != null) ? m_adminCms : cms);
+        result.getRequestContext().setCurrentProject(cms.getRequestContext().getCurrentProject());
+        result.getRequestContext().setSiteRoot("");
+        return result;
+    }
+
+    /**
+     * Updates the given modified resource in the Offline index.<p>
+     *
+     * @param resource the modified resource
+     */
+    private void invalidate(CmsResource resource) {
+
+        if (resource.isFolder()) {
+            // the paths of the contained newsletters may have changed
+            m_offline.invalidateFolder(resource.getRootPath());
+        } else if (resource.getTypeId() == m_typeId) {
+            m_offline.invalidate(resource.getStructureId());
+        }
+    }
+
+    /**
+     * Updates the published newsletters in the Online and the Offline index.<p>
+     *
+     * @param publishId the publish history id of the published project
+     */
+    private void invalidatePublished(String publishId) {
+
+        if ((m_adminCms == null) || (publishId == null)) {
+            m_online.clear();
+            return;
+        }
+        try {
+            List<CmsPublishedResource> published = m_adminCms.readPublishedResources(new CmsUUID(publishId));
+            for (Iterator<CmsPublishedResource> i = published.iterator(); i.hasNext();) {
+                CmsPublishedResource resource = i.next();
+                if (resource.isFolder()) {
+                    // the paths of the contained newsletters may have changed
+                    if (resource.isMoved()) {
+                        // the Online index still contains the paths below the previous folder path
+                        m_online.clear();
+                    } else {
+                        m_online.invalidateFolder(resource.getRootPath());
+                    }
+                    m_offline.invalidateFolder(resource.getRootPath());
+                } else if (resource.getType() == m_typeId) {
+                    m_online.invalidate(resource.getStructureId());
+                    // published deletions also remove the newsletter from the Offline project
+                    m_offline.invalidate(resource.getStructureId());
+                }
+            }
+        } catch (CmsException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+            m_online.clear();
+        }
+    }
+}
@@ -31,6 +31,8 @@
 
 package com.alkacon.opencms.v8.newsletter;
 
+import com.alkacon.opencms.v8.newsletter.CmsNewsletterArchive.CmsArchiveEntry;
+
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsProperty;
 import org.opencms.file.CmsResource;
@@ -48,7 +50,9 @@ import java.util.Map;
  * Comparator for sorting newsletter resource objects based on dates.<p>
  * 
  * Serves as {@link java.util.Comparator} for resources and as comparator key for the resource
- * at the same time. Uses lazy initializing of comparator keys for a resource.<p>
+ * at the same time. Uses lazy initializing of comparator keys for a resource.
+ * The dates are taken from the {@link CmsNewsletterArchive}, the property is only read for resources
+ * that are not contained in the archive index.<p>
  * 
  * @author Andreas Zahner 
  * 
@@ -117,7 +121,6 @@ public class CmsNewsletterDateResourceComparator implements Comparator<CmsResour
             List<String> valueParts = CmsStringUtil.splitAsList(propValue, CmsProperty.VALUE_LIST_DELIMITER, true);
             try {
                 result = Long.parseLong(valueParts.get(0));
-                resource.setDateReleased(result);
             } catch (NumberFormatException e) {
                 // ignore, the default value is used
             }
@@ -141,7 +144,17 @@ public class CmsNewsletterDateResourceComparator implements Comparator<CmsResour
     private static CmsNewsletterDateResourceComparator create(CmsObject cms, CmsResource resource) {
 
         CmsNewsletterDateResourceComparator result = new CmsNewsletterDateResourceComparator();
-        result.m_date = calculateDate(cms, resource, resource.getDateLastModified());
+        CmsArchiveEntry entry = null;
+        try {
+            entry = CmsNewsletterArchive.getSharedInstance().getEntry(cms, resource.getStructureId());
+        } catch (CmsException e) {
+            // failed to read the archive, calculate the date from the property
+        }
+        if (entry != null) {
+            result.m_date = entry.getDate();
+        } else {
+            result.m_date = calculateDate(cms, resource, resource.getDateLastModified());
+        }
         return result;
     }
 
@@ -0,0 +1,536 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterDelivery.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.main.CmsLog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.mail.Email;
+
+/**
+ * Delivers a newsletter email to a large number of recipients.<p>
+ * 
+ * The email is rendered and MIME encoded only once, every recipient gets a copy of the encoded message 
+ * with its own <code>To</code> and <code>Message-ID</code> headers. The placeholders of a 
+ * {@link CmsNewsletterMailTemplate} in the email are replaced with the values of every recipient.
+ * The messages are sent by several sender threads in parallel, 
+ * every sender thread keeps its SMTP connection open for many messages.
+ * The number of messages sent to one SMTP host per second can be limited, the limit is shared by all 
+ * deliveries running at the same time.<p>
+ * 
+ * If a {@link CmsNewsletterDeliveryJournal} is set, the delivery status of every recipient is recorded, 
+ * and the recipients already sent to in a previous, interrupted delivery are skipped.<p>
+ *  
+ * @author Andreas Zahner  
+ * 
+ * @version $Revision: 1.1 $ 
+ * 
+ * @since 8.0.2 
+ */
+public class CmsNewsletterDelivery {
+
+    /**
+     * Limits the rate of messages sent to one SMTP host.<p>
+     */
+    static final class CmsRateLimiter {
+
+        /** The interval between two messages in nanoseconds. */
+        private final long m_interval;
+
+        /** The earliest time the next message may be sent, in nanoseconds. */
+        private long m_next;
+
+        /**
+         * Creates a new rate limiter.<p>
+         * 
+         * @param rate the maximum number of messages per second
+         */
+        CmsRateLimiter(int rate) {
+
+            m_interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            m_next = System.nanoTime();
+        }
+
+        /**
+         * Waits until the next message may be sent.<p>
+         * 
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        void acquire() throws InterruptedException {
+
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if ((m_next - now) < 0) {
+                    // do not save up unused intervals
+                    m_next = now;
+                }
+                wait = m_next - now;
+                m_next += m_interval;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+
+    /**
+     * Sends the messages to the recipients taken from the queue.<p>
+     */
+    private class CmsSender implements Runnable {
+
+        /**
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+
+            Transport transport = null;
+            int count = 0;
+            try {
+                while (true) {
+                    InternetAddress to = m_queue.take();
+                    if (to == END) {
+                        break;
+                    }
+                    try {
+                        if (m_limiter != null) {
+                            m_limiter.acquire();
+                        }
+                        if ((transport == null) || (count >= MAX_MESSAGES_PER_CONNECTION) || !transport.isConnected()) {
+                            close(transport);
+                            transport = m_session.getTransport("smtp");
+                            transport.connect();
+                            count = 0;
+                        }
+                        MimeMessage message = createMessage(to);
+                        transport.sendMessage(message, message.getAllRecipients());
+                        count++;
+                        m_sent.incrementAndGet();
+                        if (m_journal != null) {
+                            m_journal.record(to, true);
+                        }
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        if (!(e instanceof SendFailedException)) {
+                            // the connection may be broken, open a new one for the next message
+                            close(transport);
+                            transport = null;
+                        }
+                        failed(to, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the delivery was canceled
+                Thread.currentThread().interrupt();
+            } finally {
+                close(transport);
+                m_activeSenders.decrementAndGet();
+            }
+        }
+    }
+
+    /** The default maximum number of messages sent to one SMTP host per second, <code>0</code> for unlimited. */
+    public static final int DEFAULT_RATE = 0;
+
+    /** The default number of sender threads. */
+    public static final int DEFAULT_THREADS = 4;
+
+    /** Marks the end of the recipients in the queue. */
+    private static final InternetAddress END = new InternetAddress();
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsNewsletterDelivery.class);
+
+    /** The maximum number of messages sent with one SMTP connection, many servers limit this. */
+    private static final int MAX_MESSAGES_PER_CONNECTION = 100;
+
+    /** The number of recipients queued for every sender thread. */
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    /** The rate limiters by SMTP host and rate. */
+    private static final Map<String, CmsRateLimiter> RATE_LIMITERS = new HashMap<String, CmsRateLimiter>();
+
+    /** The name prefix of the sender threads. */
+    private static final String THREAD_NAME = CmsNewsletterDelivery.class.getName();
+
+    /** The number of sender threads still running. */
+    private AtomicInteger m_activeSenders;
+
+    /** The error messages thrown while sending the newsletter. */
+    private List<String> m_errors;
+
+    /** The number of recipients sending the message failed for. */
+    private AtomicInteger m_failed;
+
+    /** The delivery journal, may be <code>null</code>. */
+    private CmsNewsletterDeliveryJournal m_journal;
+
+    /** The rate limiter of the SMTP host, <code>null</code> if the rate is unlimited. */
+    private CmsRateLimiter m_limiter;
+
+    /** The number of failures logged with stack trace. */
+    private AtomicInteger m_loggedFailures;
+
+    /** The domain part of the message ids. */
+    private String m_messageIdDomain;
+
+    /** The name of the newsletter to send. */
+    private String m_newsletterName;
+
+    /** The recipients to send the message to. */
+    private BlockingQueue<InternetAddress> m_queue;
+
+    /** The maximum number of messages sent to the SMTP host per second. */
+    private int m_rate;
+
+    /** The number of recipients the message was sent to. */
+    private AtomicInteger m_sent;
+
+    /** The mail session. */
+    private Session m_session;
+
+    /** The encoded message template. */
+    private CmsNewsletterMailTemplate m_template;
+
+    /** The number of sender threads. */
+    private int m_threads;
+
+    /** The link to unsubscribe a recipient, without the email address. */
+    private String m_unsubscribeLink;
+
+    /**
+     * Creates a new newsletter delivery.<p>
+     * 
+     * @param newsletterName the name of the newsletter to send
+     * @param errors the list to add the error messages thrown while sending the newsletter to
+     */
+    public CmsNewsletterDelivery(String newsletterName, List<String> errors) {
+
+        m_newsletterName = newsletterName;
+        m_errors = errors;
+        m_threads = CmsNewsletterManager.getMailThreads();
+        m_rate = CmsNewsletterManager.getMailRate();
+        m_sent = new AtomicInteger();
+        m_failed = new AtomicInteger();
+        m_loggedFailures = new AtomicInteger();
+    }
+
+    /**
+     * Returns the rate limiter for the given SMTP host and rate.<p>
+     * 
+     * @param host the SMTP host
+     * @param rate the maximum number of messages per second
+     * 
+     * @return the rate limiter
+     */
+    private static synchronized CmsRateLimiter getRateLimiter(String host, int rate) {
+
+        String key = host + "|" + rate;
+        CmsRateLimiter result = RATE_LIMITERS.get(key);
+        if (result == null) {
+            result = new CmsRateLimiter(rate);
+            RATE_LIMITERS.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Sends the given email to all given recipients.<p>
+     * 
+     * The recipients are taken from the iterator while the messages are sent, so the iterator may 
+     * produce the recipients lazily. If the delivery is interrupted, the journal is kept, so that 
+     * the delivery can be resumed.<p>
+     * 
+     * @param email the email to send, with subject, content and from address but without recipients
+     * @param recipients the recipients
+     * 
+     * @throws Exception if rendering the email fails or the delivery is interrupted
+     */
+    public void deliver(Email email, Iterator<InternetAddress> recipients) throws Exception {
+
+        if (!recipients.hasNext()) {
+            return;
+        }
+        InternetAddress first = recipients.next();
+        prepare(email, first);
+        if (m_journal != null) {
+            m_journal.open();
+        }
+        int skipped = 0;
+        boolean completed = false;
+        m_queue = new ArrayBlockingQueue<InternetAddress>(m_threads * QUEUE_SIZE_PER_THREAD);
+        m_activeSenders = new AtomicInteger(m_threads);
+        ExecutorService senders = Executors.newFixedThreadPool(m_threads, new ThreadFactory() {
+
+            /** The number of created threads. */
+            private int m_count;
+
+            /**
+             * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+             */
+            public synchronized Thread newThread(Runnable r) {
+
+                m_count++;
+                return new Thread(r, THREAD_NAME + "-" + m_count);
+            }
+        });
+        try {
+            for (int i = 0; i < m_threads; i++) {
+                senders.execute(new CmsSender());
+            }
+            InternetAddress to = first;
+            while (to != null) {
+                if ((m_journal != null) && m_journal.isSent(to)) {
+                    skipped++;
+                } else {
+                    enqueue(to);
+                }
+                to = recipients.hasNext() ? recipients.next() : null;
+            }
+            for (int i = 0; i < m_threads; i++) {
+                enqueue(END);
+            }
+            senders.shutdown();
+            senders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            completed = true;
+        } finally {
+            if (!completed) {
+                senders.shutdownNow();
+            }
+            if (m_journal != null) {
+                m_journal.close(completed);
+            }
+        }
+        if (LOG.isInfoEnabled()) {
+            LOG.info(Messages.get().getBundle().key(
+                Messages.LOG_NEWSLETTER_DELIVERY_FINISHED_4,
+                new Object[] {
+                    m_newsletterName,
+                    new Integer(m_sent.get()),
+                    new Integer(m_failed.get()),
+                    new Integer(skipped)}));
+        }
+    }
+
+    /**
+     * Returns the number of recipients sending the message failed for.<p>
+     * 
+     * @return the number of recipients sending the message failed for
+     */
+    public int getFailedCount() {
+
+        return m_failed.get();
+    }
+
+    /**
+     * Returns the number of recipients the message was sent to.<p>
+     * 
+     * @return the number of recipients the message was sent to
+     */
+    public int getSentCount() {
+
+        return m_sent.get();
+    }
+
+    /**
+     * Sets the delivery journal to record the delivery status of every recipient in.<p>
+     * 
+     * @param journal the delivery journal
+     */
+    public void setJournal(CmsNewsletterDeliveryJournal journal) {
+
+        m_journal = journal;
+    }
+
+    /**
+     * Sets the maximum number of messages sent to the SMTP host per second, <code>0</code> for unlimited.<p>
+     * 
+     * @param rate the maximum number of messages per second
+     */
+    public void setRate(int rate) {
+
+        m_rate = rate;
+    }
+
+    /**
+     * Sets the number of sender threads.<p>
+     * 
+     * @param threads the number of sender threads
+     */
+    public void setThreads(int threads) {
+
+        m_threads = Math.max(1, threads);
+    }
+
+    /**
+     * Sets the link to unsubscribe a recipient, 
+     * used for the placeholder {@link CmsNewsletterMailTemplate#PLACEHOLDER_UNSUBSCRIBE}.<p>
+     * 
+     * @param unsubscribeLink the link to unsubscribe a recipient, the URL encoded email address is appended
+     */
+    public void setUnsubscribeLink(String unsubscribeLink) {
+
+        m_unsubscribeLink = unsubscribeLink;
+    }
+
+    /**
+     * Closes the given transport, ignoring all errors.<p>
+     * 
+     * @param transport the transport to close, may be <code>null</code>
+     */
+    protected void close(Transport transport) {
+
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                // ignore, the connection is not used anymore
+            }
+        }
+    }
+
+    /**
+     * Creates the message for the given recipient from the encoded message template.<p>
+     * 
+     * The content of the encoded message is shared, only the headers are parsed and changed.
+     * Only if the template contains placeholders, the encoded message is copied for the recipient.<p>
+     * 
+     * @param to the recipient
+     * 
+     * @return the message for the given recipient
+     * 
+     * @throws MessagingException if creating the message fails
+     * @throws IOException if encoding the placeholder values fails
+     */
+    protected MimeMessage createMessage(InternetAddress to) throws MessagingException, IOException {
+
+        MimeMessage message = new MimeMessage(m_session, new SharedByteArrayInputStream(m_template.getMessage(to)));
+        message.setRecipient(Message.RecipientType.TO, to);
+        // every message needs an unique id, otherwise the copies may be discarded as duplicates
+        message.setHeader("Message-ID", "<" + UUID.randomUUID() + "@" + m_messageIdDomain + ">");
+        return message;
+    }
+
+    /**
+     * Records that sending the message to the given recipient failed.<p>
+     * 
+     * @param to the recipient
+     * @param e the cause
+     */
+    protected void failed(InternetAddress to, Exception e) {
+
+        m_failed.incrementAndGet();
+        if (m_journal != null) {
+            m_journal.record(to, false);
+        }
+        // log failed mail send process
+        if (LOG.isErrorEnabled()) {
+            LOG.error(Messages.get().getBundle().key(
+                Messages.LOG_ERROR_NEWSLETTER_EMAIL_SEND_FAILED_2,
+                to.getAddress(),
+                m_newsletterName));
+        }
+        if (LOG.isDebugEnabled() && (m_loggedFailures.incrementAndGet() <= 10)) {
+            LOG.debug(e);
+        }
+        // store message for error report mail
+        m_errors.add(Messages.get().getBundle().key(Messages.MAIL_ERROR_EMAIL_ADDRESS_1, to.getAddress()));
+    }
+
+    /**
+     * Renders and encodes the email once, and prepares the mail session.<p>
+     * 
+     * @param email the email to send
+     * @param first the first recipient, the email can not be rendered without any recipient
+     * 
+     * @throws Exception if rendering the email fails
+     */
+    protected void prepare(Email email, InternetAddress first) throws Exception {
+
+        List<InternetAddress> toList = new ArrayList<InternetAddress>(1);
+        toList.add(first);
+        email.setTo(toList);
+        email.buildMimeMessage();
+        m_template = new CmsNewsletterMailTemplate(email.getMimeMessage(), m_unsubscribeLink);
+        m_session = email.getMailSession();
+
+        String from = email.getFromAddress().getAddress();
+        m_messageIdDomain = from.substring(from.indexOf('@') + 1);
+        if (m_rate > 0) {
+            m_limiter = getRateLimiter(m_session.getProperty("mail.smtp.host"), m_rate);
+        } else {
+            m_limiter = null;
+        }
+    }
+
+    /**
+     * Puts the given recipient into the queue, waiting for a sender thread to take it.<p>
+     * 
+     * @param to the recipient
+     * 
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void enqueue(InternetAddress to) throws InterruptedException {
+
+        while (!m_queue.offer(to, 1, TimeUnit.SECONDS)) {
+            if (m_activeSenders.get() == 0) {
+                throw new InterruptedException(THREAD_NAME);
+            }
+        }
+    }
+}
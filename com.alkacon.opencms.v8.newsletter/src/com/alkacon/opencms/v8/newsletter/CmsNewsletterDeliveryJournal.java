@@ -0,0 +1,200 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterDeliveryJournal.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.mail.internet.InternetAddress;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Records the delivery status of every recipient of a newsletter, so that an interrupted delivery can be resumed.<p>
+ * 
+ * The journal is a text file in the real file system with one line per recipient, 
+ * starting with {@link #STATUS_SENT} or {@link #STATUS_FAILED}, followed by the email address. 
+ * Every line is flushed immediately. If the newsletter is sent again to the same mailing list or 
+ * organizational unit while an unfinished journal exists, the recipients already sent to are skipped.
+ * The journal is deleted as soon as the delivery is completed.<p>
+ *  
+ * @author Andreas Zahner  
+ * 
+ * @version $Revision: 1.1 $ 
+ * 
+ * @since 8.0.2 
+ */
+public class CmsNewsletterDeliveryJournal {
+
+    /** The folder of the journals, relative to the WEB-INF folder. */
+    public static final String RFS_FOLDER = "newsletter" + File.separatorChar + "delivery";
+
+    /** The status of recipients the delivery failed for. */
+    public static final String STATUS_FAILED = "FAILED";
+
+    /** The status of recipients the newsletter was sent to. */
+    public static final String STATUS_SENT = "SENT";
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsNewsletterDeliveryJournal.class);
+
+    /** The journal file. */
+    private File m_file;
+
+    /** The addresses of the recipients the newsletter was already sent to, in lower case. */
+    private Set<String> m_sent;
+
+    /** The writer to append to the journal. */
+    private Writer m_writer;
+
+    /**
+     * Creates a new delivery journal.<p>
+     * 
+     * @param deliveryId the id of the delivery, describing the newsletter and its mailing list or organizational unit
+     */
+    public CmsNewsletterDeliveryJournal(String deliveryId) {
+
+        File folder = new File(OpenCms.getSystemInfo().getAbsoluteRfsPathRelativeToWebInf(RFS_FOLDER));
+        m_file = new File(folder, deliveryId.replaceAll("[^\\w.-]", "_") + ".log");
+        m_sent = new HashSet<String>();
+    }
+
+    /**
+     * Closes the journal.<p>
+     * 
+     * @param completed if the delivery was completed, in this case the journal is deleted
+     */
+    public synchronized void close(boolean completed) {
+
+        if (m_writer != null) {
+            try {
+                m_writer.close();
+            } catch (IOException e) {
+                // ignore, all lines have already been flushed
+            }
+            m_writer = null;
+        }
+        if (completed && m_file.exists() && !m_file.delete()) {
+            m_file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Returns the number of recipients the newsletter was sent to in a previous, interrupted delivery.<p>
+     * 
+     * @return the number of recipients the newsletter was already sent to
+     */
+    public int getResumedCount() {
+
+        return m_sent.size();
+    }
+
+    /**
+     * Returns if the newsletter was already sent to the given recipient in a previous, interrupted delivery.<p>
+     * 
+     * @param recipient the recipient to check
+     * 
+     * @return <code>true</code> if the newsletter was already sent to the given recipient
+     */
+    public boolean isSent(InternetAddress recipient) {
+
+        return m_sent.contains(recipient.getAddress().toLowerCase());
+    }
+
+    /**
+     * Opens the journal, reading the status of a previous, interrupted delivery if available.<p>
+     * 
+     * @throws IOException if reading or creating the journal file fails
+     */
+    public synchronized void open() throws IOException {
+
+        if (m_file.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(m_file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int pos = line.indexOf(' ');
+                    if ((pos > 0) && STATUS_SENT.equals(line.substring(0, pos))) {
+                        m_sent.add(line.substring(pos + 1).toLowerCase());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            if (LOG.isInfoEnabled()) {
+                LOG.info(Messages.get().getBundle().key(
+                    Messages.LOG_NEWSLETTER_DELIVERY_RESUMED_2,
+                    m_file.getName(),
+                    new Integer(m_sent.size())));
+            }
+        } else {
+            m_file.getParentFile().mkdirs();
+        }
+        m_writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_file, true), "UTF-8"));
+    }
+
+    /**
+     * Records the delivery status of the given recipient.<p>
+     * 
+     * @param recipient the recipient
+     * @param sent <code>true</code> if the newsletter was sent to the recipient, <code>false</code> if sending failed
+     */
+    public synchronized void record(InternetAddress recipient, boolean sent) {
+
+        if (m_writer == null) {
+            return;
+        }
+        try {
+            m_writer.write(sent ? STATUS_SENT : STATUS_FAILED);
+            m_writer.write(' ');
+            m_writer.write(recipient.getAddress());
+            m_writer.write('\n');
+            m_writer.flush();
+        } catch (IOException e) {
+            // the delivery itself must go on, it just can not be resumed exactly
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+    }
+}
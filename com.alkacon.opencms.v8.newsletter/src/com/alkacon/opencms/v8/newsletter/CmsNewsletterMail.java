@@ -37,13 +37,13 @@ import org.opencms.main.CmsLog;
 import org.opencms.util.CmsStringUtil;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import javax.mail.internet.InternetAddress;
 
 import org.apache.commons.logging.Log;
-import org.apache.commons.mail.Email;
 
 /**
  * Sends newsletter emails to users that are subscribed to the mailing list.<p>
@@ -68,17 +68,31 @@ public class CmsNewsletterMail extends Thread {
     /** The name of the newsletter to send. */
     private String m_newsletterName;
 
-    /** The newsletter mail recipients of type {@link InternetAddress}. */
+    /** The newsletter mail recipients of type {@link InternetAddress}, <code>null</code> to use the mail data. */
     private List<InternetAddress> m_recipients;
 
     /** The email address to send an error report to. */
     private String m_reportRecipientAddress;
 
+    /**
+     * Constructor, with parameters.<p>
+     * 
+     * The recipients are read from the mail data while sending the newsletter.<p>
+     * 
+     * @param mailData the email to send
+     * @param reportRecipientAddress the email address to send a report to
+     * @param newsletterName the name of the newsletter to send
+     */
+    public CmsNewsletterMail(I_CmsNewsletterMailData mailData, String reportRecipientAddress, String newsletterName) {
+
+        this(mailData, null, reportRecipientAddress, newsletterName);
+    }
+
     /**
      * Constructor, with parameters.<p>
      * 
      * @param mailData the email to send
-     * @param recipients the newsletter mail recipients
+     * @param recipients the newsletter mail recipients, <code>null</code> to read them from the mail data
      * @param reportRecipientAddress the email address to send a report to
      * @param newsletterName the name of the newsletter to send
      */
@@ -92,7 +106,8 @@ public class CmsNewsletterMail extends Thread {
         m_recipients = recipients;
         m_reportRecipientAddress = reportRecipientAddress;
         m_newsletterName = newsletterName;
-        m_mailErrors = new ArrayList<String>();
+        // errors are added by all sender threads
+        m_mailErrors = Collections.synchronizedList(new ArrayList<String>());
     }
 
     /**
@@ -166,39 +181,36 @@ public class CmsNewsletterMail extends Thread {
 
     /**
      * Sends the newsletter mails to the recipients.<p>
+     * 
+     * The mail is rendered once and sent in parallel using a {@link CmsNewsletterDelivery}. 
+     * If no recipients were given, they are read from the mail data while sending.
+     * If the newsletter is sent to a mailing list or organizational unit, the delivery status of 
+     * every recipient is recorded, and an interrupted delivery is resumed when the newsletter is sent again.<p>
+     * 
+     * @throws Exception if rendering the mail fails or the delivery is interrupted
      */
-    public void sendMail() {
-
-        Iterator<InternetAddress> i = getRecipients().iterator();
-        int errLogCount = 0;
-        while (i.hasNext()) {
-            InternetAddress to = i.next();
-            List<InternetAddress> toList = new ArrayList<InternetAddress>(1);
-            toList.add(to);
-            try {
-                Email mail = getMailData().getEmail();
-                mail.setTo(toList);
-                mail.send();
-            } catch (Exception e) {
-                // log failed mail send process
-                if (LOG.isErrorEnabled()) {
-                    LOG.error(Messages.get().getBundle().key(
-                        Messages.LOG_ERROR_NEWSLETTER_EMAIL_SEND_FAILED_2,
-                        to.getAddress(),
-                        getNewsletterName()));
-                }
-                if (LOG.isDebugEnabled() && (errLogCount < 10)) {
-                    LOG.debug(e);
-                    errLogCount++;
-                }
-                // store message for error report mail
-                String errMsg = Messages.get().getBundle().key(Messages.MAIL_ERROR_EMAIL_ADDRESS_1, to.getAddress());
-                if (errLogCount == 10) {
-                    errMsg += "\nStack:\n" + errMsg + "\n";
-                }
-                getMailErrors().add(errMsg);
+    public void sendMail() throws Exception {
+
+        CmsNewsletterDelivery delivery = new CmsNewsletterDelivery(getNewsletterName(), getMailErrors());
+        Iterator<InternetAddress> recipients = null;
+        if (getRecipients() != null) {
+            recipients = getRecipients().iterator();
+        }
+        if (getMailData() instanceof A_CmsNewsletterMailData) {
+            A_CmsNewsletterMailData mailData = (A_CmsNewsletterMailData)getMailData();
+            if (mailData.getDeliveryId() != null) {
+                delivery.setJournal(new CmsNewsletterDeliveryJournal(mailData.getDeliveryId()));
             }
+            delivery.setUnsubscribeLink(mailData.getUnsubscribeLink());
+            if (recipients == null) {
+                // read the recipients in chunks while sending
+                recipients = mailData.getRecipientIterator();
+            }
+        }
+        if (recipients == null) {
+            recipients = getMailData().getRecipients().iterator();
         }
+        delivery.deliver(getMailData().getEmail(), recipients);
     }
 
     /**
@@ -234,7 +246,7 @@ public class CmsNewsletterMail extends Thread {
     /**
      * Returns the newsletter mail recipients of type {@link InternetAddress}.<p>
      * 
-     * @return the newsletter mail recipients
+     * @return the newsletter mail recipients, <code>null</code> if they are read from the mail data
      */
     private List<InternetAddress> getRecipients() {
 
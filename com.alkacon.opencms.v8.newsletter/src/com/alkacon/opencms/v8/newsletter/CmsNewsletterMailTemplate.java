@@ -0,0 +1,346 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterMailTemplate.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.i18n.CmsEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeUtility;
+
+/**
+ * An encoded newsletter message that is personalized for every recipient.<p>
+ *
+ * The text parts of the newsletter may contain the placeholders {@link #PLACEHOLDER_EMAIL},
+ * {@link #PLACEHOLDER_NAME} and {@link #PLACEHOLDER_UNSUBSCRIBE}. The message is rendered and MIME encoded
+ * only once, the text parts are encoded quoted-printable and split at the placeholders.
+ * For every recipient, only the placeholder values are encoded and inserted between the pre-encoded segments.
+ * A message without placeholders is shared by all recipients without any copying.<p>
+ *
+ * The template is immutable and may be used by several threads at the same time.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsNewsletterMailTemplate {
+
+    /**
+     * A placeholder in a text part of the message.<p>
+     */
+    private static final class CmsPlaceholder {
+
+        /** The Java charset of the text part. */
+        private final String m_charset;
+
+        /** Indicates if the text part is HTML. */
+        private final boolean m_html;
+
+        /** The index of the placeholder value. */
+        private final int m_index;
+
+        /**
+         * Creates a new placeholder.<p>
+         *
+         * @param index the index of the placeholder value
+         * @param charset the Java charset of the text part
+         * @param html indicates if the text part is HTML
+         */
+        CmsPlaceholder(int index, String charset, boolean html) {
+
+            m_index = index;
+            m_charset = charset;
+            m_html = html;
+        }
+
+        /**
+         * Writes the encoded placeholder value.<p>
+         *
+         * @param out the stream to write to
+         * @param values the placeholder values of the recipient
+         *
+         * @throws IOException if encoding the value fails
+         */
+        void write(OutputStream out, String[] values) throws IOException {
+
+            String value = values[m_index];
+            if (m_html) {
+                value = CmsEncoder.escapeXml(value);
+            }
+            out.write(encode(value, m_charset));
+        }
+    }
+
+    /** The placeholder for the email address of the recipient. */
+    public static final String PLACEHOLDER_EMAIL = "%(recipient.email)";
+
+    /** The placeholder for the name of the recipient, empty if the name is unknown. */
+    public static final String PLACEHOLDER_NAME = "%(recipient.name)";
+
+    /** The prefix of all placeholders. */
+    public static final String PLACEHOLDER_PREFIX = "%(recipient.";
+
+    /** The placeholder for the link to unsubscribe the recipient, empty if no unsubscribe link is configured. */
+    public static final String PLACEHOLDER_UNSUBSCRIBE = "%(recipient.unsubscribe)";
+
+    /** The placeholders, in the order of the placeholder values. */
+    private static final String[] PLACEHOLDERS = {PLACEHOLDER_EMAIL, PLACEHOLDER_NAME, PLACEHOLDER_UNSUBSCRIBE};
+
+    /** The quoted-printable soft line break appended to every encoded segment. */
+    private static final byte[] SOFT_LINE_BREAK = {'=', '\r', '\n'};
+
+    /** The placeholders between the encoded segments. */
+    private final CmsPlaceholder[] m_placeholders;
+
+    /** The encoded segments of the message between the placeholders. */
+    private final byte[][] m_segments;
+
+    /** The size of all encoded segments. */
+    private final int m_size;
+
+    /** The link to unsubscribe a recipient, without the email address. */
+    private final String m_unsubscribeLink;
+
+    /**
+     * Creates a new newsletter mail template from the given message.<p>
+     *
+     * The text parts of the given message are replaced and the changes are saved,
+     * so the message must not be used afterwards.<p>
+     *
+     * @param message the newsletter message
+     * @param unsubscribeLink the link to unsubscribe a recipient, the URL encoded email address is appended,
+     *      may be <code>null</code>
+     *
+     * @throws MessagingException if reading or encoding the message fails
+     * @throws IOException if reading or encoding the message fails
+     */
+    public CmsNewsletterMailTemplate(MimeMessage message, String unsubscribeLink)
+    throws MessagingException, IOException {
+
+        m_unsubscribeLink = unsubscribeLink;
+        // the content types of the parts are only available after the headers are updated
+        message.saveChanges();
+        // replace the text parts containing placeholders by markers
+        List<Part> parts = new ArrayList<Part>();
+        collectParts(message, parts);
+        String marker = "NLTEMPLATE" + UUID.randomUUID().toString().replace("-", "");
+        String[] texts = new String[parts.size()];
+        String[] charsets = new String[parts.size()];
+        boolean[] html = new boolean[parts.size()];
+        for (int i = 0; i < texts.length; i++) {
+            Part part = parts.get(i);
+            texts[i] = (String)part.getContent();
+            String contentType = part.getContentType();
+            String charset = new ContentType(contentType).getParameter("charset");
+            charsets[i] = (charset == null) ? MimeUtility.getDefaultJavaCharset() : MimeUtility.javaCharset(charset);
+            html[i] = part.isMimeType("text/html");
+            part.setContent(marker + i + "E", contentType);
+            // the marker must appear unchanged in the encoded message
+            part.setHeader("Content-Transfer-Encoding", "quoted-printable");
+        }
+        message.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+        message.writeTo(out);
+        byte[] encoded = out.toByteArray();
+
+        // split the encoded message at the markers and the placeholders
+        List<byte[]> segments = new ArrayList<byte[]>();
+        List<CmsPlaceholder> placeholders = new ArrayList<CmsPlaceholder>();
+        String raw = new String(encoded, "ISO-8859-1");
+        ByteArrayOutputStream segment = new ByteArrayOutputStream(encoded.length);
+        int pos = 0;
+        for (int i = 0; i < texts.length; i++) {
+            String partMarker = marker + i + "E";
+            int index = raw.indexOf(partMarker, pos);
+            if (index < 0) {
+                throw new MessagingException(partMarker);
+            }
+            segment.write(encoded, pos, index - pos);
+            pos = index + partMarker.length();
+
+            String text = texts[i];
+            int start = 0;
+            int next = text.indexOf(PLACEHOLDER_PREFIX);
+            while (next >= 0) {
+                int placeholder = getPlaceholder(text, next);
+                if (placeholder < 0) {
+                    // unknown placeholder, keep it
+                    next = text.indexOf(PLACEHOLDER_PREFIX, next + 1);
+                    continue;
+                }
+                segment.write(encode(text.substring(start, next), charsets[i]));
+                segments.add(segment.toByteArray());
+                segment.reset();
+                placeholders.add(new CmsPlaceholder(placeholder, charsets[i], html[i]));
+                start = next + PLACEHOLDERS[placeholder].length();
+                next = text.indexOf(PLACEHOLDER_PREFIX, start);
+            }
+            segment.write(encode(text.substring(start), charsets[i]));
+        }
+        segment.write(encoded, pos, encoded.length - pos);
+        segments.add(segment.toByteArray());
+
+        m_segments = segments.toArray(new byte[segments.size()][]);
+        m_placeholders = placeholders.toArray(new CmsPlaceholder[placeholders.size()]);
+        int size = 0;
+        for (int i = 0; i < m_segments.length; i++) {
+            size += m_segments[i].length;
+        }
+        m_size = size;
+    }
+
+    /**
+     * Returns the encoded message for the given recipient.<p>
+     *
+     * The message still has the recipient headers of the original message.<p>
+     *
+     * @param to the recipient
+     *
+     * @return the encoded message for the given recipient
+     *
+     * @throws IOException if encoding the placeholder values fails
+     */
+    public byte[] getMessage(InternetAddress to) throws IOException {
+
+        if (m_placeholders.length == 0) {
+            return m_segments[0];
+        }
+        String email = to.getAddress();
+        String name = to.getPersonal();
+        String unsubscribe = "";
+        if (m_unsubscribeLink != null) {
+            unsubscribe = m_unsubscribeLink + CmsEncoder.encode(email);
+        }
+        String[] values = {email, (name == null) ? "" : name, unsubscribe};
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(m_size + (m_placeholders.length * 128));
+        out.write(m_segments[0]);
+        for (int i = 0; i < m_placeholders.length; i++) {
+            m_placeholders[i].write(out, values);
+            out.write(m_segments[i + 1]);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns if the message contains placeholders, i.e. if it is different for every recipient.<p>
+     *
+     * @return <code>true</code> if the message contains placeholders
+     */
+    public boolean isPersonalized() {
+
+        return m_placeholders.length > 0;
+    }
+
+    /**
+     * Encodes the given text quoted-printable, followed by a soft line break.<p>
+     *
+     * The soft line break allows to concatenate the encoded texts without exceeding the maximum line length.<p>
+     *
+     * @param text the text to encode
+     * @param charset the Java charset of the text
+     *
+     * @return the encoded text
+     *
+     * @throws IOException if encoding the text fails
+     */
+    static byte[] encode(String text, String charset) throws IOException {
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(text.length() + 16);
+        try {
+            OutputStream out = MimeUtility.encode(result, "quoted-printable");
+            out.write(text.getBytes(charset));
+            out.close();
+        } catch (MessagingException e) {
+            // quoted-printable is always supported
+            throw new IOException(e.getLocalizedMessage());
+        }
+        result.write(SOFT_LINE_BREAK);
+        return result.toByteArray();
+    }
+
+    /**
+     * Collects the text parts containing placeholders, in the order they appear in the encoded message.<p>
+     *
+     * @param part the part to start with
+     * @param parts the list to add the text parts to
+     *
+     * @throws MessagingException if reading the part fails
+     * @throws IOException if reading the part fails
+     */
+    private static void collectParts(Part part, List<Part> parts) throws MessagingException, IOException {
+
+        if (part.isMimeType("text/*")) {
+            Object content = part.getContent();
+            if ((content instanceof String) && (((String)content).indexOf(PLACEHOLDER_PREFIX) != -1)) {
+                parts.add(part);
+            }
+        } else if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart)part.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                collectParts(multipart.getBodyPart(i), parts);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the placeholder value for the placeholder at the given position of the text.<p>
+     *
+     * @param text the text
+     * @param pos the position of the placeholder prefix
+     *
+     * @return the index of the placeholder value, or <code>-1</code> if the placeholder is unknown
+     */
+    private static int getPlaceholder(String text, int pos) {
+
+        for (int i = 0; i < PLACEHOLDERS.length; i++) {
+            if (text.startsWith(PLACEHOLDERS[i], pos)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -32,6 +32,8 @@
 
 package com.alkacon.opencms.v8.newsletter;
 
+import com.alkacon.opencms.v8.newsletter.CmsNewsletterArchive.CmsArchiveEntry;
+
 import org.opencms.configuration.CmsConfigurationManager;
 import org.opencms.file.CmsFile;
 import org.opencms.file.CmsGroup;
@@ -49,6 +51,7 @@ import org.opencms.module.A_CmsModuleAction;
 import org.opencms.module.CmsModule;
 import org.opencms.security.CmsOrganizationalUnit;
 import org.opencms.security.CmsRole;
+import org.opencms.util.CmsStringUtil;
 import org.opencms.util.CmsUUID;
 import org.opencms.workplace.CmsWorkplace;
 
@@ -79,12 +82,21 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
     /** Module parameter name for the class name to use for generating the newsletter mail data. */
     public static final String MODULE_PARAM_CLASS_MAILDATA = "class_maildata";
 
+    /** Module parameter name for the maximum number of newsletter mails sent to one SMTP host per second. */
+    public static final String MODULE_PARAM_MAIL_RATE = "mail_rate";
+
+    /** Module parameter name for the number of threads sending the newsletter mails in parallel. */
+    public static final String MODULE_PARAM_MAIL_THREADS = "mail_threads";
+
     /** Module parameter name for the user password of the newsletter users. */
     public static final String MODULE_PARAM_PASSWORD_USER = "user_password";
 
     /** Module parameter name for the project name to use for user deletion operations. */
     public static final String MODULE_PARAM_PROJECT_NAME = "project_name";
 
+    /** Module parameter name for the site path of the subscription page used to unsubscribe from newsletters. */
+    public static final String MODULE_PARAM_UNSUBSCRIBE_URI = "unsubscribe_uri";
+
     /** Name of the prefix for newsletter sub-organizational units containing mailing lists and subscribers. */
     public static final String NEWSLETTER_OU_NAMEPREFIX = "v8_nl_";
 
@@ -109,6 +121,9 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(CmsNewsletterManager.class);
 
+    /** The index of the pending subscribers. */
+    private static CmsNewsletterPendingSubscribers m_pendingSubscribers;
+
     /** The admin CmsObject that is used for user/group operations. */
     private CmsObject m_adminCms;
 
@@ -217,6 +232,28 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
         return ous;
     }
 
+    /**
+     * Returns the maximum number of newsletter mails sent to one SMTP host per second, <code>0</code> for unlimited.<p>
+     * 
+     * @return the maximum number of newsletter mails sent to one SMTP host per second
+     */
+    public static int getMailRate() {
+
+        String rate = OpenCms.getModuleManager().getModule(MODULE_NAME).getParameter(MODULE_PARAM_MAIL_RATE);
+        return CmsStringUtil.getIntValue(rate, CmsNewsletterDelivery.DEFAULT_RATE, MODULE_PARAM_MAIL_RATE);
+    }
+
+    /**
+     * Returns the number of threads sending the newsletter mails in parallel.<p>
+     * 
+     * @return the number of threads sending the newsletter mails in parallel
+     */
+    public static int getMailThreads() {
+
+        String threads = OpenCms.getModuleManager().getModule(MODULE_NAME).getParameter(MODULE_PARAM_MAIL_THREADS);
+        return CmsStringUtil.getIntValue(threads, CmsNewsletterDelivery.DEFAULT_THREADS, MODULE_PARAM_MAIL_THREADS);
+    }
+
     /**
      * Returns the password to use for all newsletter users.<p>
      * 
@@ -227,6 +264,30 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
         return OpenCms.getModuleManager().getModule(MODULE_NAME).getParameter(MODULE_PARAM_PASSWORD_USER, PASSWORD_USER);
     }
 
+    /**
+     * Returns the index of the pending subscribers that have not activated any subscription yet.<p>
+     * 
+     * @return the index of the pending subscribers
+     */
+    public static synchronized CmsNewsletterPendingSubscribers getPendingSubscribers() {
+
+        if (m_pendingSubscribers == null) {
+            m_pendingSubscribers = new CmsNewsletterPendingSubscribers();
+        }
+        return m_pendingSubscribers;
+    }
+
+    /**
+     * Returns the site path of the subscription page used to unsubscribe from newsletters.<p>
+     * 
+     * @return the site path of the subscription page, or <code>null</code> if not configured
+     */
+    public static String getUnsubscribeUri() {
+
+        String uri = OpenCms.getModuleManager().getModule(MODULE_NAME).getParameter(MODULE_PARAM_UNSUBSCRIBE_URI);
+        return CmsStringUtil.isEmptyOrWhitespaceOnly(uri) ? null : uri.trim();
+    }
+
     /**
      * Returns if the given user is active to receive newsletter emails for the given group.<p>
      * 
@@ -259,6 +320,8 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
 
         // store the admin CmsObject as member
         m_adminCms = adminCms;
+        // the newsletter archive reads all newsletters with the admin CmsObject
+        CmsNewsletterArchive.getSharedInstance().setAdminCms(adminCms);
 
         // check if the folder exists where the last sent newsletter information is saved
         if (!getAdminCms().existsResource(VFS_PATH_NEWSLETTER_INFO)) {
@@ -297,6 +360,7 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
             }
             user.setAdditionalInfo(USER_ADDITIONALINFO_ACTIVE + groupName, Boolean.valueOf(true));
             getAdminCms().writeUser(user);
+            getPendingSubscribers().remove(user.getId());
             return true;
         } catch (CmsException e) {
             // error reading or writing user
@@ -356,6 +420,12 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
             }
             // write the user
             getAdminCms().writeUser(user);
+            if (Boolean.FALSE.equals(user.getAdditionalInfo(USER_ADDITIONALINFO_ACTIVE))) {
+                // the user is not active at all, the cleanup job deletes it if it is not activated in time
+                getPendingSubscribers().add(user);
+            } else {
+                getPendingSubscribers().remove(user.getId());
+            }
             // add the user to the given mailing list group
             getAdminCms().addUserToGroup(user.getName(), groupName);
         } catch (CmsException e) {
@@ -396,6 +466,7 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
                 if (cms.getGroupsOfUser(user.getName(), true).size() < 1) {
                     // delete the user if this was the last group the user belonged to
                     cms.deleteUser(user.getName());
+                    getPendingSubscribers().remove(user.getId());
                 } else {
                     // remove the additional info attributes for the mailing list group
                     user.getAdditionalInfo().remove(USER_ADDITIONALINFO_TODELETE + groupName);
@@ -442,7 +513,7 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
 
         // file path where the newsletter info file is saved
         String infoFilePath = VFS_PATH_NEWSLETTER_INFO + NEWSLETTER_OU_NAMEPREFIX + groupId.hashCode();
-        return getAdminCms().existsResource(infoFilePath);
+        return getAdminCms().existsResource(infoFilePath) || (getLastSentNewsletter(groupId) != null);
     }
 
     /**
@@ -480,6 +551,8 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
                 String idStr = new String(getAdminCms().readFile(infoFilePath).getContents());
                 return new CmsUUID(idStr);
             }
+            // no info file, e.g. it was deleted, look up the newsletter sent last in the archive
+            return getLastSentNewsletter(groupId);
         } catch (CmsException e) {
             // error reading info file
         }
@@ -562,4 +635,31 @@ public class CmsNewsletterManager extends A_CmsModuleAction {
 
         return m_adminCms;
     }
+
+    /**
+     * Returns the structure ID of the newsletter sent last to the given mailing list, 
+     * read from the Online index of the {@link CmsNewsletterArchive}.<p>
+     * 
+     * The send information is written in the Offline project and may not be published yet, 
+     * so this is only the fallback if the info file of the mailing list does not exist.<p>
+     * 
+     * @param groupId the ID of the mailing list group
+     * 
+     * @return the structure ID of the newsletter sent last, or <code>null</code> if not found in the index
+     */
+    private CmsUUID getLastSentNewsletter(CmsUUID groupId) {
+
+        try {
+            CmsArchiveEntry entry = CmsNewsletterArchive.getSharedInstance().getLastSent(
+                getAdminCms(),
+                groupId.toString());
+            if (entry != null) {
+                return entry.getStructureId();
+            }
+        } catch (CmsException e) {
+            // error reading the archive
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return null;
+    }
 }
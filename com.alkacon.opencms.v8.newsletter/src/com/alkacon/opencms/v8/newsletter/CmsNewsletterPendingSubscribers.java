@@ -0,0 +1,352 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterPendingSubscribers.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsUser;
+import org.opencms.main.CmsException;
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.security.CmsOrganizationalUnit;
+import org.opencms.util.CmsUUID;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Index of the pending subscribers, i.e. the newsletter users that have not activated any subscription yet,
+ * sorted by their creation date.<p>
+ *
+ * The index allows the {@link CmsNewsletterSubscriberCleanupJob} to read only the expired subscribers
+ * instead of all users of all newsletter units. It is updated by the {@link CmsNewsletterManager} whenever
+ * a pending subscriber is created, activated or deleted.<p>
+ *
+ * The index is stored in a text file in the real file system, to which every change is appended immediately:
+ * a line <code>+ {date created} {user id}</code> adds a subscriber, a line <code>- {user id}</code> removes it.
+ * The file is rewritten by {@link #compact()}, starting with a line <code>* {date built}</code>.
+ * If the file does not exist, e.g. when the module was updated, the index is built by reading the users
+ * of all newsletter units.<p>
+ *
+ * Users activated or deleted without the newsletter manager are still contained in the index,
+ * so the state of every subscriber has to be checked again before it is deleted. Users created without
+ * the newsletter manager, or changes that could not be appended to the file, are missing in the index,
+ * so the index is built again after {@link #REBUILD_INTERVAL} and after an append failed.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsNewsletterPendingSubscribers {
+
+    /** The interval after which the index is built again from the users, in milliseconds. */
+    public static final long REBUILD_INTERVAL = 7L * 24 * 60 * 60 * 1000;
+
+    /** The index file, relative to the WEB-INF folder. */
+    public static final String RFS_FILE = "newsletter" + File.separatorChar + "pending-subscribers.txt";
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsNewsletterPendingSubscribers.class);
+
+    /** The pending subscribers by creation date. */
+    private TreeMap<Long, Set<CmsUUID>> m_byDate;
+
+    /** The time the index was built from the users last. */
+    private long m_dateBuilt;
+
+    /** The creation dates of the pending subscribers by user id. */
+    private Map<CmsUUID, Long> m_dates;
+
+    /** The index file. */
+    private File m_file;
+
+    /** Indicates if the index has been read from the index file or built from the users. */
+    private boolean m_initialized;
+
+    /** Indicates if the index has to be built again, because a change could not be written to the index file. */
+    private boolean m_rebuild;
+
+    /**
+     * Creates a new, not yet initialized index of the pending subscribers.<p>
+     */
+    public CmsNewsletterPendingSubscribers() {
+
+        m_file = new File(OpenCms.getSystemInfo().getAbsoluteRfsPathRelativeToWebInf(RFS_FILE));
+        m_byDate = new TreeMap<Long, Set<CmsUUID>>();
+        m_dates = new HashMap<CmsUUID, Long>();
+    }
+
+    /**
+     * Adds the given pending subscriber to the index.<p>
+     *
+     * @param user the pending subscriber
+     */
+    public synchronized void add(CmsUser user) {
+
+        // if the index file does not exist yet, the subscriber will be found when the index is built
+        if (m_initialized ? put(user.getId(), user.getDateCreated()) : m_file.exists()) {
+            append("+ " + user.getDateCreated() + " " + user.getId());
+        }
+    }
+
+    /**
+     * Rewrites the index file, dropping the lines of removed subscribers.<p>
+     */
+    public synchronized void compact() {
+
+        if (!m_initialized) {
+            return;
+        }
+        File tempFile = new File(m_file.getPath() + ".tmp");
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            try {
+                writer.write("* " + m_dateBuilt + "\n");
+                for (Map.Entry<CmsUUID, Long> entry : m_dates.entrySet()) {
+                    writer.write("+ " + entry.getValue() + " " + entry.getKey() + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            if ((m_file.exists() && !m_file.delete()) || !tempFile.renameTo(m_file)) {
+                throw new IOException(m_file.getPath());
+            }
+        } catch (IOException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the ids of the pending subscribers created before the given date, the oldest first.<p>
+     *
+     * @param cms the user context used to build the index if required
+     * @param expireDate the expiration date
+     *
+     * @return the ids of the pending subscribers created before the given date
+     *
+     * @throws CmsException if building the index fails
+     */
+    public synchronized List<CmsUUID> getExpired(CmsObject cms, long expireDate) throws CmsException {
+
+        initialize(cms);
+        List<CmsUUID> result = new ArrayList<CmsUUID>();
+        SortedMap<Long, Set<CmsUUID>> expired = m_byDate.headMap(Long.valueOf(expireDate));
+        for (Iterator<Set<CmsUUID>> i = expired.values().iterator(); i.hasNext();) {
+            result.addAll(i.next());
+        }
+        return result;
+    }
+
+    /**
+     * Removes the subscriber with the given id from the index, if it is contained.<p>
+     *
+     * @param userId the id of the subscriber
+     */
+    public synchronized void remove(CmsUUID userId) {
+
+        if (m_initialized ? delete(userId) : m_file.exists()) {
+            append("- " + userId);
+        }
+    }
+
+    /**
+     * Returns the number of pending subscribers in the index.<p>
+     *
+     * @return the number of pending subscribers
+     */
+    public synchronized int size() {
+
+        return m_dates.size();
+    }
+
+    /**
+     * Appends the given line to the index file.<p>
+     *
+     * @param line the line to append
+     */
+    private void append(String line) {
+
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(m_file, true), "UTF-8");
+            try {
+                writer.write(line);
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            // the change is lost, so the index has to be built again from the users
+            LOG.error(e.getLocalizedMessage(), e);
+            m_rebuild = true;
+        }
+    }
+
+    /**
+     * Removes the given subscriber from the in-memory index.<p>
+     *
+     * @param userId the id of the subscriber
+     *
+     * @return <code>true</code> if the subscriber was contained in the index
+     */
+    private boolean delete(CmsUUID userId) {
+
+        Long date = m_dates.remove(userId);
+        if (date == null) {
+            return false;
+        }
+        Set<CmsUUID> ids = m_byDate.get(date);
+        ids.remove(userId);
+        if (ids.isEmpty()) {
+            m_byDate.remove(date);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the index from the index file, or builds it from the users of all newsletter units
+     * if the file does not exist, is older than {@link #REBUILD_INTERVAL} or a change could not be written.<p>
+     *
+     * @param cms the user context used to read the users
+     *
+     * @throws CmsException if reading the users fails
+     */
+    private void initialize(CmsObject cms) throws CmsException {
+
+        if (!m_initialized && !m_rebuild && m_file.exists()) {
+            try {
+                read();
+                m_initialized = true;
+            } catch (IOException e) {
+                // build the index from the users
+                LOG.error(e.getLocalizedMessage(), e);
+            }
+        }
+        if (m_initialized && !m_rebuild && ((System.currentTimeMillis() - m_dateBuilt) < REBUILD_INTERVAL)) {
+            return;
+        }
+        m_byDate.clear();
+        m_dates.clear();
+        m_dateBuilt = System.currentTimeMillis();
+        List<CmsOrganizationalUnit> units = CmsNewsletterManager.getOrgUnits(cms);
+        for (Iterator<CmsOrganizationalUnit> i = units.iterator(); i.hasNext();) {
+            List<CmsUser> users = OpenCms.getOrgUnitManager().getUsers(cms, i.next().getName(), false);
+            for (Iterator<CmsUser> k = users.iterator(); k.hasNext();) {
+                CmsUser user = k.next();
+                if (Boolean.FALSE.equals(user.getAdditionalInfo(CmsNewsletterManager.USER_ADDITIONALINFO_ACTIVE))) {
+                    put(user.getId(), user.getDateCreated());
+                }
+            }
+        }
+        m_file.getParentFile().mkdirs();
+        m_initialized = true;
+        m_rebuild = false;
+        compact();
+        if (LOG.isInfoEnabled()) {
+            LOG.info(Messages.get().getBundle().key(
+                Messages.LOG_NEWSLETTER_PENDING_INDEX_BUILT_1,
+                new Integer(m_dates.size())));
+        }
+    }
+
+    /**
+     * Adds the given subscriber to the in-memory index.<p>
+     *
+     * @param userId the id of the subscriber
+     * @param dateCreated the creation date of the subscriber
+     *
+     * @return <code>true</code> if the subscriber was not contained in the index yet
+     */
+    private boolean put(CmsUUID userId, long dateCreated) {
+
+        Long date = Long.valueOf(dateCreated);
+        if (m_dates.containsKey(userId)) {
+            return false;
+        }
+        m_dates.put(userId, date);
+        Set<CmsUUID> ids = m_byDate.get(date);
+        if (ids == null) {
+            ids = new HashSet<CmsUUID>();
+            m_byDate.put(date, ids);
+        }
+        ids.add(userId);
+        return true;
+    }
+
+    /**
+     * Reads the index from the index file.<p>
+     *
+     * @throws IOException if reading the index file fails
+     */
+    private void read() throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(m_file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                try {
+                    if ((parts.length == 2) && "*".equals(parts[0])) {
+                        m_dateBuilt = Long.parseLong(parts[1]);
+                    } else if ((parts.length == 3) && "+".equals(parts[0])) {
+                        put(new CmsUUID(parts[2]), Long.parseLong(parts[1]));
+                    } else if ((parts.length == 2) && "-".equals(parts[0])) {
+                        delete(new CmsUUID(parts[1]));
+                    }
+                } catch (NumberFormatException e) {
+                    // ignore a line that was not written completely
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/CmsNewsletterRecipientIterator.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter;
+
+import org.opencms.file.CmsUser;
+import org.opencms.main.CmsException;
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.security.CmsOrganizationalUnit;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Iterates the recipients of a newsletter sent to a mailing list or an organizational unit.<p>
+ *
+ * The users are read in chunks while iterating: the members of the mailing list group at once,
+ * the users of an organizational unit unit by unit. Every user is checked and converted to a recipient
+ * only when it is requested, so that the delivery starts as soon as the first chunk is read and
+ * the processed users can be garbage collected.
+ * Email addresses occurring more than once are skipped, the addresses already returned are kept
+ * as 64 bit hash values only. The configured BCC address of the newsletter is returned last.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsNewsletterRecipientIterator implements Iterator<InternetAddress> {
+
+    /**
+     * A compact set of email addresses, storing a 64 bit hash value per address in an open addressing table.<p>
+     *
+     * Two different addresses are taken as equal only if their hash values collide,
+     * which is negligible for the number of recipients of a newsletter.<p>
+     */
+    private static final class CmsAddressSet {
+
+        /** The initial capacity of the table, must be a power of two. */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /** The hash values of the addresses, <code>0</code> marks an empty slot. */
+        private long[] m_hashes;
+
+        /** The number of addresses in the set. */
+        private int m_size;
+
+        /**
+         * Creates a new empty address set.<p>
+         */
+        CmsAddressSet() {
+
+            m_hashes = new long[INITIAL_CAPACITY];
+        }
+
+        /**
+         * Adds the given email address to the set, ignoring the case.<p>
+         *
+         * @param address the email address
+         *
+         * @return <code>true</code> if the address was not in the set yet
+         */
+        boolean add(String address) {
+
+            if ((m_size * 2) >= m_hashes.length) {
+                // keep the table at most half full
+                long[] hashes = m_hashes;
+                m_hashes = new long[hashes.length * 2];
+                m_size = 0;
+                for (int i = 0; i < hashes.length; i++) {
+                    if (hashes[i] != 0) {
+                        insert(hashes[i]);
+                    }
+                }
+            }
+            return insert(hash(address));
+        }
+
+        /**
+         * Returns the 64 bit hash value of the given email address, ignoring the case.<p>
+         *
+         * @param address the email address
+         *
+         * @return the hash value, never <code>0</code>
+         */
+        private long hash(String address) {
+
+            // FNV-1a followed by a final mix, so that the lower bits used as table index are well distributed
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < address.length(); i++) {
+                h ^= Character.toLowerCase(address.charAt(i));
+                h *= 0x100000001b3L;
+            }
+            h ^= (h >>> 33);
+            h *= 0xff51afd7ed558ccdL;
+            h ^= (h >>> 33);
+            return (h == 0) ? 1 : h;
+        }
+
+        /**
+         * Inserts the given hash value into the table.<p>
+         *
+         * @param hash the hash value
+         *
+         * @return <code>true</code> if the hash value was not in the table yet
+         */
+        private boolean insert(long hash) {
+
+            int mask = m_hashes.length - 1;
+            int i = (int)hash & mask;
+            while (m_hashes[i] != 0) {
+                if (m_hashes[i] == hash) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            m_hashes[i] = hash;
+            m_size++;
+            return true;
+        }
+    }
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsNewsletterRecipientIterator.class);
+
+    /** The BCC address of the newsletter, <code>null</code> if not configured or already returned. */
+    private String m_bcc;
+
+    /** The name of the mailing list group to check the active state of the users for. */
+    private String m_groupName;
+
+    /** The newsletter mail data. */
+    private A_CmsNewsletterMailData m_mailData;
+
+    /** The next recipient, <code>null</code> if not read yet or if there are no more recipients. */
+    private InternetAddress m_next;
+
+    /** The email addresses already returned. */
+    private CmsAddressSet m_returned;
+
+    /** The organizational units the users are not read from yet, <code>null</code> for a mailing list. */
+    private Iterator<CmsOrganizationalUnit> m_units;
+
+    /** The users of the current chunk. */
+    private Iterator<CmsUser> m_users;
+
+    /**
+     * Creates a new recipient iterator for the mailing list or organizational unit of the given newsletter.<p>
+     *
+     * The members of the mailing list are read immediately.<p>
+     *
+     * @param mailData the newsletter mail data
+     *
+     * @throws CmsException if reading the members of the mailing list fails
+     */
+    public CmsNewsletterRecipientIterator(A_CmsNewsletterMailData mailData)
+    throws CmsException {
+
+        m_mailData = mailData;
+        m_returned = new CmsAddressSet();
+        m_groupName = "";
+        if (mailData.getGroup() != null) {
+            // iterate over mailing list members (i.e. an OpenCms group)
+            m_groupName = mailData.getGroup().getName();
+            m_users = mailData.getCms().getUsersOfGroup(m_groupName).iterator();
+        } else if (mailData.getOu() != null) {
+            m_units = mailData.getOuUnits().iterator();
+        }
+        if (mailData.getContent().hasValue(A_CmsNewsletterMailData.NODE_BCC, mailData.getLocale())) {
+            m_bcc = mailData.getContent().getStringValue(
+                mailData.getCms(),
+                A_CmsNewsletterMailData.NODE_BCC,
+                mailData.getLocale());
+        }
+    }
+
+    /**
+     * @see java.util.Iterator#hasNext()
+     */
+    public boolean hasNext() {
+
+        if (m_next == null) {
+            m_next = readNext();
+        }
+        return m_next != null;
+    }
+
+    /**
+     * @see java.util.Iterator#next()
+     */
+    public InternetAddress next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        InternetAddress result = m_next;
+        m_next = null;
+        return result;
+    }
+
+    /**
+     * @see java.util.Iterator#remove()
+     */
+    public void remove() {
+
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Reads the next recipient.<p>
+     *
+     * @return the next recipient, or <code>null</code> if there are no more recipients
+     */
+    private InternetAddress readNext() {
+
+        while (true) {
+            if ((m_users == null) || !m_users.hasNext()) {
+                m_users = readNextUnit();
+                if (m_users == null) {
+                    break;
+                }
+                continue;
+            }
+            CmsUser user = m_users.next();
+            if (!CmsNewsletterManager.isActiveUser(user, m_groupName)) {
+                continue;
+            }
+            // add active users to the recipients
+            try {
+                InternetAddress result = m_mailData.createRecipient(user);
+                if (m_returned.add(result.getAddress())) {
+                    return result;
+                }
+            } catch (MessagingException e) {
+                // log invalid email address
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERROR_NEWSLETTER_EMAIL_3,
+                        user.getEmail(),
+                        user.getName(),
+                        m_mailData.getContent().getFile().getRootPath()));
+                }
+            }
+        }
+        if (m_bcc != null) {
+            // add the configured email address to the list of BCC recipients
+            String bcc = m_bcc;
+            m_bcc = null;
+            try {
+                InternetAddress result = new InternetAddress(bcc);
+                if (m_returned.add(result.getAddress())) {
+                    return result;
+                }
+            } catch (MessagingException e) {
+                // log invalid email address
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERROR_NEWSLETTER_EMAIL_BCC_2,
+                        bcc,
+                        m_mailData.getContent().getFile().getRootPath()));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the users of the next organizational unit, or <code>null</code> if there are no more units.<p>
+     *
+     * @return the users of the next organizational unit
+     */
+    private Iterator<CmsUser> readNextUnit() {
+
+        while ((m_units != null) && m_units.hasNext()) {
+            CmsOrganizationalUnit ou = m_units.next();
+            try {
+                return OpenCms.getOrgUnitManager().getUsers(m_mailData.getCms(), ou.getName(), false).iterator();
+            } catch (CmsException e) {
+                // log error and continue with the next unit
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(Messages.get().getBundle().key(
+                        Messages.LOG_ERROR_NEWSLETTER_UNITS_2,
+                        m_mailData.getCms().getRequestContext().currentUser(),
+                        ou.getName()));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -31,6 +31,8 @@
 
 package com.alkacon.opencms.v8.newsletter;
 
+import com.alkacon.opencms.v8.newsletter.CmsNewsletterArchive.CmsArchiveEntry;
+
 import org.opencms.file.CmsDataAccessException;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsResource;
@@ -40,12 +42,15 @@ import org.opencms.file.collectors.CmsExtendedCollectorData;
 import org.opencms.file.collectors.Messages;
 import org.opencms.main.CmsException;
 import org.opencms.util.CmsStringUtil;
+import org.opencms.util.CmsUUID;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A default resource collector that supports flexible sorting based on resource dates.<p>
@@ -146,6 +151,8 @@ public class CmsNewsletterResourceCollector extends A_CmsResourceCollector {
      * Returns a list of all newsletter resources in the folder pointed to by the parameter 
      * sorted by the send dates.<p>
      * 
+     * The send dates and the order are taken from the {@link CmsNewsletterArchive}.<p>
+     * 
      * @param cms the current CmsObject
      * @param param must contain an extended collector parameter set as described by {@link CmsExtendedCollectorData}
      * @param tree if true, look in folder and all child folders, if false, look only in given folder
@@ -172,6 +179,15 @@ public class CmsNewsletterResourceCollector extends A_CmsResourceCollector {
             CmsResource.FLAG_TEMPFILE);
         List<CmsResource> result = cms.readResources(foldername, filter, tree);
 
+        CmsNewsletterArchive archive = CmsNewsletterArchive.getSharedInstance();
+        if (data.getType() == archive.getTypeId()) {
+            // take the order from the pre-sorted archive index
+            List<CmsResource> sorted = sortByArchive(cms, archive, result, onlySent, asc, data.getCount());
+            if (sorted != null) {
+                return sorted;
+            }
+        }
+
         if (onlySent) {
             List<CmsResource> sentResources = new ArrayList<CmsResource>(result.size());
             for (Iterator<CmsResource> i = result.iterator(); i.hasNext();) {
@@ -195,4 +211,58 @@ public class CmsNewsletterResourceCollector extends A_CmsResourceCollector {
 
         return shrinkToFit(result, data.getCount());
     }
+
+    /**
+     * Returns the given newsletter resources in the order of the newsletter archive index.<p>
+     * 
+     * @param cms the current CmsObject
+     * @param archive the newsletter archive
+     * @param resources the newsletter resources to sort
+     * @param onlySent if true, only newsletters that have been sent are returned
+     * @param asc if true, the resources are sorted in ascending date order, otherwise descending
+     * @param count the maximum number of resources to return, if greater than 0
+     * 
+     * @return the sorted resources, or <code>null</code> if some resources are not contained in the archive index
+     * 
+     * @throws CmsException if reading the archive index fails
+     */
+    private List<CmsResource> sortByArchive(
+        CmsObject cms,
+        CmsNewsletterArchive archive,
+        List<CmsResource> resources,
+        boolean onlySent,
+        boolean asc,
+        int count) throws CmsException {
+
+        Map<CmsUUID, CmsResource> resourcesById = new HashMap<CmsUUID, CmsResource>(resources.size() * 2);
+        for (Iterator<CmsResource> i = resources.iterator(); i.hasNext();) {
+            CmsResource resource = i.next();
+            resourcesById.put(resource.getStructureId(), resource);
+        }
+        List<CmsArchiveEntry> entries = archive.getEntries(cms);
+        int found = 0;
+        for (Iterator<CmsArchiveEntry> i = entries.iterator(); i.hasNext();) {
+            if (resourcesById.containsKey(i.next().getStructureId())) {
+                found++;
+            }
+        }
+        if (found < resourcesById.size()) {
+            // the index does not contain all resources yet, the resources have to be sorted by their properties
+            return null;
+        }
+        List<CmsResource> result = new ArrayList<CmsResource>(resources.size());
+        int size = entries.size();
+        for (int i = 0; (i < size) && !resourcesById.isEmpty(); i++) {
+            CmsArchiveEntry entry = entries.get(asc ? size - 1 - i : i);
+            CmsResource resource = resourcesById.remove(entry.getStructureId());
+            if ((resource != null) && (!onlySent || entry.isSent())) {
+                result.add(resource);
+                if (result.size() == count) {
+                    // the list is complete
+                    break;
+                }
+            }
+        }
+        return result;
+    }
 }
\ No newline at end of file
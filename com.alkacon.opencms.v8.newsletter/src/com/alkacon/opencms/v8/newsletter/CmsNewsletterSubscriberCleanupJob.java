@@ -32,15 +32,15 @@
 
 package com.alkacon.opencms.v8.newsletter;
 
+import org.opencms.db.CmsDbEntryNotFoundException;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsUser;
 import org.opencms.main.CmsException;
 import org.opencms.main.CmsLog;
-import org.opencms.main.OpenCms;
 import org.opencms.scheduler.I_CmsScheduledJob;
-import org.opencms.security.CmsOrganizationalUnit;
+import org.opencms.util.CmsStringUtil;
+import org.opencms.util.CmsUUID;
 
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -49,10 +49,18 @@ import org.apache.commons.logging.Log;
 /**
  * A schedulable OpenCms job that deletes inactive newsletter subscriber users.<p>
  * 
+ * The expired subscribers are read from the index of the pending subscribers, 
+ * see {@link CmsNewsletterPendingSubscribers}, so that only the candidates for deletion are read 
+ * instead of all users of all newsletter units. 
+ * The state of every candidate is checked again before it is deleted.<p>
+ * 
  * Job parameters:<p>
  * <dl>
  * <dt><code>maxage={time in hours}</code></dt>
  * <dd>Specifies the maximum age (in hours) subscribers can be inactive before they are removed from the system.</dd>
+ * <dt><code>batchsize={number of subscribers}</code></dt>
+ * <dd>Specifies the number of subscribers deleted before the index of the pending subscribers is saved, 
+ * default is {@link #DEFAULT_BATCHSIZE}.</dd>
  * </dl>
  * 
  * @author Andreas Zahner
@@ -63,6 +71,12 @@ import org.apache.commons.logging.Log;
  */
 public class CmsNewsletterSubscriberCleanupJob implements I_CmsScheduledJob {
 
+    /** The default number of subscribers deleted before the index is saved. */
+    public static final int DEFAULT_BATCHSIZE = 100;
+
+    /** Batch size parameter. */
+    public static final String PARAM_BATCHSIZE = "batchsize";
+
     /** Maximum age parameter. */
     public static final String PARAM_MAXAGE = "maxage";
 
@@ -82,14 +96,19 @@ public class CmsNewsletterSubscriberCleanupJob implements I_CmsScheduledJob {
             // in case of an error, use maxage of one week
             maxAge = 24f * 7f;
         }
+        int batchSize = CmsStringUtil.getIntValue(
+            (String)parameters.get(PARAM_BATCHSIZE),
+            DEFAULT_BATCHSIZE,
+            PARAM_BATCHSIZE);
+        if (batchSize < 1) {
+            batchSize = DEFAULT_BATCHSIZE;
+        }
 
         // calculate oldest possible date for the unconfirmed subscribers
         long expireDate = System.currentTimeMillis() - (long)(maxAge * 60f * 60f * 1000f);
 
-        // now perform the image cache cleanup
-        int count = removeInactiveSubscribers(cms, expireDate);
-
-        return Messages.get().getBundle().key(Messages.LOG_NEWSLETTER_CLEANUP_FINISHED_COUNT_1, new Integer(count));
+        // now perform the subscriber cleanup
+        return removeInactiveSubscribers(cms, expireDate, batchSize);
     }
 
     /**
@@ -97,40 +116,69 @@ public class CmsNewsletterSubscriberCleanupJob implements I_CmsScheduledJob {
      * 
      * @param cms the configured job users context
      * @param expireDate the expiration date, if a subscriber user was created before that date, it will be deleted
-     * @return the number of deleted subscribers
+     * @param batchSize the number of subscribers deleted before the index of the pending subscribers is saved
+     * 
+     * @return the result message containing the number of checked and deleted subscribers
      */
-    private int removeInactiveSubscribers(CmsObject cms, long expireDate) {
+    private String removeInactiveSubscribers(CmsObject cms, long expireDate, int batchSize) {
 
-        int count = 0;
+        CmsNewsletterPendingSubscribers pending = CmsNewsletterManager.getPendingSubscribers();
+        int scanned = 0;
+        int deleted = 0;
         try {
-            List newsletterUnits = CmsNewsletterManager.getOrgUnits(cms);
-            Iterator i = newsletterUnits.iterator();
-            // loop the newsletter organizational units
-            while (i.hasNext()) {
-                CmsOrganizationalUnit ou = (CmsOrganizationalUnit)i.next();
-                List users = OpenCms.getOrgUnitManager().getUsers(cms, ou.getName(), false);
-                Iterator k = users.iterator();
-                // loop subscribers found in the current newsletter ou
-                while (k.hasNext()) {
-                    CmsUser user = (CmsUser)k.next();
-                    // get the additional info value for the subscriber
-                    Boolean active = (Boolean)user.getAdditionalInfo(CmsNewsletterManager.USER_ADDITIONALINFO_ACTIVE);
-                    if ((active != null) && !active.booleanValue()) {
-                        // found additional info & value is false, check creation date
-                        if (user.getDateCreated() < expireDate) {
+            List<CmsUUID> expired = pending.getExpired(cms, expireDate);
+            for (int start = 0; start < expired.size(); start += batchSize) {
+                int end = Math.min(start + batchSize, expired.size());
+                for (int i = start; i < end; i++) {
+                    CmsUUID userId = expired.get(i);
+                    scanned++;
+                    try {
+                        CmsUser user = cms.readUser(userId);
+                        // get the additional info value for the subscriber
+                        Boolean active = (Boolean)user.getAdditionalInfo(
+                            CmsNewsletterManager.USER_ADDITIONALINFO_ACTIVE);
+                        if ((active != null) && !active.booleanValue() && (user.getDateCreated() < expireDate)) {
                             // user is older than specified maximum age, delete it
                             cms.deleteUser(user.getName());
-                            count++;
+                            deleted++;
+                        }
+                        // the user is either deleted or has been activated meanwhile
+                        pending.remove(userId);
+                    } catch (CmsDbEntryNotFoundException e) {
+                        // the user has already been deleted
+                        pending.remove(userId);
+                    } catch (CmsException e) {
+                        // error removing user, log error and continue with the next one
+                        if (LOG.isErrorEnabled()) {
+                            LOG.error(
+                                Messages.get().getBundle().key(Messages.LOG_NEWSLETTER_CLEANUP_ERROR_DELETING_0),
+                                e);
                         }
                     }
                 }
+                // save the index after each batch, so that it does not grow with the removed lines
+                pending.compact();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(Messages.get().getBundle().key(
+                        Messages.LOG_NEWSLETTER_CLEANUP_BATCH_2,
+                        new Integer(end),
+                        new Integer(expired.size())));
+                }
             }
         } catch (CmsException e) {
-            // error removing users, log error
+            // error reading the pending subscribers, log error
             if (LOG.isErrorEnabled()) {
                 LOG.error(Messages.get().getBundle().key(Messages.LOG_NEWSLETTER_CLEANUP_ERROR_DELETING_0), e);
             }
         }
-        return count;
+        String result = Messages.get().getBundle().key(
+            Messages.LOG_NEWSLETTER_CLEANUP_FINISHED_3,
+            new Integer(scanned),
+            new Integer(deleted),
+            new Integer(pending.size()));
+        if (LOG.isInfoEnabled()) {
+            LOG.info(result);
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
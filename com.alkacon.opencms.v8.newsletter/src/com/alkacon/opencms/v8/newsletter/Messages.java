@@ -325,11 +325,26 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String LOG_ERROR_NEWSLETTER_UNITS_2 = "LOG_ERROR_NEWSLETTER_UNITS_2";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_NEWSLETTER_ARCHIVE_BUILT_2 = "LOG_NEWSLETTER_ARCHIVE_BUILT_2";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_NEWSLETTER_CLEANUP_BATCH_2 = "LOG_NEWSLETTER_CLEANUP_BATCH_2";
+
     /** Message constant for key in the resource bundle. */
     public static final String LOG_NEWSLETTER_CLEANUP_ERROR_DELETING_0 = "LOG_NEWSLETTER_CLEANUP_ERROR_DELETING_0";
 
     /** Message constant for key in the resource bundle. */
-    public static final String LOG_NEWSLETTER_CLEANUP_FINISHED_COUNT_1 = "LOG_NEWSLETTER_CLEANUP_FINISHED_COUNT_1";
+    public static final String LOG_NEWSLETTER_CLEANUP_FINISHED_3 = "LOG_NEWSLETTER_CLEANUP_FINISHED_3";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_NEWSLETTER_DELIVERY_FINISHED_4 = "LOG_NEWSLETTER_DELIVERY_FINISHED_4";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_NEWSLETTER_DELIVERY_RESUMED_2 = "LOG_NEWSLETTER_DELIVERY_RESUMED_2";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String LOG_NEWSLETTER_PENDING_INDEX_BUILT_1 = "LOG_NEWSLETTER_PENDING_INDEX_BUILT_1";
 
     /** Message constant for key in the resource bundle. */
     public static final String MAIL_ERROR_BODY_1 = "MAIL_ERROR_BODY_1";
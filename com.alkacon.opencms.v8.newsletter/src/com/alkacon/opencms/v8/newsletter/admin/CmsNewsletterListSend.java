@@ -148,7 +148,7 @@ public class CmsNewsletterListSend extends A_CmsListExplorerDialog {
             CmsUUID groupId = new CmsUUID(getParamGroupId());
             try {
                 CmsGroup group = getCms().readGroup(groupId);
-                // generate the newsletter mail and list of recipients
+                // generate the newsletter mail, the recipients are read while sending
                 I_CmsNewsletterMailData mailData = CmsNewsletterManager.getMailData(getJsp(), group, resourceName);
                 String rootPath = resourceName;
                 if (mailData.getContent() != null) {
@@ -158,7 +158,6 @@ public class CmsNewsletterListSend extends A_CmsListExplorerDialog {
                     // send the emails to the mailing list group
                     CmsNewsletterMail nlMail = new CmsNewsletterMail(
                         mailData,
-                        mailData.getRecipients(),
                         getCms().getRequestContext().currentUser().getEmail(),
                         rootPath);
                     nlMail.start();
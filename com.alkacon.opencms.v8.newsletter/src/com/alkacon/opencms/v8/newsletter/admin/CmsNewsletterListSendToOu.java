@@ -142,7 +142,7 @@ public class CmsNewsletterListSendToOu extends A_CmsListExplorerDialog {
             // send the newsletter to the selected list
             String resourceName = (String)getSelectedItem().get(LIST_COLUMN_ROOT_PATH);
             try {
-                // generate the newsletter mail and list of recipients
+                // generate the newsletter mail, the recipients are read while sending
                 CmsOrganizationalUnit ou = OpenCms.getOrgUnitManager().readOrganizationalUnit(getCms(), getParamOufqn());
                 I_CmsNewsletterMailData mailData = CmsNewsletterManager.getMailData(getJsp(), ou, resourceName);
                 String rootPath = resourceName;
@@ -153,7 +153,6 @@ public class CmsNewsletterListSendToOu extends A_CmsListExplorerDialog {
                     //send the emails to the mailing list group
                     CmsNewsletterMail nlMail = new CmsNewsletterMail(
                         mailData,
-                        mailData.getRecipients(),
                         getCms().getRequestContext().currentUser().getEmail(),
                         rootPath);
                     nlMail.start();
@@ -32,25 +32,26 @@
 
 package com.alkacon.opencms.v8.newsletter.admin;
 
-import com.alkacon.opencms.v8.newsletter.CmsNewsletterManager;
-
-import org.opencms.file.CmsGroup;
-import org.opencms.file.CmsUser;
 import org.opencms.jsp.CmsJspActionElement;
 import org.opencms.main.CmsException;
+import org.opencms.util.CmsRequestUtil;
 import org.opencms.util.CmsStringUtil;
-import org.opencms.util.CmsUUID;
 import org.opencms.widgets.CmsTextareaWidget;
 import org.opencms.workplace.CmsDialog;
 import org.opencms.workplace.CmsWidgetDialog;
 import org.opencms.workplace.CmsWidgetDialogParameter;
 import org.opencms.workplace.CmsWorkplaceSettings;
+import org.opencms.workplace.tools.CmsToolDialog;
+import org.opencms.workplace.tools.CmsToolManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.jsp.PageContext;
@@ -107,7 +108,7 @@ public class CmsSubscriberImportDialog extends CmsWidgetDialog {
     /**
      * @see org.opencms.workplace.CmsWidgetDialog#actionCommit()
      */
-    public void actionCommit() {
+    public void actionCommit() throws IOException, ServletException {
 
         List errors = new ArrayList();
         List emailsToSubscribe = m_importObject.getEmailAddresses();
@@ -115,32 +116,21 @@ public class CmsSubscriberImportDialog extends CmsWidgetDialog {
         if (emailsToSubscribe.size() == 0) {
             errors.add(new CmsException(Messages.get().container(Messages.ERR_SUBSCRIBER_IMPORT_NO_EMAIL_0)));
         } else {
-            Iterator i = emailsToSubscribe.iterator();
-            while (i.hasNext()) {
-                String email = (String)i.next();
-                String userName = getParamOufqn() + email;
-                try {
-                    try {
-                        getCms().readUser(userName);
-                    } catch (CmsException e) {
-                        // user does not exist, create it
-                        CmsUser user = getCms().createUser(
-                            userName,
-                            CmsNewsletterManager.getPassword(),
-                            "",
-                            new HashMap());
-                        user.setEmail(email);
-                        getCms().writeUser(user);
-                    }
-                    CmsGroup mailGroup = getCms().readGroup(new CmsUUID(getParamGroupid()));
-                    if (!getCms().getGroupsOfUser(userName, true, false).contains(mailGroup)) {
-                        getCms().addUserToGroup(userName, mailGroup.getName());
-                    }
-                } catch (CmsException e) {
-                    // should never happen
-                    errors.add(e);
-                }
-            }
+            // import the subscribers in a report thread, returning to the mailing list members afterwards
+            String closeLink = CmsToolManager.linkForToolPath(
+                getJsp(),
+                "/v8-newsletter/orgunit/mailinglists/edit/users");
+            closeLink = CmsRequestUtil.appendParameter(closeLink, "oufqn", getParamOufqn());
+            closeLink = CmsRequestUtil.appendParameter(closeLink, "groupid", getParamGroupid());
+            Map params = new HashMap();
+            params.put("oufqn", getParamOufqn());
+            params.put("groupid", getParamGroupid());
+            params.put(CmsToolDialog.PARAM_STYLE, CmsToolDialog.STYLE_NEW);
+            params.put(CmsDialog.PARAM_CLOSELINK, closeLink);
+            getToolManager().jspForwardPage(
+                this,
+                "/system/workplace/admin/v8-newsletter/import_subscriber_report.jsp",
+                params);
         }
         setCommitErrors(errors);
     }
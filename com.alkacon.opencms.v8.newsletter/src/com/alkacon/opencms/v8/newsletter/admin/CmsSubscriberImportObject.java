@@ -44,6 +44,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Import object for importing email addresses to a mailing list as subscribers.<p>
@@ -56,9 +59,15 @@ import java.util.List;
  */
 public class CmsSubscriberImportObject {
 
+    /** The minimum number of lines to validate in parallel. */
+    private static final int MIN_LINES_PARALLEL = 1000;
+
     /** The converted lines of the subscriber emails that should be imported. */
     private List m_convertedLines;
 
+    /** The email addresses that should be imported, <code>null</code> if not validated yet. */
+    private List m_emailAddresses;
+
     /** The email addresses to import. */
     private String m_importEmail;
 
@@ -83,46 +92,46 @@ public class CmsSubscriberImportObject {
     /**
      * Returns the email addresses that should be imported.<p>
      * 
+     * The lines are validated only once for the current import text, large imports are validated 
+     * by several threads in parallel.<p>
+     * 
      * @return the email addresses that should be imported
      */
     public List getEmailAddresses() {
 
+        if (m_emailAddresses != null) {
+            return m_emailAddresses;
+        }
         List result = new ArrayList();
         m_convertedLines = new ArrayList();
         m_invalidLines = new ArrayList();
+        List lines = new ArrayList();
         BufferedReader bufferedReader = new BufferedReader(new StringReader(getImportEmail()));
         String line;
         try {
             while ((line = bufferedReader.readLine()) != null) {
-                if (CmsNewsletterManager.isValidEmail(line)) {
-                    result.add(line);
-                } else {
-                    // first try to get a valid email address from the line
-                    List lineEntries = CmsStringUtil.splitAsList(line, ' ');
-                    Iterator i = lineEntries.iterator();
-                    boolean foundEmail = false;
-                    while (i.hasNext()) {
-                        String testEntry = (String)i.next();
-                        if (CmsNewsletterManager.isValidEmail(testEntry)) {
-                            // found a valid entry, add it to result and to converted lines list
-                            result.add(testEntry);
-                            m_convertedLines.add(new String[] {line, testEntry});
-                            foundEmail = true;
-                            break;
-                        }
-                    }
-                    if (!foundEmail) {
-                        // found no valid email at all, add line to invalid lines list
-                        m_invalidLines.add(line);
-                    }
-                }
+                lines.add(line);
             }
             bufferedReader.close();
         } catch (IOException e) {
             // should never happen
         }
+        String[] emails = validateLines(lines);
+        for (int i = 0; i < emails.length; i++) {
+            line = (String)lines.get(i);
+            if (emails[i] == null) {
+                // found no valid email at all, add line to invalid lines list
+                m_invalidLines.add(line);
+            } else {
+                result.add(emails[i]);
+                if (!emails[i].equals(line)) {
+                    // found a valid entry in the line, add it to converted lines list
+                    m_convertedLines.add(new String[] {line, emails[i]});
+                }
+            }
+        }
+        m_emailAddresses = result;
         return result;
-
     }
 
     /**
@@ -157,10 +166,91 @@ public class CmsSubscriberImportObject {
     public void setImportEmail(String importEmail) throws Exception {
 
         m_importEmail = importEmail;
+        m_emailAddresses = null;
         if (CmsStringUtil.isEmptyOrWhitespaceOnly(importEmail)) {
             // empty string, throw exception
             throw new CmsException(Messages.get().container(Messages.ERR_SUBSCRIBER_IMPORT_NO_CONTENT_0));
         }
     }
 
+    /**
+     * Returns the valid email address of the given line.<p>
+     * 
+     * If the line is no valid email address, the first valid email address in the blank separated 
+     * entries of the line is returned.<p>
+     * 
+     * @param line the line to validate
+     * 
+     * @return the line itself if it is a valid email address, the valid email address found in the line, 
+     *      or <code>null</code> if the line contains no valid email address
+     */
+    private String validateLine(String line) {
+
+        if (CmsNewsletterManager.isValidEmail(line)) {
+            return line;
+        }
+        // try to get a valid email address from the line
+        Iterator i = CmsStringUtil.splitAsList(line, ' ').iterator();
+        while (i.hasNext()) {
+            String testEntry = (String)i.next();
+            if (CmsNewsletterManager.isValidEmail(testEntry)) {
+                return testEntry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Validates the given lines, using several threads for a large number of lines.<p>
+     * 
+     * @param lines the lines to validate
+     * 
+     * @return the valid email addresses of the lines, see {@link #validateLine(String)}
+     */
+    private String[] validateLines(final List lines) {
+
+        final String[] result = new String[lines.size()];
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), result.length / MIN_LINES_PARALLEL);
+        if (threads < 2) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = validateLine((String)lines.get(i));
+            }
+            return result;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List tasks = new ArrayList(threads);
+            int chunkSize = ((result.length - 1) / threads) + 1;
+            for (int start = 0; start < result.length; start += chunkSize) {
+                final int from = start;
+                final int to = Math.min(start + chunkSize, result.length);
+                tasks.add(new Callable() {
+
+                    /**
+                     * @see java.util.concurrent.Callable#call()
+                     */
+                    public Object call() {
+
+                        for (int i = from; i < to; i++) {
+                            result[i] = validateLine((String)lines.get(i));
+                        }
+                        return null;
+                    }
+                });
+            }
+            // the results are written to the array, waiting for all tasks is enough
+            executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            // validate the remaining lines in this thread
+            Thread.currentThread().interrupt();
+            for (int i = 0; i < result.length; i++) {
+                if (result[i] == null) {
+                    result[i] = validateLine((String)lines.get(i));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return result;
+    }
 }
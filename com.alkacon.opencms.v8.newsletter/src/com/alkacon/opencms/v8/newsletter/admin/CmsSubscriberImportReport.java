@@ -0,0 +1,148 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/admin/CmsSubscriberImportReport.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter.admin;
+
+import org.opencms.jsp.CmsJspActionElement;
+import org.opencms.report.I_CmsReportThread;
+import org.opencms.util.CmsUUID;
+import org.opencms.workplace.list.A_CmsListReport;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.jsp.PageContext;
+
+/**
+ * Provides a report for importing subscriber emails to a mailing list.<p>
+ *
+ * The email addresses are taken from the import object of the {@link CmsSubscriberImportDialog},
+ * which is stored in the workplace settings of the current user.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsSubscriberImportReport extends A_CmsListReport {
+
+    /** Stores the value of the request parameter for the group id. */
+    private String m_paramGroupid;
+
+    /** Stores the value of the request parameter for the organizational unit fqn. */
+    private String m_paramOufqn;
+
+    /**
+     * Public constructor with JSP action element.<p>
+     *
+     * @param jsp an initialized JSP action element
+     */
+    public CmsSubscriberImportReport(CmsJspActionElement jsp) {
+
+        super(jsp);
+    }
+
+    /**
+     * Public constructor with JSP variables.<p>
+     *
+     * @param context the JSP page context
+     * @param req the JSP request
+     * @param res the JSP response
+     */
+    public CmsSubscriberImportReport(PageContext context, HttpServletRequest req, HttpServletResponse res) {
+
+        this(new CmsJspActionElement(context, req, res));
+    }
+
+    /**
+     * Returns the group id parameter value.<p>
+     *
+     * @return the group id parameter value
+     */
+    public String getParamGroupid() {
+
+        return m_paramGroupid;
+    }
+
+    /**
+     * Returns the organizational unit fqn parameter value.<p>
+     *
+     * @return the organizational unit fqn parameter value
+     */
+    public String getParamOufqn() {
+
+        return m_paramOufqn;
+    }
+
+    /**
+     * @see org.opencms.workplace.list.A_CmsListReport#initializeThread()
+     */
+    public I_CmsReportThread initializeThread() {
+
+        List emails = Collections.EMPTY_LIST;
+        Map dialogObject = getSettings().getDialogObject();
+        if (dialogObject != null) {
+            Object o = dialogObject.get(CmsSubscriberImportDialog.class.getName());
+            if (o instanceof CmsSubscriberImportObject) {
+                emails = ((CmsSubscriberImportObject)o).getEmailAddresses();
+            }
+        }
+        return new CmsSubscriberImportThread(getCms(), new CmsUUID(getParamGroupid()), getParamOufqn(), emails);
+    }
+
+    /**
+     * Sets the group id parameter value.<p>
+     *
+     * @param paramGroupid the group id parameter value
+     */
+    public void setParamGroupid(String paramGroupid) {
+
+        m_paramGroupid = paramGroupid;
+    }
+
+    /**
+     * Sets the organizational unit fqn parameter value.<p>
+     *
+     * @param ouFqn the organizational unit fqn parameter value
+     */
+    public void setParamOufqn(String ouFqn) {
+
+        if (ouFqn == null) {
+            ouFqn = "";
+        }
+        m_paramOufqn = ouFqn;
+    }
+}
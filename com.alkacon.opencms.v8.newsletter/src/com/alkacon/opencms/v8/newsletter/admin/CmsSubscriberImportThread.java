@@ -0,0 +1,227 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.newsletter/src/com/alkacon/opencms/v8/newsletter/admin/CmsSubscriberImportThread.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.newsletter.admin;
+
+import com.alkacon.opencms.v8.newsletter.CmsNewsletterManager;
+
+import org.opencms.file.CmsGroup;
+import org.opencms.file.CmsObject;
+import org.opencms.file.CmsUser;
+import org.opencms.main.CmsException;
+import org.opencms.main.CmsLog;
+import org.opencms.main.OpenCms;
+import org.opencms.report.A_CmsReportThread;
+import org.opencms.report.I_CmsReport;
+import org.opencms.security.CmsOrganizationalUnit;
+import org.opencms.util.CmsUUID;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Imports subscriber emails to a mailing list in the background, reporting the progress.<p>
+ *
+ * The existing users of the organizational unit and the members of the mailing list are read
+ * with one query each before the import starts, so that no user has to be looked up separately.
+ * The subscribers are then created and added to the mailing list in batches of {@link #BATCH_SIZE},
+ * the report shows the progress after every batch.<p>
+ *
+ * @author Andreas Zahner
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsSubscriberImportThread extends A_CmsReportThread {
+
+    /** The number of subscribers imported between two progress reports. */
+    public static final int BATCH_SIZE = 500;
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsSubscriberImportThread.class);
+
+    /** The email addresses to import. */
+    private List m_emails;
+
+    /** The id of the mailing list group. */
+    private CmsUUID m_groupId;
+
+    /** The fully qualified name of the organizational unit. */
+    private String m_ouFqn;
+
+    /**
+     * Creates a new subscriber import thread.<p>
+     *
+     * @param cms the current OpenCms user context
+     * @param groupId the id of the mailing list group to subscribe the emails to
+     * @param ouFqn the fully qualified name of the organizational unit of the mailing list
+     * @param emails the email addresses to import
+     */
+    public CmsSubscriberImportThread(CmsObject cms, CmsUUID groupId, String ouFqn, List emails) {
+
+        super(cms, Messages.get().getBundle().key(Messages.RPT_SUBSCRIBER_IMPORT_THREAD_NAME_0));
+        initHtmlReport(cms.getRequestContext().getLocale());
+        m_groupId = groupId;
+        m_ouFqn = ouFqn;
+        m_emails = new ArrayList(emails);
+    }
+
+    /**
+     * @see org.opencms.report.A_CmsReportThread#getReportUpdate()
+     */
+    public String getReportUpdate() {
+
+        return getReport().getReportUpdate();
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+
+        I_CmsReport report = getReport();
+        report.println(Messages.get().container(Messages.RPT_SUBSCRIBER_IMPORT_BEGIN_0), I_CmsReport.FORMAT_HEADLINE);
+        try {
+            importSubscribers(report);
+        } catch (CmsException e) {
+            report.println(e);
+            if (LOG.isErrorEnabled()) {
+                LOG.error(e.getLocalizedMessage(), e);
+            }
+        }
+        report.println(Messages.get().container(Messages.RPT_SUBSCRIBER_IMPORT_END_0), I_CmsReport.FORMAT_HEADLINE);
+    }
+
+    /**
+     * Returns the names of the given users, without leading separator.<p>
+     *
+     * @param users the users
+     *
+     * @return the names of the users
+     */
+    private Set getNames(List users) {
+
+        Set result = new HashSet(users.size() * 2);
+        for (Iterator i = users.iterator(); i.hasNext();) {
+            result.add(CmsOrganizationalUnit.removeLeadingSeparator(((CmsUser)i.next()).getName()));
+        }
+        return result;
+    }
+
+    /**
+     * Imports the subscribers.<p>
+     *
+     * @param report the report to write the progress to
+     *
+     * @throws CmsException if reading the mailing list or the existing users fails
+     */
+    private void importSubscribers(I_CmsReport report) throws CmsException {
+
+        CmsObject cms = getCms();
+        CmsGroup group = cms.readGroup(m_groupId);
+        String ouFqn = CmsOrganizationalUnit.removeLeadingSeparator(m_ouFqn);
+
+        // read the existing users and the members of the mailing list at once
+        report.print(Messages.get().container(Messages.RPT_SUBSCRIBER_IMPORT_READ_USERS_0), I_CmsReport.FORMAT_NOTE);
+        Set existingUsers = getNames(OpenCms.getOrgUnitManager().getUsers(cms, ouFqn, false));
+        Set members = getNames(cms.getUsersOfGroup(group.getName()));
+        report.println(
+            org.opencms.report.Messages.get().container(org.opencms.report.Messages.RPT_OK_0),
+            I_CmsReport.FORMAT_OK);
+
+        int total = m_emails.size();
+        int created = 0;
+        int subscribed = 0;
+        int failed = 0;
+        for (int start = 0; start < total; start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, total);
+            report.print(Messages.get().container(
+                Messages.RPT_SUBSCRIBER_IMPORT_BATCH_3,
+                new Integer(start + 1),
+                new Integer(end),
+                new Integer(total)), I_CmsReport.FORMAT_NOTE);
+            int batchFailed = 0;
+            for (int i = start; i < end; i++) {
+                String email = (String)m_emails.get(i);
+                String userName = ouFqn + email;
+                if (members.contains(userName)) {
+                    // already subscribed, also skips duplicate addresses
+                    continue;
+                }
+                try {
+                    if (!existingUsers.contains(userName)) {
+                        // user does not exist, create it
+                        CmsUser user = cms.createUser(userName, CmsNewsletterManager.getPassword(), "", new HashMap());
+                        user.setEmail(email);
+                        cms.writeUser(user);
+                        existingUsers.add(userName);
+                        created++;
+                    }
+                    cms.addUserToGroup(userName, group.getName());
+                    members.add(userName);
+                    subscribed++;
+                } catch (CmsException e) {
+                    if (batchFailed == 0) {
+                        report.println();
+                    }
+                    batchFailed++;
+                    report.println(
+                        Messages.get().container(Messages.RPT_SUBSCRIBER_IMPORT_FAILED_1, email),
+                        I_CmsReport.FORMAT_ERROR);
+                    report.addError(e);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(e.getLocalizedMessage(), e);
+                    }
+                }
+            }
+            if (batchFailed == 0) {
+                report.println(
+                    org.opencms.report.Messages.get().container(org.opencms.report.Messages.RPT_OK_0),
+                    I_CmsReport.FORMAT_OK);
+            }
+            failed += batchFailed;
+        }
+        report.println(Messages.get().container(
+            Messages.RPT_SUBSCRIBER_IMPORT_RESULT_4,
+            new Integer(subscribed),
+            new Integer(created),
+            new Integer(total - subscribed - failed),
+            new Integer(failed)), I_CmsReport.FORMAT_NOTE);
+    }
+}
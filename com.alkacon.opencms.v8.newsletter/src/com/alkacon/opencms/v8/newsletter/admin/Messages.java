@@ -478,6 +478,27 @@ public final class Messages extends A_CmsMessageBundle {
     /** Message constant for key in the resource bundle. */
     public static final String LOG_NEWSLETTER_SEND_FAILED_0 = "LOG_NEWSLETTER_SEND_FAILED_0";
 
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_BATCH_3 = "RPT_SUBSCRIBER_IMPORT_BATCH_3";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_BEGIN_0 = "RPT_SUBSCRIBER_IMPORT_BEGIN_0";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_END_0 = "RPT_SUBSCRIBER_IMPORT_END_0";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_FAILED_1 = "RPT_SUBSCRIBER_IMPORT_FAILED_1";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_READ_USERS_0 = "RPT_SUBSCRIBER_IMPORT_READ_USERS_0";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_RESULT_4 = "RPT_SUBSCRIBER_IMPORT_RESULT_4";
+
+    /** Message constant for key in the resource bundle. */
+    public static final String RPT_SUBSCRIBER_IMPORT_THREAD_NAME_0 = "RPT_SUBSCRIBER_IMPORT_THREAD_NAME_0";
+
     /** Name of the used resource bundle. */
     private static final String BUNDLE_NAME = "com.alkacon.opencms.v8.newsletter.admin.messages";
 
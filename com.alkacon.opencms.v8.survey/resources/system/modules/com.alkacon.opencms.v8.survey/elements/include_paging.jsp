@@ -19,7 +19,7 @@
 	</c:choose>
 
 	&nbsp;
-	<c:forEach var="pageitem" begin="1" end="${fn:length(workBean.list)}">
+	<c:forEach var="pageitem" begin="1" end="${workBean.count}">
 		<c:if test="${ (pageitem >= (curPage-2)) && (pageitem <= (curPage+2)) }">
 			<c:if test="${pageitem!=curPage}"><a href="<cms:link>${cms.requestContext.uri}?report=true&page=${pageitem}&amp;detail=true</cms:link>"><c:out value="${pageitem}"/></a></c:if>
 			<c:if test="${pageitem==curPage}"><c:out value="${curPage}"/></c:if>
@@ -29,7 +29,7 @@
 
 	<%-- Next page --%>
 	<c:choose>
-		<c:when test="${curPage >= fn:length(workBean.list)}"><fmt:message key='report.next_button.headline'/></c:when>
+		<c:when test="${curPage >= workBean.count}"><fmt:message key='report.next_button.headline'/></c:when>
 		<c:otherwise>
 			<a href="<cms:link>${cms.requestContext.uri}?report=true&page=${curPage + 1}&amp;detail=true</cms:link>" title="<fmt:message key='report.next_button.headline'/>"><fmt:message key="report.next_button.headline"/></a>
 		</c:otherwise>	
@@ -96,10 +96,10 @@
 						<c:if test="${!param.detail || !svReport.showDetail[group]}">
 							<c:if test="${showCount == 'true'}">
 								<h2><fmt:message key="report.count.headline">
-									<fmt:param value="${fn:length(workBean.list)}" />
+									<fmt:param value="${workBean.count}" />
 								</fmt:message></h2>
 							</c:if>
-							<c:if test="${svReport.showDetail[group] && fn:length(workBean.list) > 0}">
+							<c:if test="${svReport.showDetail[group] && workBean.count > 0}">
 								<a class="linkDetail"
 									href="<cms:link>${svReport.requestContext.uri}?report=true&detail=true</cms:link>"
 									title="<fmt:message key='report.next.detail.title'/>"><fmt:message
@@ -109,7 +109,7 @@
 							test="${param.detail && svReport.showDetail[group]}">
 							<h2><fmt:message key="report.detail.headline">
 								<fmt:param value="${curPage}" />
-								<fmt:param value="${fn:length(workBean.list)}" />
+								<fmt:param value="${workBean.count}" />
 							</fmt:message></h2>
 							<a class="linkDetail"
 								href="<cms:link>${svReport.requestContext.uri}?report=true</cms:link>"
@@ -282,7 +282,7 @@ pageContext.setAttribute("answerCounts", correctAnswers);
 											<c:if test="${!empty itemValue}">
 												<div class="reportitem">
 												
-												<c:set var="width" value="${ (itemValue/fn:length(workBean.list)) }" /> 													
+												<c:set var="width" value="${ (itemValue/workBean.count) }" /> 													
 												<c:set var="defValue" value="${itemKey}" /> 
 												
 												<c:forTokens items="${field.value['FieldDefault']}" delims="|" var="def">
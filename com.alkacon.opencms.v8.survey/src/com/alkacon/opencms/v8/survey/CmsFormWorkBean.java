@@ -51,10 +51,10 @@ import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
 import org.opencms.xml.types.I_CmsXmlContentValue;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -66,6 +66,11 @@ import org.apache.commons.logging.Log;
 /**
  * Contains the list with all results from the database.<p>
  * 
+ * The answer counts and averages are computed from the aggregated answers 
+ * read with {@link CmsFormDataAccess#readAggregates(String)}, so the submissions themselves 
+ * are only read for the detail pages, one submission per page. The aggregates count the items 
+ * of multiple selected values separately and field values longer than 128 characters by their prefix.<p>
+ * 
  * @author Anja Roettgers
  * 
  * @version $Revision: 1.6 $
@@ -74,34 +79,25 @@ import org.apache.commons.logging.Log;
  */
 public class CmsFormWorkBean {
 
-    /**
-     * A comparator for the created date of two resources.<p>
-     * 
-     */
-    private static final Comparator<CmsFormDataBean> COMPARE_DATE_CREATED = new Comparator<CmsFormDataBean>() {
-
-        /**
-         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-         */
-        public int compare(CmsFormDataBean o1, CmsFormDataBean o2) {
-
-            long date1 = o1.getDateCreated();
-            long date2 = o2.getDateCreated();
-
-            return (date1 > date2) ? -1 : (date1 < date2) ? 1 : 0;
-        }
-    };
-
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(CmsFormWorkBean.class);
 
+    /** The aggregated answers, <code>null</code> if the answers have to be computed from the list. */
+    private Map<String, Map<String, Integer>> m_aggregates;
+
     /** Lazy map with single answers. */
     private Map m_answer;
 
     /** Lazy map with the answers. */
     private Map m_answers;
 
-    /** the list with the filtered data. */
+    /** The number of submitted forms, <code>-1</code> if not read yet. */
+    private int m_count;
+
+    /** The filter for the submitted forms. */
+    private CmsFormDatabaseFilter m_filter;
+
+    /** the list with the filtered data, read on demand. */
     private List m_list;
 
     /** contains the current detail page. **/
@@ -164,7 +160,7 @@ public class CmsFormWorkBean {
         // split the parameter with the separator
         List result = new ArrayList();
         String[] param = CmsStringUtil.splitAsArray(parameters, CmsFormReportingBean.PARAM_SEPARATOR);
-        if ((param.length <= 2) || (m_list == null)) {
+        if ((param.length <= 2) || (getCount() == 0)) {
 
             return result;
         }
@@ -173,12 +169,15 @@ public class CmsFormWorkBean {
         m_page = Integer.parseInt(param[1]);
         if (m_page <= 0) {
             m_page = 1;
-        } else if (m_page >= m_list.size()) {
-            m_page = m_list.size();
+        } else if (m_page >= getCount()) {
+            m_page = getCount();
         }
 
         // get the form bean and get the value
-        CmsFormDataBean data = (CmsFormDataBean)getList().get(m_page - 1);
+        CmsFormDataBean data = getForm(m_page - 1);
+        if (data == null) {
+            return result;
+        }
         String value = data.getFieldValue(param[0]);
         if (CmsStringUtil.isEmpty(value)) {
             value = "";
@@ -232,33 +231,29 @@ public class CmsFormWorkBean {
     public Map getAnswersWithCount(String field) {
 
         Map result = new HashMap();
-        CmsFormDataBean data;
+        Iterator<Map.Entry<String, Integer>> it = getValuesWithCount(field).entrySet().iterator();
         String value, answer;
         List answers;
         Integer count;
-        I_CmsField formField;
-        for (int i = 0; i < m_list.size(); i++) {
-            data = (CmsFormDataBean)m_list.get(i);
-            value = data.getFieldValue(field);
-            // a value can be null if its not a mandatory field
-            if (value != null) {
-                formField = this.m_fieldTypes.get(field);
-                if (isMultiSelectField(formField)) {
-                    answers = CmsStringUtil.splitAsList(value, ',');
+        I_CmsField formField = m_fieldTypes.get(field);
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            value = entry.getKey();
+            int valueCount = entry.getValue().intValue();
+            if (isMultiSelectField(formField)) {
+                answers = CmsStringUtil.splitAsList(value, ',');
+            } else {
+                answers = new ArrayList(1);
+                answers.add(value);
+            }
+            for (int j = 0; j < answers.size(); j++) {
+                answer = (String)answers.get(j);
+                answer = answer.trim();
+                if (result.containsKey(answer)) {
+                    count = (Integer)result.get(answer);
+                    result.put(answer, new Integer(count.intValue() + valueCount));
                 } else {
-                    answers = new ArrayList(1);
-                    answers.add(value);
-                }
-                for (int j = 0; j < answers.size(); j++) {
-                    answer = (String)answers.get(j);
-                    answer = answer.trim();
-                    if (result.containsKey(answer)) {
-                        count = (Integer)result.get(answer);
-                        result.remove(answer);
-                        result.put(answer, new Integer(count.intValue() + 1));
-                    } else {
-                        result.put(answer, new Integer(1));
-                    }
+                    result.put(answer, new Integer(valueCount));
                 }
             }
         }
@@ -276,14 +271,15 @@ public class CmsFormWorkBean {
 
         long count = 0;
         double sum = 0;
-        for (int i = 0; i < m_list.size(); i++) {
-            CmsFormDataBean data = (CmsFormDataBean)m_list.get(i);
-            String valueAsString = data.getFieldValue(field);
+        Iterator<Map.Entry<String, Integer>> it = getValuesWithCount(field).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Integer> entry = it.next();
+            String valueAsString = entry.getKey();
             double value = 0;
             try {
                 value = Double.parseDouble(valueAsString);
-                count += 1;
-                sum += value;
+                count += entry.getValue().intValue();
+                sum += value * entry.getValue().intValue();
             } catch (Exception e) {
                 // don't count non-numeric strings or nulls
             }
@@ -311,12 +307,49 @@ public class CmsFormWorkBean {
     }
 
     /**
-     * Returns the list.<p>
+     * Returns the number of submitted forms.<p>
+     * 
+     * @return the number of submitted forms
+     */
+    public int getCount() {
+
+        if (m_list != null) {
+            return m_list.size();
+        }
+        if (m_count < 0) {
+            m_count = 0;
+            if (m_filter != null) {
+                try {
+                    m_count = CmsFormDataAccess.getInstance().countForms(m_filter);
+                } catch (SQLException e) {
+                    if (LOG.isErrorEnabled()) {
+                        LOG.error(e.getLocalizedMessage(), e);
+                    }
+                }
+            }
+        }
+        return m_count;
+    }
+
+    /**
+     * Returns the list, the newest submitted form first.<p>
+     * 
+     * The list is read on the first call, avoid it for many submitted forms.<p>
      * 
      * @return the list
      */
     public List getList() {
 
+        if ((m_list == null) && (m_filter != null)) {
+            try {
+                m_list = CmsFormDataAccess.getInstance().readForms(m_filter.filterOrderDate().filterOrderDesc());
+            } catch (SQLException e) {
+                if (LOG.isErrorEnabled()) {
+                    LOG.error(e.getLocalizedMessage(), e);
+                }
+                m_list = new ArrayList();
+            }
+        }
         return m_list;
     }
 
@@ -342,7 +375,8 @@ public class CmsFormWorkBean {
 
         CmsObject cms = jsp.getCmsObject();
         Locale locale = jsp.getRequestContext().getLocale();
-        m_list = new ArrayList();
+        m_list = null;
+        m_count = -1;
         m_page = 1;
         try {
             if (formId != null) {
@@ -351,9 +385,11 @@ public class CmsFormWorkBean {
                 filter = filter.filterFormId(formId);
                 if (resourceId != null) {
                     filter = filter.filterResourceId(new CmsUUID(resourceId));
+                } else {
+                    // the aggregates are only available for all submissions of a form
+                    m_aggregates = CmsFormDataAccess.getInstance().readAggregates(formId);
                 }
-                m_list = CmsFormDataAccess.getInstance().readForms(filter);
-                Collections.sort(m_list, COMPARE_DATE_CREATED);
+                m_filter = filter;
 
                 // get the field types from the form xml content
                 CmsResource resource = cms.readResource(formPath);
@@ -389,6 +425,64 @@ public class CmsFormWorkBean {
         }
     }
 
+    /**
+     * Returns the submitted form at the given index, the newest submitted form first.<p>
+     * 
+     * @param index the index of the form
+     * 
+     * @return the submitted form, or <code>null</code> if not found
+     */
+    private CmsFormDataBean getForm(int index) {
+
+        if (m_list != null) {
+            return (index < m_list.size()) ? (CmsFormDataBean)m_list.get(index) : null;
+        }
+        if (m_filter == null) {
+            return null;
+        }
+        try {
+            List<CmsFormDataBean> forms = CmsFormDataAccess.getInstance().readForms(
+                m_filter.filterOrderDate().filterOrderDesc().filterIndex(index, index + 1));
+            return forms.isEmpty() ? null : forms.get(0);
+        } catch (SQLException e) {
+            if (LOG.isErrorEnabled()) {
+                LOG.error(e.getLocalizedMessage(), e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the values of the given field with the number of forms having that value.<p>
+     * 
+     * @param field the field name
+     * 
+     * @return the values of the given field with the number of forms having that value
+     */
+    private Map<String, Integer> getValuesWithCount(String field) {
+
+        if (m_aggregates != null) {
+            Map<String, Integer> values = m_aggregates.get(field);
+            if (values == null) {
+                values = new HashMap<String, Integer>();
+            }
+            return values;
+        }
+        // count the values of the list
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        List list = getList();
+        for (int i = 0; i < list.size(); i++) {
+            CmsFormDataBean data = (CmsFormDataBean)list.get(i);
+            String value = data.getFieldValue(field);
+            // a value can be null if its not a mandatory field
+            if (value != null) {
+                Integer count = values.get(value);
+                values.put(value, new Integer(count == null ? 1 : count.intValue() + 1));
+            }
+        }
+        return values;
+    }
+
     /**
      * Returns true if the given field (type) allows multi selection.
      * <p>
@@ -416,6 +510,8 @@ public class CmsFormWorkBean {
     public void setList(List list) {
 
         m_list = list;
+        // the answers have to be computed from the given list
+        m_aggregates = null;
     }
 
     /**
@@ -32,11 +32,14 @@
 
 package com.alkacon.opencms.v8.weboptimization;
 
+import com.alkacon.opencms.v8.weboptimization.CmsOptimizationCache.CmsOptimizedContent;
+
 import org.opencms.file.CmsFile;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsPropertyDefinition;
 import org.opencms.file.CmsResource;
 import org.opencms.file.CmsResourceFilter;
+import org.opencms.flex.CmsFlexResponse;
 import org.opencms.i18n.CmsLocaleManager;
 import org.opencms.jsp.CmsJspActionElement;
 import org.opencms.loader.CmsTemplateLoaderFacade;
@@ -50,11 +53,24 @@ import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
 import org.opencms.xml.types.I_CmsXmlContentValue;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -154,6 +170,24 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
     /** type attribute constant. */
     protected static final String ATTR_TYPE = "type";
 
+    /** Header name constant. */
+    protected static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    /** Header name constant. */
+    protected static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    /** Header name constant. */
+    protected static final String HEADER_ETAG = "ETag";
+
+    /** Header name constant. */
+    protected static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    /** Header name constant. */
+    protected static final String HEADER_VARY = "Vary";
+
+    /** gzip content encoding constant. */
+    protected static final String ENCODING_GZIP = "gzip";
+
     /** Node name constant. */
     protected static final String N_LINE_BREAK_POS = "LineBreakPos";
 
@@ -181,6 +215,18 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
     /** The log object for this class. */
     private static final Log LOG = CmsLog.getLog(CmsOptimizationBean.class);
 
+    /** The maximum number of threads optimizing bundle members in parallel. */
+    private static final int MAX_THREADS = 4;
+
+    /** The name of the threads optimizing bundle members. */
+    private static final String THREAD_NAME = "com.alkacon.opencms.v8.weboptimization";
+
+    /** The time in seconds after that idle threads are stopped. */
+    private static final int THREAD_TIMEOUT = 60;
+
+    /** The pool optimizing bundle members in parallel. */
+    private static ExecutorService m_pool;
+
     /**
      * Default constructor.
      * 
@@ -192,6 +238,44 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
 
         super(context, req, res);
     }
+
+    /**
+     * Returns the pool to optimize bundle members in parallel.<p>
+     * 
+     * The pool uses at most one thread per processor, but not more than {@link #MAX_THREADS}.<p>
+     * 
+     * @return the pool to optimize bundle members in parallel
+     */
+    protected static synchronized ExecutorService getPool() {
+
+        if (m_pool == null) {
+            int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                THREAD_TIMEOUT,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    /** The number of created threads. */
+                    private AtomicInteger m_count = new AtomicInteger();
+
+                    /**
+                     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+                     */
+                    public Thread newThread(Runnable r) {
+
+                        Thread thread = new Thread(r, THREAD_NAME + "-" + m_count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            pool.allowCoreThreadTimeOut(true);
+            m_pool = pool;
+        }
+        return m_pool;
+    }
     
     /**
      * Creates a new HTML tag with the given name and attributes.<p>
@@ -298,6 +382,45 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
         return loader.dump(cms, resource, null, null, getRequest(), getResponse());
     }
 
+    /**
+     * Returns the key to cache the hash of the optimized output of the given bundle or sprite with.<p>
+     * 
+     * The output only depends on the resource, the project and the locale, 
+     * like the <code>locale;uri</code> key the Flex cache would use.<p>
+     * 
+     * @param cms the cms context
+     * @param resource the bundle or sprite resource
+     * 
+     * @return the cache key
+     */
+    protected String getBundleKey(CmsObject cms, CmsResource resource) {
+
+        return resource.getRootPath()
+            + "|"
+            + cms.getRequestContext().currentProject().getUuid()
+            + "|"
+            + cms.getRequestContext().getLocale();
+    }
+
+    /**
+     * Returns the hash of the input and options of a single bundle member.<p>
+     * 
+     * @param type the type of the bundle, e.g. the file extension
+     * @param options the options of the member
+     * @param code the input of the member
+     * 
+     * @return the hash of the input and options
+     * 
+     * @throws UnsupportedEncodingException if the encoding of the request is not supported
+     */
+    protected String getMemberHash(String type, Object options, String code) throws UnsupportedEncodingException {
+
+        String input = type + ":" + options + ":" + code.length() + "\n" + code;
+        MessageDigest digest = CmsOptimizationCache.newDigest();
+        digest.update(input.getBytes(getRequestContext().getEncoding()));
+        return CmsOptimizationCache.toHash(digest);
+    }
+
     /**
      * Creates code for the given optimized resource, 
      * by default it will use the original code in the 
@@ -348,6 +471,28 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
     	includeDefault(path, IncludeMode.ORIGINAL);
     }
 
+    /**
+     * Checks if the optimized output can be sent gzip compressed.<p>
+     * 
+     * This is only the case if the client accepts it, and if the output is neither included 
+     * in another page nor written to the static export.<p>
+     * 
+     * @return <code>true</code> if the optimized output can be sent gzip compressed
+     */
+    protected boolean isGzipAccepted() {
+
+        String acceptEncoding = getRequest().getHeader(HEADER_ACCEPT_ENCODING);
+        if ((acceptEncoding == null) || (acceptEncoding.indexOf(ENCODING_GZIP) < 0)) {
+            return false;
+        }
+        if (!(getResponse() instanceof CmsFlexResponse) || !((CmsFlexResponse)getResponse()).isTopElement()) {
+            // the header would apply to the including page
+            return false;
+        }
+        // exported files are served without the content encoding header
+        return !OpenCms.getStaticExportManager().isExportLink(getCmsObject(), getRequestContext().getUri());
+    }
+
     /**
 	 * Checks if the given resource node has to be optimized.<p>
 	 * 
@@ -380,6 +525,93 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
 		return optimized;
 	}
 
+    /**
+     * Returns the optimized output of a bundle, 
+     * concatenating the optimized output of its members in the given order.<p>
+     * 
+     * The output of the bundle and of its members is cached, see {@link CmsOptimizationCache}.
+     * Members not cached yet are optimized in parallel, if there are more than one.<p>
+     * 
+     * @param type the type of the bundle, e.g. the file extension
+     * @param hashes the hashes of the members, see {@link #getMemberHash(String, Object, String)}
+     * @param optimizers the tasks optimizing the members, in the same order as the hashes
+     * 
+     * @return the optimized output of the bundle
+     * 
+     * @throws Exception if optimizing a member fails
+     */
+    protected CmsOptimizedContent optimizeMembers(String type, List<String> hashes, List<Callable<String>> optimizers)
+    throws Exception {
+
+        String encoding = getRequestContext().getEncoding();
+        CmsOptimizationCache cache = CmsOptimizationCache.getSharedInstance();
+        MessageDigest digest = CmsOptimizationCache.newDigest();
+        digest.update(type.getBytes(encoding));
+        Iterator<String> itHashes = hashes.iterator();
+        while (itHashes.hasNext()) {
+            digest.update(itHashes.next().getBytes(encoding));
+        }
+        String hash = CmsOptimizationCache.toHash(digest);
+        CmsOptimizedContent content = cache.get(hash);
+        if (content != null) {
+            return content;
+        }
+
+        // use the cached members
+        int size = hashes.size();
+        String[] members = new String[size];
+        int missing = 0;
+        for (int i = 0; i < size; i++) {
+            members[i] = cache.getMember(hashes.get(i));
+            if (members[i] == null) {
+                missing++;
+            }
+        }
+        if (missing == 1) {
+            // no need to involve the pool
+            for (int i = 0; i < size; i++) {
+                if (members[i] == null) {
+                    members[i] = optimizers.get(i).call();
+                    cache.putMember(hashes.get(i), members[i]);
+                }
+            }
+        } else if (missing > 1) {
+            // optimize the other members in parallel
+            List<Future<String>> futures = new ArrayList<Future<String>>(size);
+            for (int i = 0; i < size; i++) {
+                futures.add((members[i] == null) ? getPool().submit(optimizers.get(i)) : null);
+            }
+            try {
+                for (int i = 0; i < size; i++) {
+                    Future<String> future = futures.get(i);
+                    if (future != null) {
+                        members[i] = future.get();
+                        cache.putMember(hashes.get(i), members[i]);
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception)e.getCause();
+                }
+                throw e;
+            } finally {
+                // stop the remaining tasks in case of an error
+                for (int i = 0; i < size; i++) {
+                    if (futures.get(i) != null) {
+                        futures.get(i).cancel(true);
+                    }
+                }
+            }
+        }
+
+        // concatenate the members in the given order
+        StringBuffer result = new StringBuffer();
+        for (int i = 0; i < size; i++) {
+            result.append(members[i]);
+        }
+        return cache.put(hash, result.toString().getBytes(encoding));
+    }
+
     /**
 	 * Resolves the given file.<p>
 	 * 
@@ -503,4 +735,39 @@ public abstract class CmsOptimizationBean extends CmsJspActionElement {
         }
         return resorces;
     }
+
+    /**
+     * Writes the given optimized output to the servlet output stream.<p>
+     * 
+     * The output is sent with a strong entity tag, if the client already has the 
+     * output only the status <code>304 Not Modified</code> is sent.
+     * If possible, the gzip compressed variant of the output is sent, unless it is 
+     * not smaller than the uncompressed output, e.g. for images.<p>
+     * 
+     * @param content the optimized output
+     * 
+     * @throws IOException if something goes wrong
+     */
+    protected void writeOptimized(CmsOptimizedContent content) throws IOException {
+
+        HttpServletResponse res = getResponse();
+        boolean gzip = (content.getGzipContent().length < content.getContent().length) && isGzipAccepted();
+        String etag = gzip ? content.getGzipEtag() : content.getEtag();
+        res.setHeader(HEADER_ETAG, etag);
+        res.setHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        String ifNoneMatch = getRequest().getHeader(HEADER_IF_NONE_MATCH);
+        if ((ifNoneMatch != null) && ((ifNoneMatch.indexOf(etag) > -1) || "*".equals(ifNoneMatch.trim()))) {
+            res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] data = content.getContent();
+        if (gzip) {
+            res.setHeader(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+            data = content.getGzipContent();
+        }
+        res.setContentLength(data.length);
+        OutputStream out = res.getOutputStream();
+        out.write(data);
+        out.flush();
+    }
 }
@@ -0,0 +1,522 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.weboptimization/src/com/alkacon/opencms/v8/weboptimization/CmsOptimizationCache.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.weboptimization;
+
+import org.opencms.main.CmsEvent;
+import org.opencms.main.CmsLog;
+import org.opencms.main.I_CmsEventListener;
+import org.opencms.main.OpenCms;
+import org.opencms.util.CmsFileUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.logging.Log;
+
+/**
+ * Caches the optimized output of the optimization beans for all requests of this server.<p>
+ *
+ * The output is cached by a hash of all inputs and options, 
+ * so it never has to be invalidated because of changed inputs.
+ * Besides the memory cache, the output is stored in the real file system below {@link #RFS_FOLDER}, so it
+ * survives a restart of the server. A gzip compressed variant is created once when the output is cached.<p>
+ *
+ * The optimized output of the single members of a bundle is cached as well, also by a hash of their input and options.
+ * So if a member of a bundle changes, only this member has to be optimized again.<p>
+ *
+ * The layouts of the sprites and the hashes of the bundles are cached by the resource, the project and the locale,
+ * see {@link CmsOptimizationBean#getBundleKey(org.opencms.file.CmsObject, org.opencms.file.CmsResource)}, 
+ * so that the inputs of an unchanged bundle are not read at all.
+ * They are removed whenever a resource is modified or a project is published.<p>
+ *
+ * The memory cache of the bundles is cleared when a project is published, the cached members are kept.
+ * Since every modification of an input leaves the stored output of the previous inputs behind, the stored files
+ * that are not in memory and were not used within {@link #MAX_FILE_AGE} are deleted when a project is published.
+ * All cached members and the stored files are removed when all caches are cleared.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public final class CmsOptimizationCache implements I_CmsEventListener {
+
+    /**
+     * The optimized output for one hash of inputs and options.<p>
+     */
+    public static final class CmsOptimizedContent {
+
+        /** The optimized output. */
+        private final byte[] m_content;
+
+        /** The gzip compressed optimized output. */
+        private final byte[] m_gzipContent;
+
+        /** The hash of the inputs and options. */
+        private final String m_hash;
+
+        /**
+         * Creates a new optimized output.<p>
+         *
+         * @param hash the hash of the inputs and options
+         * @param content the optimized output
+         * @param gzipContent the gzip compressed optimized output
+         */
+        CmsOptimizedContent(String hash, byte[] content, byte[] gzipContent) {
+
+            m_hash = hash;
+            m_content = content;
+            m_gzipContent = gzipContent;
+        }
+
+        /**
+         * Returns the optimized output.<p>
+         *
+         * The returned array must not be modified, it is shared by all requests.<p>
+         *
+         * @return the optimized output
+         */
+        public byte[] getContent() {
+
+            return m_content;
+        }
+
+        /**
+         * Returns the strong entity tag of the uncompressed output.<p>
+         *
+         * @return the entity tag of the uncompressed output
+         */
+        public String getEtag() {
+
+            return "\"" + m_hash + "\"";
+        }
+
+        /**
+         * Returns the gzip compressed optimized output.<p>
+         *
+         * The returned array must not be modified, it is shared by all requests.<p>
+         *
+         * @return the gzip compressed optimized output
+         */
+        public byte[] getGzipContent() {
+
+            return m_gzipContent;
+        }
+
+        /**
+         * Returns the strong entity tag of the gzip compressed output.<p>
+         *
+         * @return the entity tag of the gzip compressed output
+         */
+        public String getGzipEtag() {
+
+            return "\"" + m_hash + "-gz\"";
+        }
+
+        /**
+         * Returns the hash of the inputs and options.<p>
+         *
+         * @return the hash of the inputs and options
+         */
+        public String getHash() {
+
+            return m_hash;
+        }
+    }
+
+    /** The time in milliseconds after that unused stored output is deleted. */
+    public static final long MAX_FILE_AGE = 24L * 60 * 60 * 1000;
+
+    /** The folder for the stored output, relative to the <code>WEB-INF</code> folder. */
+    public static final String RFS_FOLDER = "cache/weboptimization/";
+
+    /** File suffix of the gzip compressed output. */
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /** The log object for this class. */
+    private static final Log LOG = CmsLog.getLog(CmsOptimizationCache.class);
+
+    /** The maximum number of optimized members kept in memory. */
+    private static final int MAX_MEMBERS = 500;
+
+    /** The maximum number of optimized outputs kept in memory. */
+    private static final int MAX_SIZE = 100;
+
+    /** The shared instance of the optimization cache. */
+    private static volatile CmsOptimizationCache sharedInstance;
+
+    /** The hashes of the optimized outputs by bundle. */
+    private final Map<String, String> m_bundles;
+
+    /** The optimized outputs kept in memory. */
+    private final Map<String, CmsOptimizedContent> m_contents;
+
+    /** The folder for the stored output. */
+    private final File m_folder;
+
+    /** The sprite layouts. */
+    private final Map<String, CmsOptimizationSpriteLayout> m_layouts;
+
+    /** The optimized output of single bundle members. */
+    private final Map<String, String> m_members;
+
+    /**
+     * Hidden constructor, use {@link #getSharedInstance()}.<p>
+     */
+    @SuppressWarnings("unchecked")
+    private CmsOptimizationCache() {
+
+        m_bundles = Collections.synchronizedMap(new LRUMap(MAX_SIZE));
+        m_contents = Collections.synchronizedMap(new LRUMap(MAX_SIZE));
+        m_folder = new File(OpenCms.getSystemInfo().getAbsoluteRfsPathRelativeToWebInf(RFS_FOLDER));
+        m_members = Collections.synchronizedMap(new LRUMap(MAX_MEMBERS));
+        m_layouts = Collections.synchronizedMap(new LRUMap(MAX_SIZE));
+
+        OpenCms.addCmsEventListener(this, new int[] {
+            I_CmsEventListener.EVENT_CLEAR_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES,
+            I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES,
+            I_CmsEventListener.EVENT_PUBLISH_PROJECT,
+            I_CmsEventListener.EVENT_RESOURCE_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_CREATED,
+            I_CmsEventListener.EVENT_RESOURCE_DELETED,
+            I_CmsEventListener.EVENT_RESOURCE_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCE_MOVED,
+            I_CmsEventListener.EVENT_RESOURCES_AND_PROPERTIES_MODIFIED,
+            I_CmsEventListener.EVENT_RESOURCES_MODIFIED});
+    }
+
+    /**
+     * Returns the shared instance of the optimization cache.<p>
+     *
+     * @return the shared instance of the optimization cache
+     */
+    public static CmsOptimizationCache getSharedInstance() {
+
+        CmsOptimizationCache result = sharedInstance;
+        if (result == null) {
+            synchronized (CmsOptimizationCache.class) {
+                result = sharedInstance;
+                if (result == null) {
+                    result = new CmsOptimizationCache();
+                    sharedInstance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new message digest to create the hash of inputs and options with.<p>
+     *
+     * @return a new message digest
+     */
+    public static MessageDigest newDigest() {
+
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support MD5
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the hexadecimal representation of the given digest, to be used as hash of inputs and options.<p>
+     *
+     * @param digest the message digest, all inputs and options have to be added already
+     *
+     * @return the hexadecimal hash
+     */
+    public static String toHash(MessageDigest digest) {
+
+        byte[] bytes = digest.digest();
+        StringBuffer result = new StringBuffer(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            if (b < 0x10) {
+                result.append('0');
+            }
+            result.append(Integer.toHexString(b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Removes all optimized outputs, bundle hashes and sprite layouts from memory.<p>
+     */
+    public void clear() {
+
+        m_bundles.clear();
+        m_contents.clear();
+        m_layouts.clear();
+    }
+
+    /**
+     * @see org.opencms.main.I_CmsEventListener#cmsEvent(org.opencms.main.CmsEvent)
+     */
+    public void cmsEvent(CmsEvent event) {
+
+        switch (event.getType()) {
+            case I_CmsEventListener.EVENT_CLEAR_CACHES:
+                // also remove the cached members and the stored output
+                clear();
+                m_members.clear();
+                CmsFileUtil.purgeDirectory(m_folder);
+                break;
+            case I_CmsEventListener.EVENT_PUBLISH_PROJECT:
+                // the output of the modified bundles is superseded now
+                purgeUnusedFiles();
+                clear();
+                break;
+            case I_CmsEventListener.EVENT_CLEAR_OFFLINE_CACHES:
+            case I_CmsEventListener.EVENT_CLEAR_ONLINE_CACHES:
+                clear();
+                break;
+            default:
+                // a modified resource may be part of a bundle or sprite, the optimized output is still valid
+                m_bundles.clear();
+                m_layouts.clear();
+        }
+    }
+
+    /**
+     * Returns the optimized output for the given hash of inputs and options.<p>
+     *
+     * If the output is not in memory, it is read from the real file system, 
+     * and the stored files are marked as used.<p>
+     *
+     * @param hash the hash of the inputs and options
+     *
+     * @return the optimized output, or <code>null</code> if not cached
+     */
+    public CmsOptimizedContent get(String hash) {
+
+        CmsOptimizedContent result = m_contents.get(hash);
+        if (result == null) {
+            File file = new File(m_folder, hash);
+            File gzipFile = new File(m_folder, hash + GZIP_SUFFIX);
+            if (file.canRead() && gzipFile.canRead()) {
+                try {
+                    result = new CmsOptimizedContent(hash, CmsFileUtil.readFile(file), CmsFileUtil.readFile(gzipFile));
+                    m_contents.put(hash, result);
+                    long now = System.currentTimeMillis();
+                    file.setLastModified(now);
+                    gzipFile.setLastModified(now);
+                } catch (IOException e) {
+                    LOG.error(e.getLocalizedMessage(), e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the optimized output of the bundle with the given key.<p>
+     *
+     * @param key the bundle cache key
+     *
+     * @return the optimized output, or <code>null</code> if not cached
+     */
+    public CmsOptimizedContent getBundle(String key) {
+
+        String hash = m_bundles.get(key);
+        return (hash == null) ? null : get(hash);
+    }
+
+    /**
+     * Returns the cached sprite layout for the given key.<p>
+     *
+     * @param key the sprite layout cache key
+     *
+     * @return the sprite layout, or <code>null</code> if not cached
+     */
+    public CmsOptimizationSpriteLayout getLayout(String key) {
+
+        return m_layouts.get(key);
+    }
+
+    /**
+     * Returns the optimized output of a single bundle member for the given hash of its input and options.<p>
+     *
+     * @param hash the hash of the input and options of the member
+     *
+     * @return the optimized output of the member, or <code>null</code> if not cached
+     */
+    public String getMember(String hash) {
+
+        return m_members.get(hash);
+    }
+
+    /**
+     * Caches the optimized output for the given hash of inputs and options.<p>
+     *
+     * @param hash the hash of the inputs and options
+     * @param content the optimized output
+     *
+     * @return the cached optimized output
+     */
+    public CmsOptimizedContent put(String hash, byte[] content) {
+
+        CmsOptimizedContent result = new CmsOptimizedContent(hash, content, gzip(content));
+        m_contents.put(hash, result);
+        try {
+            // write the gzip variant first, the output is only read if both files exist
+            writeFile(new File(m_folder, hash + GZIP_SUFFIX), result.getGzipContent());
+            writeFile(new File(m_folder, hash), result.getContent());
+        } catch (IOException e) {
+            // the output is still cached in memory
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Caches the hash of the optimized output of the bundle with the given key.<p>
+     *
+     * @param key the bundle cache key
+     * @param content the optimized output of the bundle
+     */
+    public void putBundle(String key, CmsOptimizedContent content) {
+
+        m_bundles.put(key, content.getHash());
+    }
+
+    /**
+     * Caches the sprite layout for the given key.<p>
+     *
+     * @param key the sprite layout cache key
+     * @param layout the sprite layout
+     */
+    public void putLayout(String key, CmsOptimizationSpriteLayout layout) {
+
+        m_layouts.put(key, layout);
+    }
+
+    /**
+     * Caches the optimized output of a single bundle member for the given hash of its input and options.<p>
+     *
+     * @param hash the hash of the input and options of the member
+     * @param content the optimized output of the member
+     */
+    public void putMember(String hash, String content) {
+
+        m_members.put(hash, content);
+    }
+
+    /**
+     * Returns the gzip compressed data.<p>
+     *
+     * @param data the data to compress
+     *
+     * @return the compressed data
+     */
+    private byte[] gzip(byte[] data) {
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 3 + 64);
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(result);
+            out.write(data);
+            out.close();
+        } catch (IOException e) {
+            // can not happen when writing to memory
+            throw new RuntimeException(e);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Deletes the stored outputs that are not in memory and were not used within {@link #MAX_FILE_AGE}.<p>
+     */
+    private void purgeUnusedFiles() {
+
+        File[] files = m_folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        long expired = System.currentTimeMillis() - MAX_FILE_AGE;
+        for (int i = 0; i < files.length; i++) {
+            File file = files[i];
+            String hash = file.getName();
+            if (hash.endsWith(GZIP_SUFFIX)) {
+                hash = hash.substring(0, hash.length() - GZIP_SUFFIX.length());
+            }
+            // also removes temporary files left behind by an interrupted write
+            if ((file.lastModified() < expired) && !m_contents.containsKey(hash) && !file.delete()) {
+                LOG.warn(file.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Writes the given data to the given file.<p>
+     *
+     * The data is written to a temporary file first, so that concurrent readers never see an incomplete file.<p>
+     *
+     * @param file the file to write
+     * @param data the data to write
+     *
+     * @throws IOException if something goes wrong
+     */
+    private void writeFile(File file, byte[] data) throws IOException {
+
+        if (!m_folder.exists()) {
+            m_folder.mkdirs();
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", m_folder);
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // the target may exist already on some platforms
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException(file.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -32,6 +32,8 @@
 
 package com.alkacon.opencms.v8.weboptimization;
 
+import com.alkacon.opencms.v8.weboptimization.CmsOptimizationCache.CmsOptimizedContent;
+
 import org.opencms.file.CmsFile;
 import org.opencms.file.CmsObject;
 import org.opencms.file.CmsResource;
@@ -45,10 +47,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -145,29 +152,47 @@ public class CmsOptimizationCss extends CmsOptimizationBean {
     /**
      * Will optimize the resources taken from the underlying XML content.<p>
      * 
+     * The optimized output is cached by a hash of all inputs and options, see {@link CmsOptimizationCache}, 
+     * so that the inputs are only compressed again if they or the options have changed.
+     * The single resources are compressed in parallel, see {@link #optimizeMembers(String, List, List)}.
+     * The hash of the bundle is cached as well, see {@link #getBundleKey(CmsObject, CmsResource)}, 
+     * so that an unchanged bundle is sent without reading its resources.<p>
+     * 
      * @throws Exception if something goes wrong
      */
     public void optimize() throws Exception {
 
         CmsObject cms = getCmsObject();
-        CmsFile file = cms.readFile(cms.getRequestContext().getUri());
+        CmsResource resource = cms.readResource(cms.getRequestContext().getUri());
 
         // check the resource type
-        if (file.getTypeId() != RESOURCE_TYPE_CSS) {
+        if (resource.getTypeId() != RESOURCE_TYPE_CSS) {
             throw new CmsIllegalArgumentException(Messages.get().container(
                 Messages.ERR_NOT_SUPPORTED_RESOURCE_TYPE_2,
                 cms.getRequestContext().getUri(),
-                new Integer(file.getTypeId())));
+                new Integer(resource.getTypeId())));
+        }
+
+        CmsOptimizationCache cache = CmsOptimizationCache.getSharedInstance();
+        String key = getBundleKey(cms, resource);
+        CmsOptimizedContent content = cache.getBundle(key);
+        if (content != null) {
+            writeOptimized(content);
+            return;
         }
 
         // read the XML content
-        CmsXmlContent xml = CmsXmlContentFactory.unmarshal(cms, file);
+        CmsXmlContent xml = CmsXmlContentFactory.unmarshal(cms, cms.readFile(resource));
 
         // resolve the locale
         Locale locale = resolveLocale(cms, xml);
 		// cache the current project
 		boolean online = cms.getRequestContext().currentProject().isOnlineProject();
 
+        // the hashes of the inputs and options, and the tasks compressing the inputs
+        List<String> hashes = new ArrayList<String>();
+        List<Callable<String>> optimizers = new ArrayList<Callable<String>>();
+
         // iterate the resources
         Iterator<I_CmsXmlContentValue> itRes = xml.getValues(N_RESOURCE, locale).iterator();
         while (itRes.hasNext()) {
@@ -186,9 +211,26 @@ public class CmsOptimizationCss extends CmsOptimizationBean {
                 xpath = CmsXmlUtils.concatXpath(value.getPath(), N_LINE_BREAK_POS);
                 opts.setLineBreakPos(Integer.parseInt(xml.getStringValue(cms, xpath, locale)));
             }
-            // process this resource
-            optimizeCss(getAllContent(cms, path), opts);
+            // collect this resource
+            final String code = getAllContent(cms, path);
+            final CmsOptimizationCssOptions codeOpts = opts;
+            hashes.add(getMemberHash(EXT_CSS, opts, code));
+            optimizers.add(new Callable<String>() {
+
+                /**
+                 * @see java.util.concurrent.Callable#call()
+                 */
+                public String call() throws Exception {
+
+                    StringWriter out = new StringWriter();
+                    optimizeCss(code, codeOpts, out);
+                    return out.toString();
+                }
+            });
         }
+        content = optimizeMembers(EXT_CSS, hashes, optimizers);
+        cache.putBundle(key, content);
+        writeOptimized(content);
     }
 
     /**
@@ -201,11 +243,25 @@ public class CmsOptimizationCss extends CmsOptimizationBean {
      */
     public void optimizeCss(String cssCode, CmsOptimizationCssOptions options) throws Exception {
 
+        optimizeCss(cssCode, options, getJspContext().getOut());
+    }
+
+    /**
+     * Optimizes css code with the given options, writing the result to the given writer.<p>
+     * 
+     * @param cssCode the code to compress
+     * @param options the options to use
+     * @param out the writer to write the compressed code to
+     * 
+     * @throws Exception if something goes wrong
+     */
+    public void optimizeCss(String cssCode, CmsOptimizationCssOptions options, Writer out) throws Exception {
+
         Reader reader = new BufferedReader(new StringReader(cssCode));
         try {
             // process the js code
             CssCompressor cssc = new CssCompressor(reader);
-            cssc.compress(getJspContext().getOut(), options.getLineBreakPos());
+            cssc.compress(out, options.getLineBreakPos());
         } finally {
             try {
                 reader.close();
@@ -83,4 +83,13 @@ public class CmsOptimizationCssOptions {
 
         m_lineBreakPos = lineBreakPos;
     }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return "lineBreakPos=" + m_lineBreakPos;
+    }
 }
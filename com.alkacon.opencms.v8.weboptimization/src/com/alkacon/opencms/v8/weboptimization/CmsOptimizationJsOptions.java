@@ -158,4 +158,20 @@ public class CmsOptimizationJsOptions {
 
         m_preserveSemi = preserveSemi;
     }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+
+        return "lineBreakPos="
+            + m_lineBreakPos
+            + ",munge="
+            + m_munge
+            + ",optimize="
+            + m_optimize
+            + ",preserveSemi="
+            + m_preserveSemi;
+    }
 }
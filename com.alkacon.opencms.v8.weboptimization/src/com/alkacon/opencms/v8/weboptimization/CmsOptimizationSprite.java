@@ -32,6 +32,7 @@
 
 package com.alkacon.opencms.v8.weboptimization;
 
+import com.alkacon.opencms.v8.weboptimization.CmsOptimizationCache.CmsOptimizedContent;
 import com.alkacon.simapi.Simapi;
 
 import org.opencms.file.CmsFile;
@@ -39,6 +40,7 @@ import org.opencms.file.CmsObject;
 import org.opencms.file.CmsResource;
 import org.opencms.main.CmsIllegalArgumentException;
 import org.opencms.main.CmsLog;
+import org.opencms.util.CmsStringUtil;
 import org.opencms.xml.CmsXmlUtils;
 import org.opencms.xml.content.CmsXmlContent;
 import org.opencms.xml.content.CmsXmlContentFactory;
@@ -46,12 +48,22 @@ import org.opencms.xml.types.I_CmsXmlContentValue;
 
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -160,22 +172,27 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
 	}
 
     /**
-     * Will optimize the resources taken from the underlying XML content.<p>
+     * Returns the layout of the given sprite.<p>
+     * 
+     * The layout is cached, see {@link CmsOptimizationCache}. If it is not cached yet, all images of the sprite
+     * are read to determine their size. Images with an empty X or Y position are placed automatically 
+     * below the images with an explicit position, 
+     * see {@link #placeImages(List, int[][], CmsOptimizationSpriteOptions[], int, int)}.<p>
+     * 
+     * @param cms the cms context
+     * @param file the sprite file
+     * 
+     * @return the layout of the sprite
      * 
      * @throws Exception if something goes wrong
      */
-    public void optimize() throws Exception {
-
-        CmsObject cms = getCmsObject();
-        CmsFile file = cms.readFile(cms.getRequestContext().getUri());
+    public CmsOptimizationSpriteLayout getLayout(CmsObject cms, CmsFile file) throws Exception {
 
-        // check the resource type
-        String type = Simapi.getImageType(file.getRootPath());
-        if ((file.getTypeId() != RESOURCE_TYPE_SPRITE) || (type == null)) {
-            throw new CmsIllegalArgumentException(Messages.get().container(
-                Messages.ERR_NOT_SUPPORTED_RESOURCE_TYPE_2,
-                cms.getRequestContext().getUri(),
-                new Integer(file.getTypeId())));
+        CmsOptimizationCache cache = CmsOptimizationCache.getSharedInstance();
+        String key = getBundleKey(cms, file);
+        CmsOptimizationSpriteLayout layout = cache.getLayout(key);
+        if (layout != null) {
+            return layout;
         }
 
         // read the XML content
@@ -183,32 +200,29 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
 
         // resolve the locale
         Locale locale = resolveLocale(cms, xml);
-		// cache the current project
-		boolean online = cms.getRequestContext().currentProject().isOnlineProject();
-
-        BufferedImage sprite = new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR);
-        // iterate the resources
-        Iterator<I_CmsXmlContentValue> itPath = xml.getValues(N_RESOURCE, locale).iterator();
-        while (itPath.hasNext()) {
-            I_CmsXmlContentValue value = itPath.next();
+        // cache the current project
+        boolean online = cms.getRequestContext().currentProject().isOnlineProject();
+
+        List<I_CmsXmlContentValue> values = xml.getValues(N_RESOURCE, locale);
+        int size = values.size();
+        String[] paths = new String[size];
+        String[] hashes = new String[size];
+        int[][] sizes = new int[size][];
+        CmsOptimizationSpriteOptions[] positions = new CmsOptimizationSpriteOptions[size];
+        List<Integer> automatic = new ArrayList<Integer>();
+        int width = 0;
+        int height = 0;
+        for (int i = 0; i < size; i++) {
+            I_CmsXmlContentValue value = values.get(i);
             if (!isOptimized(cms, xml, value, locale, online)) {
-            	continue;
+                continue;
             }
             // get the path
             String xpath = CmsXmlUtils.concatXpath(value.getPath(), N_PATH);
             String path = xml.getValue(xpath, locale).getStringValue(cms);
             // get the options
             CmsOptimizationSpriteOptions opts = new CmsOptimizationSpriteOptions();
-            xpath = CmsXmlUtils.concatXpath(value.getPath(), N_POSITION);
-            if (xml.hasValue(xpath, locale)) {
-                I_CmsXmlContentValue value2 = xml.getValue(xpath, locale);
-                xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_X);
-                opts.setX(Integer.parseInt(xml.getStringValue(cms, xpath, locale)));
-                xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_Y);
-                opts.setY(Integer.parseInt(xml.getStringValue(cms, xpath, locale)));
-            }
-            xpath = CmsXmlUtils.concatXpath(value.getPath(), N_SELECTOR);
-            opts.setSelector(xml.getStringValue(cms, xpath, locale));
+            boolean explicit = readOptions(cms, xml, value, locale, opts);
 
             // retrieve the actual files to process
             CmsResource res = cms.readResource(path);
@@ -217,11 +231,243 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
                 continue;
             }
 
-            // process this resource
-            BufferedImage img = Simapi.read(getBinaryContent(cms, res));
-            sprite = addImage(sprite, img, opts);
+            byte[] data = getBinaryContent(cms, res);
+            MessageDigest digest = CmsOptimizationCache.newDigest();
+            digest.update(data);
+            hashes[i] = CmsOptimizationCache.toHash(digest);
+            sizes[i] = getImageSize(data);
+            paths[i] = path;
+            positions[i] = opts;
+            if (explicit) {
+                width = Math.max(width, opts.getX() + sizes[i][0]);
+                height = Math.max(height, opts.getY() + sizes[i][1]);
+            } else {
+                automatic.add(new Integer(i));
+            }
+        }
+        if (!automatic.isEmpty()) {
+            int[] extent = placeImages(automatic, sizes, positions, width, height);
+            width = extent[0];
+            height = extent[1];
+        }
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+
+        // the hash identifying the sprite image
+        MessageDigest digest = CmsOptimizationCache.newDigest();
+        digest.update((Simapi.getImageType(file.getRootPath()) + ":" + width + "x" + height).getBytes());
+        for (int i = 0; i < size; i++) {
+            if (paths[i] != null) {
+                digest.update((":" + hashes[i] + "@" + positions[i].getX() + "," + positions[i].getY()).getBytes());
+            }
+        }
+        layout = new CmsOptimizationSpriteLayout(CmsOptimizationCache.toHash(digest), paths, positions, width, height);
+        cache.putLayout(key, layout);
+        return layout;
+    }
+
+    /**
+     * Will optimize the resources taken from the underlying XML content.<p>
+     * 
+     * The sprite image is cached by a hash of all images and their positions, see {@link CmsOptimizationCache},
+     * so that it is only created again if an image or the layout has changed.<p>
+     * 
+     * @throws Exception if something goes wrong
+     */
+    public void optimize() throws Exception {
+
+        CmsObject cms = getCmsObject();
+        CmsFile file = cms.readFile(cms.getRequestContext().getUri());
+
+        // check the resource type
+        String type = Simapi.getImageType(file.getRootPath());
+        if ((file.getTypeId() != RESOURCE_TYPE_SPRITE) || (type == null)) {
+            throw new CmsIllegalArgumentException(Messages.get().container(
+                Messages.ERR_NOT_SUPPORTED_RESOURCE_TYPE_2,
+                cms.getRequestContext().getUri(),
+                new Integer(file.getTypeId())));
         }
-        writeImage(sprite, type);
+
+        CmsOptimizationSpriteLayout layout = getLayout(cms, file);
+        CmsOptimizationCache cache = CmsOptimizationCache.getSharedInstance();
+        CmsOptimizedContent content = cache.get(layout.getHash());
+        if (content == null) {
+            content = cache.put(layout.getHash(), createImage(cms, layout, type));
+        }
+        writeOptimized(content);
+    }
+
+    /**
+     * Creates the sprite image for the given layout.<p>
+     * 
+     * @param cms the cms context
+     * @param layout the sprite layout
+     * @param type the image type
+     * 
+     * @return the encoded sprite image
+     * 
+     * @throws Exception if something goes wrong
+     */
+    protected byte[] createImage(CmsObject cms, CmsOptimizationSpriteLayout layout, String type) throws Exception {
+
+        // the final size is known, so the sprite is created only once
+        BufferedImage sprite = new BufferedImage(layout.getWidth(), layout.getHeight(), BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g2d = sprite.createGraphics();
+        try {
+            for (int i = 0; i < layout.size(); i++) {
+                String path = layout.getPath(i);
+                if (path == null) {
+                    continue;
+                }
+                // put the image into the sprite
+                BufferedImage img = Simapi.read(getBinaryContent(cms, cms.readResource(path)));
+                CmsOptimizationSpriteOptions position = layout.getPosition(i);
+                g2d.drawImage(img, position.getX(), position.getY(), null);
+            }
+        } finally {
+            g2d.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeImage(sprite, type, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the width and height of the given image.<p>
+     * 
+     * Only the image header is read if possible.<p>
+     * 
+     * @param data the image data
+     * 
+     * @return an array with the width and the height of the image
+     * 
+     * @throws IOException if something goes wrong
+     */
+    protected int[] getImageSize(byte[] data) throws IOException {
+
+        ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(in, true, true);
+                    return new int[] {reader.getWidth(0), reader.getHeight(0)};
+                } finally {
+                    reader.dispose();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        // no reader for the header, decode the whole image
+        BufferedImage img = Simapi.read(data);
+        return new int[] {img.getWidth(), img.getHeight()};
+    }
+
+    /**
+     * Places the given images without explicit position below the images with explicit position.<p>
+     * 
+     * The images are placed in rows, sorted by their height. The rows are at least as wide as the images 
+     * with explicit position, and wide enough to make the sprite about square.<p>
+     * 
+     * @param automatic the indexes of the images to place
+     * @param sizes the width and height of all images, by index
+     * @param positions the positions of all images, by index, the positions of the images to place are set
+     * @param width the width of the images with explicit position
+     * @param height the height of the images with explicit position
+     * 
+     * @return an array with the final width and height of the sprite
+     */
+    protected int[] placeImages(
+        List<Integer> automatic,
+        final int[][] sizes,
+        CmsOptimizationSpriteOptions[] positions,
+        int width,
+        int height) {
+
+        // sort the images by height, the highest first
+        List<Integer> sorted = new ArrayList<Integer>(automatic);
+        Collections.sort(sorted, new Comparator<Integer>() {
+
+            /**
+             * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+             */
+            public int compare(Integer o1, Integer o2) {
+
+                return sizes[o2.intValue()][1] - sizes[o1.intValue()][1];
+            }
+        });
+
+        // determine the row width
+        long area = 0;
+        int rowWidth = width;
+        Iterator<Integer> it = sorted.iterator();
+        while (it.hasNext()) {
+            int[] size = sizes[it.next().intValue()];
+            area += (long)size[0] * size[1];
+            rowWidth = Math.max(rowWidth, size[0]);
+        }
+        rowWidth = Math.max(rowWidth, (int)Math.ceil(Math.sqrt(area)));
+
+        // place the images row by row
+        int x = 0;
+        int y = height;
+        int rowHeight = 0;
+        it = sorted.iterator();
+        while (it.hasNext()) {
+            int i = it.next().intValue();
+            if ((x > 0) && ((x + sizes[i][0]) > rowWidth)) {
+                // start a new row
+                y += rowHeight;
+                x = 0;
+                rowHeight = 0;
+            }
+            positions[i].setX(x);
+            positions[i].setY(y);
+            x += sizes[i][0];
+            rowHeight = Math.max(rowHeight, sizes[i][1]);
+            width = Math.max(width, x);
+        }
+        return new int[] {width, y + rowHeight};
+    }
+
+    /**
+     * Reads the position and the selector of the given resource node.<p>
+     * 
+     * @param cms the cms context
+     * @param xml the xml content
+     * @param value the resource node
+     * @param locale the locale to use
+     * @param opts the options to set the position and the selector of
+     * 
+     * @return <code>true</code> if the resource node has an explicit position, 
+     *      <code>false</code> if the image has to be placed automatically
+     */
+    protected boolean readOptions(
+        CmsObject cms,
+        CmsXmlContent xml,
+        I_CmsXmlContentValue value,
+        Locale locale,
+        CmsOptimizationSpriteOptions opts) {
+
+        boolean explicit = false;
+        String xpath = CmsXmlUtils.concatXpath(value.getPath(), N_POSITION);
+        if (xml.hasValue(xpath, locale)) {
+            I_CmsXmlContentValue value2 = xml.getValue(xpath, locale);
+            xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_X);
+            String x = xml.getStringValue(cms, xpath, locale);
+            xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_Y);
+            String y = xml.getStringValue(cms, xpath, locale);
+            if (CmsStringUtil.isNotEmptyOrWhitespaceOnly(x) && CmsStringUtil.isNotEmptyOrWhitespaceOnly(y)) {
+                opts.setX(Integer.parseInt(x.trim()));
+                opts.setY(Integer.parseInt(y.trim()));
+                explicit = true;
+            }
+        }
+        xpath = CmsXmlUtils.concatXpath(value.getPath(), N_SELECTOR);
+        opts.setSelector(xml.getStringValue(cms, xpath, locale));
+        return explicit;
     }
 
 	/**
@@ -246,10 +492,13 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
 		// cache the current project
 		boolean online = cms.getRequestContext().currentProject().isOnlineProject();
 
+        // the layout, only needed for images placed automatically
+        CmsOptimizationSpriteLayout layout = null;
+
         // iterate the resources
-        Iterator<I_CmsXmlContentValue> itRes = xml.getValues(N_RESOURCE, locale).iterator();
-        while (itRes.hasNext()) {
-            I_CmsXmlContentValue value = itRes.next();
+        List<I_CmsXmlContentValue> values = xml.getValues(N_RESOURCE, locale);
+        for (int i = 0; i < values.size(); i++) {
+            I_CmsXmlContentValue value = values.get(i);
             // get the uri
             String xpath = CmsXmlUtils.concatXpath(value.getPath(), N_PATH);
             String uri = xml.getValue(xpath, locale).getStringValue(cms);
@@ -269,17 +518,17 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
 			
             // get the options
             CmsOptimizationSpriteOptions opts = new CmsOptimizationSpriteOptions();
-            xpath = CmsXmlUtils.concatXpath(value.getPath(), N_POSITION);
-            if (xml.hasValue(xpath, locale)) {
-                I_CmsXmlContentValue value2 = xml.getValue(xpath, locale);
-                xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_X);
-                opts.setX(Integer.parseInt(xml.getStringValue(cms, xpath, locale)));
-                xpath = CmsXmlUtils.concatXpath(value2.getPath(), N_Y);
-                opts.setY(Integer.parseInt(xml.getStringValue(cms, xpath, locale)));
+            if (!readOptions(cms, xml, value, locale, opts) && optimized) {
+                // use the position the image is placed at automatically
+                if (layout == null) {
+                    layout = getLayout(cms, file);
+                }
+                CmsOptimizationSpriteOptions position = layout.getPosition(i);
+                if (position != null) {
+                    opts.setX(position.getX());
+                    opts.setY(position.getY());
+                }
             }
-            xpath = CmsXmlUtils.concatXpath(value.getPath(), N_SELECTOR);
-            opts.setSelector(xml.getStringValue(cms, xpath, locale));
-
             // apply offset
             if (offset != null) {
                 opts.setX(opts.getX() + offset.getX());
@@ -311,8 +560,22 @@ public class CmsOptimizationSprite extends CmsOptimizationBean {
      */
     protected void writeImage(BufferedImage image, String type) throws IOException {
 
+        writeImage(image, type, getJspContext().getResponse().getOutputStream());
+    }
+
+    /**
+     * Writes the given image as of the given type to the given output stream.<p>
+     * 
+     * @param image the image to write
+     * @param type the type
+     * @param out the output stream to write to
+     * 
+     * @throws IOException if something goes wrong
+     */
+    protected void writeImage(BufferedImage image, String type, OutputStream out) throws IOException {
+
         ImageWriter writer = (ImageWriter)ImageIO.getImageWritersByFormatName(type).next();
-        ImageOutputStream stream = ImageIO.createImageOutputStream(getJspContext().getResponse().getOutputStream());
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
         writer.setOutput(stream);
         writer.write(image);
         // We must close the stream now because if we are wrapping a ServletOutputStream,
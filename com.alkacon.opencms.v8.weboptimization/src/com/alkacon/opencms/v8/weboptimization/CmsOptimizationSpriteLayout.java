@@ -0,0 +1,150 @@
+/*
+ * File   : $Source: /alkacon/cvs/alkacon/com.alkacon.opencms.v8.weboptimization/src/com/alkacon/opencms/v8/weboptimization/CmsOptimizationSpriteLayout.java,v $
+ * Date   : $Date: 2012/10/18 12:00:00 $
+ * Version: $Revision: 1.1 $
+ *
+ * This file is part of the Alkacon OpenCms Add-On Module Package
+ *
+ * Copyright (c) 2007 Alkacon Software GmbH (http://www.alkacon.com)
+ *
+ * The Alkacon OpenCms Add-On Module Package is free software: 
+ * you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * The Alkacon OpenCms Add-On Module Package is distributed 
+ * in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with the Alkacon OpenCms Add-On Module Package.  
+ * If not, see http://www.gnu.org/licenses/.
+ *
+ * For further information about Alkacon Software GmbH, please see the
+ * company website: http://www.alkacon.com.
+ *
+ * For further information about OpenCms, please see the
+ * project website: http://www.opencms.org.
+ */
+
+package com.alkacon.opencms.v8.weboptimization;
+
+/**
+ * The layout of a sprite, with the final size of the sprite and the positions of all images in it.<p>
+ *
+ * The images are addressed by the index of their resource node in the sprite XML content.
+ * Resource nodes not part of the sprite image have no position.<p>
+ *
+ * @author Michael Moossen
+ *
+ * @version $Revision: 1.1 $
+ *
+ * @since 8.0.2
+ */
+public class CmsOptimizationSpriteLayout {
+
+    /** The hash of the images and their positions. */
+    private final String m_hash;
+
+    /** The height of the sprite. */
+    private final int m_height;
+
+    /** The paths of the images, by resource node index. */
+    private final String[] m_paths;
+
+    /** The positions of the images, by resource node index. */
+    private final CmsOptimizationSpriteOptions[] m_positions;
+
+    /** The width of the sprite. */
+    private final int m_width;
+
+    /**
+     * Creates a new sprite layout.<p>
+     *
+     * @param hash the hash of the images and their positions
+     * @param paths the paths of the images, by resource node index
+     * @param positions the positions of the images, by resource node index
+     * @param width the width of the sprite
+     * @param height the height of the sprite
+     */
+    public CmsOptimizationSpriteLayout(
+        String hash,
+        String[] paths,
+        CmsOptimizationSpriteOptions[] positions,
+        int width,
+        int height) {
+
+        m_hash = hash;
+        m_paths = paths;
+        m_positions = positions;
+        m_width = width;
+        m_height = height;
+    }
+
+    /**
+     * Returns the hash of the images and their positions, identifying the sprite image.<p>
+     *
+     * @return the hash of the images and their positions
+     */
+    public String getHash() {
+
+        return m_hash;
+    }
+
+    /**
+     * Returns the height of the sprite.<p>
+     *
+     * @return the height of the sprite
+     */
+    public int getHeight() {
+
+        return m_height;
+    }
+
+    /**
+     * Returns the path of the image of the given resource node.<p>
+     *
+     * @param index the index of the resource node
+     *
+     * @return the path of the image, or <code>null</code> if the resource node is not part of the sprite image
+     */
+    public String getPath(int index) {
+
+        return m_paths[index];
+    }
+
+    /**
+     * Returns the position of the image of the given resource node.<p>
+     *
+     * @param index the index of the resource node
+     *
+     * @return the position of the image, or <code>null</code> if the resource node is not part of the sprite image
+     */
+    public CmsOptimizationSpriteOptions getPosition(int index) {
+
+        return ((index < m_positions.length) ? m_positions[index] : null);
+    }
+
+    /**
+     * Returns the width of the sprite.<p>
+     *
+     * @return the width of the sprite
+     */
+    public int getWidth() {
+
+        return m_width;
+    }
+
+    /**
+     * Returns the number of resource nodes.<p>
+     *
+     * @return the number of resource nodes
+     */
+    public int size() {
+
+        return m_paths.length;
+    }
+}